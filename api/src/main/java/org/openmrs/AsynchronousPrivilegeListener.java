@@ -0,0 +1,28 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License Version
+ * 1.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ *
+ * Copyright (C) OpenMRS, LLC. All Rights Reserved.
+ */
+package org.openmrs;
+
+import org.openmrs.api.context.UserContext;
+
+/**
+ * A {@link PrivilegeListener} that is notified about privilege checks in batches from a background
+ * thread, after {@link UserContext#hasPrivilege(java.lang.String)} has returned, instead of in the
+ * thread doing the check. A check repeated by the same user before the batch is delivered is only
+ * passed on once, and checks are dropped if the listener can't keep up.
+ * <p>
+ * The background thread has no open session and no authenticated user, so listeners implementing
+ * this should only record the checks, e.g. in memory, and not call the api.
+ *
+ * @since 1.11
+ */
+public interface AsynchronousPrivilegeListener extends PrivilegeListener {
+}
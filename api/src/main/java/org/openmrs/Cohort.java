@@ -16,16 +16,17 @@ package org.openmrs;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.StringTokenizer;
-import java.util.TreeSet;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.api.ReportService;
 import org.openmrs.cohort.CohortDefinition;
 import org.openmrs.report.EvaluationContext;
+import org.openmrs.util.CompressedIntSet;
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
 import org.simpleframework.xml.ElementList;
@@ -35,7 +36,11 @@ import org.simpleframework.xml.Root;
  * This class represents a list of patientIds. If it is generated from a CohortDefinition via
  * {@link ReportService#evaluate(org.openmrs.report.ReportSchema, Cohort, EvaluationContext)} then
  * it will contain a link back to the CohortDefinition it came from and the EvalutionContext that
- * definition was evaluated in.
+ * definition was evaluated in.<br/>
+ * <br/>
+ * Members are held in a {@link CompressedIntSet}; {@link #getMemberIds()} is a live boxed view of
+ * it. For saved cohorts the members are read from the cohort_member table the first time they are
+ * needed, and written back to it (only the rows that changed) when the cohort is flushed.
  *
  * @see org.openmrs.cohort.CohortDefinition
  */
@@ -52,14 +57,22 @@ public class Cohort extends BaseOpenmrsData implements Serializable {
 	
 	private String description;
 	
-	private Set<Integer> memberIds;
+	private CompressedIntSet members;
+	
+	private transient CompressedIntSet syncedMembers;
+	
+	private transient int membersSyncedAt;
+	
+	/**
+	 * The cohort_member rows as mapped by hibernate, only touched via the persistent accessors
+	 */
+	private Set<Integer> persistentMemberIds;
 	
 	private CohortDefinition cohortDefinition;
 	
 	private EvaluationContext evaluationContext;
 	
 	public Cohort() {
-		memberIds = new TreeSet<Integer>();
 	}
 	
 	/**
@@ -87,7 +100,7 @@ public class Cohort extends BaseOpenmrsData implements Serializable {
 		this.name = name;
 		this.description = description;
 		if (ids != null) {
-			memberIds.addAll(Arrays.asList(ids));
+			getMembers().addAll(Arrays.asList(ids));
 		}
 	}
 	
@@ -104,7 +117,7 @@ public class Cohort extends BaseOpenmrsData implements Serializable {
 		this(name, description, (Integer[]) null);
 		if (patients != null) {
 			for (Patient p : patients) {
-				memberIds.add(p.getPatientId());
+				getMembers().add(p.getPatientId());
 			}
 		}
 	}
@@ -138,11 +151,11 @@ public class Cohort extends BaseOpenmrsData implements Serializable {
 		if (patientsOrIds != null) {
 			for (Object o : patientsOrIds) {
 				if (o instanceof Patient) {
-					memberIds.add(((Patient) o).getPatientId());
+					getMembers().add(((Patient) o).getPatientId());
 				} else if (o instanceof Integer) {
-					memberIds.add((Integer) o);
+					getMembers().add((Integer) o);
 				} else {
-					memberIds.add(Integer.valueOf(o.toString()));
+					getMembers().add(Integer.valueOf(o.toString()));
 				}
 			}
 		}
@@ -159,7 +172,7 @@ public class Cohort extends BaseOpenmrsData implements Serializable {
 		this();
 		for (StringTokenizer st = new StringTokenizer(commaSeparatedIds, ","); st.hasMoreTokens();) {
 			String id = st.nextToken();
-			memberIds.add(new Integer(id.trim()));
+			getMembers().add(Integer.parseInt(id.trim()));
 		}
 	}
 	
@@ -168,7 +181,7 @@ public class Cohort extends BaseOpenmrsData implements Serializable {
 	 */
 	public String getCommaSeparatedPatientIds() {
 		StringBuilder sb = new StringBuilder();
-		for (Iterator<Integer> i = getMemberIds().iterator(); i.hasNext();) {
+		for (CompressedIntSet.IntIterator i = getMembers().intIterator(); i.hasNext();) {
 			sb.append(i.next());
 			if (i.hasNext()) {
 				sb.append(",");
@@ -178,11 +191,11 @@ public class Cohort extends BaseOpenmrsData implements Serializable {
 	}
 	
 	public boolean contains(Patient patient) {
-		return getMemberIds() != null && getMemberIds().contains(patient.getPatientId());
+		return patient.getPatientId() != null && getMembers().contains(patient.getPatientId());
 	}
 	
 	public boolean contains(Integer patientId) {
-		return getMemberIds() != null && getMemberIds().contains(patientId);
+		return patientId != null && getMembers().contains(patientId);
 	}
 	
 	public String toString() {
@@ -190,22 +203,20 @@ public class Cohort extends BaseOpenmrsData implements Serializable {
 		if (getName() != null) {
 			sb.append(" name=" + getName());
 		}
-		if (getMemberIds() != null) {
-			sb.append(" size=" + getMemberIds().size());
-		}
+		sb.append(" size=" + size());
 		return sb.toString();
 	}
 	
 	public void addMember(Integer memberId) {
-		getMemberIds().add(memberId);
+		getMembers().add(memberId);
 	}
 	
 	public void removeMember(Integer memberId) {
-		getMemberIds().remove(memberId);
+		getMembers().remove(memberId);
 	}
 	
 	public int size() {
-		return getMemberIds() == null ? 0 : getMemberIds().size();
+		return getMembers().size();
 	}
 	
 	public int getSize() {
@@ -224,14 +235,15 @@ public class Cohort extends BaseOpenmrsData implements Serializable {
 	 * @param a The first Cohort
 	 * @param b The second Cohort
 	 * @return Cohort
+	 * @should contain the members of both cohorts
 	 */
 	public static Cohort union(Cohort a, Cohort b) {
 		Cohort ret = new Cohort();
 		if (a != null) {
-			ret.getMemberIds().addAll(a.getMemberIds());
+			ret.getMembers().or(a.getMembers());
 		}
 		if (b != null) {
-			ret.getMemberIds().addAll(b.getMemberIds());
+			ret.getMembers().or(b.getMembers());
 		}
 		if (a != null && b != null) {
 			ret.setName("(" + a.getName() + " + " + b.getName() + ")");
@@ -245,13 +257,13 @@ public class Cohort extends BaseOpenmrsData implements Serializable {
 	 * @param a The first Cohort
 	 * @param b The second Cohort
 	 * @return Cohort
+	 * @should contain only the members in both cohorts
 	 */
 	public static Cohort intersect(Cohort a, Cohort b) {
 		Cohort ret = new Cohort();
 		ret.setName("(" + (a == null ? "NULL" : a.getName()) + " * " + (b == null ? "NULL" : b.getName()) + ")");
 		if (a != null && b != null) {
-			ret.getMemberIds().addAll(a.getMemberIds());
-			ret.getMemberIds().retainAll(b.getMemberIds());
+			ret.getMembers().or(a.getMembers()).and(b.getMembers());
 		}
 		return ret;
 	}
@@ -262,13 +274,14 @@ public class Cohort extends BaseOpenmrsData implements Serializable {
 	 * @param a the original Cohort
 	 * @param b the Cohort to subtract
 	 * @return Cohort
+	 * @should not contain the members of the subtracted cohort
 	 */
 	public static Cohort subtract(Cohort a, Cohort b) {
 		Cohort ret = new Cohort();
 		if (a != null) {
-			ret.getMemberIds().addAll(a.getMemberIds());
+			ret.getMembers().or(a.getMembers());
 			if (b != null) {
-				ret.getMemberIds().removeAll(b.getMemberIds());
+				ret.getMembers().andNot(b.getMembers());
 				ret.setName("(" + a.getName() + " - " + b.getName() + ")");
 			}
 		}
@@ -307,9 +320,97 @@ public class Cohort extends BaseOpenmrsData implements Serializable {
 		this.name = name;
 	}
 	
+	/**
+	 * Returns a live view of the members of this cohort. Changes to the returned set are changes to
+	 * the cohort.
+	 *
+	 * @return the member ids
+	 * @should reflect changes made to the cohort
+	 */
 	@ElementList(required = true)
 	public Set<Integer> getMemberIds() {
-		return memberIds;
+		return getMembers().asSet();
+	}
+	
+	/**
+	 * Gives direct access to the compressed member set, for callers that want primitive iteration
+	 * or in place set operations
+	 *
+	 * @return the members of this cohort
+	 * @since 1.11
+	 */
+	public CompressedIntSet getMembers() {
+		if (members == null) {
+			// new cohort, or first access to the members of a cohort loaded by hibernate
+			members = new CompressedIntSet(persistentMemberIds);
+			if (persistentMemberIds != null) {
+				markMembersSynced();
+			}
+		}
+		return members;
+	}
+	
+	/**
+	 * Replaces the members of this cohort
+	 *
+	 * @param memberIds the new member ids, null clears the cohort
+	 */
+	@ElementList(required = true)
+	public void setMemberIds(Set<Integer> memberIds) {
+		this.members = new CompressedIntSet(memberIds);
+	}
+	
+	/**
+	 * Used by hibernate to read the cohort_member rows. If the members were changed since they were
+	 * loaded, the persistent set is updated in place so that hibernate only writes the changed rows.
+	 *
+	 * @return the persistent member ids
+	 */
+	@SuppressWarnings("unused")
+	private Set<Integer> getPersistentMemberIds() {
+		if (persistentMemberIds == null) {
+			persistentMemberIds = new HashSet<Integer>(getMembers().asSet());
+			markMembersSynced();
+		} else if (!isMembersSynced()) {
+			for (Iterator<Integer> i = persistentMemberIds.iterator(); i.hasNext();) {
+				if (!members.contains(i.next())) {
+					i.remove();
+				}
+			}
+			if (persistentMemberIds.size() != members.size()) {
+				for (CompressedIntSet.IntIterator i = members.intIterator(); i.hasNext();) {
+					persistentMemberIds.add(i.next());
+				}
+			}
+			markMembersSynced();
+		}
+		return persistentMemberIds;
+	}
+	
+	/**
+	 * Used by hibernate. The persistent set is only read into the compressed members when they are
+	 * first needed. Members with pending changes are kept so that they are written on the next flush.
+	 *
+	 * @param persistentMemberIds the persistent member ids
+	 */
+	@SuppressWarnings("unused")
+	private void setPersistentMemberIds(Set<Integer> persistentMemberIds) {
+		this.persistentMemberIds = persistentMemberIds;
+		if (isMembersSynced()) {
+			members = null;
+		}
+	}
+	
+	/**
+	 * @return true if the persistent member ids reflect the current members
+	 */
+	private boolean isMembersSynced() {
+		return members == null || (members == syncedMembers && members.getModificationCount() == membersSyncedAt);
+	}
+	
+	private void markMembersSynced() {
+		syncedMembers = members;
+		membersSyncedAt = members.getModificationCount();
 	}
 	
 	/**
@@ -323,11 +424,6 @@ public class Cohort extends BaseOpenmrsData implements Serializable {
 		return getMemberIds();
 	}
 	
-	@ElementList(required = true)
-	public void setMemberIds(Set<Integer> memberIds) {
-		this.memberIds = memberIds;
-	}
-	
 	/**
 	 * @return the cohortDefinition
 	 */
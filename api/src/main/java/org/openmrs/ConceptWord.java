@@ -215,11 +215,25 @@ public class ConceptWord implements java.io.Serializable, Comparable<ConceptWord
 	 */
 	
 	public static Set<ConceptWord> makeConceptWords(Concept concept) {
+		return makeConceptWords(concept, Context.getConceptService().getConceptStopWords(Context.getLocale()));
+	}
+	
+	/**
+	 * Same as {@link #makeConceptWords(Concept)} but with the stop words given, so that callers
+	 * making the words of many concepts only need to look them up once
+	 *
+	 * @param concept The concept from which to make the list of concept words.
+	 * @param conceptStopWords the upper case words to leave out
+	 * @return Returns a list of unique concept words based on the specified concept.
+	 * @since 1.11
+	 * @should leave out the given stop words
+	 */
+	public static Set<ConceptWord> makeConceptWords(Concept concept, List<String> conceptStopWords) {
 		Set<ConceptWord> words = new HashSet<ConceptWord>();
 		
 		for (ConceptName name : concept.getNames()) {
 			if (!name.isVoided()) {
-				List<String> uniqueParts = getUniqueWords(name.getName());
+				List<String> uniqueParts = getUniqueWords(splitPhrase(name.getName()), conceptStopWords);
 				for (String part : uniqueParts) {
 					words.add(new ConceptWord(part, concept, name, name.getLocale()));
 				}
@@ -248,10 +262,17 @@ public class ConceptWord implements java.io.Serializable, Comparable<ConceptWord
 	 */
 	public static List<String> getUniqueWords(String phrase, Locale locale) {
 		String[] parts = splitPhrase(phrase);
+		if (parts == null) {
+			return new Vector<String>();
+		}
+		
+		return getUniqueWords(parts, Context.getConceptService().getConceptStopWords(locale));
+	}
+	
+	private static List<String> getUniqueWords(String[] parts, List<String> conceptStopWords) {
 		List<String> uniqueParts = new Vector<String>();
 		
 		if (parts != null) {
-			List<String> conceptStopWords = Context.getConceptService().getConceptStopWords(locale);
 			for (String part : parts) {
 				if (!StringUtils.isBlank(part)) {
 					String upper = part.trim().toUpperCase();
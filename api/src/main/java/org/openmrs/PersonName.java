@@ -66,6 +66,22 @@ public class PersonName extends BaseOpenmrsData implements java.io.Serializable,
 	
 	private String degree;
 	
+	private String givenNameSoundex;
+	
+	private String middleNameSoundex;
+	
+	private String familyNameSoundex;
+	
+	private String familyName2Soundex;
+	
+	private String givenNameMetaphone;
+	
+	private String middleNameMetaphone;
+	
+	private String familyNameMetaphone;
+	
+	private String familyName2Metaphone;
+	
 	// Constructors
 	
 	/** default constructor */
@@ -147,6 +163,14 @@ public class PersonName extends BaseOpenmrsData implements java.io.Serializable,
 		if (pn.getDegree() != null) {
 			newName.setDegree(new String(pn.getDegree()));
 		}
+		newName.setGivenNameSoundex(pn.getGivenNameSoundex());
+		newName.setMiddleNameSoundex(pn.getMiddleNameSoundex());
+		newName.setFamilyNameSoundex(pn.getFamilyNameSoundex());
+		newName.setFamilyName2Soundex(pn.getFamilyName2Soundex());
+		newName.setGivenNameMetaphone(pn.getGivenNameMetaphone());
+		newName.setMiddleNameMetaphone(pn.getMiddleNameMetaphone());
+		newName.setFamilyNameMetaphone(pn.getFamilyNameMetaphone());
+		newName.setFamilyName2Metaphone(pn.getFamilyName2Metaphone());
 		if (pn.getVoidReason() != null) {
 			newName.setVoidReason(new String(pn.getVoidReason()));
 		}
@@ -405,6 +429,134 @@ public class PersonName extends BaseOpenmrsData implements java.io.Serializable,
 		this.prefix = prefix;
 	}
 	
+	/**
+	 * @return the soundex key of the given name, see {@link org.openmrs.util.PhoneticUtil#soundex(String)}
+	 * @since 1.11
+	 */
+	public String getGivenNameSoundex() {
+		return givenNameSoundex;
+	}
+	
+	/**
+	 * @param givenNameSoundex the soundex key of the given name to set
+	 * @since 1.11
+	 */
+	public void setGivenNameSoundex(String givenNameSoundex) {
+		this.givenNameSoundex = givenNameSoundex;
+	}
+	
+	/**
+	 * @return the soundex key of the middle name, see {@link org.openmrs.util.PhoneticUtil#soundex(String)}
+	 * @since 1.11
+	 */
+	public String getMiddleNameSoundex() {
+		return middleNameSoundex;
+	}
+	
+	/**
+	 * @param middleNameSoundex the soundex key of the middle name to set
+	 * @since 1.11
+	 */
+	public void setMiddleNameSoundex(String middleNameSoundex) {
+		this.middleNameSoundex = middleNameSoundex;
+	}
+	
+	/**
+	 * @return the soundex key of the family name, see {@link org.openmrs.util.PhoneticUtil#soundex(String)}
+	 * @since 1.11
+	 */
+	public String getFamilyNameSoundex() {
+		return familyNameSoundex;
+	}
+	
+	/**
+	 * @param familyNameSoundex the soundex key of the family name to set
+	 * @since 1.11
+	 */
+	public void setFamilyNameSoundex(String familyNameSoundex) {
+		this.familyNameSoundex = familyNameSoundex;
+	}
+	
+	/**
+	 * @return the soundex key of the second family name, see {@link org.openmrs.util.PhoneticUtil#soundex(String)}
+	 * @since 1.11
+	 */
+	public String getFamilyName2Soundex() {
+		return familyName2Soundex;
+	}
+	
+	/**
+	 * @param familyName2Soundex the soundex key of the second family name to set
+	 * @since 1.11
+	 */
+	public void setFamilyName2Soundex(String familyName2Soundex) {
+		this.familyName2Soundex = familyName2Soundex;
+	}
+	
+	/**
+	 * @return the metaphone key of the given name, see {@link org.openmrs.util.PhoneticUtil#metaphone(String)}
+	 * @since 1.11
+	 */
+	public String getGivenNameMetaphone() {
+		return givenNameMetaphone;
+	}
+	
+	/**
+	 * @param givenNameMetaphone the metaphone key of the given name to set
+	 * @since 1.11
+	 */
+	public void setGivenNameMetaphone(String givenNameMetaphone) {
+		this.givenNameMetaphone = givenNameMetaphone;
+	}
+	
+	/**
+	 * @return the metaphone key of the middle name, see {@link org.openmrs.util.PhoneticUtil#metaphone(String)}
+	 * @since 1.11
+	 */
+	public String getMiddleNameMetaphone() {
+		return middleNameMetaphone;
+	}
+	
+	/**
+	 * @param middleNameMetaphone the metaphone key of the middle name to set
+	 * @since 1.11
+	 */
+	public void setMiddleNameMetaphone(String middleNameMetaphone) {
+		this.middleNameMetaphone = middleNameMetaphone;
+	}
+	
+	/**
+	 * @return the metaphone key of the family name, see {@link org.openmrs.util.PhoneticUtil#metaphone(String)}
+	 * @since 1.11
+	 */
+	public String getFamilyNameMetaphone() {
+		return familyNameMetaphone;
+	}
+	
+	/**
+	 * @param familyNameMetaphone the metaphone key of the family name to set
+	 * @since 1.11
+	 */
+	public void setFamilyNameMetaphone(String familyNameMetaphone) {
+		this.familyNameMetaphone = familyNameMetaphone;
+	}
+	
+	/**
+	 * @return the metaphone key of the second family name, see {@link org.openmrs.util.PhoneticUtil#metaphone(String)}
+	 * @since 1.11
+	 */
+	public String getFamilyName2Metaphone() {
+		return familyName2Metaphone;
+	}
+	
+	/**
+	 * @param familyName2Metaphone the metaphone key of the second family name to set
+	 * @since 1.11
+	 */
+	public void setFamilyName2Metaphone(String familyName2Metaphone) {
+		this.familyName2Metaphone = familyName2Metaphone;
+	}
+	
 	/**
 	 * @see #isVoided()
 	 */
@@ -19,6 +19,10 @@ import org.openmrs.api.context.UserContext;
  * <p> 
  * Beans implementing this interface will be picked up to listen to any
  * privilege checks. Listeners will be notified about any call to {@link UserContext#hasPrivilege(java.lang.String)}.
+ * <p>
+ * Since 1.11 listeners that don't need to be called in the thread doing the check can implement
+ * {@link AsynchronousPrivilegeListener} to be notified in batches from a background thread
+ * instead, which keeps privilege checks fast.
  *
  * @since 1.8.4, 1.9.1, 1.10
  */
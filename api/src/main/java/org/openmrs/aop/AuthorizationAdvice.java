@@ -15,6 +15,9 @@ package org.openmrs.aop;
 
 import java.lang.reflect.Method;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -36,6 +39,13 @@ public class AuthorizationAdvice implements MethodBeforeAdvice {
 	 */
 	protected final Log log = LogFactory.getLog(AuthorizationAdvice.class);
 	
+	/**
+	 * The parsed {@link org.openmrs.annotation.Authorized} annotation of every method this advice
+	 * has run before. Not static, so that methods of unloaded modules are let go of when the
+	 * application context is refreshed.
+	 */
+	private final Map<Method, MethodAuthorization> methodAuthorizations = new ConcurrentHashMap<Method, MethodAuthorization>();
+	
 	/**
 	 * Allows us to check whether a user is authorized to access a particular method.
 	 *
@@ -44,8 +54,8 @@ public class AuthorizationAdvice implements MethodBeforeAdvice {
 	 * @param target
 	 * @throws Throwable
 	 * @should notify listeners about checked privileges
+	 * @should parse the annotations of a method only once
 	 */
-	@SuppressWarnings( { "unchecked" })
 	public void before(Method method, Object[] args, Object target) throws Throwable {
 		
 		if (log.isDebugEnabled()) {
@@ -61,9 +71,9 @@ public class AuthorizationAdvice implements MethodBeforeAdvice {
 			}
 		}
 		
-		AuthorizedAnnotationAttributes attributes = new AuthorizedAnnotationAttributes();
-		Collection<String> privileges = attributes.getAttributes(method);
-		boolean requireAll = attributes.getRequireAll(method);
+		MethodAuthorization authorization = getMethodAuthorization(method);
+		Collection<String> privileges = authorization.privileges;
+		boolean requireAll = authorization.requireAll;
 		
 		// Only execute if the "secure" method has authorization attributes
 		// Iterate through required privileges and return only if the user has
@@ -102,7 +112,7 @@ public class AuthorizationAdvice implements MethodBeforeAdvice {
 				throwUnauthorized(user, method, privileges);
 			}
 			
-		} else if (attributes.hasAuthorizedAnnotation(method)) {
+		} else if (authorization.authorized) {
 			// if there are no privileges defined, just require that 
 			// the user be authenticated
 			if (Context.isAuthenticated() == false) {
@@ -111,6 +121,25 @@ public class AuthorizationAdvice implements MethodBeforeAdvice {
 		}
 	}
 	
+	/**
+	 * Gets the authorization metadata of the given method, reading its annotations the first time
+	 * it is called
+	 *
+	 * @param method the method being called
+	 * @return the metadata
+	 */
+	@SuppressWarnings("unchecked")
+	MethodAuthorization getMethodAuthorization(Method method) {
+		MethodAuthorization authorization = methodAuthorizations.get(method);
+		if (authorization == null) {
+			AuthorizedAnnotationAttributes attributes = new AuthorizedAnnotationAttributes();
+			authorization = new MethodAuthorization(attributes.getAttributes(method), attributes.getRequireAll(method),
+			        attributes.hasAuthorizedAnnotation(method));
+			methodAuthorizations.put(method, authorization);
+		}
+		return authorization;
+	}
+	
 	/**
 	 * Throws an APIAuthorization exception stating why the user failed
 	 *
@@ -153,4 +182,27 @@ public class AuthorizationAdvice implements MethodBeforeAdvice {
 		}
 		throw new APIAuthenticationException(Context.getMessageSourceService().getMessage("error.aunthenticationRequired"));
 	}
+	
+	/**
+	 * The privileges a method requires, as declared by its {@link org.openmrs.annotation.Authorized}
+	 * annotation
+	 */
+	static final class MethodAuthorization {
+		
+		private final Collection<String> privileges;
+		
+		private final boolean requireAll;
+		
+		private final boolean authorized;
+		
+		private MethodAuthorization(Collection<String> privileges, boolean requireAll, boolean authorized) {
+			this.privileges = Collections.unmodifiableCollection(privileges);
+			this.requireAll = requireAll;
+			this.authorized = authorized;
+		}
+		
+		Collection<String> getPrivileges() {
+			return privileges;
+		}
+	}
 }
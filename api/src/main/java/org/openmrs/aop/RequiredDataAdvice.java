@@ -21,6 +21,8 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.openmrs.OpenmrsObject;
 import org.openmrs.Retireable;
@@ -41,6 +43,8 @@ import org.openmrs.util.HandlerUtil;
 import org.openmrs.util.Reflect;
 import org.openmrs.validator.ValidateUtil;
 import org.springframework.aop.MethodBeforeAdvice;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.util.StringUtils;
 
 /**
@@ -72,14 +76,37 @@ import org.springframework.util.StringUtils;
  * would then be run twice because both handlers are registered. Be sure to add the
  * {@link org.openmrs.annotation.Handler} annotation (like
  * "@Handler(supports=YourPojoThatHasUniqueSaveNeeds.class)") to your class so that it is picked up
- * by Spring automatically.
+ * by Spring automatically.<br/>
+ * <br/>
+ * The child collection fields of each class, with their getters, are looked up once and cached.
+ * The cache is cleared when the application context is refreshed and when a module is stopped,
+ * so that the classes of stopped modules can be unloaded.
  *
  * @see RequiredDataHandler
  * @see SaveHandler
  * @see VoidHandler
  * @since 1.5
  */
-public class RequiredDataAdvice implements MethodBeforeAdvice {
+public class RequiredDataAdvice implements MethodBeforeAdvice, ApplicationListener<ContextRefreshedEvent> {
+	
+	private static volatile ConcurrentMap<Class<?>, List<ChildCollection>> cachedChildCollections = new ConcurrentHashMap<Class<?>, List<ChildCollection>>();
+	
+	/**
+	 * @see org.springframework.context.ApplicationListener#onApplicationEvent(org.springframework.context.ApplicationEvent)
+	 * @since 1.11
+	 */
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		clearCachedChildCollections();
+	}
+	
+	/**
+	 * Clears the cached child collection fields of the handled classes
+	 *
+	 * @since 1.11
+	 */
+	public static void clearCachedChildCollections() {
+		cachedChildCollections = new ConcurrentHashMap<Class<?>, List<ChildCollection>>();
+	}
 	
 	/**
 	 * @see org.springframework.aop.MethodBeforeAdvice#before(java.lang.reflect.Method,
@@ -264,15 +291,12 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 		}
 		alreadyHandled.add(openmrsObject);
 		
-		Reflect reflect = new Reflect(OpenmrsObject.class);
-		List<Field> allInheritedFields = reflect.getInheritedFields(openmrsObjectClass);
-		
 		// loop over all child collections of OpenmrsObjects and recursively save on those
-		for (Field field : allInheritedFields) {
-			if (reflect.isCollectionField(field) && !isHandlerMarkedAsDisabled(handlerType, field)) {
+		for (ChildCollection child : getChildCollections(openmrsObjectClass)) {
+			if (!child.isHandlerDisabled(handlerType)) {
 				
 				// the collection we'll be looping over
-				Collection<OpenmrsObject> childCollection = getChildCollection(openmrsObject, field);
+				Collection<OpenmrsObject> childCollection = child.get(openmrsObject);
 				
 				if (childCollection != null) {
 					for (Object collectionElement : childCollection) {
@@ -287,6 +311,31 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 		
 	}
 	
+	/**
+	 * Gets the fields of the given class that are collections of {@link OpenmrsObject}s, from the
+	 * cache if they have been looked up before
+	 *
+	 * @param openmrsObjectClass the class to get the fields of
+	 * @return the child collections
+	 * @should get the collection fields of the class and the handlers they disable
+	 * @should return the cached child collections for a class that was seen before
+	 */
+	protected static List<ChildCollection> getChildCollections(Class<? extends OpenmrsObject> openmrsObjectClass) {
+		ConcurrentMap<Class<?>, List<ChildCollection>> cache = cachedChildCollections;
+		List<ChildCollection> childCollections = cache.get(openmrsObjectClass);
+		if (childCollections == null) {
+			childCollections = new ArrayList<ChildCollection>();
+			Reflect reflect = new Reflect(OpenmrsObject.class);
+			for (Field field : reflect.getInheritedFields(openmrsObjectClass)) {
+				if (reflect.isCollectionField(field)) {
+					childCollections.add(new ChildCollection(openmrsObjectClass, field));
+				}
+			}
+			cache.put(openmrsObjectClass, childCollections);
+		}
+		return childCollections;
+	}
+	
 	/**
 	 * This method gets a child attribute off of an OpenmrsObject. It usually uses the getter for
 	 * the attribute, but can use the direct field (even if its private) if told to by the
@@ -385,4 +434,95 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 		
 		return false;
 	}
+	
+	/**
+	 * A field holding a collection of {@link OpenmrsObject}s, along with how to get its value and
+	 * which handler types it disables
+	 */
+	protected static class ChildCollection {
+		
+		private final Field field;
+		
+		private final Method getter;
+		
+		private final String getterName;
+		
+		private final Class<? extends RequiredDataHandler>[] disabledHandlerTypes;
+		
+		ChildCollection(Class<?> openmrsObjectClass, Field field) {
+			this.field = field;
+			this.getterName = "get" + StringUtils.capitalize(field.getName());
+			
+			Method getterMethod = null;
+			if (field.isAnnotationPresent(AllowDirectAccess.class)) {
+				field.setAccessible(true);
+			} else {
+				try {
+					getterMethod = openmrsObjectClass.getMethod(getterName, (Class[]) null);
+				}
+				catch (NoSuchMethodException e) {
+					// reported when the collection is needed, as getChildCollection does
+				}
+			}
+			this.getter = getterMethod;
+			
+			DisableHandlers disableHandlers = field.getAnnotation(DisableHandlers.class);
+			this.disabledHandlerTypes = disableHandlers == null ? null : disableHandlers.handlerTypes();
+		}
+		
+		/**
+		 * @return the field holding the collection
+		 */
+		public Field getField() {
+			return field;
+		}
+		
+		/**
+		 * @param handlerType the type of handler being run
+		 * @return true if the field is annotated to disable handlers of the given type
+		 * @see RequiredDataAdvice#isHandlerMarkedAsDisabled(Class, Field)
+		 */
+		public boolean isHandlerDisabled(Class<? extends RequiredDataHandler> handlerType) {
+			if (disabledHandlerTypes != null) {
+				for (Class<? extends RequiredDataHandler> h : disabledHandlerTypes) {
+					if (h.isAssignableFrom(handlerType)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+		
+		/**
+		 * @param openmrsObject the object to get the collection off of
+		 * @return the collection on the given object
+		 * @see RequiredDataAdvice#getChildCollection(OpenmrsObject, Field)
+		 */
+		@SuppressWarnings("unchecked")
+		public Collection<OpenmrsObject> get(OpenmrsObject openmrsObject) {
+			String fieldName = field.getName();
+			try {
+				if (getter == null) {
+					if (field.isAnnotationPresent(AllowDirectAccess.class)) {
+						return (Collection<OpenmrsObject>) field.get(openmrsObject);
+					}
+					throw new APIException("Unable to find getter method: " + getterName + " for field: " + fieldName
+					        + " on " + openmrsObject.getClass());
+				}
+				return (Collection<OpenmrsObject>) getter.invoke(openmrsObject, new Object[] {});
+			}
+			catch (IllegalAccessException e) {
+				if (getter == null) {
+					throw new APIException("Unable to get field: " + fieldName + " on " + openmrsObject.getClass());
+				} else {
+					throw new APIException("Unable to use getter method: " + getterName + " for field: " + fieldName
+					        + " on " + openmrsObject.getClass());
+				}
+			}
+			catch (InvocationTargetException e) {
+				throw new APIException("Unable to run getter method: " + getterName + " for field: " + fieldName + " on "
+				        + openmrsObject.getClass());
+			}
+		}
+	}
 }
@@ -433,6 +433,8 @@ public interface AdministrationService extends OpenmrsService {
 	 * <p>
 	 * If <code>propertyName</code> is not found in the list of Global Properties currently in the
 	 * database, a null value is returned. This method should not have any authorization check.
+	 * <p>
+	 * The values are read from memory, see {@link #refreshGlobalProperties()}.
 	 * 
 	 * @param propertyName property key to look for
 	 * @return value of property returned or null if none
@@ -590,6 +592,18 @@ public interface AdministrationService extends OpenmrsService {
 	@Authorized(PrivilegeConstants.MANAGE_GLOBAL_PROPERTIES)
 	public GlobalProperty saveGlobalProperty(GlobalProperty gp) throws APIException;
 	
+	/**
+	 * Global property values are held in memory once read. This makes the next read load them all
+	 * again from the database. When several instances share one database this should be called
+	 * regularly on every instance (e.g. by scheduling the
+	 * {@link org.openmrs.scheduler.tasks.RefreshGlobalPropertiesTask}) so that the changes made by
+	 * the other instances are picked up.
+	 * 
+	 * @since 1.11
+	 * @should pick up values changed directly in the database
+	 */
+	public void refreshGlobalProperties();
+	
 	/**
 	 * @deprecated use {@link #saveGlobalProperty(GlobalProperty)}
 	 */
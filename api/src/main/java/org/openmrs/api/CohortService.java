@@ -57,6 +57,7 @@ public interface CohortService extends OpenmrsService {
 	 * @throws APIException
 	 * @should create new cohorts
 	 * @should update an existing cohort
+	 * @should save member changes made to a loaded cohort
 	 */
 	@Authorized( { PrivilegeConstants.ADD_COHORTS, PrivilegeConstants.EDIT_COHORTS })
 	public Cohort saveCohort(Cohort cohort) throws APIException;
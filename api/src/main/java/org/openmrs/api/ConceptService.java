@@ -1028,6 +1028,24 @@ public interface ConceptService extends OpenmrsService {
 	@Authorized(PrivilegeConstants.GET_CONCEPTS)
 	public Concept getNextConcept(Concept concept) throws APIException;
 	
+	/**
+	 * Gets a page of concepts ordered by concept id, for walking the whole dictionary without
+	 * loading it into memory. The names, descriptions, answers and set members of the returned
+	 * concepts are fetched with one query each for the whole page.
+	 * 
+	 * @param conceptId the concept id to start after, or null to start with the first concept
+	 * @param includeRetired whether retired concepts should be returned
+	 * @param maxResults the maximum number of concepts to return
+	 * @return the concepts with a concept id larger than the given one, in ascending order
+	 * @throws APIException
+	 * @since 1.11
+	 * @should return concepts in ascending concept id order starting after the given id
+	 * @should not return retired concepts if includeRetired is false
+	 * @should return an empty list after the last concept
+	 */
+	@Authorized(PrivilegeConstants.GET_CONCEPTS)
+	public List<Concept> getNextConcepts(Integer conceptId, boolean includeRetired, int maxResults) throws APIException;
+	
 	/**
 	 * Check if the concepts are locked and if so, throw exception during manipulation of concept
 	 * 
@@ -1481,6 +1499,23 @@ public interface ConceptService extends OpenmrsService {
 	@Authorized( { PrivilegeConstants.MANAGE_CONCEPTS })
 	public void updateConceptIndexes(Integer conceptIdStart, Integer conceptIdEnd) throws APIException;
 	
+	/**
+	 * Rebuilds the index of all concepts with conceptIds between <code>conceptIdStart</code> and
+	 * <code>conceptIdEnd</code> (inclusive) in bulk: the concepts are loaded with one query, their
+	 * old words are deleted with one statement and the new words are written with jdbc batch
+	 * inserts. Meant for rebuilding large parts of the index, e.g. after a dictionary import.
+	 * 
+	 * @param conceptIdStart starts update with this concept_id
+	 * @param conceptIdEnd ends update with this concept_id
+	 * @return the number of concepts whose index was rebuilt
+	 * @throws APIException
+	 * @since 1.11
+	 * @should rebuild the index of the concepts in the range
+	 * @should not change the index of concepts outside the range
+	 */
+	@Authorized( { PrivilegeConstants.MANAGE_CONCEPTS })
+	public int rebuildConceptIndexes(Integer conceptIdStart, Integer conceptIdEnd) throws APIException;
+	
 	/**
 	 * Searches for concepts with the given parameters
 	 * 
@@ -29,9 +29,12 @@ import org.openmrs.activelist.Problem;
 import org.openmrs.annotation.Authorized;
 import org.openmrs.api.db.PatientDAO;
 import org.openmrs.comparator.PatientIdentifierTypeDefaultComparator;
+import org.openmrs.patient.DuplicatePatientCandidate;
+import org.openmrs.patient.DuplicatePatientDetector;
 import org.openmrs.patient.IdentifierValidator;
 import org.openmrs.person.PersonMergeLogData;
 import org.openmrs.serialization.SerializationException;
+import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.util.PrivilegeConstants;
 import org.openmrs.validator.PatientIdentifierValidator;
 
@@ -617,6 +620,42 @@ public interface PatientService extends OpenmrsService {
 	@Authorized( { PrivilegeConstants.VIEW_PATIENTS })
 	public List<Patient> getDuplicatePatientsByAttributes(List<String> attributes) throws APIException;
 	
+	/**
+	 * Finds the pairs of patients that are likely to be the same person and saves them as duplicate
+	 * patient candidates, replacing those of the previous run. Unlike
+	 * {@link #getDuplicatePatientsByAttributes(List)} names match if they sound alike and the pairs
+	 * are scored, see {@link DuplicatePatientDetector} and the
+	 * {@link OpenmrsConstants#GLOBAL_PROPERTY_DUPLICATE_PATIENT_BLOCKING_KEYS} and
+	 * {@link OpenmrsConstants#GLOBAL_PROPERTY_DUPLICATE_PATIENT_THRESHOLD} global properties. This
+	 * goes through all patients, so it is meant to be run by a scheduled task rather than from a
+	 * page.
+	 * 
+	 * @return the number of candidate pairs found
+	 * @throws APIException
+	 * @since 1.11
+	 * @should save the pairs of patients that are likely to be the same person
+	 * @should replace the candidates of the previous run
+	 */
+	@Authorized( { PrivilegeConstants.EDIT_PATIENTS })
+	public int detectDuplicatePatients() throws APIException;
+	
+	/**
+	 * Gets a page of the duplicate patient candidates saved by {@link #detectDuplicatePatients()},
+	 * the most likely ones first. Pairs of which a patient has been voided (e.g. by merging them)
+	 * are left out.
+	 * 
+	 * @param start the index of the first candidate to get, or null to start with the first
+	 * @param length the maximum number of candidates to get, or null for all of them
+	 * @return the candidates
+	 * @throws APIException
+	 * @since 1.11
+	 * @should get the candidates by descending score
+	 * @should leave out pairs with a voided patient
+	 */
+	@Authorized( { PrivilegeConstants.VIEW_PATIENTS })
+	public List<DuplicatePatientCandidate> getDuplicatePatientCandidates(Integer start, Integer length)
+	        throws APIException;
+	
 	/**
 	 * Convenience method to join two patients' information into one record.
 	 * <ol>
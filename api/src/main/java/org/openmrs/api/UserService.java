@@ -609,6 +609,9 @@ public interface UserService extends OpenmrsService {
 	 * Notifies privilege listener beans about any privilege check.
 	 * <p>
 	 * It is called by {@link UserContext#hasPrivilege(java.lang.String)}.
+	 * <p>
+	 * Listeners implementing {@link org.openmrs.AsynchronousPrivilegeListener} are notified in
+	 * batches from a background thread, all others are notified before this method returns.
 	 * 
 	 * @see PrivilegeListener
 	 * @param user the authenticated user or <code>null</code> if not authenticated
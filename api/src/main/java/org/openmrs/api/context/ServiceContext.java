@@ -86,19 +86,29 @@ public class ServiceContext implements ApplicationContextAware {
 	
 	private ApplicationContext applicationContext;
 	
-	private static boolean refreshingContext = false;
+	/**
+	 * Volatile so that {@link #getService(Class)} only has to enter the lock while a refresh is
+	 * actually in progress
+	 */
+	private static volatile boolean refreshingContext = false;
 	
 	private static final Object refreshingContextLock = new Object();
 	
+	/**
+	 * Guards the copy and swap of the {@link #services} map
+	 */
+	private final Object servicesLock = new Object();
+	
 	/**
 	 * Static variable holding whether or not to use the system classloader. By default this is
 	 * false so the openmrs classloader is used instead
 	 */
 	private boolean useSystemClassLoader = false;
 	
-	// Cached service objects
+	// Cached service objects, the map is never modified once assigned so it can be read without
+	// locking, setService replaces it with a modified copy instead
 	@SuppressWarnings("unchecked")
-	Map<Class, Object> services = new HashMap<Class, Object>();
+	volatile Map<Class, Object> services = new HashMap<Class, Object>();
 	
 	// Advisors added to services by this service
 	@SuppressWarnings("unchecked")
@@ -159,10 +169,7 @@ public class ServiceContext implements ApplicationContextAware {
 				instance.removeAddedAOP(serviceClass);
 			}
 			
-			if (instance.services != null) {
-				instance.services.clear();
-				instance.services = null;
-			}
+			instance.services = null;
 			
 			if (instance.addedAdvisors != null) {
 				instance.addedAdvisors.clear();
@@ -720,6 +727,8 @@ public class ServiceContext implements ApplicationContextAware {
 	 *
 	 * @param cls
 	 * @return Object that is a proxy for the <code>cls</code> class
+	 * @should wait while the context is being refreshed
+	 * @should return the services to concurrent callers
 	 */
 	@SuppressWarnings("unchecked")
 	public <T extends Object> T getService(Class<? extends T> cls) {
@@ -729,23 +738,25 @@ public class ServiceContext implements ApplicationContextAware {
 		
 		// if the context is refreshing, wait until it is
 		// done -- otherwise a null service might be returned
-		synchronized (refreshingContextLock) {
-			try {
-				while (refreshingContext) {
-					if (log.isDebugEnabled()) {
-						log.debug("Waiting to get service: " + cls + " while the context is being refreshed");
+		if (refreshingContext) {
+			synchronized (refreshingContextLock) {
+				try {
+					while (refreshingContext) {
+						if (log.isDebugEnabled()) {
+							log.debug("Waiting to get service: " + cls + " while the context is being refreshed");
+						}
+						
+						refreshingContextLock.wait();
+						
+						if (log.isDebugEnabled()) {
+							log.debug("Finished waiting to get service " + cls + " while the context was being refreshed");
+						}
 					}
 					
-					refreshingContextLock.wait();
-					
-					if (log.isDebugEnabled()) {
-						log.debug("Finished waiting to get service " + cls + " while the context was being refreshed");
-					}
 				}
-				
-			}
-			catch (InterruptedException e) {
-				log.warn("Refresh lock was interrupted", e);
+				catch (InterruptedException e) {
+					log.warn("Refresh lock was interrupted", e);
+				}
 			}
 		}
 		
@@ -793,7 +804,11 @@ public class ServiceContext implements ApplicationContextAware {
 						moveAddedAOP(cachedService, advisedService);
 					}
 					
-					services.put(cls, advisedService);
+					synchronized (servicesLock) {
+						Map<Class, Object> newServices = new HashMap<Class, Object>(services);
+						newServices.put(cls, advisedService);
+						services = newServices;
+					}
 				}
 				log.debug("Service: " + cls + " set successfully");
 			}
@@ -911,6 +926,8 @@ public class ServiceContext implements ApplicationContextAware {
 		synchronized (refreshingContextLock) {
 			log.info("Done refreshing Context");
 			setRefreshingContext(false);
+			// the refreshed modules may have brought roles and privileges
+			UserContext.invalidatePrivilegeCaches();
 			refreshingContextLock.notifyAll();
 		}
 	}
@@ -924,9 +941,7 @@ public class ServiceContext implements ApplicationContextAware {
 	 *         doneRefreshingContext()
 	 */
 	public boolean isRefreshingContext() {
-		synchronized (refreshingContextLock) {
-			return refreshingContext;
-		}
+		return refreshingContext;
 	}
 	
 	/**
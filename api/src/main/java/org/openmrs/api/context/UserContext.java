@@ -19,11 +19,15 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Location;
+import org.openmrs.Privilege;
 import org.openmrs.Role;
 import org.openmrs.User;
 import org.openmrs.api.APIAuthenticationException;
@@ -50,6 +54,20 @@ public class UserContext implements Serializable {
 	 */
 	private static final Log log = LogFactory.getLog(UserContext.class);
 	
+	/**
+	 * Incremented whenever a role or privilege is changed so that the privileges cached by every
+	 * UserContext get rebuilt
+	 */
+	private static final AtomicLong privilegesVersion = new AtomicLong();
+	
+	/**
+	 * Counts the changes to users, a changed user is mapped to the count at the time of the change
+	 * so that only the privileges cached for that user get rebuilt
+	 */
+	private static final AtomicLong userChanges = new AtomicLong();
+	
+	private static final ConcurrentMap<Integer, Long> userVersions = new ConcurrentHashMap<Integer, Long>();
+	
 	/**
 	 * User object containing details about the authenticated user
 	 */
@@ -80,6 +98,12 @@ public class UserContext implements Serializable {
 	 */
 	private Integer locationId;
 	
+	/**
+	 * The privileges of the authenticated user and of the anonymous role, as of the last call to
+	 * {@link #hasPrivilege(String)}
+	 */
+	private transient volatile CachedPrivileges cachedPrivileges = null;
+	
 	/**
 	 * Default public constructor
 	 */
@@ -124,6 +148,7 @@ public class UserContext implements Serializable {
 		
 		if (user != null) {
 			user = Context.getUserService().getUser(user.getUserId());
+			cachedPrivileges = null;
 			//update the stored location in the user's session
 			setUserLocation();
 		}
@@ -164,6 +189,7 @@ public class UserContext implements Serializable {
 		}
 		
 		this.user = userToBecome;
+		cachedPrivileges = null;
 		//update the user's location
 		setUserLocation();
 		
@@ -305,14 +331,16 @@ public class UserContext implements Serializable {
 	 * @should not authorize if authenticated role does not have specified privilege
 	 * @should not authorize if proxied user does not have specified privilege
 	 * @should not authorize if anonymous user does not have specified privilege
+	 * @should not authorize after the privilege is removed from the user's role
 	 */
 	public boolean hasPrivilege(String privilege) {
+		CachedPrivileges privileges = getCachedPrivileges();
 		
 		// if a user has logged in, check their privileges
 		if (isAuthenticated()) {
 			
 			// check user's privileges
-			if (getAuthenticatedUser().hasPrivilege(privilege) || getAuthenticatedRole().hasPrivilege(privilege)) {
+			if (privileges.hasUserPrivilege(privilege)) {
 				Context.getUserService().notifyPrivilegeListeners(getAuthenticatedUser(), privilege, true);
 				return true;
 			}
@@ -331,7 +359,7 @@ public class UserContext implements Serializable {
 			}
 		}
 		
-		if (getAnonymousRole().hasPrivilege(privilege)) {
+		if (privileges.anonymousPrivileges.contains(privilege)) {
 			Context.getUserService().notifyPrivilegeListeners(getAuthenticatedUser(), privilege, true);
 			return true;
 		}
@@ -341,6 +369,68 @@ public class UserContext implements Serializable {
 		return false;
 	}
 	
+	/**
+	 * Makes every UserContext rebuild the privileges it has cached for its user the next time one
+	 * is checked. Must be called whenever a role or privilege is changed. The versions kept for the
+	 * users changed since are dropped, as every cache gets rebuilt anyway.
+	 *
+	 * @since 1.11
+	 */
+	public static void invalidatePrivilegeCaches() {
+		// the caches built between these two lines are rebuilt once more, as their user version changes
+		privilegesVersion.incrementAndGet();
+		userVersions.clear();
+	}
+	
+	/**
+	 * Makes the UserContexts of the given user rebuild the privileges they have cached the next
+	 * time one is checked. Must be called whenever a user, or the roles of a user, are changed.
+	 *
+	 * @param user the changed user
+	 * @since 1.11
+	 * @should only invalidate the privileges cached for the given user
+	 */
+	public static void invalidatePrivilegeCache(User user) {
+		if (user != null && user.getUserId() != null) {
+			userVersions.put(user.getUserId(), userChanges.incrementAndGet());
+		}
+	}
+	
+	private static long getUserVersion(User user) {
+		if (user == null || user.getUserId() == null) {
+			return 0;
+		}
+		Long version = userVersions.get(user.getUserId());
+		return version == null ? 0 : version;
+	}
+	
+	/**
+	 * Gets the privileges of the authenticated user and of the anonymous role, rebuilding them if
+	 * the user or any role or privilege has changed since they were last built
+	 *
+	 * @return the cached privileges
+	 */
+	private CachedPrivileges getCachedPrivileges() {
+		long version = privilegesVersion.get();
+		User currentUser = user;
+		long userVersion = getUserVersion(currentUser);
+		CachedPrivileges privileges = cachedPrivileges;
+		if (privileges == null || privileges.version != version || privileges.user != currentUser
+		        || privileges.userVersion != userVersion) {
+			if (privileges != null && privileges.version != version) {
+				// the roles themselves may have changed
+				anonymousRole = null;
+				authenticatedRole = null;
+			}
+			
+			privileges = new CachedPrivileges(version, userVersion, currentUser, getAnonymousRole(),
+			        currentUser == null ? null : getAuthenticatedRole());
+			cachedPrivileges = privileges;
+		}
+		
+		return privileges;
+	}
+	
 	/**
 	 * Convenience method to get the Role in the system designed to be given to all users
 	 *
@@ -448,4 +538,57 @@ public class UserContext implements Serializable {
 			}
 		}
 	}
+	
+	/**
+	 * The names of the privileges granted to a user and to the anonymous role, flattened out of
+	 * their (inherited) roles so that checking a privilege is a set lookup
+	 */
+	private static final class CachedPrivileges {
+		
+		private final long version;
+		
+		private final long userVersion;
+		
+		private final User user;
+		
+		private final boolean superUser;
+		
+		private final Set<String> userPrivileges = new HashSet<String>();
+		
+		private final Set<String> anonymousPrivileges = new HashSet<String>();
+		
+		private CachedPrivileges(long version, long userVersion, User user, Role anonymousRole,
+		        Role authenticatedRole) {
+			this.version = version;
+			this.userVersion = userVersion;
+			this.user = user;
+			addPrivileges(anonymousPrivileges, anonymousRole);
+			
+			if (user != null) {
+				superUser = user.isSuperUser();
+				for (Role role : user.getAllRoles()) {
+					addPrivileges(userPrivileges, role);
+				}
+				addPrivileges(userPrivileges, authenticatedRole);
+			} else {
+				superUser = false;
+			}
+		}
+		
+		private static void addPrivileges(Set<String> privilegeNames, Role role) {
+			if (role != null && role.getPrivileges() != null) {
+				for (Privilege privilege : role.getPrivileges()) {
+					privilegeNames.add(privilege.getPrivilege());
+				}
+			}
+		}
+		
+		/**
+		 * @see User#hasPrivilege(String)
+		 */
+		private boolean hasUserPrivilege(String privilege) {
+			// all authenticated users have the "" (empty) privilege
+			return privilege == null || privilege.equals("") || superUser || userPrivileges.contains(privilege);
+		}
+	}
 }
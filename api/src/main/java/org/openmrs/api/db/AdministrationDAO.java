@@ -138,6 +138,11 @@ public interface AdministrationDAO {
 	 */
 	public GlobalProperty saveGlobalProperty(GlobalProperty gp) throws DAOException;
 	
+	/**
+	 * @see org.openmrs.api.AdministrationService#refreshGlobalProperties()
+	 */
+	public void refreshGlobalProperties() throws DAOException;
+	
 	/**
 	 * @see org.openmrs.api.db.AdministrationDAO#executeSQL(java.lang.String, boolean)
 	 */
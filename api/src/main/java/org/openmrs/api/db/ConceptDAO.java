@@ -253,6 +253,11 @@ public interface ConceptDAO {
 	 */
 	public Concept getNextConcept(Concept c) throws DAOException;
 	
+	/**
+	 * @see org.openmrs.api.ConceptService#getNextConcepts(Integer, boolean, int)
+	 */
+	public List<Concept> getNextConcepts(Integer conceptId, boolean includeRetired, int maxResults) throws DAOException;
+	
 	/**
 	 * @see org.openmrs.api.ConceptService#getAllConceptProposals(boolean)
 	 */
@@ -294,6 +299,11 @@ public interface ConceptDAO {
 	 */
 	public void updateConceptWord(Concept concept) throws DAOException;
 	
+	/**
+	 * @see org.openmrs.api.ConceptService#rebuildConceptIndexes(Integer, Integer)
+	 */
+	public int updateConceptWords(Integer conceptIdStart, Integer conceptIdEnd) throws DAOException;
+	
 	public ConceptNameTag saveConceptNameTag(ConceptNameTag nameTag);
 	
 	public ConceptNameTag getConceptNameTag(Integer i);
@@ -20,6 +20,8 @@ import org.openmrs.Patient;
 import org.openmrs.PatientIdentifier;
 import org.openmrs.PatientIdentifierType;
 import org.openmrs.api.PatientService;
+import org.openmrs.patient.DuplicatePatientCandidate;
+import org.openmrs.patient.DuplicatePatientDetector;
 
 /**
  * Database methods for the PatientService
@@ -240,6 +242,31 @@ public interface PatientDAO {
 	 */
 	public List<Patient> getDuplicatePatientsByAttributes(List<String> attributes) throws DAOException;
 	
+	/**
+	 * Feeds the names, gender, birthdate and identifiers of all non voided patients to the given
+	 * detector, scrolling through them rather than loading them
+	 * 
+	 * @param detector the detector to fill
+	 * @see org.openmrs.api.PatientService#detectDuplicatePatients()
+	 * @since 1.11
+	 */
+	public void fillDuplicatePatientDetector(DuplicatePatientDetector detector) throws DAOException;
+	
+	/**
+	 * Replaces all saved duplicate patient candidates with the given pairs
+	 * 
+	 * @param matches the pairs found by the duplicate patient detection
+	 * @see org.openmrs.api.PatientService#detectDuplicatePatients()
+	 * @since 1.11
+	 */
+	public void replaceDuplicatePatientCandidates(List<DuplicatePatientDetector.Match> matches) throws DAOException;
+	
+	/**
+	 * @see org.openmrs.api.PatientService#getDuplicatePatientCandidates(Integer, Integer)
+	 */
+	public List<DuplicatePatientCandidate> getDuplicatePatientCandidates(Integer start, Integer length)
+	        throws DAOException;
+	
 	/**
 	 * @see org.openmrs.api.PatientService#isIdentifierInUseByAnotherPatient(PatientIdentifier)
 	 */
@@ -0,0 +1,240 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.jdbc.Work;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.openmrs.Cohort;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.db.DAOException;
+import org.openmrs.util.CompressedIntSet;
+import org.openmrs.util.OpenmrsConstants;
+
+/**
+ * Restricts a criteria query to the members of a cohort.<br/>
+ * <br/>
+ * Small cohorts are passed to the database as an IN list, as before. Cohorts with more members than
+ * the {@link OpenmrsConstants#GLOBAL_PROPERTY_COHORT_TEMPORARY_TABLE_THRESHOLD} global property are
+ * instead written into a temporary table on the session's connection (with jdbc batch inserts) and
+ * joined against with a sub select, because databases like MySQL get very slow, or refuse the
+ * statement, when given tens of thousands of IN parameters. The table is keyed on patient_id so
+ * that the sub select is answered from its index rather than by scanning the table per row. If the dialect does not support
+ * temporary tables the IN list is used regardless of size.<br/>
+ * <br/>
+ * Usage:
+ *
+ * <pre>
+ * CohortRestriction restriction = CohortRestriction.forCohort(sessionFactory, patients);
+ * try {
+ * 	criteria.add(restriction.getCriterion(Encounter.class, &quot;patient&quot;));
+ * 	return criteria.list();
+ * }
+ * finally {
+ * 	restriction.release();
+ * }
+ * </pre>
+ *
+ * @since 1.11
+ */
+public class CohortRestriction {
+	
+	private static final Log log = LogFactory.getLog(CohortRestriction.class);
+	
+	/**
+	 * The name of the temporary table holding the cohort member ids
+	 */
+	public static final String TEMPORARY_TABLE_NAME = "temp_cohort_member";
+	
+	private static final int INSERT_BATCH_SIZE = 1000;
+	
+	private final SessionFactory sessionFactory;
+	
+	private final Cohort cohort;
+	
+	private final boolean useTemporaryTable;
+	
+	private boolean tableFilled = false;
+	
+	private CohortRestriction(SessionFactory sessionFactory, Cohort cohort, boolean useTemporaryTable) {
+		this.sessionFactory = sessionFactory;
+		this.cohort = cohort;
+		this.useTemporaryTable = useTemporaryTable;
+	}
+	
+	/**
+	 * Chooses the join strategy for the given cohort
+	 *
+	 * @param sessionFactory the session factory whose current session will run the query
+	 * @param cohort the cohort to restrict to
+	 * @return the restriction
+	 */
+	public static CohortRestriction forCohort(SessionFactory sessionFactory, Cohort cohort) {
+		int threshold = getTemporaryTableThreshold();
+		boolean useTemporaryTable = threshold > 0 && cohort.size() > threshold
+		        && HibernateUtil.getDialect(sessionFactory).supportsTemporaryTables();
+		return new CohortRestriction(sessionFactory, cohort, useTemporaryTable);
+	}
+	
+	/**
+	 * @return true if the cohort members are joined through the temporary table
+	 */
+	public boolean isUsingTemporaryTable() {
+		return useTemporaryTable;
+	}
+	
+	/**
+	 * Builds the restriction for a many-to-one person/patient property of the entity being queried
+	 * by the criteria (or sub criteria) the returned criterion is added to
+	 *
+	 * @param entityClass the mapped class of the criteria the criterion is added to
+	 * @param personProperty the name of the person or patient property of that class
+	 * @return the criterion
+	 * @should use an in list for cohorts below the threshold
+	 * @should use the temporary table for cohorts above the threshold
+	 */
+	public Criterion getCriterion(Class<?> entityClass, String personProperty) {
+		if (!useTemporaryTable) {
+			return Restrictions.in(personProperty + ".personId", cohort.getMemberIds());
+		}
+		
+		if (!tableFilled) {
+			fillTemporaryTable();
+		}
+		
+		ClassMetadata metadata = sessionFactory.getClassMetadata(entityClass);
+		String column = ((AbstractEntityPersister) metadata).getPropertyColumnNames(personProperty)[0];
+		return Restrictions.sqlRestriction("{alias}." + column + " in (select patient_id from " + TEMPORARY_TABLE_NAME
+		        + ")");
+	}
+	
+	/**
+	 * Empties (or drops, depending on the dialect) the temporary table. Must be called once the
+	 * query has been run.
+	 */
+	public void release() {
+		if (!tableFilled) {
+			return;
+		}
+		tableFilled = false;
+		final Dialect dialect = HibernateUtil.getDialect(sessionFactory);
+		sessionFactory.getCurrentSession().doWork(new Work() {
+			
+			public void execute(Connection connection) throws SQLException {
+				String sql = dialect.dropTemporaryTableAfterUse() ? dialect.getDropTemporaryTableString() + " "
+				        + TEMPORARY_TABLE_NAME : "delete from " + TEMPORARY_TABLE_NAME;
+				executeUpdate(connection, sql);
+			}
+		});
+	}
+	
+	private void fillTemporaryTable() {
+		final Dialect dialect = HibernateUtil.getDialect(sessionFactory);
+		final CompressedIntSet members = cohort.getMembers();
+		long start = System.currentTimeMillis();
+		
+		try {
+			sessionFactory.getCurrentSession().doWork(new Work() {
+				
+				public void execute(Connection connection) throws SQLException {
+					executeUpdate(connection, getCreateTableSql(dialect));
+					executeUpdate(connection, "delete from " + TEMPORARY_TABLE_NAME);
+					
+					PreparedStatement insert = connection.prepareStatement("insert into " + TEMPORARY_TABLE_NAME
+					        + " (patient_id) values (?)");
+					try {
+						int batched = 0;
+						for (CompressedIntSet.IntIterator i = members.intIterator(); i.hasNext();) {
+							insert.setInt(1, i.next());
+							insert.addBatch();
+							if (++batched % INSERT_BATCH_SIZE == 0) {
+								insert.executeBatch();
+							}
+						}
+						if (batched % INSERT_BATCH_SIZE != 0) {
+							insert.executeBatch();
+						}
+					}
+					finally {
+						insert.close();
+					}
+				}
+			});
+		}
+		catch (Exception e) {
+			throw new DAOException("Unable to load the cohort into the temporary table " + TEMPORARY_TABLE_NAME, e);
+		}
+		tableFilled = true;
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Loaded " + members.size() + " cohort members into " + TEMPORARY_TABLE_NAME + " in "
+			        + (System.currentTimeMillis() - start) + " ms");
+		}
+	}
+	
+	private static String getCreateTableSql(Dialect dialect) {
+		String sql = dialect.getCreateTemporaryTableString() + " " + TEMPORARY_TABLE_NAME + " (patient_id "
+		        + dialect.getTypeName(Types.INTEGER) + " not null, primary key (patient_id)) "
+		        + dialect.getCreateTemporaryTablePostfix();
+		if (dialect instanceof H2Dialect) {
+			// without this h2 commits the open transaction when creating the table
+			sql += " transactional";
+		}
+		return sql;
+	}
+	
+	private static void executeUpdate(Connection connection, String sql) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			statement.executeUpdate(sql);
+		}
+		finally {
+			statement.close();
+		}
+	}
+	
+	/**
+	 * Fetch the threshold value from the global properties table
+	 *
+	 * @return the cohort size above which the temporary table is used
+	 */
+	private static int getTemporaryTableThreshold() {
+		try {
+			return Integer.valueOf(Context.getAdministrationService().getGlobalProperty(
+			    OpenmrsConstants.GLOBAL_PROPERTY_COHORT_TEMPORARY_TABLE_THRESHOLD,
+			    String.valueOf(OpenmrsConstants.GLOBAL_PROPERTY_COHORT_TEMPORARY_TABLE_THRESHOLD_DEFAULT_VALUE)));
+		}
+		catch (Exception e) {
+			log.warn("Unable to convert the global property "
+			        + OpenmrsConstants.GLOBAL_PROPERTY_COHORT_TEMPORARY_TABLE_THRESHOLD
+			        + " to a valid integer. Returning the default "
+			        + OpenmrsConstants.GLOBAL_PROPERTY_COHORT_TEMPORARY_TABLE_THRESHOLD_DEFAULT_VALUE);
+		}
+		
+		return OpenmrsConstants.GLOBAL_PROPERTY_COHORT_TEMPORARY_TABLE_THRESHOLD_DEFAULT_VALUE;
+	}
+}
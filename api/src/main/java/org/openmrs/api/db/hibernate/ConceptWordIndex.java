@@ -0,0 +1,659 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.openmrs.Concept;
+import org.openmrs.ConceptClass;
+import org.openmrs.ConceptDatatype;
+import org.openmrs.ConceptWord;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * An in memory inverted index of the concept_word table, used by {@link HibernateConceptDAO} to
+ * answer concept word searches without running one LIKE sub query per search word.<br/>
+ * <br/>
+ * For each locale the words are kept in a sorted term dictionary, so all words starting with a
+ * given prefix are found with a range lookup, and each word points to the concept words (the
+ * posting list) containing it. The retired flag, class and datatype of every concept are kept
+ * alongside so that the usual search filters can be applied without going to the database.<br/>
+ * <br/>
+ * The index is loaded lazily from the database with {@link #build(Session)} and is then kept up to
+ * date by the dao as concepts and their words are saved or purged. Changes made in a transaction
+ * are held back until it commits, so other threads never search uncommitted (or rolled back)
+ * words; while a transaction has pending changes {@link #hasPendingChanges()} is true and the dao
+ * searches the database instead. Changes made to the concept_word table without going through the
+ * dao are not seen until the index is {@link #invalidate()}d.
+ *
+ * @since 1.11
+ */
+public class ConceptWordIndex {
+	
+	private static final Log log = LogFactory.getLog(ConceptWordIndex.class);
+	
+	/**
+	 * Orders entries by descending weight, same as the database searches
+	 */
+	private static final Comparator<Entry> WEIGHT_COMPARATOR = new Comparator<Entry>() {
+		
+		public int compare(Entry e1, Entry e2) {
+			int result = Double.compare(e2.getWeight(), e1.getWeight());
+			if (result == 0) {
+				result = e1.getConceptId().compareTo(e2.getConceptId());
+			}
+			if (result == 0) {
+				result = e1.getConceptNameId().compareTo(e2.getConceptNameId());
+			}
+			return result;
+		}
+	};
+	
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	private final Object buildLock = new Object();
+	
+	private final Map<Locale, TreeMap<String, Set<Entry>>> termsByLocale = new HashMap<Locale, TreeMap<String, Set<Entry>>>();
+	
+	private final Map<Integer, List<Entry>> entriesByConcept = new HashMap<Integer, List<Entry>>();
+	
+	private final Map<Integer, ConceptAttributes> conceptAttributes = new HashMap<Integer, ConceptAttributes>();
+	
+	private volatile boolean built = false;
+	
+	/**
+	 * Incremented on every change so that a build running concurrently with a change is discarded
+	 */
+	private volatile long modificationCount = 0;
+	
+	/**
+	 * @return true if the index has been loaded and can be searched
+	 */
+	public boolean isBuilt() {
+		return built;
+	}
+	
+	/**
+	 * Loads all concept words and concepts from the database, replacing the current contents of
+	 * the index. Does nothing if another thread built the index while this one was waiting.
+	 *
+	 * @param session the session to read the concept words with
+	 */
+	public void build(Session session) {
+		synchronized (buildLock) {
+			if (built) {
+				return;
+			}
+			
+			long start = System.currentTimeMillis();
+			long modificationCountAtStart = modificationCount;
+			
+			Map<Integer, ConceptAttributes> attributes = loadConceptAttributes(session, null, null);
+			List<Entry> entries = loadEntries(session, null, null);
+			
+			lock.writeLock().lock();
+			try {
+				if (modificationCount != modificationCountAtStart) {
+					// the words changed while they were being read, leave it to the next search
+					return;
+				}
+				
+				clear();
+				conceptAttributes.putAll(attributes);
+				for (Entry entry : entries) {
+					addEntry(entry);
+				}
+				built = true;
+			}
+			finally {
+				lock.writeLock().unlock();
+			}
+			
+			if (log.isDebugEnabled()) {
+				log.debug("Indexed " + entries.size() + " concept words of " + attributes.size() + " concepts in "
+				        + (System.currentTimeMillis() - start) + " ms");
+			}
+		}
+	}
+	
+	/**
+	 * Discards the contents of the index, it will be loaded again by the next search
+	 */
+	public void invalidate() {
+		lock.writeLock().lock();
+		try {
+			modificationCount++;
+			built = false;
+			clear();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Replaces the words of the given concept with the given (saved) words once the current
+	 * transaction commits
+	 *
+	 * @param concept the concept whose words were updated
+	 * @param words all of the concept's words
+	 * @should not apply the change before the transaction commits
+	 */
+	public void updateConcept(Concept concept, Collection<ConceptWord> words) {
+		final Integer conceptId = concept.getConceptId();
+		final ConceptAttributes attributes = new ConceptAttributes(concept);
+		final List<Entry> entries = new ArrayList<Entry>();
+		for (ConceptWord word : words) {
+			if (word.getConceptWordId() != null) {
+				entries.add(new Entry(word.getConceptWordId(), word.getWord(), word.getLocale(), conceptId, word
+				        .getConceptName().getConceptNameId(), word.getWeight()));
+			}
+		}
+			
+		applyAfterCommit(new Change() {
+			
+			public void apply() {
+				removeEntries(conceptId);
+				conceptAttributes.put(conceptId, attributes);
+				for (Entry entry : entries) {
+					addEntry(entry);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Reads the words of the concepts with ids between conceptIdStart and conceptIdEnd (inclusive)
+	 * from the database again, after they were rewritten in bulk. The words read are put in the
+	 * index once the current transaction commits.
+	 *
+	 * @param session the session to read the concept words with
+	 * @param conceptIdStart the first concept id
+	 * @param conceptIdEnd the last concept id
+	 */
+	public void reloadConcepts(Session session, final Integer conceptIdStart, final Integer conceptIdEnd) {
+		if (!built) {
+			// nothing to update, but a build running concurrently must still be discarded
+			applyAfterCommit(new Change() {
+				
+				public void apply() {
+				}
+			});
+			return;
+		}
+		
+		final Map<Integer, ConceptAttributes> attributes = loadConceptAttributes(session, conceptIdStart, conceptIdEnd);
+		final List<Entry> entries = loadEntries(session, conceptIdStart, conceptIdEnd);
+		
+		applyAfterCommit(new Change() {
+			
+			public void apply() {
+				for (int conceptId = conceptIdStart; conceptId <= conceptIdEnd; conceptId++) {
+					removeEntries(conceptId);
+					conceptAttributes.remove(conceptId);
+				}
+				conceptAttributes.putAll(attributes);
+				for (Entry entry : entries) {
+					addEntry(entry);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Updates the retired flag, class and datatype kept for the given concept once the current
+	 * transaction commits
+	 *
+	 * @param concept the saved concept
+	 */
+	public void updateConceptAttributes(Concept concept) {
+		final Integer conceptId = concept.getConceptId();
+		final ConceptAttributes attributes = new ConceptAttributes(concept);
+		applyAfterCommit(new Change() {
+			
+			public void apply() {
+				conceptAttributes.put(conceptId, attributes);
+			}
+		});
+	}
+	
+	/**
+	 * Removes the given concept and all of its words once the current transaction commits
+	 *
+	 * @param conceptId the id of the purged concept
+	 */
+	public void removeConcept(final Integer conceptId) {
+		applyAfterCommit(new Change() {
+			
+			public void apply() {
+				removeEntries(conceptId);
+				conceptAttributes.remove(conceptId);
+			}
+		});
+	}
+			
+	/**
+	 * @return true if the current transaction changed concept words that are not in the index yet
+	 * @should not apply the change before the transaction commits
+	 */
+	public boolean hasPendingChanges() {
+		PendingChanges pending = (PendingChanges) TransactionSynchronizationManager.getResource(this);
+		return pending != null && !pending.changes.isEmpty();
+	}
+	
+	/**
+	 * Finds the concept words starting with the first search word whose concept name also contains
+	 * words starting with each of the other search words, ordered by descending weight. This
+	 * matches the rows returned by the concept_word query of
+	 * {@link HibernateConceptDAO#getConceptWords(String, List, boolean, List, List, List, List, Concept, Integer, Integer)}
+	 *
+	 * @param words the upper case search words, an empty string matches every word
+	 * @param locales the locales of the words to match
+	 * @param includeRetired if false, words of retired concepts are left out
+	 * @param requireClasses if not empty, only concepts of these classes are included
+	 * @param excludeClasses concepts of these classes are left out
+	 * @param requireDatatypes if not empty, only concepts of these datatypes are included
+	 * @param excludeDatatypes concepts of these datatypes are left out
+	 * @param answers if not empty, only these concepts are included
+	 * @return the matching entries
+	 * @should find words starting with the search word
+	 * @should require the other search words to be in the same concept name
+	 * @should apply the concept filters
+	 * @should order the entries by descending weight
+	 */
+	public List<Entry> search(List<String> words, Collection<Locale> locales, boolean includeRetired,
+	        Collection<ConceptClass> requireClasses, Collection<ConceptClass> excludeClasses,
+	        Collection<ConceptDatatype> requireDatatypes, Collection<ConceptDatatype> excludeDatatypes,
+	        Collection<Concept> answers) {
+		Set<Locale> searchLocales = new LinkedHashSet<Locale>(locales);
+		Set<Integer> requireClassIds = getConceptClassIds(requireClasses);
+		Set<Integer> excludeClassIds = getConceptClassIds(excludeClasses);
+		Set<Integer> requireDatatypeIds = getConceptDatatypeIds(requireDatatypes);
+		Set<Integer> excludeDatatypeIds = getConceptDatatypeIds(excludeDatatypes);
+		Set<Integer> answerIds = new HashSet<Integer>();
+		for (Concept answer : answers) {
+			answerIds.add(answer.getConceptId());
+		}
+		
+		List<Entry> results = new ArrayList<Entry>();
+		
+		lock.readLock().lock();
+		try {
+			// the concept names containing all of the other words
+			Set<Integer> conceptNameIds = null;
+			for (int i = 1; i < words.size(); i++) {
+				Set<Integer> matching = new HashSet<Integer>();
+				for (Set<Entry> postings : getPostings(words.get(i), searchLocales)) {
+					for (Entry entry : postings) {
+						if (conceptNameIds == null || conceptNameIds.contains(entry.getConceptNameId())) {
+							matching.add(entry.getConceptNameId());
+						}
+					}
+				}
+				if (matching.isEmpty()) {
+					return results;
+				}
+				conceptNameIds = matching;
+			}
+			
+			String firstWord = words.isEmpty() ? "" : words.get(0);
+			for (Set<Entry> postings : getPostings(firstWord, searchLocales)) {
+				for (Entry entry : postings) {
+					if (conceptNameIds != null && !conceptNameIds.contains(entry.getConceptNameId())) {
+						continue;
+					}
+					if (!answerIds.isEmpty() && !answerIds.contains(entry.getConceptId())) {
+						continue;
+					}
+					
+					ConceptAttributes attributes = conceptAttributes.get(entry.getConceptId());
+					if (attributes == null) {
+						continue;
+					}
+					if (!includeRetired && attributes.retired) {
+						continue;
+					}
+					if (!requireClassIds.isEmpty() && !requireClassIds.contains(attributes.conceptClassId)) {
+						continue;
+					}
+					if (excludeClassIds.contains(attributes.conceptClassId)) {
+						continue;
+					}
+					if (!requireDatatypeIds.isEmpty() && !requireDatatypeIds.contains(attributes.datatypeId)) {
+						continue;
+					}
+					if (excludeDatatypeIds.contains(attributes.datatypeId)) {
+						continue;
+					}
+					
+					results.add(entry);
+				}
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+		
+		Collections.sort(results, WEIGHT_COMPARATOR);
+		return results;
+	}
+	
+	/**
+	 * Groups search results by concept and word, keeping the highest weight and the lowest concept
+	 * name id of each group, the same way the concept search query does
+	 *
+	 * @param entries entries ordered by descending weight, as returned by
+	 *            {@link #search(List, Collection, boolean, Collection, Collection, Collection, Collection, Collection)}
+	 * @return one entry per concept and word, ordered by descending weight
+	 * @should keep the highest weight and lowest concept name id of each concept and word
+	 */
+	public static List<Entry> groupByConceptAndWord(List<Entry> entries) {
+		Map<String, Entry> groups = new LinkedHashMap<String, Entry>();
+		for (Entry entry : entries) {
+			String key = entry.getConceptId() + " " + entry.getWord();
+			Entry group = groups.get(key);
+			if (group == null) {
+				// the first entry has the highest weight
+				groups.put(key, entry);
+			} else if (entry.getConceptNameId() < group.getConceptNameId()) {
+				groups.put(key, new Entry(group.getConceptWordId(), group.getWord(), group.getLocale(), group
+				        .getConceptId(), entry.getConceptNameId(), group.getWeight()));
+			}
+		}
+		return new ArrayList<Entry>(groups.values());
+	}
+	
+	/**
+	 * Applies the change when the current transaction commits, or right away if there is no
+	 * transaction. Changes of transactions that are rolled back are dropped.
+	 *
+	 * @param change the change to apply
+	 */
+	private void applyAfterCommit(Change change) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			apply(Collections.singletonList(change));
+			return;
+		}
+		
+		PendingChanges pending = (PendingChanges) TransactionSynchronizationManager.getResource(this);
+		if (pending == null) {
+			pending = new PendingChanges(this);
+			TransactionSynchronizationManager.bindResource(this, pending);
+			TransactionSynchronizationManager.registerSynchronization(pending);
+		}
+		pending.changes.add(change);
+	}
+			
+	private void apply(List<Change> changes) {
+		lock.writeLock().lock();
+		try {
+			modificationCount++;
+			if (!built) {
+				return;
+			}
+			for (Change change : changes) {
+				change.apply();
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * A change to the index, applied while holding the write lock
+	 */
+	private interface Change {
+		
+		public void apply();
+	}
+	
+	/**
+	 * The changes made by one transaction, applied to the index when it commits
+	 */
+	static class PendingChanges extends TransactionSynchronizationAdapter {
+		
+		private final ConceptWordIndex index;
+		
+		private final List<Change> changes = new ArrayList<Change>();
+		
+		public PendingChanges(ConceptWordIndex index) {
+			this.index = index;
+		}
+		
+		@Override
+		public void afterCommit() {
+			index.apply(changes);
+			changes.clear();
+		}
+		
+		@Override
+		public void afterCompletion(int status) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(index);
+			changes.clear();
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static Map<Integer, ConceptAttributes> loadConceptAttributes(Session session, Integer conceptIdStart,
+	        Integer conceptIdEnd) {
+		String hql = "select c.conceptId, c.retired, c.conceptClass.conceptClassId, c.datatype.conceptDatatypeId from Concept c";
+		Query query;
+		if (conceptIdStart != null) {
+			query = session.createQuery(hql + " where c.conceptId >= :conceptIdStart and c.conceptId <= :conceptIdEnd")
+			        .setInteger("conceptIdStart", conceptIdStart).setInteger("conceptIdEnd", conceptIdEnd);
+		} else {
+			query = session.createQuery(hql);
+		}
+		
+		Map<Integer, ConceptAttributes> attributes = new HashMap<Integer, ConceptAttributes>();
+		for (Object[] row : (List<Object[]>) query.list()) {
+			attributes.put((Integer) row[0], new ConceptAttributes((Boolean) row[1], (Integer) row[2], (Integer) row[3]));
+		}
+		return attributes;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static List<Entry> loadEntries(Session session, Integer conceptIdStart, Integer conceptIdEnd) {
+		String hql = "select cw.conceptWordId, cw.word, cw.locale, cw.concept.conceptId, cw.conceptName.conceptNameId, cw.weight "
+		        + "from ConceptWord cw";
+		Query query;
+		if (conceptIdStart != null) {
+			query = session.createQuery(
+			    hql + " where cw.concept.conceptId >= :conceptIdStart and cw.concept.conceptId <= :conceptIdEnd")
+			        .setInteger("conceptIdStart", conceptIdStart).setInteger("conceptIdEnd", conceptIdEnd);
+		} else {
+			query = session.createQuery(hql);
+		}
+		
+		List<Entry> entries = new ArrayList<Entry>();
+		for (Object[] row : (List<Object[]>) query.list()) {
+			entries.add(new Entry((Integer) row[0], (String) row[1], (Locale) row[2], (Integer) row[3], (Integer) row[4],
+			        (Double) row[5]));
+		}
+		return entries;
+	}
+	
+	private List<Set<Entry>> getPostings(String prefix, Collection<Locale> locales) {
+		List<Set<Entry>> postings = new ArrayList<Set<Entry>>();
+		for (Locale locale : locales) {
+			TreeMap<String, Set<Entry>> terms = termsByLocale.get(locale);
+			if (terms != null) {
+				SortedMap<String, Set<Entry>> range = prefix.length() == 0 ? terms : terms.subMap(prefix, prefix
+				        + Character.MAX_VALUE);
+				postings.addAll(range.values());
+			}
+		}
+		return postings;
+	}
+	
+	private void addEntry(Entry entry) {
+		TreeMap<String, Set<Entry>> terms = termsByLocale.get(entry.getLocale());
+		if (terms == null) {
+			terms = new TreeMap<String, Set<Entry>>();
+			termsByLocale.put(entry.getLocale(), terms);
+		}
+		Set<Entry> postings = terms.get(entry.getWord());
+		if (postings == null) {
+			postings = new HashSet<Entry>();
+			terms.put(entry.getWord(), postings);
+		}
+		postings.add(entry);
+		
+		List<Entry> conceptEntries = entriesByConcept.get(entry.getConceptId());
+		if (conceptEntries == null) {
+			conceptEntries = new ArrayList<Entry>();
+			entriesByConcept.put(entry.getConceptId(), conceptEntries);
+		}
+		conceptEntries.add(entry);
+	}
+	
+	private void removeEntries(Integer conceptId) {
+		List<Entry> conceptEntries = entriesByConcept.remove(conceptId);
+		if (conceptEntries == null) {
+			return;
+		}
+		
+		for (Entry entry : conceptEntries) {
+			TreeMap<String, Set<Entry>> terms = termsByLocale.get(entry.getLocale());
+			Set<Entry> postings = terms.get(entry.getWord());
+			postings.remove(entry);
+			if (postings.isEmpty()) {
+				terms.remove(entry.getWord());
+			}
+		}
+	}
+	
+	private void clear() {
+		termsByLocale.clear();
+		entriesByConcept.clear();
+		conceptAttributes.clear();
+	}
+	
+	private static Set<Integer> getConceptClassIds(Collection<ConceptClass> conceptClasses) {
+		Set<Integer> ids = new HashSet<Integer>();
+		if (conceptClasses != null) {
+			for (ConceptClass conceptClass : conceptClasses) {
+				ids.add(conceptClass.getConceptClassId());
+			}
+		}
+		return ids;
+	}
+	
+	private static Set<Integer> getConceptDatatypeIds(Collection<ConceptDatatype> datatypes) {
+		Set<Integer> ids = new HashSet<Integer>();
+		if (datatypes != null) {
+			for (ConceptDatatype datatype : datatypes) {
+				ids.add(datatype.getConceptDatatypeId());
+			}
+		}
+		return ids;
+	}
+	
+	/**
+	 * A single concept word in the index
+	 */
+	public static class Entry {
+		
+		private final Integer conceptWordId;
+		
+		private final String word;
+		
+		private final Locale locale;
+		
+		private final Integer conceptId;
+		
+		private final Integer conceptNameId;
+		
+		private final double weight;
+		
+		public Entry(Integer conceptWordId, String word, Locale locale, Integer conceptId, Integer conceptNameId,
+		    Double weight) {
+			this.conceptWordId = conceptWordId;
+			this.word = word;
+			this.locale = locale;
+			this.conceptId = conceptId;
+			this.conceptNameId = conceptNameId;
+			this.weight = weight == null ? 0.0 : weight;
+		}
+		
+		public Integer getConceptWordId() {
+			return conceptWordId;
+		}
+		
+		public String getWord() {
+			return word;
+		}
+		
+		public Locale getLocale() {
+			return locale;
+		}
+		
+		public Integer getConceptId() {
+			return conceptId;
+		}
+		
+		public Integer getConceptNameId() {
+			return conceptNameId;
+		}
+		
+		public double getWeight() {
+			return weight;
+		}
+	}
+	
+	/**
+	 * The fields of a concept the searches can be restricted on
+	 */
+	private static class ConceptAttributes {
+		
+		private final boolean retired;
+		
+		private final Integer conceptClassId;
+		
+		private final Integer datatypeId;
+		
+		public ConceptAttributes(Boolean retired, Integer conceptClassId, Integer datatypeId) {
+			this.retired = Boolean.TRUE.equals(retired);
+			this.conceptClassId = conceptClassId;
+			this.datatypeId = datatypeId;
+		}
+		
+		public ConceptAttributes(Concept concept) {
+			this(concept.isRetired(), concept.getConceptClass() == null ? null : concept.getConceptClass()
+			        .getConceptClassId(), concept.getDatatype() == null ? null : concept.getDatatype()
+			        .getConceptDatatypeId());
+		}
+	}
+}
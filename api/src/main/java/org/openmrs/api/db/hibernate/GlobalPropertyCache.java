@@ -0,0 +1,181 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds the values of all global properties in memory so that reading one, which core code does
+ * all the time, doesn't need a query. Property names are case insensitive, as they are in the
+ * database.<br/>
+ * <br/>
+ * The values are held in an unmodifiable map that is replaced, not changed, on every write, so
+ * reads never lock. The map is loaded the first time a value is read after the cache has been
+ * cleared. A load that started before a write or a clear is thrown away instead of being
+ * installed, so it can't bring back a value that was changed while it was running.<br/>
+ * <br/>
+ * Writes are held per thread until its transaction completes, and are only published to the other
+ * threads if it committed. Until then only the writing thread sees them, through
+ * {@link #getPendingValues()}.
+ *
+ * @see GlobalPropertyCacheInterceptor
+ * @since 1.11
+ */
+public class GlobalPropertyCache {
+	
+	private static volatile Map<String, String> values = null;
+	
+	/**
+	 * Incremented by every write and clear
+	 */
+	private static long generation = 0;
+	
+	/**
+	 * The values written by the current thread, until its transaction completes
+	 */
+	private static final ThreadLocal<Map<String, String>> pendingValues = new ThreadLocal<Map<String, String>>();
+	
+	private GlobalPropertyCache() {
+	}
+	
+	/**
+	 * @return the values keyed by {@link #getKey(String)}, or null if they need to be loaded
+	 */
+	public static Map<String, String> getValues() {
+		return values;
+	}
+	
+	/**
+	 * @return the values written by the current thread's transaction keyed by {@link #getKey(String)},
+	 *         with a null value for removed properties, or null if it didn't write any
+	 */
+	public static Map<String, String> getPendingValues() {
+		return pendingValues.get();
+	}
+	
+	/**
+	 * @return the number to pass to {@link #load(Map, long)} once the values have been read
+	 */
+	public static synchronized long getGeneration() {
+		return generation;
+	}
+	
+	/**
+	 * Installs the values read from the database, unless the cache was changed since they started
+	 * being read or they may include uncommitted writes of the current thread
+	 *
+	 * @param loadedValues the values of all global properties keyed by property name
+	 * @param loadGeneration the result of {@link #getGeneration()} before the values were read
+	 * @return the values keyed by {@link #getKey(String)}
+	 * @should not install values loaded before a write
+	 */
+	public static synchronized Map<String, String> load(Map<String, String> loadedValues, long loadGeneration) {
+		Map<String, String> map = new HashMap<String, String>();
+		for (Map.Entry<String, String> entry : loadedValues.entrySet()) {
+			map.put(getKey(entry.getKey()), entry.getValue());
+		}
+		map = Collections.unmodifiableMap(map);
+		if (loadGeneration == generation && pendingValues.get() == null) {
+			values = map;
+		}
+		return map;
+	}
+	
+	/**
+	 * Sets the value of a global property once the current transaction commits
+	 *
+	 * @param property the name of the property
+	 * @param value the new value
+	 * @should find the value whatever the case of the property name
+	 * @should only publish the value once the transaction commits
+	 */
+	public static void put(String property, String value) {
+		getOrCreatePendingValues().put(getKey(property), value);
+	}
+	
+	/**
+	 * Removes a global property once the current transaction commits
+	 *
+	 * @param property the name of the property
+	 */
+	public static void remove(String property) {
+		getOrCreatePendingValues().put(getKey(property), null);
+	}
+	
+	/**
+	 * Makes the next read load the values again from the database
+	 */
+	public static synchronized void clear() {
+		generation++;
+		values = null;
+	}
+	
+	/**
+	 * Publishes the values the current thread wrote during the transaction that just completed if
+	 * it committed, and drops them otherwise
+	 *
+	 * @param committed true if the transaction committed, false if it was rolled back and null if
+	 *            that is not known, in which case the values are loaded again
+	 * @should publish the values written by the thread if the transaction committed
+	 * @should drop the values written by the thread if the transaction was rolled back
+	 */
+	public static void transactionCompleted(Boolean committed) {
+		Map<String, String> pending = pendingValues.get();
+		if (pending == null) {
+			return;
+		}
+		pendingValues.remove();
+		
+		if (committed == null) {
+			clear();
+		} else if (committed) {
+			publish(pending);
+		}
+	}
+	
+	private static synchronized void publish(Map<String, String> pending) {
+		generation++;
+		if (values != null) {
+			Map<String, String> map = new HashMap<String, String>(values);
+			for (Map.Entry<String, String> entry : pending.entrySet()) {
+				if (entry.getValue() == null) {
+					map.remove(entry.getKey());
+				} else {
+					map.put(entry.getKey(), entry.getValue());
+				}
+			}
+			values = Collections.unmodifiableMap(map);
+		}
+	}
+	
+	private static Map<String, String> getOrCreatePendingValues() {
+		Map<String, String> pending = pendingValues.get();
+		if (pending == null) {
+			pending = new LinkedHashMap<String, String>();
+			pendingValues.set(pending);
+		}
+		return pending;
+	}
+	
+	/**
+	 * @param property a property name
+	 * @return the key of the property in {@link #getValues()}
+	 */
+	public static String getKey(String property) {
+		return property.toLowerCase();
+	}
+}
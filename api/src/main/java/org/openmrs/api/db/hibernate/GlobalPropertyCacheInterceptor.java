@@ -0,0 +1,75 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.io.Serializable;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.Transaction;
+import org.hibernate.type.Type;
+import org.openmrs.GlobalProperty;
+
+/**
+ * Keeps the {@link GlobalPropertyCache} in step with global properties that are changed through
+ * hibernate without going through the {@link HibernateAdministrationDAO}, and publishes or drops
+ * those changes once the transaction that made them has completed.
+ *
+ * @since 1.11
+ */
+public class GlobalPropertyCacheInterceptor extends EmptyInterceptor {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onSave(java.lang.Object, java.io.Serializable,
+	 *      java.lang.Object[], java.lang.String[], org.hibernate.type.Type[])
+	 */
+	@Override
+	public boolean onSave(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		if (entity instanceof GlobalProperty) {
+			GlobalProperty gp = (GlobalProperty) entity;
+			GlobalPropertyCache.put(gp.getProperty(), gp.getPropertyValue());
+		}
+		return false;
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onFlushDirty(java.lang.Object, java.io.Serializable,
+	 *      java.lang.Object[], java.lang.Object[], java.lang.String[], org.hibernate.type.Type[])
+	 */
+	@Override
+	public boolean onFlushDirty(Object entity, Serializable id, Object[] currentState, Object[] previousState,
+	        String[] propertyNames, Type[] types) {
+		return onSave(entity, id, currentState, propertyNames, types);
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onDelete(java.lang.Object, java.io.Serializable,
+	 *      java.lang.Object[], java.lang.String[], org.hibernate.type.Type[])
+	 */
+	@Override
+	public void onDelete(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		if (entity instanceof GlobalProperty) {
+			GlobalPropertyCache.remove(((GlobalProperty) entity).getProperty());
+		}
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#afterTransactionCompletion(org.hibernate.Transaction)
+	 */
+	@Override
+	public void afterTransactionCompletion(Transaction tx) {
+		GlobalPropertyCache.transactionCompleted(tx == null ? null : tx.wasCommitted());
+	}
+}
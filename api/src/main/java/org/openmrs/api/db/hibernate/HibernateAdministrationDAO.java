@@ -84,6 +84,8 @@ public class HibernateAdministrationDAO implements AdministrationDAO, Applicatio
 	 */
 	public void setSessionFactory(SessionFactory sessionFactory) {
 		this.sessionFactory = sessionFactory;
+		// the database may have been changed (by the setup or update wizards) while no context was running
+		GlobalPropertyCache.clear();
 	}
 	
 	/**
@@ -246,14 +248,49 @@ public class HibernateAdministrationDAO implements AdministrationDAO, Applicatio
 	 * @see org.openmrs.api.db.AdministrationDAO#getGlobalProperty(java.lang.String)
 	 */
 	public String getGlobalProperty(String propertyName) throws DAOException {
-		GlobalProperty gp = getGlobalPropertyObject(propertyName);
+		String key = GlobalPropertyCache.getKey(propertyName);
+		
+		// the values this transaction changed are only in the cache once it commits
+		Map<String, String> pendingValues = GlobalPropertyCache.getPendingValues();
+		if (pendingValues != null && pendingValues.containsKey(key)) {
+			return pendingValues.get(key);
+		}
+		
+		Map<String, String> values = GlobalPropertyCache.getValues();
+		if (values == null) {
+			values = loadGlobalPropertyValues();
+		}
 		
 		// if no gp exists, return a null value
-		if (gp == null) {
-			return null;
+		return values.get(key);
+	}
+		
+	/**
+	 * Reads the values of all global properties into the {@link GlobalPropertyCache}
+	 *
+	 * @return the values keyed by {@link GlobalPropertyCache#getKey(String)}
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<String, String> loadGlobalPropertyValues() {
+		long generation = GlobalPropertyCache.getGeneration();
+		List<Object[]> rows = sessionFactory.getCurrentSession().createQuery(
+		    "select gp.property, gp.propertyValue from GlobalProperty gp").list();
+		Map<String, String> values = new HashMap<String, String>();
+		for (Object[] row : rows) {
+			values.put((String) row[0], (String) row[1]);
 		}
 		
-		return gp.getPropertyValue();
+		if (log.isDebugEnabled()) {
+			log.debug("Loaded " + values.size() + " global properties");
+		}
+		return GlobalPropertyCache.load(values, generation);
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.AdministrationDAO#refreshGlobalProperties()
+	 */
+	public void refreshGlobalProperties() throws DAOException {
+		GlobalPropertyCache.clear();
 	}
 	
 	/**
@@ -308,6 +345,7 @@ public class HibernateAdministrationDAO implements AdministrationDAO, Applicatio
 	 */
 	public void deleteGlobalProperty(GlobalProperty property) throws DAOException {
 		sessionFactory.getCurrentSession().delete(property);
+		GlobalPropertyCache.remove(property.getProperty());
 	}
 	
 	/**
@@ -319,9 +357,11 @@ public class HibernateAdministrationDAO implements AdministrationDAO, Applicatio
 			gpObject.setPropertyValue(gp.getPropertyValue());
 			gpObject.setDescription(gp.getDescription());
 			sessionFactory.getCurrentSession().update(gpObject);
+			GlobalPropertyCache.put(gpObject.getProperty(), gpObject.getPropertyValue());
 			return gpObject;
 		} else {
 			sessionFactory.getCurrentSession().save(gp);
+			GlobalPropertyCache.put(gp.getProperty(), gp.getPropertyValue());
 			return gp;
 		}
 	}
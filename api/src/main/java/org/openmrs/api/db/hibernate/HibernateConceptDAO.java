@@ -32,10 +32,12 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
 import org.hibernate.FlushMode;
 import org.hibernate.NonUniqueObjectException;
 import org.hibernate.Query;
 import org.hibernate.SQLQuery;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Conjunction;
 import org.hibernate.criterion.Criterion;
@@ -47,6 +49,7 @@ import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Property;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.criterion.Subqueries;
+import org.hibernate.jdbc.Work;
 import org.hibernate.transform.DistinctRootEntityResultTransformer;
 import org.hibernate.transform.Transformers;
 import org.openmrs.Concept;
@@ -92,6 +95,8 @@ public class HibernateConceptDAO implements ConceptDAO {
 	
 	private SessionFactory sessionFactory;
 	
+	private final ConceptWordIndex conceptWordIndex = new ConceptWordIndex();
+	
 	/**
 	 * Sets the session factory
 	 *
@@ -135,6 +140,7 @@ public class HibernateConceptDAO implements ConceptDAO {
 		}
 		
 		sessionFactory.getCurrentSession().saveOrUpdate(concept);
+		conceptWordIndex.updateConceptAttributes(concept);
 		return concept;
 	}
 	
@@ -280,6 +286,7 @@ public class HibernateConceptDAO implements ConceptDAO {
 		
 		// now we can safely delete the concept
 		sessionFactory.getCurrentSession().delete(concept);
+		conceptWordIndex.removeConcept(concept.getConceptId());
 	}
 	
 	/**
@@ -643,6 +650,17 @@ public class HibernateConceptDAO implements ConceptDAO {
 	        List<ConceptDatatype> excludeDatatypes, Concept answersToConcept, Integer start, Integer size)
 	        throws DAOException {
 		
+		if (useConceptWordIndex()) {
+			List<ConceptWordIndex.Entry> entries = getPage(searchConceptWordIndex(phrase, locales, includeRetired,
+			    requireClasses, excludeClasses, requireDatatypes, excludeDatatypes, answersToConcept), start, size);
+			List<Integer> conceptWordIds = new ArrayList<Integer>();
+			for (ConceptWordIndex.Entry entry : entries) {
+				conceptWordIds.add(entry.getConceptWordId());
+			}
+			
+			return getByIds(ConceptWord.class, "conceptWordId", conceptWordIds);
+		}
+		
 		Criteria searchCriteria = createConceptWordSearchCriteria(phrase, locales, includeRetired, requireClasses,
 		    excludeClasses, requireDatatypes, excludeDatatypes, answersToConcept);
 		List<ConceptWord> conceptWords = new Vector<ConceptWord>();
@@ -711,6 +729,34 @@ public class HibernateConceptDAO implements ConceptDAO {
 		return concepts.get(0);
 	}
 	
+	/**
+	 * @see org.openmrs.api.db.ConceptDAO#getNextConcepts(java.lang.Integer, boolean, int)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Concept> getNextConcepts(Integer conceptId, boolean includeRetired, int maxResults) {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Concept.class);
+		if (conceptId != null) {
+			criteria.add(Restrictions.gt("conceptId", conceptId));
+		}
+		if (!includeRetired) {
+			criteria.add(Restrictions.eq("retired", false));
+		}
+		criteria.addOrder(Order.asc("conceptId")).setMaxResults(maxResults);
+		List<Concept> concepts = criteria.list();
+		
+		if (!concepts.isEmpty()) {
+			// initialize the collections of the whole page with one query per collection, fetching
+			// them all in one query would multiply the rows
+			for (String collection : new String[] { "names", "descriptions", "answers", "conceptSets" }) {
+				sessionFactory.getCurrentSession().createQuery(
+				    "select distinct c from Concept c left join fetch c." + collection + " where c in (:concepts)")
+				        .setParameterList("concepts", concepts).list();
+			}
+		}
+		
+		return concepts;
+	}
+	
 	/**
 	 * @see org.openmrs.api.db.ConceptDAO#getConceptsWithDrugsInFormulary()
 	 */
@@ -757,9 +803,77 @@ public class HibernateConceptDAO implements ConceptDAO {
 					sessionFactory.getCurrentSession().save(word);
 				}
 			}
+			
+			conceptWordIndex.updateConcept(concept, words);
 		}
 	}
 	
+	/**
+	 * @see org.openmrs.api.db.ConceptDAO#updateConceptWords(java.lang.Integer, java.lang.Integer)
+	 */
+	@SuppressWarnings("unchecked")
+	public int updateConceptWords(final Integer conceptIdStart, final Integer conceptIdEnd) throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		
+		// fetch the names along with the concepts, makeConceptWords needs all of them
+		List<Concept> concepts = session.createCriteria(Concept.class).add(
+		    Restrictions.between("conceptId", conceptIdStart, conceptIdEnd)).setFetchMode("names", FetchMode.JOIN)
+		        .setResultTransformer(DistinctRootEntityResultTransformer.INSTANCE).list();
+		
+		List<String> conceptStopWords = getConceptStopWords(Context.getLocale());
+		final List<ConceptWord> words = new ArrayList<ConceptWord>();
+		for (Concept concept : concepts) {
+			for (ConceptWord word : ConceptWord.makeConceptWords(concept, conceptStopWords)) {
+				word.setWeight(weighConceptWord(word));
+				words.add(word);
+			}
+		}
+		
+		// names that are not saved yet need their ids before the words can reference them
+		session.flush();
+		
+		session.createQuery(
+		    "delete ConceptWord where concept.conceptId >= :conceptIdStart and concept.conceptId <= :conceptIdEnd")
+		        .setInteger("conceptIdStart", conceptIdStart).setInteger("conceptIdEnd", conceptIdEnd).executeUpdate();
+		
+		session.doWork(new Work() {
+			
+			public void execute(Connection connection) throws SQLException {
+				PreparedStatement insert = connection
+				        .prepareStatement("insert into concept_word (concept_id, word, locale, concept_name_id, weight) values (?, ?, ?, ?, ?)");
+				try {
+					int batched = 0;
+					for (ConceptWord word : words) {
+						insert.setInt(1, word.getConcept().getConceptId());
+						insert.setString(2, word.getWord());
+						insert.setString(3, word.getLocale().toString());
+						insert.setInt(4, word.getConceptName().getConceptNameId());
+						insert.setDouble(5, word.getWeight());
+						insert.addBatch();
+						if (++batched % 1000 == 0) {
+							insert.executeBatch();
+						}
+					}
+					if (batched % 1000 != 0) {
+						insert.executeBatch();
+					}
+				}
+				finally {
+					insert.close();
+				}
+			}
+		});
+		
+		conceptWordIndex.reloadConcepts(session, conceptIdStart, conceptIdEnd);
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Rebuilt " + words.size() + " concept words of " + concepts.size() + " concepts between "
+			        + conceptIdStart + " and " + conceptIdEnd);
+		}
+		
+		return concepts.size();
+	}
+	
 	/**
 	 * Deletes all concept words for a concept. Called by {@link #updateConceptWord(Concept)}
 	 *
@@ -1309,6 +1423,20 @@ public class HibernateConceptDAO implements ConceptDAO {
 			phrase = "%"; // match all
 		}
 		
+		if (useConceptWordIndex()) {
+			List<ConceptWordIndex.Entry> entries = searchConceptWordIndex(phrase, locales, includeRetired, requireClasses,
+			    excludeClasses, requireDatatypes, excludeDatatypes, answersToConcept);
+			if (forUniqueConcepts) {
+				Set<Integer> conceptIds = new HashSet<Integer>();
+				for (ConceptWordIndex.Entry entry : entries) {
+					conceptIds.add(entry.getConceptId());
+				}
+				return (long) conceptIds.size();
+			}
+			
+			return (long) entries.size();
+		}
+		
 		Criteria searchCriteria = createConceptWordSearchCriteria(phrase, locales, includeRetired, requireClasses,
 		    excludeClasses, requireDatatypes, excludeDatatypes, answersToConcept);
 		if (searchCriteria != null) {
@@ -1345,33 +1473,12 @@ public class HibernateConceptDAO implements ConceptDAO {
 	        List<ConceptClass> requireClasses, List<ConceptClass> excludeClasses, List<ConceptDatatype> requireDatatypes,
 	        List<ConceptDatatype> excludeDatatypes, Concept answersToConcept) throws DAOException {
 		
-		//add the language-only portion of locale if its not in the list of locales already
-		List<Locale> localesToAdd = new Vector<Locale>();
-		for (Locale locale : locales) {
-			Locale languageOnly = new Locale(locale.getLanguage());
-			if (locales.contains(languageOnly) == false) {
-				localesToAdd.add(languageOnly);
-			}
-		}
+		addLanguageOnlyLocales(locales);
 		
-		locales.addAll(localesToAdd);
-		
-		List<String> words = new ArrayList<String>();
-		if (phrase.equals("%")) {
-			words.add(phrase);
-		} else {
-			//assumes getUniqueWords() removes quote(') characters.  (otherwise we would have a security leak)
-			words = ConceptWord.getUniqueWords(phrase);
-		}
+		List<String> words = getSearchWords(phrase);
 		
 		// these are the answers to restrict on
-		List<Concept> answers = new Vector<Concept>();
-		
-		if (answersToConcept != null && answersToConcept.getAnswers(false) != null) {
-			for (ConceptAnswer conceptAnswer : answersToConcept.getAnswers(false)) {
-				answers.add(conceptAnswer.getAnswerConcept());
-			}
-		}
+		List<Concept> answers = getAnswerConcepts(answersToConcept);
 		
 		if (words.size() > 0 || !answers.isEmpty()) {
 			
@@ -1430,6 +1537,153 @@ public class HibernateConceptDAO implements ConceptDAO {
 		return null;
 	}
 	
+	/**
+	 * Searches the in memory concept word index with the same arguments and matching rules as
+	 * {@link #createConceptWordSearchCriteria(String, List, boolean, List, List, List, List, Concept)},
+	 * loading the index first if needed
+	 *
+	 * @return the matching index entries, ordered by descending weight
+	 */
+	private List<ConceptWordIndex.Entry> searchConceptWordIndex(String phrase, List<Locale> locales,
+	        boolean includeRetired, List<ConceptClass> requireClasses, List<ConceptClass> excludeClasses,
+	        List<ConceptDatatype> requireDatatypes, List<ConceptDatatype> excludeDatatypes, Concept answersToConcept) {
+		addLanguageOnlyLocales(locales);
+		
+		List<String> words = getSearchWords(phrase);
+		if (phrase.equals("%")) {
+			// the index matches every word to an empty prefix
+			words = Collections.singletonList("");
+		}
+		
+		List<Concept> answers = getAnswerConcepts(answersToConcept);
+		
+		if (words.isEmpty() && answers.isEmpty()) {
+			return Collections.emptyList();
+		}
+		
+		if (!conceptWordIndex.isBuilt()) {
+			conceptWordIndex.build(sessionFactory.getCurrentSession());
+		}
+		
+		return conceptWordIndex.search(words, locales, includeRetired, requireClasses, excludeClasses, requireDatatypes,
+		    excludeDatatypes, answers);
+	}
+	
+	/**
+	 * Adds the language-only portion of each locale if it is not in the list of locales already
+	 *
+	 * @param locales the locales to search in, modified in place
+	 */
+	private void addLanguageOnlyLocales(List<Locale> locales) {
+		List<Locale> localesToAdd = new Vector<Locale>();
+		for (Locale locale : locales) {
+			Locale languageOnly = new Locale(locale.getLanguage());
+			if (locales.contains(languageOnly) == false && localesToAdd.contains(languageOnly) == false) {
+				localesToAdd.add(languageOnly);
+			}
+		}
+		
+		locales.addAll(localesToAdd);
+	}
+	
+	/**
+	 * Splits the search phrase into the words to match
+	 *
+	 * @param phrase the search phrase, or % to match all words
+	 * @return the unique upper case words of the phrase
+	 */
+	private List<String> getSearchWords(String phrase) {
+		List<String> words = new ArrayList<String>();
+		if (phrase.equals("%")) {
+			words.add(phrase);
+		} else {
+			//assumes getUniqueWords() removes quote(') characters.  (otherwise we would have a security leak)
+			words = ConceptWord.getUniqueWords(phrase);
+		}
+		return words;
+	}
+	
+	/**
+	 * @param answersToConcept the question concept, may be null
+	 * @return the non retired answers of the given concept, or an empty list
+	 */
+	private List<Concept> getAnswerConcepts(Concept answersToConcept) {
+		List<Concept> answers = new Vector<Concept>();
+		
+		if (answersToConcept != null && answersToConcept.getAnswers(false) != null) {
+			for (ConceptAnswer conceptAnswer : answersToConcept.getAnswers(false)) {
+				answers.add(conceptAnswer.getAnswerConcept());
+			}
+		}
+		
+		return answers;
+	}
+	
+	/**
+	 * The index only holds committed words, so a transaction that changed concept words searches
+	 * the database to see its own changes
+	 *
+	 * @return true if this concept word search should use the in memory index
+	 */
+	private boolean useConceptWordIndex() {
+		return isConceptWordIndexEnabled() && !conceptWordIndex.hasPendingChanges();
+	}
+	
+	/**
+	 * Fetch the concept word index setting from the global properties table
+	 *
+	 * @return true if concept word searches should use the in memory index
+	 */
+	private boolean isConceptWordIndexEnabled() {
+		return Boolean.valueOf(Context.getAdministrationService().getGlobalProperty(
+		    OpenmrsConstants.GLOBAL_PROPERTY_CONCEPT_WORD_INDEX_ENABLED, "true"));
+	}
+	
+	/**
+	 * Loads the objects with the given ids, in the order of the ids
+	 *
+	 * @param clazz the mapped class to load
+	 * @param idProperty the name of the identifier property of the class
+	 * @param ids the ids to load
+	 * @return the objects that were found
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> List<T> getByIds(Class<T> clazz, String idProperty, List<Integer> ids) {
+		Map<Integer, T> objects = new HashMap<Integer, T>();
+		for (int i = 0; i < ids.size(); i += 1000) {
+			List<Integer> chunk = ids.subList(i, Math.min(i + 1000, ids.size()));
+			List<T> loaded = sessionFactory.getCurrentSession().createCriteria(clazz).add(Restrictions.in(idProperty, chunk))
+			        .list();
+			for (T object : loaded) {
+				objects.put((Integer) sessionFactory.getCurrentSession().getIdentifier(object), object);
+			}
+		}
+		
+		List<T> results = new ArrayList<T>(ids.size());
+		for (Integer id : ids) {
+			T object = objects.get(id);
+			if (object != null) {
+				results.add(object);
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * @param list the full list
+	 * @param start the index of the first element to return, may be null
+	 * @param size the maximum number of elements to return, null or zero for no limit
+	 * @return the requested part of the list
+	 */
+	private static <T> List<T> getPage(List<T> list, Integer start, Integer size) {
+		int from = start != null ? Math.min(Math.max(start, 0), list.size()) : 0;
+		int to = list.size();
+		if (size != null && size > 0) {
+			to = Math.min(from + size, to);
+		}
+		return list.subList(from, to);
+	}
+	
 	/**
 	 * @see ConceptService#getCountOfDrugs(String, Concept, boolean, boolean)
 	 */
@@ -1522,11 +1776,39 @@ public class HibernateConceptDAO implements ConceptDAO {
 			phrase = "%"; // match all
 		}
 		
+		List<ConceptSearchResult> results = new Vector<ConceptSearchResult>();
+		
+		if (useConceptWordIndex()) {
+			List<ConceptWordIndex.Entry> entries = getPage(ConceptWordIndex.groupByConceptAndWord(searchConceptWordIndex(
+			    phrase, locales, includeRetired, requireClasses, excludeClasses, requireDatatypes, excludeDatatypes,
+			    answersToConcept)), start, size);
+			List<Integer> conceptIds = new ArrayList<Integer>();
+			List<Integer> conceptNameIds = new ArrayList<Integer>();
+			for (ConceptWordIndex.Entry entry : entries) {
+				conceptIds.add(entry.getConceptId());
+				conceptNameIds.add(entry.getConceptNameId());
+			}
+			
+			Map<Integer, Concept> concepts = new HashMap<Integer, Concept>();
+			for (Concept concept : getByIds(Concept.class, "conceptId", conceptIds)) {
+				concepts.put(concept.getConceptId(), concept);
+			}
+			Map<Integer, ConceptName> conceptNames = new HashMap<Integer, ConceptName>();
+			for (ConceptName conceptName : getByIds(ConceptName.class, "conceptNameId", conceptNameIds)) {
+				conceptNames.put(conceptName.getConceptNameId(), conceptName);
+			}
+			
+			for (ConceptWordIndex.Entry entry : entries) {
+				results.add(new ConceptSearchResult(entry.getWord(), concepts.get(entry.getConceptId()), conceptNames
+				        .get(entry.getConceptNameId()), entry.getWeight()));
+			}
+			
+			return results;
+		}
+		
 		Criteria searchCriteria = createConceptWordSearchCriteria(phrase, locales, includeRetired, requireClasses,
 		    excludeClasses, requireDatatypes, excludeDatatypes, answersToConcept);
 		
-		List<ConceptSearchResult> results = new Vector<ConceptSearchResult>();
-		
 		if (searchCriteria != null) {
 			ProjectionList pl = Projections.projectionList();
 			pl.add(Projections.distinct(Projections.groupProperty("cw1.concept")));
@@ -13,25 +13,32 @@
  */
 package org.openmrs.api.db.hibernate;
 
-import java.lang.reflect.Field;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.Vector;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
 import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.type.Type;
 import org.openmrs.Location;
 import org.openmrs.Patient;
 import org.openmrs.PatientIdentifier;
@@ -42,6 +49,8 @@ import org.openmrs.PersonName;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.api.db.PatientDAO;
+import org.openmrs.patient.DuplicatePatientCandidate;
+import org.openmrs.patient.DuplicatePatientDetector;
 
 /**
  * Hibernate specific database methods for the PatientService
@@ -59,6 +68,17 @@ public class HibernatePatientDAO implements PatientDAO {
 	 */
 	private SessionFactory sessionFactory;
 	
+	/**
+	 * The number of patients fetched (or duplicate candidates saved) at a time
+	 */
+	private static final int PATIENT_FETCH_SIZE = 500;
+	
+	/**
+	 * The comparable attributes of {@link #getDuplicatePatientsByAttributes(List)}, built from the
+	 * mappings on first use
+	 */
+	private volatile Map<String, String> duplicatePatientAttributeExpressions;
+	
 	/**
 	 * Set session factory
 	 *
@@ -66,6 +86,7 @@ public class HibernatePatientDAO implements PatientDAO {
 	 */
 	public void setSessionFactory(SessionFactory sessionFactory) {
 		this.sessionFactory = sessionFactory;
+		this.duplicatePatientAttributeExpressions = null;
 	}
 	
 	/**
@@ -408,88 +429,234 @@ public class HibernatePatientDAO implements PatientDAO {
 	/**
 	 * @see org.openmrs.api.db.PatientDAO#getDuplicatePatientsByAttributes(java.util.List)
 	 */
-	@SuppressWarnings("unchecked")
 	public List<Patient> getDuplicatePatientsByAttributes(List<String> attributes) {
-		List<Patient> patients = new Vector<Patient>();
+		Map<String, String> expressionsByAttribute = getDuplicatePatientAttributeExpressions();
+		List<String> expressions = new ArrayList<String>();
+		for (String attribute : attributes) {
+			String expression = expressionsByAttribute.get(attribute);
+			if (expression != null) {
+				if (!expressions.contains(expression)) {
+					expressions.add(expression);
+				}
+			} else if (!"includeVoided".equals(attribute)) {
+				log.warn("Unidentified attribute: " + attribute);
+			}
+		}
+		if (expressions.isEmpty()) {
+			return new ArrayList<Patient>();
+		}
 		
-		if (attributes.size() > 0) {
-			String select = "select distinct p1 from Patient p1, Patient p2";
-			String where = " where p1 <> p2 ";
-			String orderBy = " order by ";
-			
-			Class patient = Patient.class;
-			Set<String> patientFieldNames = new HashSet<String>(patient.getDeclaredFields().length);
-			for (Field f : patient.getDeclaredFields()) {
-				patientFieldNames.add(f.getName());
-				log.debug(f.getName());
+		// instead of joining every patient to every other one, the patients are sorted by the attributes
+		// and the runs of rows with the same values are picked out while scrolling through them
+		StringBuilder select = new StringBuilder("select p.patientId");
+		StringBuilder where = new StringBuilder(" where p.patientId is not null");
+		StringBuilder orderBy = new StringBuilder(" order by ");
+		boolean joinNames = false;
+		boolean joinIdentifiers = false;
+		for (String expression : expressions) {
+			select.append(", ").append(expression);
+			where.append(" and ").append(expression).append(" is not null");
+			orderBy.append(expression).append(", ");
+			joinNames |= expression.startsWith("pn.");
+			joinIdentifiers |= expression.startsWith("pi.");
+		}
+		select.append(" from Patient p");
+		if (joinNames) {
+			select.append(" join p.names pn");
+		}
+		if (joinIdentifiers) {
+			select.append(" join p.identifiers pi");
+		}
+		if (!attributes.contains("includeVoided")) {
+			where.append(" and p.voided = false");
+		}
+		orderBy.append("p.patientId");
+		
+		Set<Integer> duplicateIds = new LinkedHashSet<Integer>();
+		ScrollableResults rows = sessionFactory.getCurrentSession().createQuery(
+		    select.toString() + where.toString() + orderBy.toString()).scroll(ScrollMode.FORWARD_ONLY);
+		try {
+			Object[] runValues = null;
+			List<Integer> run = new ArrayList<Integer>();
+			while (rows.next()) {
+				Object[] row = rows.get();
+				if (runValues == null || !haveSameValues(runValues, row)) {
+					addDuplicates(run, duplicateIds);
+					run.clear();
+					runValues = row;
+				}
+				run.add((Integer) row[0]);
 			}
-			
-			Class person = Person.class;
-			Set<String> personFieldNames = new HashSet<String>(person.getDeclaredFields().length);
-			for (Field f : person.getDeclaredFields()) {
-				personFieldNames.add(f.getName());
-				log.debug(f.getName());
+			addDuplicates(run, duplicateIds);
+		}
+		finally {
+			rows.close();
+		}
+		
+		return getPatientsInOrder(duplicateIds);
+	}
+	
+	/**
+	 * @return the hql expressions of the properties of a patient, its names and its identifiers that
+	 *         can be compared by {@link #getDuplicatePatientsByAttributes(List)}, by property name
+	 */
+	private Map<String, String> getDuplicatePatientAttributeExpressions() {
+		Map<String, String> expressions = duplicatePatientAttributeExpressions;
+		if (expressions == null) {
+			expressions = new HashMap<String, String>();
+			// the patient (and person) properties win over the name properties, which win over the identifier ones
+			addAttributeExpressions(expressions, PatientIdentifier.class, "pi");
+			addAttributeExpressions(expressions, PersonName.class, "pn");
+			addAttributeExpressions(expressions, Patient.class, "p");
+			duplicatePatientAttributeExpressions = expressions;
+		}
+		return expressions;
+	}
+	
+	private void addAttributeExpressions(Map<String, String> expressions, Class<?> mappedClass, String alias) {
+		ClassMetadata metadata = sessionFactory.getClassMetadata(mappedClass);
+		for (String property : metadata.getPropertyNames()) {
+			Type type = metadata.getPropertyType(property);
+			if (type.isCollectionType()) {
+				continue;
 			}
-			
-			Class personName = PersonName.class;
-			Set<String> personNameFieldNames = new HashSet<String>(personName.getDeclaredFields().length);
-			for (Field f : personName.getDeclaredFields()) {
-				personNameFieldNames.add(f.getName());
-				log.debug(f.getName());
+			// associations are compared by their ids, which does not need a join
+			expressions.put(property, alias + "." + property + (type.isAssociationType() ? ".id" : ""));
+		}
+		expressions.put(metadata.getIdentifierPropertyName(), alias + "." + metadata.getIdentifierPropertyName());
+	}
+	
+	/**
+	 * Compares the attribute values of two rows (that is all but the first element, the patient id).
+	 * Strings are compared ignoring case, like the default MySQL collation they were sorted with does.
+	 */
+	private static boolean haveSameValues(Object[] row, Object[] other) {
+		for (int i = 1; i < row.length; i++) {
+			if (row[i] instanceof String && other[i] instanceof String) {
+				if (!((String) row[i]).equalsIgnoreCase((String) other[i])) {
+					return false;
+				}
+			} else if (!row[i].equals(other[i])) {
+				return false;
 			}
-			
-			Class identifier = PatientIdentifier.class;
-			Set<String> identifierFieldNames = new HashSet<String>(identifier.getDeclaredFields().length);
-			for (Field f : identifier.getDeclaredFields()) {
-				identifierFieldNames.add(f.getName());
-				log.debug(f.getName());
+		}
+		return true;
+	}
+	
+	/**
+	 * Adds the patient ids of the given run of rows with the same values if they are not all the same
+	 */
+	private static void addDuplicates(List<Integer> run, Set<Integer> duplicateIds) {
+		for (Integer patientId : run) {
+			if (!patientId.equals(run.get(0))) {
+				duplicateIds.addAll(run);
+				return;
 			}
-			
-			if (!attributes.contains("includeVoided")) {
-				where += "and p1.voided = false and p2.voided = false ";
+		}
+	}
+	
+	/**
+	 * @return the patients with the given ids, in the same order
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Patient> getPatientsInOrder(Collection<Integer> patientIds) {
+		Map<Integer, Patient> patients = new HashMap<Integer, Patient>();
+		List<Integer> ids = new ArrayList<Integer>(patientIds);
+		for (int i = 0; i < ids.size(); i += PATIENT_FETCH_SIZE) {
+			Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Patient.class);
+			criteria.add(Restrictions.in("patientId", ids.subList(i, Math.min(i + PATIENT_FETCH_SIZE, ids.size()))));
+			for (Patient patient : (List<Patient>) criteria.list()) {
+				patients.put(patient.getPatientId(), patient);
 			}
-			
-			for (String s : attributes) {
-				if (patientFieldNames.contains(s)) {
-					where += " and p1." + s + " = p2." + s;
-					orderBy += "p1." + s + ", ";
-				} else if (personFieldNames.contains(s)) {
-					if (!select.contains("Person ")) {
-						select += ", Person person1, Person person2";
-						where += " and p1.patientId = person1.personId and p2.patientId = person2.personId ";
-					}
-					where += " and person1." + s + " = person2." + s;
-					orderBy += "person1." + s + ", ";
-				} else if (personNameFieldNames.contains(s)) {
-					if (!select.contains("PersonName")) {
-						select += ", PersonName pn1, PersonName pn2";
-						where += " and p1 = pn1.person and p2 = pn2.person ";
-					}
-					where += " and pn1." + s + " = pn2." + s;
-					orderBy += "pn1." + s + ", ";
-				} else if (identifierFieldNames.contains(s)) {
-					if (!select.contains("PatientIdentifier")) {
-						select += ", PatientIdentifier pi1, PatientIdentifier pi2";
-						where += " and p1 = pi1.patient and p2 = pi2.patient ";
-					}
-					where += " and pi1." + s + " = pi2." + s;
-					orderBy += "pi1." + s + ", ";
-				} else {
-					log.warn("Unidentified attribute: " + s);
-				}
+		}
+		
+		List<Patient> result = new ArrayList<Patient>(ids.size());
+		for (Integer patientId : ids) {
+			Patient patient = patients.get(patientId);
+			if (patient != null) {
+				result.add(patient);
 			}
-			
-			int index = orderBy.lastIndexOf(", ");
-			orderBy = orderBy.substring(0, index);
-			
-			select = select + where + orderBy;
-			
-			Query query = sessionFactory.getCurrentSession().createQuery(select);
-			
-			patients = query.list();
+		}
+		return result;
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#fillDuplicatePatientDetector(org.openmrs.patient.DuplicatePatientDetector)
+	 */
+	public void fillDuplicatePatientDetector(DuplicatePatientDetector detector) throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		ScrollableResults names = session.createQuery(
+		    "select p.patientId, p.gender, p.birthdate, pn.givenName, pn.familyName from Patient p join p.names pn"
+		            + " where p.voided = false and pn.voided = false").scroll(ScrollMode.FORWARD_ONLY);
+		try {
+			while (names.next()) {
+				detector.addName(names.getInteger(0), names.getString(1), names.getDate(2), names.getString(3), names
+				        .getString(4));
+			}
+		}
+		finally {
+			names.close();
 		}
 		
-		return patients;
+		ScrollableResults identifiers = session.createQuery(
+		    "select pi.patient.patientId, pi.identifier from PatientIdentifier pi"
+		            + " where pi.voided = false and pi.patient.voided = false").scroll(ScrollMode.FORWARD_ONLY);
+		try {
+			while (identifiers.next()) {
+				detector.addIdentifier(identifiers.getInteger(0), identifiers.getString(1));
+			}
+		}
+		finally {
+			identifiers.close();
+		}
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#replaceDuplicatePatientCandidates(java.util.List)
+	 */
+	public void replaceDuplicatePatientCandidates(List<DuplicatePatientDetector.Match> matches) throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		session.createQuery("delete from DuplicatePatientCandidate").executeUpdate();
+		
+		Date dateCreated = new Date();
+		int saved = 0;
+		for (DuplicatePatientDetector.Match match : matches) {
+			DuplicatePatientCandidate candidate = new DuplicatePatientCandidate();
+			candidate.setPatient((Patient) session.load(Patient.class, match.getPatientId()));
+			candidate.setOtherPatient((Patient) session.load(Patient.class, match.getOtherPatientId()));
+			candidate.setScore(match.getScore());
+			candidate.setDateCreated(dateCreated);
+			session.save(candidate);
+			
+			// keep memory consumption low
+			if (++saved % PATIENT_FETCH_SIZE == 0) {
+				session.flush();
+				session.clear();
+			}
+		}
+	}
+	
+	/**
+	 * @see org.openmrs.api.db.PatientDAO#getDuplicatePatientCandidates(java.lang.Integer, java.lang.Integer)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<DuplicatePatientCandidate> getDuplicatePatientCandidates(Integer start, Integer length)
+	        throws DAOException {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(DuplicatePatientCandidate.class);
+		// merging voids the patient that is merged away, which leaves the pair behind
+		criteria.createAlias("patient", "patient");
+		criteria.createAlias("otherPatient", "otherPatient");
+		criteria.add(Restrictions.eq("patient.voided", false));
+		criteria.add(Restrictions.eq("otherPatient.voided", false));
+		criteria.addOrder(Order.desc("score"));
+		criteria.addOrder(Order.asc("duplicatePatientCandidateId"));
+		if (start != null) {
+			criteria.setFirstResult(start);
+		}
+		if (length != null && length > 0) {
+			criteria.setMaxResults(length);
+		}
+		return criteria.list();
 	}
 	
 	/**
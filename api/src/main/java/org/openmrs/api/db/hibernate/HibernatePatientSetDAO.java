@@ -1125,15 +1125,18 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 		criteria.add(Restrictions.eq("concept", concept));
 		
+		CohortRestriction cohortRestriction = null;
+		
 		// only add this where clause if patients were passed in
 		if (patients != null) {
-			criteria.add(Restrictions.in("person.personId", patients.getMemberIds()));
+			cohortRestriction = CohortRestriction.forCohort(sessionFactory, patients);
+			criteria.add(cohortRestriction.getCriterion(Obs.class, "person"));
 		}
 		
 		criteria.add(Restrictions.eq("voided", false));
 		criteria.addOrder(org.hibernate.criterion.Order.desc("obsDatetime"));
 		log.debug("criteria: " + criteria);
-		List<Obs> temp = criteria.list();
+		List<Obs> temp = list(criteria, cohortRestriction);
 		for (Obs obs : temp) {
 			Integer ptId = obs.getPersonId();
 			List<Obs> forPatient = ret.get(ptId);
@@ -1219,9 +1222,12 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		}
 		criteria.setProjection(projections);
 		
+		CohortRestriction cohortRestriction = null;
+		
 		// only restrict on patient ids if some were passed in
 		if (patients != null) {
-			criteria.add(Restrictions.in("obs.personId", patients.getMemberIds()));
+			cohortRestriction = CohortRestriction.forCohort(sessionFactory, patients);
+			criteria.add(cohortRestriction.getCriterion(Obs.class, "person"));
 		}
 		
 		criteria.add(Restrictions.eq("obs.concept", c));
@@ -1234,7 +1240,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		}
 		
 		long start = System.currentTimeMillis();
-		List<Object[]> rows = criteria.list();
+		List<Object[]> rows = list(criteria, cohortRestriction);
 		log.debug("Took: " + (System.currentTimeMillis() - start) + " ms to run the patient/obs query");
 		
 		// set up the return map
@@ -1289,6 +1295,25 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 	}
 	
+	/**
+	 * Runs the criteria, releasing the cohort restriction (if any) afterwards
+	 * 
+	 * @param criteria the criteria to list
+	 * @param cohortRestriction the restriction added to the criteria, may be null
+	 * @return the results
+	 */
+	@SuppressWarnings("rawtypes")
+	private List list(Criteria criteria, CohortRestriction cohortRestriction) {
+		try {
+			return criteria.list();
+		}
+		finally {
+			if (cohortRestriction != null) {
+				cohortRestriction.release();
+			}
+		}
+	}
+	
 	public static List<String> findObsValueColumnName(Concept c) {
 		String abbrev = c.getDatatype().getHl7Abbreviation();
 		List<String> columns = new Vector<String>();
@@ -1317,9 +1342,12 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Encounter.class);
 		criteria.setCacheMode(CacheMode.IGNORE);
 		
+		CohortRestriction cohortRestriction = null;
+		
 		// this "where clause" is only necessary if patients were passed in
 		if (patients != null && patients.size() > 0) {
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+			cohortRestriction = CohortRestriction.forCohort(sessionFactory, patients);
+			criteria.add(cohortRestriction.getCriterion(Encounter.class, "patient"));
 		}
 		
 		criteria.add(Restrictions.eq("voided", false));
@@ -1331,7 +1359,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.addOrder(org.hibernate.criterion.Order.desc("patient.personId"));
 		criteria.addOrder(org.hibernate.criterion.Order.desc("encounterDatetime"));
 		
-		List<Encounter> encounters = criteria.list();
+		List<Encounter> encounters = list(criteria, cohortRestriction);
 		
 		// set up the return map
 		for (Encounter enc : encounters) {
@@ -1357,9 +1385,12 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Encounter.class);
 		criteria.setCacheMode(CacheMode.IGNORE);
 		
+		CohortRestriction cohortRestriction = null;
+		
 		// this "where clause" is only necessary if patients were passed in
 		if (patients != null && patients.size() > 0) {
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+			cohortRestriction = CohortRestriction.forCohort(sessionFactory, patients);
+			criteria.add(cohortRestriction.getCriterion(Encounter.class, "patient"));
 		}
 		
 		criteria.add(Restrictions.eq("voided", false));
@@ -1371,7 +1402,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.addOrder(org.hibernate.criterion.Order.desc("patient.personId"));
 		criteria.addOrder(org.hibernate.criterion.Order.desc("encounterDatetime"));
 		
-		return criteria.list();
+		return list(criteria, cohortRestriction);
 		
 	}
 	
@@ -1384,9 +1415,12 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Encounter.class);
 		criteria.setCacheMode(CacheMode.IGNORE);
 		
+		CohortRestriction cohortRestriction = null;
+		
 		// this "where clause" is only necessary if patients were specified
 		if (patients != null) {
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+			cohortRestriction = CohortRestriction.forCohort(sessionFactory, patients);
+			criteria.add(cohortRestriction.getCriterion(Encounter.class, "patient"));
 		}
 		
 		criteria.add(Restrictions.eq("voided", false));
@@ -1406,7 +1440,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 			criteria.addOrder(org.hibernate.criterion.Order.desc("encounterDatetime"));
 		}
 		
-		List<Object[]> attrs = criteria.list();
+		List<Object[]> attrs = list(criteria, cohortRestriction);
 		
 		// set up the return map
 		for (Object[] row : attrs) {
@@ -1427,9 +1461,12 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Encounter.class);
 		criteria.setCacheMode(CacheMode.IGNORE);
 		
+		CohortRestriction cohortRestriction = null;
+		
 		// only include this where clause if patients were passed in
 		if (patients != null) {
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+			cohortRestriction = CohortRestriction.forCohort(sessionFactory, patients);
+			criteria.add(cohortRestriction.getCriterion(Encounter.class, "patient"));
 		}
 		
 		criteria.add(Restrictions.eq("voided", false));
@@ -1437,7 +1474,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.addOrder(org.hibernate.criterion.Order.desc("patient.personId"));
 		criteria.addOrder(org.hibernate.criterion.Order.desc("encounterDatetime"));
 		
-		List<Encounter> encounters = criteria.list();
+		List<Encounter> encounters = list(criteria, cohortRestriction);
 		
 		// set up the return map
 		for (Encounter enc : encounters) {
@@ -1458,9 +1495,12 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Encounter.class);
 		criteria.setCacheMode(CacheMode.IGNORE);
 		
+		CohortRestriction cohortRestriction = null;
+		
 		// this "where clause" is only needed if patients were specified
 		if (patients != null) {
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+			cohortRestriction = CohortRestriction.forCohort(sessionFactory, patients);
+			criteria.add(cohortRestriction.getCriterion(Encounter.class, "patient"));
 		}
 		
 		criteria.add(Restrictions.eq("voided", false));
@@ -1472,7 +1512,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.addOrder(org.hibernate.criterion.Order.desc("patient.personId"));
 		criteria.addOrder(org.hibernate.criterion.Order.asc("encounterDatetime"));
 		
-		List<Encounter> encounters = criteria.list();
+		List<Encounter> encounters = list(criteria, cohortRestriction);
 		
 		// set up the return map
 		for (Encounter enc : encounters) {
@@ -1848,9 +1888,12 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 			criteria.setCacheMode(CacheMode.IGNORE);
 			//criteria.add(Restrictions.in("patientProgram.patient.personId", ids));
 			
+			CohortRestriction cohortRestriction = null;
+			
 			// only include this where clause if patients were passed in
 			if (ps != null) {
-				criteria.createCriteria("patientProgram").add(Restrictions.in("patient.personId", ps.getMemberIds()));
+				cohortRestriction = CohortRestriction.forCohort(sessionFactory, ps);
+				criteria.createCriteria("patientProgram").add(cohortRestriction.getCriterion(PatientProgram.class, "patient"));
 			}
 			
 			//criteria.add(Restrictions.eq("state.programWorkflow", wf));
@@ -1859,7 +1902,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 			criteria.add(Restrictions.or(Restrictions.isNull("startDate"), Restrictions.le("startDate", now)));
 			criteria.add(Restrictions.or(Restrictions.isNull("endDate"), Restrictions.ge("endDate", now)));
 			log.debug("criteria: " + criteria);
-			List<PatientState> temp = criteria.list();
+			List<PatientState> temp = list(criteria, cohortRestriction);
 			for (PatientState state : temp) {
 				Integer ptId = state.getPatientProgram().getPatient().getPatientId();
 				ret.put(ptId, state);
@@ -1885,9 +1928,12 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.setFetchMode("patient", FetchMode.JOIN);
 		criteria.setCacheMode(CacheMode.IGNORE);
 		
+		CohortRestriction cohortRestriction = null;
+		
 		// this "where clause" is only necessary if patients were passed in
 		if (ps != null) {
-			criteria.add(Restrictions.in("patient.personId", ps.getMemberIds()));
+			cohortRestriction = CohortRestriction.forCohort(sessionFactory, ps);
+			criteria.add(cohortRestriction.getCriterion(PatientProgram.class, "patient"));
 		}
 		
 		criteria.add(Restrictions.eq("program", program));
@@ -1899,7 +1945,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 			criteria.add(Restrictions.or(Restrictions.isNull("dateCompleted"), Restrictions.ge("dateCompleted", now)));
 		}
 		log.debug("criteria: " + criteria);
-		List<PatientProgram> temp = criteria.list();
+		List<PatientProgram> temp = list(criteria, cohortRestriction);
 		for (PatientProgram prog : temp) {
 			Integer ptId = prog.getPatient().getPatientId();
 			ret.put(ptId, prog);
@@ -1919,9 +1965,12 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.setFetchMode("patient", FetchMode.JOIN);
 		criteria.setCacheMode(CacheMode.IGNORE);
 		
+		CohortRestriction cohortRestriction = null;
+		
 		// this "where clause" is only necessary if patients were passed in
 		if (patients != null) {
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+			cohortRestriction = CohortRestriction.forCohort(sessionFactory, patients);
+			criteria.add(cohortRestriction.getCriterion(DrugOrder.class, "patient"));
 		}
 		
 		//criteria.add(Restrictions.in("encounter.patient.personId", ids));
@@ -1936,7 +1985,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		    "discontinued", true), Restrictions.gt("discontinuedDate", now))));
 		criteria.addOrder(org.hibernate.criterion.Order.asc("startDate"));
 		log.debug("criteria: " + criteria);
-		List<DrugOrder> temp = criteria.list();
+		List<DrugOrder> temp = list(criteria, cohortRestriction);
 		for (DrugOrder regimen : temp) {
 			Integer ptId = regimen.getPatient().getPatientId();
 			List<DrugOrder> list = ret.get(ptId);
@@ -1960,9 +2009,12 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.setFetchMode("patient", FetchMode.JOIN);
 		criteria.setCacheMode(CacheMode.IGNORE);
 		
+		CohortRestriction cohortRestriction = null;
+		
 		// only include this where clause if patients were passed in
 		if (patients != null) {
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+			cohortRestriction = CohortRestriction.forCohort(sessionFactory, patients);
+			criteria.add(cohortRestriction.getCriterion(DrugOrder.class, "patient"));
 		}
 		
 		if (drugConcepts != null) {
@@ -1971,7 +2023,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		criteria.add(Restrictions.eq("voided", false));
 		criteria.addOrder(org.hibernate.criterion.Order.asc("startDate"));
 		log.debug("criteria: " + criteria);
-		List<DrugOrder> temp = criteria.list();
+		List<DrugOrder> temp = list(criteria, cohortRestriction);
 		for (DrugOrder regimen : temp) {
 			Integer ptId = regimen.getPatient().getPatientId();
 			List<DrugOrder> list = ret.get(ptId);
@@ -2211,9 +2263,12 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		
 		criteria.setCacheMode(CacheMode.IGNORE);
 		
+		CohortRestriction cohortRestriction = null;
+		
 		// Add patient restriction if necessary
 		if (patients != null) {
-			criteria.add(Restrictions.in("patient.personId", patients.getMemberIds()));
+			cohortRestriction = CohortRestriction.forCohort(sessionFactory, patients);
+			criteria.add(cohortRestriction.getCriterion(PatientIdentifier.class, "patient"));
 		}
 		
 		// all identifiers must be non-voided
@@ -2227,7 +2282,7 @@ public class HibernatePatientSetDAO implements PatientSetDAO {
 		// Order by ID
 		criteria.addOrder(org.hibernate.criterion.Order.desc("patient.personId"));
 		
-		List<Object[]> rows = criteria.list();
+		List<Object[]> rows = list(criteria, cohortRestriction);
 		
 		// set up the return map
 		for (Object[] row : rows) {
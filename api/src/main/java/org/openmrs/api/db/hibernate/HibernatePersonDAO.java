@@ -14,11 +14,15 @@
 package org.openmrs.api.db.hibernate;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
@@ -41,6 +45,7 @@ import org.openmrs.api.db.DAOException;
 import org.openmrs.api.db.PersonDAO;
 import org.openmrs.person.PersonMergeLog;
 import org.openmrs.util.OpenmrsConstants;
+import org.openmrs.util.PhoneticUtil;
 
 /**
  * Hibernate specific Person database methods. <br/>
@@ -65,6 +70,45 @@ public class HibernatePersonDAO implements PersonDAO {
 	 */
 	private SessionFactory sessionFactory;
 	
+	/**
+	 * The weights of a match of the given/middle/family/family2 name to the first and second name of
+	 * a two name search
+	 */
+	private static final int[][] TWO_NAME_WEIGHTS = { { 4, 3 }, { 3, 4 }, { 3, 4 }, { 3, 4 } };
+	
+	/**
+	 * The weights of a match of the given/middle/family/family2 name to the first, second and third
+	 * name of a three name search
+	 */
+	private static final int[][] THREE_NAME_WEIGHTS = { { 3, 2, 1 }, { 2, 3, 1 }, { 1, 2, 3 }, { 1, 2, 3 } };
+	
+	/**
+	 * Orders the similar names by given, middle, family and family2 name
+	 */
+	private static final Comparator<PersonName> SIMILAR_NAME_ORDER = new Comparator<PersonName>() {
+		
+		public int compare(PersonName name1, PersonName name2) {
+			int result = compareNamePart(name1.getGivenName(), name2.getGivenName());
+			if (result == 0) {
+				result = compareNamePart(name1.getMiddleName(), name2.getMiddleName());
+			}
+			if (result == 0) {
+				result = compareNamePart(name1.getFamilyName(), name2.getFamilyName());
+			}
+			if (result == 0) {
+				result = compareNamePart(name1.getFamilyName2(), name2.getFamilyName2());
+			}
+			return result;
+		}
+		
+		private int compareNamePart(String part1, String part2) {
+			if (part1 == null || part2 == null) {
+				return part1 == null ? (part2 == null ? 0 : -1) : 1;
+			}
+			return part1.compareToIgnoreCase(part2);
+		}
+	};
+	
 	/**
 	 * Set session factory
 	 *
@@ -75,6 +119,12 @@ public class HibernatePersonDAO implements PersonDAO {
 	}
 	
 	/**
+	 * The candidate names are looked up by their indexed phonetic keys (see
+	 * {@link org.openmrs.api.handler.PersonNameSaveHandler#setPhoneticKeys(PersonName)}) and scored here, where a name part
+	 * matches a search name if either their soundex or metaphone keys are equal. The keys of the
+	 * names saved before they were introduced are computed by the liquibase changeset that added
+	 * them.
+	 *
 	 * @see org.openmrs.api.PersonService#getSimilarPeople(java.lang.String, java.lang.Integer, java.lang.String, java.lang.String)
 	 * @see org.openmrs.api.db.PersonDAO#getSimilarPeople(String name, Integer birthyear, String gender)
 	 */
@@ -90,76 +140,58 @@ public class HibernatePersonDAO implements PersonDAO {
 		name = name.replace(", ", " ");
 		String[] names = name.split(" ");
 		
-		StringBuilder q = new StringBuilder(
-		        "select p from Person p left join p.names as pname where p.personVoided = false and pname.voided = false and ");
-		
-		if (names.length == 1) {
-			q.append("(").append(" soundex(pname.givenName) = soundex(:n1)").append(
-			    " or soundex(pname.middleName) = soundex(:n1)").append(" or soundex(pname.familyName) = soundex(:n1) ")
-			        .append(" or soundex(pname.familyName2) = soundex(:n1) ").append(")");
-		} else if (names.length == 2) {
-			q.append("(").append(" case").append("  when pname.givenName is null then 1").append(
-			    "  when pname.givenName = '' then 1").append("  when soundex(pname.givenName) = soundex(:n1) then 4")
-			        .append("  when soundex(pname.givenName) = soundex(:n2) then 3").append("  else 0 ").append(" end")
-			        .append(" + ").append(" case").append("  when pname.middleName is null then 1").append(
-			            "  when pname.middleName = '' then 1").append(
-			            "  when soundex(pname.middleName) = soundex(:n1) then 3").append(
-			            "  when soundex(pname.middleName) = soundex(:n2) then 4").append("  else 0 ").append(" end").append(
-			            " + ").append(" case").append("  when pname.familyName is null then 1").append(
-			            "  when pname.familyName = '' then 1").append(
-			            "  when soundex(pname.familyName) = soundex(:n1) then 3").append(
-			            "  when soundex(pname.familyName) = soundex(:n2) then 4").append("  else 0 ").append(" end").append(
-			            " +").append(" case").append("  when pname.familyName2 is null then 1").append(
-			            "  when pname.familyName2 = '' then 1").append(
-			            "  when soundex(pname.familyName2) = soundex(:n1) then 3").append(
-			            "  when soundex(pname.familyName2) = soundex(:n2) then 4").append("  else 0 ").append(" end")
-			        .append(") > 6");
-		} else if (names.length == 3) {
-			q.append("(").append(" case").append("  when pname.givenName is null then 0").append(
-			    "  when soundex(pname.givenName) = soundex(:n1) then 3").append(
-			    "  when soundex(pname.givenName) = soundex(:n2) then 2").append(
-			    "  when soundex(pname.givenName) = soundex(:n3) then 1").append("  else 0 ").append(" end").append(" + ")
-			        .append(" case").append("  when pname.middleName is null then 0").append(
-			            "  when soundex(pname.middleName) = soundex(:n1) then 2").append(
-			            "  when soundex(pname.middleName) = soundex(:n2) then 3").append(
-			            "  when soundex(pname.middleName) = soundex(:n3) then 1").append("  else 0").append(" end").append(
-			            " + ").append(" case").append("  when pname.familyName is null then 0").append(
-			            "  when soundex(pname.familyName) = soundex(:n1) then 1").append(
-			            "  when soundex(pname.familyName) = soundex(:n2) then 2").append(
-			            "  when soundex(pname.familyName) = soundex(:n3) then 3").append("  else 0").append(" end").append(
-			            " +").append(" case").append("  when pname.familyName2 is null then 0").append(
-			            "  when soundex(pname.familyName2) = soundex(:n1) then 1").append(
-			            "  when soundex(pname.familyName2) = soundex(:n2) then 2").append(
-			            "  when soundex(pname.familyName2) = soundex(:n3) then 3").append("  else 0").append(" end").append(
-			            ") >= 5");
-		} else {
-			
-			// This is simply an alternative method of name matching which scales better
-			// for large names, although it is hard to imagine getting names with more than
-			// six or so tokens.  This can be easily updated to attain more desirable
-			// results; it is just a working alternative to throwing an exception.
-			
-			q.append("(").append(" case").append("  when pname.givenName is null then 0");
-			for (int i = 0; i < names.length; i++) {
-				q.append("  when soundex(pname.givenName) = soundex(:n").append(i + 1).append(") then 1");
-			}
-			q.append("  else 0").append(" end").append(")").append("+").append("(").append(" case").append(
-			    "  when pname.middleName is null then 0");
-			for (int i = 0; i < names.length; i++) {
-				q.append("  when soundex(pname.middleName) = soundex(:n").append(i + 1).append(") then 1");
-			}
-			q.append("  else 0").append(" end").append(")").append("+").append("(").append(" case").append(
-			    "  when pname.familyName is null then 0");
-			for (int i = 0; i < names.length; i++) {
-				q.append("  when soundex(pname.familyName) = soundex(:n").append(i + 1).append(") then 1");
+		String[] soundexKeys = new String[names.length];
+		String[] metaphoneKeys = new String[names.length];
+		Set<String> soundexKeySet = new HashSet<String>();
+		Set<String> metaphoneKeySet = new HashSet<String>();
+		for (int i = 0; i < names.length; i++) {
+			soundexKeys[i] = PhoneticUtil.soundex(names[i]);
+			metaphoneKeys[i] = PhoneticUtil.metaphone(names[i]);
+			if (soundexKeys[i] != null) {
+				soundexKeySet.add(soundexKeys[i]);
+				metaphoneKeySet.add(metaphoneKeys[i]);
 			}
-			q.append("  else 0").append(" end").append(")").append("+").append("(").append(" case").append(
-			    "  when pname.familyName2 is null then 0");
-			for (int i = 0; i < names.length; i++) {
-				q.append("  when soundex(pname.familyName2) = soundex(:n").append(i + 1).append(") then 1");
+		}
+		if (soundexKeySet.isEmpty()) {
+			return people;
+		}
+		
+		Query query = createSimilarPeopleQuery("pname.givenNameSoundex in (:soundex)"
+		        + " or pname.middleNameSoundex in (:soundex) or pname.familyNameSoundex in (:soundex)"
+		        + " or pname.familyName2Soundex in (:soundex) or pname.givenNameMetaphone in (:metaphone)"
+		        + " or pname.middleNameMetaphone in (:metaphone) or pname.familyNameMetaphone in (:metaphone)"
+		        + " or pname.familyName2Metaphone in (:metaphone)", birthyear, gender);
+		query.setParameterList("soundex", soundexKeySet);
+		query.setParameterList("metaphone", metaphoneKeySet);
+		
+		List<PersonName> matches = new ArrayList<PersonName>();
+		for (PersonName candidate : (List<PersonName>) query.list()) {
+			if (isSimilarName(candidate, soundexKeys, metaphoneKeys)) {
+				matches.add(candidate);
 			}
-			q.append("  else 0").append(" end").append(") >= ").append((int) (names.length * .75)); // if most of the names have at least a hit somewhere
 		}
+		Collections.sort(matches, SIMILAR_NAME_ORDER);
+		
+		for (PersonName match : matches) {
+			people.add(match.getPerson());
+		}
+		
+		return people;
+	}
+	
+	/**
+	 * Creates the query for the non voided names of non voided people that meet the given key
+	 * condition, birth year and gender
+	 *
+	 * @param keyCondition the hql condition on the phonetic keys of pname
+	 * @param birthyear the birth year, plus or minus one, or 0 for any
+	 * @param gender the gender, or null for any
+	 * @return the query
+	 */
+	private Query createSimilarPeopleQuery(String keyCondition, Integer birthyear, String gender) {
+		StringBuilder q = new StringBuilder(
+		        "select pname from PersonName pname join fetch pname.person p where p.personVoided = false and pname.voided = false and (");
+		q.append(keyCondition).append(")");
 		
 		String birthdayMatch = " (year(p.birthdate) between " + (birthyear - 1) + " and " + (birthyear + 1)
 		        + " or p.birthdate is null) ";
@@ -174,23 +206,67 @@ public class HibernatePersonDAO implements PersonDAO {
 			q.append(" and " + genderMatch);
 		}
 		
-		q.append(" order by pname.givenName asc,").append(" pname.middleName asc,").append(" pname.familyName asc").append(
-		    " pname.familyName2 asc");
-		
-		String qStr = q.toString();
-		Query query = sessionFactory.getCurrentSession().createQuery(qStr);
-		
-		for (int nameIndex = 0; nameIndex < names.length; nameIndex++) {
-			query.setString("n" + (nameIndex + 1), names[nameIndex]);
-		}
-		
-		if (qStr.contains(":gender")) {
+		Query query = sessionFactory.getCurrentSession().createQuery(q.toString());
+		if (gender != null) {
 			query.setString("gender", gender);
 		}
+		return query;
+	}
 		
-		people.addAll(query.list());
+	/**
+	 * Scores the parts of the given name against the search names:
+	 * <ul>
+	 * <li>a single search name has to match any part</li>
+	 * <li>two search names have to score more than 6 with the {@link #TWO_NAME_WEIGHTS}, where blank
+	 * parts (with empty keys) score 1</li>
+	 * <li>three search names have to score at least 5 with the {@link #THREE_NAME_WEIGHTS}</li>
+	 * <li>with more search names at least three quarters of their number of parts have to match any
+	 * of them</li>
+	 * </ul>
+	 *
+	 * @param personName the candidate name
+	 * @param soundexKeys the soundex keys of the search names
+	 * @param metaphoneKeys the metaphone keys of the search names
+	 * @return true if the name is similar enough
+	 */
+	private boolean isSimilarName(PersonName personName, String[] soundexKeys, String[] metaphoneKeys) {
+		String[] partSoundexKeys = { personName.getGivenNameSoundex(), personName.getMiddleNameSoundex(),
+		        personName.getFamilyNameSoundex(), personName.getFamilyName2Soundex() };
+		String[] partMetaphoneKeys = { personName.getGivenNameMetaphone(), personName.getMiddleNameMetaphone(),
+		        personName.getFamilyNameMetaphone(), personName.getFamilyName2Metaphone() };
+		
+		int names = soundexKeys.length;
+		int score = 0;
+		for (int part = 0; part < partSoundexKeys.length; part++) {
+			if (StringUtils.isEmpty(partSoundexKeys[part])) {
+				if (names == 2) {
+					score += 1;
+				}
+				continue;
+			}
+			for (int i = 0; i < names; i++) {
+				if (partSoundexKeys[part].equals(soundexKeys[i]) || partMetaphoneKeys[part].equals(metaphoneKeys[i])) {
+					if (names == 2) {
+						score += TWO_NAME_WEIGHTS[part][i];
+					} else if (names == 3) {
+						score += THREE_NAME_WEIGHTS[part][i];
+					} else {
+						score += 1;
+					}
+					break;
+				}
+			}
+		}
 		
-		return people;
+		if (names == 1) {
+			return score > 0;
+		} else if (names == 2) {
+			return score > 6;
+		} else if (names == 3) {
+			return score >= 5;
+		}
+		// if most of the names have at least a hit somewhere
+		return score >= (int) (names * .75);
 	}
 	
 	/**
@@ -0,0 +1,150 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.hibernate.CallbackException;
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.Transaction;
+import org.hibernate.collection.PersistentCollection;
+import org.hibernate.type.Type;
+import org.openmrs.Privilege;
+import org.openmrs.Role;
+import org.openmrs.User;
+import org.openmrs.api.context.UserContext;
+
+/**
+ * Makes the user contexts rebuild their cached privileges when a user, role or privilege is saved
+ * or deleted, including changes to the roles of a user and to the privileges and parents of a
+ * role. A changed user only invalidates the privileges cached for that user, a changed role or
+ * privilege, or a deleted user, those of every user. The caches are invalidated as soon as the change is flushed, and
+ * again once the transaction has completed, so that privileges read by another thread before the
+ * change was committed don't stay cached.
+ *
+ * @see UserContext#invalidatePrivilegeCaches()
+ * @see UserContext#invalidatePrivilegeCache(User)
+ * @since 1.11
+ */
+public class PrivilegeCacheInterceptor extends EmptyInterceptor {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private static final ThreadLocal<Boolean> rolesChanged = new ThreadLocal<Boolean>();
+	
+	private static final ThreadLocal<Set<User>> usersChanged = new ThreadLocal<Set<User>>();
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onSave(java.lang.Object, java.io.Serializable,
+	 *      java.lang.Object[], java.lang.String[], org.hibernate.type.Type[])
+	 */
+	@Override
+	public boolean onSave(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		changed(entity);
+		return false;
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onFlushDirty(java.lang.Object, java.io.Serializable,
+	 *      java.lang.Object[], java.lang.Object[], java.lang.String[], org.hibernate.type.Type[])
+	 */
+	@Override
+	public boolean onFlushDirty(Object entity, Serializable id, Object[] currentState, Object[] previousState,
+	        String[] propertyNames, Type[] types) {
+		changed(entity);
+		return false;
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onDelete(java.lang.Object, java.io.Serializable,
+	 *      java.lang.Object[], java.lang.String[], org.hibernate.type.Type[])
+	 */
+	@Override
+	public void onDelete(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		changed(entity);
+		if (entity instanceof User) {
+			// invalidating every cache makes UserContext forget the deleted user
+			rolesChanged.set(Boolean.TRUE);
+		}
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onCollectionRecreate(java.lang.Object,
+	 *      java.io.Serializable)
+	 */
+	@Override
+	public void onCollectionRecreate(Object collection, Serializable key) throws CallbackException {
+		collectionChanged(collection);
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onCollectionRemove(java.lang.Object,
+	 *      java.io.Serializable)
+	 */
+	@Override
+	public void onCollectionRemove(Object collection, Serializable key) throws CallbackException {
+		collectionChanged(collection);
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onCollectionUpdate(java.lang.Object,
+	 *      java.io.Serializable)
+	 */
+	@Override
+	public void onCollectionUpdate(Object collection, Serializable key) throws CallbackException {
+		collectionChanged(collection);
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#afterTransactionCompletion(org.hibernate.Transaction)
+	 */
+	@Override
+	public void afterTransactionCompletion(Transaction tx) {
+		Set<User> users = usersChanged.get();
+		if (users != null) {
+			usersChanged.remove();
+			for (User user : users) {
+				UserContext.invalidatePrivilegeCache(user);
+			}
+		}
+		if (rolesChanged.get() != null) {
+			rolesChanged.remove();
+			UserContext.invalidatePrivilegeCaches();
+		}
+	}
+	
+	private void collectionChanged(Object collection) {
+		if (collection instanceof PersistentCollection) {
+			changed(((PersistentCollection) collection).getOwner());
+		}
+	}
+	
+	private void changed(Object entity) {
+		if (entity instanceof User) {
+			User user = (User) entity;
+			UserContext.invalidatePrivilegeCache(user);
+			Set<User> users = usersChanged.get();
+			if (users == null) {
+				users = new HashSet<User>();
+				usersChanged.set(users);
+			}
+			users.add(user);
+		} else if (entity instanceof Role || entity instanceof Privilege) {
+			UserContext.invalidatePrivilegeCaches();
+			rolesChanged.set(Boolean.TRUE);
+		}
+	}
+}
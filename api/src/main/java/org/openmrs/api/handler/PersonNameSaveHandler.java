@@ -18,11 +18,12 @@ import java.util.Date;
 import org.openmrs.PersonName;
 import org.openmrs.User;
 import org.openmrs.annotation.Handler;
+import org.openmrs.util.PhoneticUtil;
 
 /**
- * This is called every time a {@link PersonName} object is saved. The current implemention just
- * trims out the whitespace from the beginning and end of the given/middle/familyname/familyName2
- * attributes
+ * This is called every time a {@link PersonName} object is saved. The current implemention trims
+ * out the whitespace from the beginning and end of the given/middle/familyname/familyName2
+ * attributes and computes their phonetic keys, which are used to find similar people
  */
 @Handler(supports = PersonName.class)
 public class PersonNameSaveHandler implements SaveHandler<PersonName> {
@@ -44,6 +45,33 @@ public class PersonNameSaveHandler implements SaveHandler<PersonName> {
 		if (personName.getFamilyName2() != null) {
 			personName.setFamilyName2(personName.getFamilyName2().trim());
 		}
+		setPhoneticKeys(personName);
+	}
+	
+	/**
+	 * Computes the soundex and metaphone keys of the given/middle/familyname/familyName2 attributes
+	 * of the given name. Blank parts get empty keys, so that every name that has been through here
+	 * has non null keys.
+	 *
+	 * @param personName the name to set the keys of
+	 * @see PhoneticUtil
+	 * @since 1.11
+	 * @should set the phonetic keys of the name parts
+	 * @should set empty keys for blank name parts
+	 */
+	public static void setPhoneticKeys(PersonName personName) {
+		personName.setGivenNameSoundex(getKey(PhoneticUtil.soundex(personName.getGivenName())));
+		personName.setMiddleNameSoundex(getKey(PhoneticUtil.soundex(personName.getMiddleName())));
+		personName.setFamilyNameSoundex(getKey(PhoneticUtil.soundex(personName.getFamilyName())));
+		personName.setFamilyName2Soundex(getKey(PhoneticUtil.soundex(personName.getFamilyName2())));
+		personName.setGivenNameMetaphone(getKey(PhoneticUtil.metaphone(personName.getGivenName())));
+		personName.setMiddleNameMetaphone(getKey(PhoneticUtil.metaphone(personName.getMiddleName())));
+		personName.setFamilyNameMetaphone(getKey(PhoneticUtil.metaphone(personName.getFamilyName())));
+		personName.setFamilyName2Metaphone(getKey(PhoneticUtil.metaphone(personName.getFamilyName2())));
+	}
+	
+	private static String getKey(String key) {
+		return key == null ? "" : key;
 	}
 	
 }
@@ -814,6 +814,13 @@ public class AdministrationServiceImpl extends BaseOpenmrsService implements Adm
 		return gp;
 	}
 	
+	/**
+	 * @see org.openmrs.api.AdministrationService#refreshGlobalProperties()
+	 */
+	public void refreshGlobalProperties() {
+		dao.refreshGlobalProperties();
+	}
+	
 	/**
 	 * @see org.openmrs.api.AdministrationService#executeSQL(java.lang.String, boolean)
 	 */
@@ -1226,6 +1226,14 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 		return dao.getNextConcept(c);
 	}
 	
+	/**
+	 * @see org.openmrs.api.ConceptService#getNextConcepts(java.lang.Integer, boolean, int)
+	 */
+	@Transactional(readOnly = true)
+	public List<Concept> getNextConcepts(Integer conceptId, boolean includeRetired, int maxResults) {
+		return dao.getNextConcepts(conceptId, includeRetired, maxResults);
+	}
+	
 	/**
 	 * Convenience method
 	 *
@@ -1952,12 +1960,16 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 	 */
 	@Override
 	public void updateConceptIndexes(Integer conceptIdStart, Integer conceptIdEnd) throws APIException {
+		Context.getConceptService().rebuildConceptIndexes(conceptIdStart, conceptIdEnd);
+	}
+	
+	/**
+	 * @see ConceptService#rebuildConceptIndexes(Integer, Integer)
+	 */
+	@Override
+	public int rebuildConceptIndexes(Integer conceptIdStart, Integer conceptIdEnd) throws APIException {
 		checkIfLocked();
-		Integer i = conceptIdStart;
-		ConceptService cs = Context.getConceptService();
-		while (i++ <= conceptIdEnd) {
-			updateConceptWord(cs.getConcept(i));
-		}
+		return dao.updateConceptWords(conceptIdStart, conceptIdEnd);
 	}
 	
 	/**
@@ -47,6 +47,7 @@ import org.openmrs.Visit;
 import org.openmrs.activelist.Allergy;
 import org.openmrs.activelist.Problem;
 import org.openmrs.api.APIException;
+import org.openmrs.api.AdministrationService;
 import org.openmrs.api.BlankIdentifierException;
 import org.openmrs.api.DuplicateIdentifierException;
 import org.openmrs.api.EncounterService;
@@ -63,6 +64,8 @@ import org.openmrs.api.VisitService;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.PatientDAO;
 import org.openmrs.order.OrderUtil;
+import org.openmrs.patient.DuplicatePatientCandidate;
+import org.openmrs.patient.DuplicatePatientDetector;
 import org.openmrs.patient.IdentifierValidator;
 import org.openmrs.patient.impl.LuhnIdentifierValidator;
 import org.openmrs.person.PersonMergeLog;
@@ -768,6 +771,49 @@ public class PatientServiceImpl extends BaseOpenmrsService implements PatientSer
 		return dao.getDuplicatePatientsByAttributes(attributes);
 	}
 	
+	/**
+	 * @see org.openmrs.api.PatientService#detectDuplicatePatients()
+	 */
+	public int detectDuplicatePatients() throws APIException {
+		AdministrationService as = Context.getAdministrationService();
+		double threshold = OpenmrsConstants.GLOBAL_PROPERTY_DUPLICATE_PATIENT_THRESHOLD_DEFAULT_VALUE;
+		String thresholdValue = as.getGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_DUPLICATE_PATIENT_THRESHOLD);
+		if (StringUtils.isNotBlank(thresholdValue)) {
+			try {
+				threshold = Double.parseDouble(thresholdValue.trim());
+			}
+			catch (NumberFormatException e) {
+				log.warn("Invalid " + OpenmrsConstants.GLOBAL_PROPERTY_DUPLICATE_PATIENT_THRESHOLD + " global property: "
+				        + thresholdValue);
+			}
+		}
+		
+		DuplicatePatientDetector detector;
+		try {
+			detector = new DuplicatePatientDetector(as.getGlobalProperty(
+			    OpenmrsConstants.GLOBAL_PROPERTY_DUPLICATE_PATIENT_BLOCKING_KEYS,
+			    OpenmrsConstants.GLOBAL_PROPERTY_DUPLICATE_PATIENT_BLOCKING_KEYS_DEFAULT_VALUE), threshold);
+		}
+		catch (IllegalArgumentException e) {
+			throw new APIException("Invalid " + OpenmrsConstants.GLOBAL_PROPERTY_DUPLICATE_PATIENT_BLOCKING_KEYS
+			        + " global property: " + e.getMessage(), e);
+		}
+		
+		dao.fillDuplicatePatientDetector(detector);
+		List<DuplicatePatientDetector.Match> matches = detector.detect(Runtime.getRuntime().availableProcessors());
+		dao.replaceDuplicatePatientCandidates(matches);
+		return matches.size();
+	}
+	
+	/**
+	 * @see org.openmrs.api.PatientService#getDuplicatePatientCandidates(java.lang.Integer, java.lang.Integer)
+	 */
+	@Transactional(readOnly = true)
+	public List<DuplicatePatientCandidate> getDuplicatePatientCandidates(Integer start, Integer length)
+	        throws APIException {
+		return dao.getDuplicatePatientCandidates(start, length);
+	}
+	
 	/**
 	 * generate a relationship hash for use in mergePatients; follows the convention:
 	 * [relationshipType][A|B][relativeId]
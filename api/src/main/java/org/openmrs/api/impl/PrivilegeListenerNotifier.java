@@ -0,0 +1,248 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.impl;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.PrivilegeListener;
+import org.openmrs.User;
+import org.openmrs.util.OpenmrsUtil;
+
+/**
+ * Passes privilege checks on to {@link org.openmrs.AsynchronousPrivilegeListener}s from a
+ * background thread. Checks are published into a fixed size ring buffer without taking any lock,
+ * and the background thread delivers them in batches, passing each distinct user, privilege and
+ * result on only once per batch. When the buffer is full (because the listeners can't keep up)
+ * checks are dropped and counted rather than slowing down the threads doing the checks.
+ * <p>
+ * The background thread is started by the first check published and stops once no checks have been
+ * published for a while. It has no open session or authenticated user.
+ *
+ * @since 1.11
+ */
+class PrivilegeListenerNotifier {
+	
+	private static final Log log = LogFactory.getLog(PrivilegeListenerNotifier.class);
+	
+	/**
+	 * The number of checks the buffer holds, must be a power of 2
+	 */
+	static final int BUFFER_SIZE = 4096;
+	
+	/**
+	 * How long the background thread waits between two batches
+	 */
+	static final long DELIVERY_INTERVAL_MS = 100;
+	
+	/**
+	 * How long the background thread keeps running without checks being published
+	 */
+	static final long IDLE_TIMEOUT_MS = 60000;
+	
+	private final List<PrivilegeListener> listeners;
+	
+	private final AtomicReferenceArray<PrivilegeCheck> buffer = new AtomicReferenceArray<PrivilegeCheck>(BUFFER_SIZE);
+	
+	/**
+	 * The sequence number of the next check to be published
+	 */
+	private final AtomicLong head = new AtomicLong();
+	
+	/**
+	 * The sequence number of the next check to be delivered, only moved by the background thread
+	 */
+	private final AtomicLong tail = new AtomicLong();
+	
+	private final AtomicLong dropped = new AtomicLong();
+	
+	private final AtomicBoolean running = new AtomicBoolean(false);
+	
+	/**
+	 * @param listeners the listeners to notify
+	 */
+	PrivilegeListenerNotifier(List<PrivilegeListener> listeners) {
+		this.listeners = listeners;
+	}
+	
+	/**
+	 * Queues a privilege check to be passed on to the listeners, and makes sure the background
+	 * thread is running
+	 *
+	 * @param user the authenticated user or <code>null</code> if not authenticated
+	 * @param privilege the checked privilege
+	 * @param hasPrivilege whether the user has the privilege
+	 * @should deliver the checks to the listeners from another thread
+	 */
+	void publish(User user, String privilege, boolean hasPrivilege) {
+		offer(new PrivilegeCheck(user, privilege, hasPrivilege));
+		if (!running.get()) {
+			start();
+		}
+	}
+	
+	/**
+	 * Puts a privilege check into the buffer, unless it is full
+	 *
+	 * @param check the check
+	 * @return true if the check was put into the buffer
+	 */
+	boolean offer(PrivilegeCheck check) {
+		while (true) {
+			long sequence = head.get();
+			if (sequence - tail.get() >= BUFFER_SIZE) {
+				if (dropped.incrementAndGet() % BUFFER_SIZE == 1) {
+					log.warn("The privilege listeners can't keep up, " + dropped.get() + " privilege checks dropped so far");
+				}
+				return false;
+			}
+			if (head.compareAndSet(sequence, sequence + 1)) {
+				buffer.set(index(sequence), check);
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Passes the published checks on to the listeners, in the calling thread
+	 *
+	 * @return the number of distinct checks delivered
+	 * @should deliver a repeated check only once per batch
+	 * @should drop checks when the buffer is full
+	 */
+	int deliver() {
+		Map<PrivilegeCheck, PrivilegeCheck> batch = new LinkedHashMap<PrivilegeCheck, PrivilegeCheck>();
+		long sequence = tail.get();
+		while (sequence < head.get()) {
+			int index = index(sequence);
+			PrivilegeCheck check = buffer.get(index);
+			if (check == null) {
+				// claimed, but not written yet
+				break;
+			}
+			buffer.set(index, null);
+			tail.set(++sequence);
+			if (!batch.containsKey(check)) {
+				batch.put(check, check);
+			}
+		}
+		
+		for (PrivilegeCheck check : batch.keySet()) {
+			for (PrivilegeListener listener : listeners) {
+				try {
+					listener.privilegeChecked(check.user, check.privilege, check.hasPrivilege);
+				}
+				catch (Exception e) {
+					log.error("Privilege listener has failed", e);
+				}
+			}
+		}
+		
+		return batch.size();
+	}
+	
+	/**
+	 * @return the number of checks that were dropped because the buffer was full
+	 */
+	long getDroppedCount() {
+		return dropped.get();
+	}
+	
+	private void start() {
+		if (!running.compareAndSet(false, true)) {
+			return;
+		}
+		
+		Thread thread = new Thread(new Runnable() {
+			
+			public void run() {
+				deliverUntilIdle();
+			}
+		}, "PrivilegeListenerNotifier");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	private void deliverUntilIdle() {
+		long lastDelivery = System.currentTimeMillis();
+		try {
+			while (true) {
+				if (deliver() > 0) {
+					lastDelivery = System.currentTimeMillis();
+				} else if (System.currentTimeMillis() - lastDelivery > IDLE_TIMEOUT_MS) {
+					running.set(false);
+					// a check published after the last delivery must not be left in the buffer
+					if (tail.get() == head.get() || !running.compareAndSet(false, true)) {
+						return;
+					}
+				}
+				Thread.sleep(DELIVERY_INTERVAL_MS);
+			}
+		}
+		catch (InterruptedException e) {
+			running.set(false);
+			log.debug("Privilege listener notification was interrupted", e);
+		}
+	}
+	
+	private static int index(long sequence) {
+		return (int) (sequence & (BUFFER_SIZE - 1));
+	}
+	
+	/**
+	 * A privilege check waiting to be delivered
+	 */
+	static final class PrivilegeCheck {
+		
+		private final User user;
+		
+		private final String privilege;
+		
+		private final boolean hasPrivilege;
+		
+		PrivilegeCheck(User user, String privilege, boolean hasPrivilege) {
+			this.user = user;
+			this.privilege = privilege;
+			this.hasPrivilege = hasPrivilege;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof PrivilegeCheck)) {
+				return false;
+			}
+			PrivilegeCheck other = (PrivilegeCheck) obj;
+			return hasPrivilege == other.hasPrivilege && OpenmrsUtil.nullSafeEquals(privilege, other.privilege)
+			        && OpenmrsUtil.nullSafeEquals(getUserId(), other.getUserId());
+		}
+		
+		@Override
+		public int hashCode() {
+			int hash = privilege == null ? 0 : privilege.hashCode();
+			Integer userId = getUserId();
+			hash = 31 * hash + (userId == null ? 0 : userId.hashCode());
+			return 31 * hash + (hasPrivilege ? 1 : 0);
+		}
+		
+		private Integer getUserId() {
+			return user == null ? null : user.getUserId();
+		}
+	}
+}
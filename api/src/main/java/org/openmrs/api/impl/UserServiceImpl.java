@@ -24,6 +24,7 @@ import java.util.Vector;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.AsynchronousPrivilegeListener;
 import org.openmrs.Person;
 import org.openmrs.Privilege;
 import org.openmrs.PrivilegeListener;
@@ -33,6 +34,7 @@ import org.openmrs.api.APIAuthenticationException;
 import org.openmrs.api.APIException;
 import org.openmrs.api.UserService;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.api.db.UserDAO;
 import org.openmrs.patient.impl.LuhnIdentifierValidator;
@@ -60,6 +62,18 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 	@Autowired(required = false)
 	List<PrivilegeListener> privilegeListeners;
 	
+	/**
+	 * The listeners notified in the thread doing the check
+	 */
+	private List<PrivilegeListener> synchronousPrivilegeListeners;
+	
+	/**
+	 * Notifies the listeners that opted to be notified from a background thread
+	 */
+	private PrivilegeListenerNotifier privilegeListenerNotifier;
+	
+	private volatile boolean privilegeListenersSplit = false;
+	
 	public UserServiceImpl() {
 	}
 	
@@ -104,7 +118,9 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 			OpenmrsUtil.validatePassword(user.getUsername(), password, user.getSystemId());
 		}
 		
-		return dao.saveUser(user, password);
+		User savedUser = dao.saveUser(user, password);
+		UserContext.invalidatePrivilegeCache(savedUser);
+		return savedUser;
 	}
 	
 	/**
@@ -263,13 +279,16 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 		}
 		
 		dao.deletePrivilege(privilege);
+		UserContext.invalidatePrivilegeCaches();
 	}
 	
 	/**
 	 * @see org.openmrs.api.UserService#savePrivilege(org.openmrs.Privilege)
 	 */
 	public Privilege savePrivilege(Privilege privilege) throws APIException {
-		return dao.savePrivilege(privilege);
+		Privilege savedPrivilege = dao.savePrivilege(privilege);
+		UserContext.invalidatePrivilegeCaches();
+		return savedPrivilege;
 	}
 	
 	/**
@@ -323,6 +342,7 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 		}
 		
 		dao.deleteRole(role);
+		UserContext.invalidatePrivilegeCaches();
 	}
 	
 	/**
@@ -338,7 +358,9 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 		
 		checkPrivileges(role);
 		
-		return dao.saveRole(role);
+		Role savedRole = dao.saveRole(role);
+		UserContext.invalidatePrivilegeCaches();
+		return savedRole;
 	}
 	
 	/**
@@ -677,8 +699,20 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 	@Override
 	@Transactional(readOnly = true)
 	public void notifyPrivilegeListeners(User user, String privilege, boolean hasPrivilege) {
-		if (privilegeListeners != null) {
-			for (PrivilegeListener privilegeListener : privilegeListeners) {
+		if (privilegeListeners == null) {
+			return;
+		}
+		
+		if (!privilegeListenersSplit) {
+			splitPrivilegeListeners();
+		}
+		
+		if (privilegeListenerNotifier != null) {
+			privilegeListenerNotifier.publish(user, privilege, hasPrivilege);
+		}
+		
+		if (synchronousPrivilegeListeners != null) {
+			for (PrivilegeListener privilegeListener : synchronousPrivilegeListeners) {
 				try {
 					privilegeListener.privilegeChecked(user, privilege, hasPrivilege);
 				}
@@ -689,6 +723,30 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 		}
 	}
 	
+	/**
+	 * Separates the listeners that implement {@link AsynchronousPrivilegeListener} from the ones that
+	 * are notified in the thread doing the check
+	 */
+	private synchronized void splitPrivilegeListeners() {
+		if (privilegeListenersSplit) {
+			return;
+		}
+		
+		List<PrivilegeListener> synchronous = new ArrayList<PrivilegeListener>();
+		List<PrivilegeListener> asynchronous = new ArrayList<PrivilegeListener>();
+		for (PrivilegeListener privilegeListener : privilegeListeners) {
+			if (privilegeListener instanceof AsynchronousPrivilegeListener) {
+				asynchronous.add(privilegeListener);
+			} else {
+				synchronous.add(privilegeListener);
+			}
+		}
+		
+		synchronousPrivilegeListeners = synchronous.isEmpty() ? null : synchronous;
+		privilegeListenerNotifier = asynchronous.isEmpty() ? null : new PrivilegeListenerNotifier(asynchronous);
+		privilegeListenersSplit = true;
+	}
+	
 	@Override
 	public User saveUserProperty(String key, String value) {
 		User user = Context.getAuthenticatedUser();
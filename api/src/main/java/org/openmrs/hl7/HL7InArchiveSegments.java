@@ -0,0 +1,350 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.hl7;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.text.DecimalFormat;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.openmrs.util.OpenmrsUtil;
+
+/**
+ * Stores migrated hl7 in archives in append-only segment files, one per day the messages were
+ * archived on (&lt;archives directory&gt;/&lt;year&gt;/&lt;month&gt;/&lt;day&gt;.segment), instead
+ * of one small file per message. The location of a message is the uri of its segment file with
+ * the byte offset and length of the message as fragment, e.g.
+ * <code>file:/hl7_archives/2013/05/21.segment#1024,233</code>, and is saved as the hl7 data of
+ * the migrated archive. Every segment file has an index file next to it (&lt;day&gt;.index) with a
+ * line per message holding the archive id, uuid, offset and length, so that the messages can be
+ * found even without the database.<br/>
+ * <br/>
+ * Locations without a fragment are whole files, written by earlier versions.
+ *
+ * @since 1.11
+ */
+public class HL7InArchiveSegments {
+	
+	public static final String SEGMENT_FILE_EXTENSION = ".segment";
+	
+	public static final String INDEX_FILE_EXTENSION = ".index";
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * Segment files up to this size are memory mapped by a {@link Reader}, bigger ones are read
+	 * with positioned reads
+	 */
+	private static final long MAX_MAPPED_SIZE = 64 * 1024 * 1024;
+	
+	/**
+	 * Serializes appends within this JVM, file locks are only held on behalf of the whole JVM
+	 */
+	private static final Object APPEND_LOCK = new Object();
+	
+	private HL7InArchiveSegments() {
+	}
+	
+	/**
+	 * Reads the message at the given location with a positioned read
+	 *
+	 * @param location the location of the message
+	 * @return the message
+	 * @throws IOException if the message cannot be read
+	 * @should read a message written by a writer
+	 * @should read a whole file for a location without offset
+	 */
+	public static String read(URI location) throws IOException {
+		Reader reader = new Reader(0);
+		try {
+			return reader.read(location);
+		}
+		finally {
+			reader.close();
+		}
+	}
+	
+	/**
+	 * Appends messages to the segment files of the days they were archived on. The segment files
+	 * are opened as they are needed and stay open until the writer is closed.
+	 */
+	public static class Writer {
+		
+		private final File archivesDirectory;
+		
+		private final Map<File, Segment> segments = new HashMap<File, Segment>();
+		
+		/**
+		 * @param archivesDirectory the root directory of the segment files
+		 */
+		public Writer(File archivesDirectory) {
+			this.archivesDirectory = archivesDirectory;
+		}
+		
+		/**
+		 * Appends the hl7 data of the given archive to the segment file of the day it was created
+		 *
+		 * @param archive the archive to write
+		 * @return the location of the message
+		 * @throws IOException if the message cannot be written
+		 * @should not overlap messages appended by another writer
+		 */
+		public URI append(HL7InArchive archive) throws IOException {
+			Segment segment = getSegment(archive);
+			byte[] data = archive.getHL7Data().getBytes(UTF8);
+			long offset = segment.append(data);
+			segment.index(archive.getHL7InArchiveId() + "\t" + archive.getUuid() + "\t" + offset + "\t" + data.length
+			        + "\n");
+			try {
+				URI file = segment.file.toURI();
+				return new URI(file.getScheme(), file.getSchemeSpecificPart(), offset + "," + data.length);
+			}
+			catch (URISyntaxException e) {
+				throw new IOException("Unable to build the location of archive " + archive.getUuid(), e);
+			}
+		}
+		
+		/**
+		 * Forces everything written so far to the disk
+		 *
+		 * @throws IOException if the segment files cannot be synced
+		 */
+		public void flush() throws IOException {
+			for (Segment segment : segments.values()) {
+				segment.flush();
+			}
+		}
+		
+		/**
+		 * Flushes and closes all open segment files
+		 *
+		 * @throws IOException if a segment file cannot be closed
+		 */
+		public void close() throws IOException {
+			try {
+				flush();
+			}
+			finally {
+				for (Segment segment : segments.values()) {
+					segment.close();
+				}
+				segments.clear();
+			}
+		}
+		
+		private Segment getSegment(HL7InArchive archive) throws IOException {
+			// number formatter used to format month and day with zero padding
+			DecimalFormat df = new DecimalFormat("00");
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTime(archive.getDateCreated());
+			File monthDir = new File(new File(archivesDirectory, Integer.toString(calendar.get(Calendar.YEAR))), df
+			        .format(calendar.get(Calendar.MONTH) + 1));
+			String day = df.format(calendar.get(Calendar.DAY_OF_MONTH));
+			File file = new File(monthDir, day + SEGMENT_FILE_EXTENSION);
+			
+			Segment segment = segments.get(file);
+			if (segment == null) {
+				if (!monthDir.isDirectory() && !monthDir.mkdirs()) {
+					throw new IOException("Unable to create the hl7 archive directory " + monthDir);
+				}
+				segment = new Segment(file, new File(monthDir, day + INDEX_FILE_EXTENSION));
+				segments.put(file, segment);
+			}
+			return segment;
+		}
+	}
+	
+	/**
+	 * An open segment file and its index. Other writers, in this or another process, may append to
+	 * the same file, so the offset of a message is the size of the file while it is locked.
+	 */
+	private static class Segment {
+		
+		private final File file;
+		
+		private final FileOutputStream data;
+		
+		private final FileOutputStream index;
+		
+		Segment(File file, File indexFile) throws IOException {
+			this.file = file;
+			this.data = new FileOutputStream(file, true);
+			try {
+				this.index = new FileOutputStream(indexFile, true);
+			}
+			catch (IOException e) {
+				data.close();
+				throw e;
+			}
+		}
+		
+		long append(byte[] bytes) throws IOException {
+			FileChannel channel = data.getChannel();
+			synchronized (APPEND_LOCK) {
+				FileLock lock = channel.lock();
+				try {
+					long offset = channel.size();
+					ByteBuffer buffer = ByteBuffer.wrap(bytes);
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+					return offset;
+				}
+				finally {
+					lock.release();
+				}
+			}
+		}
+		
+		void index(String line) throws IOException {
+			index.write(line.getBytes(UTF8));
+		}
+		
+		void flush() throws IOException {
+			data.getChannel().force(false);
+			index.getChannel().force(false);
+		}
+		
+		void close() throws IOException {
+			try {
+				data.close();
+			}
+			finally {
+				index.close();
+			}
+		}
+	}
+	
+	/**
+	 * Reads messages from segment files. The segment files of up to 64MB are memory mapped the first
+	 * time a message is read from them, so reading many messages of the same day doesn't read the
+	 * file over and over. Bigger files are read with positioned reads.
+	 */
+	public static class Reader {
+		
+		private final int maxMappedFiles;
+		
+		private final Map<File, MappedByteBuffer> mapped;
+		
+		/**
+		 * @param maxMappedFiles the number of segment files to keep mapped, 0 to never map files
+		 */
+		public Reader(final int maxMappedFiles) {
+			this.maxMappedFiles = maxMappedFiles;
+			this.mapped = new LinkedHashMap<File, MappedByteBuffer>(16, 0.75f, true) {
+				
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<File, MappedByteBuffer> eldest) {
+					return size() > maxMappedFiles;
+				}
+			};
+		}
+		
+		/**
+		 * Reads the message at the given location
+		 *
+		 * @param location the location of the message
+		 * @return the message
+		 * @throws IOException if the message cannot be read
+		 */
+		public String read(URI location) throws IOException {
+			String fragment = location.getFragment();
+			if (fragment == null) {
+				return OpenmrsUtil.getFileAsString(new File(location));
+			}
+			
+			File file;
+			long offset;
+			int length;
+			try {
+				file = new File(new URI(location.getScheme(), location.getSchemeSpecificPart(), null));
+				String[] parts = fragment.split(",");
+				offset = Long.parseLong(parts[0]);
+				length = Integer.parseInt(parts[1]);
+			}
+			catch (Exception e) {
+				throw new IOException("Invalid hl7 archive location: " + location, e);
+			}
+			
+			byte[] bytes = new byte[length];
+			MappedByteBuffer buffer = getMapped(file, offset + length);
+			if (buffer != null) {
+				ByteBuffer slice = buffer.duplicate();
+				slice.position((int) offset);
+				slice.get(bytes);
+			} else {
+				RandomAccessFile raf = new RandomAccessFile(file, "r");
+				try {
+					ByteBuffer target = ByteBuffer.wrap(bytes);
+					FileChannel channel = raf.getChannel();
+					while (target.hasRemaining()) {
+						if (channel.read(target, offset + target.position()) < 0) {
+							throw new IOException("Unexpected end of " + file + " reading " + location);
+						}
+					}
+				}
+				finally {
+					raf.close();
+				}
+			}
+			return new String(bytes, UTF8);
+		}
+		
+		/**
+		 * Releases the mapped segment files
+		 */
+		public void close() {
+			mapped.clear();
+		}
+		
+		private MappedByteBuffer getMapped(File file, long end) throws IOException {
+			if (maxMappedFiles <= 0) {
+				return null;
+			}
+			MappedByteBuffer buffer = mapped.get(file);
+			// map the file again if messages have been appended to it since it was mapped
+			if (buffer == null || buffer.capacity() < end) {
+				FileInputStream in = new FileInputStream(file);
+				try {
+					FileChannel channel = in.getChannel();
+					if (channel.size() > MAX_MAPPED_SIZE) {
+						return null;
+					}
+					buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+					mapped.put(file, buffer);
+				}
+				finally {
+					IOUtils.closeQuietly(in);
+				}
+			}
+			return buffer;
+		}
+	}
+}
@@ -14,6 +14,7 @@
 package org.openmrs.hl7;
 
 import java.io.Serializable;
+import java.util.Date;
 
 /**
  * Represents an hl7 message that has yet to be processed.
@@ -30,6 +31,8 @@ public class HL7InQueue extends HL7QueueItem implements Serializable {
 	
 	private Integer messageState;
 	
+	private Date dateClaimed;
+	
 	/**
 	 * Default constructor
 	 */
@@ -112,6 +115,23 @@ public class HL7InQueue extends HL7QueueItem implements Serializable {
 		this.messageState = messageState;
 	}
 	
+	/**
+	 * @return when the item was claimed by a processor, null if it was never claimed
+	 * @see HL7Service#claimNextHL7InQueues(int)
+	 * @since 1.11
+	 */
+	public Date getDateClaimed() {
+		return dateClaimed;
+	}
+	
+	/**
+	 * @param dateClaimed when the item was claimed by a processor
+	 * @since 1.11
+	 */
+	public void setDateClaimed(Date dateClaimed) {
+		this.dateClaimed = dateClaimed;
+	}
+	
 	/**
 	 * @see org.openmrs.OpenmrsObject#getId()
 	 * @since 1.5
@@ -13,9 +13,22 @@
  */
 package org.openmrs.hl7;
 
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.util.OpenmrsConstants;
 import org.springframework.transaction.annotation.Transactional;
 
 import ca.uhn.hl7v2.HL7Exception;
@@ -24,7 +37,17 @@ import ca.uhn.hl7v2.HL7Exception;
  * Processes message in the HL7 inbound queue. Messages are moved into either the archive or error
  * table depending on success or failure of the processing. You may, however, set a global property
  * that causes the processor to ignore messages regarding unknown patients from a non-local HL7
- * source. (i.e. those messages neither go to the archive or the error table.)
+ * source. (i.e. those messages neither go to the archive or the error table.)<br/>
+ * <br/>
+ * When the {@link OpenmrsConstants#GLOBAL_PROPERTY_HL7_PROCESSOR_WORKER_THREADS} global property is
+ * greater than one (and the processor is run by a daemon thread, like the scheduled
+ * ProcessHL7InQueueTask), the queue is claimed in batches with
+ * {@link HL7Service#claimNextHL7InQueues(int)} and the messages are processed by that many worker
+ * threads. Messages are partitioned by patient (see {@link #getPartitionKey(HL7InQueue)}) so that
+ * the messages about one patient are still processed one after the other, in the order they were
+ * received. Claims of processors that stopped before finishing them are put back in the queue at
+ * the start of the next run, once they are older than the
+ * {@link OpenmrsConstants#GLOBAL_PROPERTY_HL7_PROCESSOR_CLAIM_TIMEOUT} global property.
  *
  * @version 1.0
  */
@@ -33,11 +56,27 @@ public class HL7InQueueProcessor /* implements Runnable */{
 	
 	private final Log log = LogFactory.getLog(this.getClass());
 	
-	private static Boolean isRunning = false; // allow only one running
+	// allow only one running processor per JVM
+	private static final AtomicBoolean isRunning = new AtomicBoolean(false);
 	
 	private static Integer count = 0;
 	
-	// processor per JVM
+	private static final int CLAIM_BATCH_SIZE = 100;
+	
+	private static final int WORKER_QUEUE_CAPACITY = 200;
+	
+	/**
+	 * Handed to the workers to tell them that all claimed messages have been dispatched
+	 */
+	private static final HL7InQueue END_OF_QUEUE = new HL7InQueue();
+	
+	private static volatile Statistics statistics = null;
+	
+	/**
+	 * Stands in for the time openmrs was started, queue entries marked as processing without a claim
+	 * date are only released once the claim timeout has passed since then
+	 */
+	private static final long loadedAt = System.currentTimeMillis();
 	
 	/**
 	 * Empty constructor (requires context to be set using <code>setContext(Context)</code> method
@@ -46,10 +85,24 @@ public class HL7InQueueProcessor /* implements Runnable */{
 	public HL7InQueueProcessor() {
 	}
 	
+	/**
+	 * @deprecated the number of processed messages is no longer used, see {@link #getStatistics()}
+	 */
+	@Deprecated
 	public static void setCount(Integer count) {
 		HL7InQueueProcessor.count = count;
 	}
 	
+	/**
+	 * Gets the throughput and lag of the current, or last, run of the processor in this JVM
+	 *
+	 * @return the statistics or null if the processor has not been run yet
+	 * @since 1.11
+	 */
+	public static Statistics getStatistics() {
+		return statistics;
+	}
+	
 	/**
 	 * Process a single queue entry from the inbound HL7 queue
 	 *
@@ -68,18 +121,20 @@ public class HL7InQueueProcessor /* implements Runnable */{
 		catch (HL7Exception e) {
 			log.error("Unable to process hl7 in queue", e);
 		}
-		setCount(count + 1);
-		if (count > 25) {
-			// clean up memory after processing each queue entry (otherwise, the
-			// memory-intensive process may crash or eat up all our memory)
-			try {
-				Context.getHL7Service().garbageCollect();
-			}
-			catch (Exception e) {
-				log.error("Exception while performing garbagecollect in hl7 inbound processor", e);
-			}
+		
+		Statistics current = statistics;
+		if (current != null) {
+			current.addProcessed(hl7InQueue);
 		}
 		
+		// clean up memory after processing each queue entry (otherwise, the
+		// memory-intensive process may crash or eat up all our memory)
+		try {
+			Context.getHL7Service().garbageCollect();
+		}
+		catch (Exception e) {
+			log.error("Exception while performing garbagecollect in hl7 inbound processor", e);
+		}
 	}
 	
 	/**
@@ -103,23 +158,302 @@ public class HL7InQueueProcessor /* implements Runnable */{
 	 * Starts up a thread to process all existing HL7InQueue entries
 	 */
 	public void processHL7InQueue() throws HL7Exception {
-		synchronized (isRunning) {
-			if (isRunning) {
-				log.warn("HL7 processor aborting (another processor already running)");
-				return;
-			}
-			isRunning = true;
+		if (!isRunning.compareAndSet(false, true)) {
+			log.warn("HL7 processor aborting (another processor already running)");
+			return;
 		}
 		try {
 			log.debug("Start processing hl7 in queue");
-			while (processNextHL7InQueue()) {
-				// loop until queue is empty
+			releaseAbandonedClaims();
+			int workerThreads = getWorkerThreads();
+			if (workerThreads > 1 && Daemon.isDaemonThread()) {
+				statistics = new Statistics(workerThreads);
+				processConcurrently(workerThreads);
+			} else {
+				statistics = new Statistics(1);
+				while (processNextHL7InQueue()) {
+					// loop until queue is empty
+				}
 			}
 			log.debug("Done processing hl7 in queue");
 		}
 		finally {
-			isRunning = false;
+			if (statistics != null) {
+				statistics.finish();
+				if (log.isInfoEnabled() && statistics.getProcessedMessages() > 0) {
+					log.info("Processed " + statistics.getProcessedMessages() + " hl7 messages with "
+					        + statistics.getWorkerThreads() + " threads at " + statistics.getMessagesPerSecond()
+					        + " messages per second");
+				}
+			}
+			isRunning.set(false);
+		}
+	}
+	
+	/**
+	 * Claims the pending queue entries in batches and hands each one to the worker of its partition
+	 * until the queue is empty
+	 *
+	 * @param workerThreads the number of workers
+	 */
+	private void processConcurrently(int workerThreads) {
+		HL7Service hl7Service = Context.getHL7Service();
+		List<BlockingQueue<HL7InQueue>> queues = new ArrayList<BlockingQueue<HL7InQueue>>(workerThreads);
+		List<Thread> threads = new ArrayList<Thread>(workerThreads);
+		for (int i = 0; i < workerThreads; i++) {
+			final BlockingQueue<HL7InQueue> queue = new LinkedBlockingQueue<HL7InQueue>(WORKER_QUEUE_CAPACITY);
+			queues.add(queue);
+			threads.add(Daemon.runInNewDaemonThread(new Runnable() {
+				
+				public void run() {
+					processQueue(queue);
+				}
+			}));
+		}
+		
+		try {
+			List<HL7InQueue> claimed = hl7Service.claimNextHL7InQueues(CLAIM_BATCH_SIZE);
+			while (!claimed.isEmpty()) {
+				for (HL7InQueue hl7InQueue : claimed) {
+					int worker = getPartition(getPartitionKey(hl7InQueue), workerThreads);
+					dispatch(queues.get(worker), threads.get(worker), hl7InQueue);
+				}
+				Context.clearSession();
+				claimed = hl7Service.claimNextHL7InQueues(CLAIM_BATCH_SIZE);
+			}
+		}
+		finally {
+			for (int i = 0; i < workerThreads; i++) {
+				try {
+					dispatch(queues.get(i), threads.get(i), END_OF_QUEUE);
+				}
+				catch (APIException e) {
+					log.error("Unable to stop the hl7 processor thread " + threads.get(i).getName(), e);
+				}
+			}
+			for (Thread thread : threads) {
+				try {
+					thread.join();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					log.warn("Interrupted while waiting for the hl7 processor threads to finish");
+					break;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Hands the queue entry to a worker, waiting while that worker is busy
+	 */
+	private void dispatch(BlockingQueue<HL7InQueue> queue, Thread worker, HL7InQueue hl7InQueue) {
+		try {
+			while (!queue.offer(hl7InQueue, 1, TimeUnit.SECONDS)) {
+				if (!worker.isAlive()) {
+					throw new APIException("The hl7 processor thread " + worker.getName() + " died");
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new APIException("Interrupted while handing hl7 messages to the processor threads", e);
+		}
+	}
+	
+	/**
+	 * Processes the queue entries handed to one worker until it gets the end of the queue
+	 */
+	private void processQueue(BlockingQueue<HL7InQueue> queue) {
+		try {
+			HL7InQueue hl7InQueue = queue.take();
+			while (hl7InQueue != END_OF_QUEUE) {
+				try {
+					processHL7InQueue(hl7InQueue);
+				}
+				catch (Exception e) {
+					// the entry stays marked as processing until its claim times out, so it isn't retried over and over
+					log.error("Unable to process hl7 in queue (id=" + hl7InQueue.getHL7InQueueId() + ")", e);
+					Context.clearSession();
+				}
+				hl7InQueue = queue.take();
+			}
+		}
+		catch (InterruptedException e) {
+			log.warn("HL7 processor thread interrupted");
+		}
+	}
+	
+	/**
+	 * Gets the key of the group of messages that must be processed in order. This is the first
+	 * patient identifier in the PID segment of the message (without parsing the whole message), or
+	 * the hl7 source for messages without one.
+	 *
+	 * @param hl7InQueue the queue entry
+	 * @return the partition key
+	 * @should return the first patient identifier of the message
+	 * @should return the source for messages without a patient identifier
+	 */
+	static String getPartitionKey(HL7InQueue hl7InQueue) {
+		String data = hl7InQueue.getHL7Data();
+		if (data != null) {
+			int segmentStart = data.startsWith("PID|") ? 0 : -1;
+			if (segmentStart < 0) {
+				segmentStart = data.indexOf("\rPID|");
+				if (segmentStart < 0) {
+					segmentStart = data.indexOf("\nPID|");
+				}
+				if (segmentStart >= 0) {
+					segmentStart++;
+				}
+			}
+			if (segmentStart >= 0) {
+				int segmentEnd = StringUtils.indexOfAny(data.substring(segmentStart), "\r\n");
+				String segment = segmentEnd < 0 ? data.substring(segmentStart) : data.substring(segmentStart,
+				    segmentStart + segmentEnd);
+				String[] fields = StringUtils.splitPreserveAllTokens(segment, '|');
+				if (fields.length > 3) {
+					String identifier = StringUtils.substringBefore(fields[3], "~");
+					if (StringUtils.isNotBlank(StringUtils.substringBefore(identifier, "^"))) {
+						return "PID:" + identifier;
+					}
+				}
+			}
+		}
+		
+		HL7Source source = hl7InQueue.getHL7Source();
+		return "source:" + (source == null ? null : source.getHL7SourceId());
+	}
+	
+	private static int getPartition(String partitionKey, int workerThreads) {
+		return (partitionKey.hashCode() & Integer.MAX_VALUE) % workerThreads;
+	}
+	
+	/**
+	 * Puts the queue entries claimed by processors that did not finish them (e.g. because openmrs was
+	 * stopped) back in the queue, once their claim is older than the
+	 * {@link OpenmrsConstants#GLOBAL_PROPERTY_HL7_PROCESSOR_CLAIM_TIMEOUT} global property
+	 */
+	private void releaseAbandonedClaims() {
+		Calendar claimedBefore = Calendar.getInstance();
+		claimedBefore.add(Calendar.MINUTE, -getClaimTimeout());
+		boolean releaseUndated = claimedBefore.getTimeInMillis() > loadedAt;
+		int released = Context.getHL7Service().releaseHL7InQueueClaims(claimedBefore.getTime(), releaseUndated);
+		if (released > 0) {
+			log.warn("Put " + released + " abandoned hl7 messages back in the queue");
+		}
+	}
+	
+	/**
+	 * Fetch the claim timeout, in minutes, from the global properties table
+	 */
+	private int getClaimTimeout() {
+		String claimTimeout = Context.getAdministrationService().getGlobalProperty(
+		    OpenmrsConstants.GLOBAL_PROPERTY_HL7_PROCESSOR_CLAIM_TIMEOUT);
+		if (StringUtils.isNotBlank(claimTimeout)) {
+			try {
+				return Math.max(0, Integer.valueOf(claimTimeout.trim()));
+			}
+			catch (NumberFormatException e) {
+				log.warn("Invalid " + OpenmrsConstants.GLOBAL_PROPERTY_HL7_PROCESSOR_CLAIM_TIMEOUT + " global property: "
+				        + claimTimeout);
+			}
+		}
+		return OpenmrsConstants.GLOBAL_PROPERTY_HL7_PROCESSOR_CLAIM_TIMEOUT_DEFAULT_VALUE;
+	}
+	
+	/**
+	 * Fetch the number of worker threads from the global properties table
+	 */
+	private int getWorkerThreads() {
+		String workerThreads = Context.getAdministrationService().getGlobalProperty(
+		    OpenmrsConstants.GLOBAL_PROPERTY_HL7_PROCESSOR_WORKER_THREADS);
+		if (StringUtils.isNotBlank(workerThreads)) {
+			try {
+				return Math.max(1, Integer.valueOf(workerThreads.trim()));
+			}
+			catch (NumberFormatException e) {
+				log.warn("Invalid " + OpenmrsConstants.GLOBAL_PROPERTY_HL7_PROCESSOR_WORKER_THREADS
+				        + " global property: " + workerThreads);
+			}
 		}
+		return OpenmrsConstants.GLOBAL_PROPERTY_HL7_PROCESSOR_WORKER_THREADS_DEFAULT_VALUE;
 	}
 	
+	/**
+	 * The throughput and lag of a run of the processor
+	 *
+	 * @since 1.11
+	 */
+	public static class Statistics {
+		
+		private final int workerThreads;
+		
+		private final long startTime = System.currentTimeMillis();
+		
+		private volatile long endTime = 0;
+		
+		private final AtomicLong processedMessages = new AtomicLong();
+		
+		private volatile long lagMillis = 0;
+		
+		Statistics(int workerThreads) {
+			this.workerThreads = workerThreads;
+		}
+		
+		void addProcessed(HL7InQueue hl7InQueue) {
+			processedMessages.incrementAndGet();
+			if (hl7InQueue.getDateCreated() != null) {
+				lagMillis = System.currentTimeMillis() - hl7InQueue.getDateCreated().getTime();
+			}
+		}
+		
+		void finish() {
+			endTime = System.currentTimeMillis();
+		}
+		
+		/**
+		 * @return true if the processor is still running
+		 */
+		public boolean isRunning() {
+			return endTime == 0;
+		}
+		
+		/**
+		 * @return the number of threads processing messages
+		 */
+		public int getWorkerThreads() {
+			return workerThreads;
+		}
+		
+		/**
+		 * @return the number of messages processed so far
+		 */
+		public long getProcessedMessages() {
+			return processedMessages.get();
+		}
+		
+		/**
+		 * @return the number of seconds the processor has been running
+		 */
+		public long getElapsedSeconds() {
+			return ((isRunning() ? System.currentTimeMillis() : endTime) - startTime) / 1000;
+		}
+		
+		/**
+		 * @return the average number of messages processed per second
+		 */
+		public long getMessagesPerSecond() {
+			long elapsedSeconds = getElapsedSeconds();
+			return elapsedSeconds == 0 ? getProcessedMessages() : getProcessedMessages() / elapsedSeconds;
+		}
+		
+		/**
+		 * @return the number of seconds between the time the last processed message was received
+		 *         and the time it was processed
+		 */
+		public long getLagSeconds() {
+			return lagMillis / 1000;
+		}
+	}
 }
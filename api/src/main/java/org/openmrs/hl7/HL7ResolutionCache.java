@@ -0,0 +1,257 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.hl7;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.hl7.db.hibernate.HL7ResolutionCacheInterceptor;
+
+/**
+ * Caches what the hl7 handlers resolve the codes in a message to (concepts by mapping, locations,
+ * providers, users) and the global properties they read, so that a message with hundreds of
+ * observations, or a queue full of messages from the same lab, doesn't look the same things up over
+ * and over. The cache is shared by all the threads processing hl7 messages.<br/>
+ * <br/>
+ * Only ids are cached, never the objects themselves, because they belong to the hibernate session
+ * of the thread that loaded them. Each region holds at most {@link #MAX_ENTRIES_PER_REGION}
+ * entries and drops the least recently used ones. A region is emptied when an object it depends on
+ * is saved or deleted, see {@link HL7ResolutionCacheInterceptor}.
+ *
+ * @since 1.11
+ */
+public class HL7ResolutionCache {
+	
+	/**
+	 * Concept ids by coding system and code
+	 */
+	public static final String CONCEPT_BY_MAPPING = "conceptByMapping";
+	
+	/**
+	 * Location ids by point of care and facility
+	 */
+	public static final String LOCATION = "location";
+	
+	/**
+	 * Provider ids by identifier, assigning authority and identifier type
+	 */
+	public static final String PROVIDER = "provider";
+	
+	/**
+	 * User ids by id number and names
+	 */
+	public static final String USER = "user";
+	
+	/**
+	 * Global property values by property name
+	 */
+	public static final String GLOBAL_PROPERTY = "globalProperty";
+	
+	public static final int MAX_ENTRIES_PER_REGION = 1000;
+	
+	/**
+	 * Stands for a global property that is not set, so that it isn't looked up again
+	 */
+	private static final Object NULL_VALUE = new Object();
+	
+	private static final Map<String, Region> regions;
+	
+	static {
+		Map<String, Region> map = new LinkedHashMap<String, Region>();
+		for (String name : Arrays.asList(CONCEPT_BY_MAPPING, LOCATION, PROVIDER, USER, GLOBAL_PROPERTY)) {
+			map.put(name, new Region());
+		}
+		regions = Collections.unmodifiableMap(map);
+	}
+	
+	private HL7ResolutionCache() {
+	}
+	
+	/**
+	 * Builds the key of a cache entry out of the values of the fields it was resolved from
+	 *
+	 * @param fields the field values, some of which may be null
+	 * @return the key
+	 */
+	public static String getKey(String... fields) {
+		StringBuilder key = new StringBuilder();
+		for (String field : fields) {
+			// the length prefix keeps the key unambiguous whatever the fields contain
+			key.append(field == null ? -1 : field.length()).append(':').append(field).append('|');
+		}
+		return key.toString();
+	}
+	
+	/**
+	 * Gets the id cached for the given key
+	 *
+	 * @param region one of the region names of this class
+	 * @param key the key built with {@link #getKey(String...)}
+	 * @return the id or null if not cached
+	 * @should return the id put for the key
+	 * @should count hits and misses
+	 */
+	public static Integer getId(String region, String key) {
+		return (Integer) getRegion(region).get(key);
+	}
+	
+	/**
+	 * Caches the id resolved for the given key. Nothing is cached for a null id, so that codes that
+	 * couldn't be resolved are looked up again the next time.
+	 *
+	 * @param region one of the region names of this class
+	 * @param key the key built with {@link #getKey(String...)}
+	 * @param id the resolved id
+	 * @should evict the least recently used entries
+	 */
+	public static void putId(String region, String key, Integer id) {
+		if (id != null) {
+			getRegion(region).put(key, id);
+		}
+	}
+	
+	/**
+	 * Gets the value of a global property, from the cache if it has been read before
+	 *
+	 * @param propertyName the name of the global property
+	 * @param defaultValue the value to return if the global property is not set
+	 * @return the value of the global property
+	 * @see org.openmrs.api.AdministrationService#getGlobalProperty(String, String)
+	 * @should return the value saved after it was cached
+	 */
+	public static String getGlobalProperty(String propertyName, String defaultValue) {
+		Region region = getRegion(GLOBAL_PROPERTY);
+		Object value = region.get(propertyName);
+		if (value == null) {
+			value = Context.getAdministrationService().getGlobalProperty(propertyName);
+			region.put(propertyName, value == null ? NULL_VALUE : value);
+		}
+		return value == NULL_VALUE || value == null ? defaultValue : (String) value;
+	}
+	
+	/**
+	 * Empties the given region
+	 *
+	 * @param region one of the region names of this class
+	 */
+	public static void clear(String region) {
+		getRegion(region).clear();
+	}
+	
+	/**
+	 * Empties all regions and resets their statistics
+	 */
+	public static void clearAll() {
+		for (Region region : regions.values()) {
+			region.clear();
+			region.hits.set(0);
+			region.misses.set(0);
+		}
+	}
+	
+	/**
+	 * @return the names of the regions of the cache
+	 */
+	public static List<String> getRegionNames() {
+		return Collections.unmodifiableList(Arrays.asList(regions.keySet().toArray(new String[regions.size()])));
+	}
+	
+	/**
+	 * @param region one of the region names of this class
+	 * @return the number of lookups that were answered from the given region
+	 */
+	public static long getHits(String region) {
+		return getRegion(region).hits.get();
+	}
+	
+	/**
+	 * @param region one of the region names of this class
+	 * @return the number of lookups that were not in the given region
+	 */
+	public static long getMisses(String region) {
+		return getRegion(region).misses.get();
+	}
+	
+	/**
+	 * @param region one of the region names of this class
+	 * @return the number of entries in the given region
+	 */
+	public static int getSize(String region) {
+		return getRegion(region).size();
+	}
+	
+	private static Region getRegion(String name) {
+		Region region = regions.get(name);
+		if (region == null) {
+			throw new IllegalArgumentException("Unknown hl7 resolution cache region: " + name);
+		}
+		return region;
+	}
+	
+	/**
+	 * A bounded, least recently used map with hit and miss counters
+	 */
+	private static class Region {
+		
+		private final Map<String, Object> entries = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+				return size() > MAX_ENTRIES_PER_REGION;
+			}
+		};
+		
+		private final AtomicLong hits = new AtomicLong();
+		
+		private final AtomicLong misses = new AtomicLong();
+		
+		public Object get(String key) {
+			Object value;
+			synchronized (entries) {
+				value = entries.get(key);
+			}
+			if (value == null) {
+				misses.incrementAndGet();
+			} else {
+				hits.incrementAndGet();
+			}
+			return value;
+		}
+		
+		public void put(String key, Object value) {
+			synchronized (entries) {
+				entries.put(key, value);
+			}
+		}
+		
+		public void clear() {
+			synchronized (entries) {
+				entries.clear();
+			}
+		}
+		
+		public int size() {
+			synchronized (entries) {
+				return entries.size();
+			}
+		}
+	}
+}
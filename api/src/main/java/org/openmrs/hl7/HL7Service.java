@@ -14,6 +14,7 @@
 package org.openmrs.hl7;
 
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
@@ -274,6 +275,39 @@ public interface HL7Service extends OpenmrsService {
 	@Authorized(HL7Constants.PRIV_VIEW_HL7_IN_QUEUE)
 	public HL7InQueue getNextHL7InQueue() throws APIException;
 	
+	/**
+	 * Claims the first pending queue items in the database for processing. The rows are locked while
+	 * they are claimed and marked as processing in the database, so that other processors (in this
+	 * or another openmrs instance sharing the database) skip them. The returned items are detached
+	 * and still marked as pending, and are meant to be passed to
+	 * {@link #processHL7InQueue(HL7InQueue)}.
+	 * 
+	 * @param maxResults the maximum number of queue items to claim
+	 * @return the claimed queue items, in the order they were received
+	 * @since 1.11
+	 * @should claim the first pending queue items
+	 * @should not claim queue items again
+	 */
+	@Authorized(HL7Constants.PRIV_UPDATE_HL7_IN_QUEUE)
+	public List<HL7InQueue> claimNextHL7InQueues(int maxResults) throws APIException;
+	
+	/**
+	 * Puts queue items that were claimed with {@link #claimNextHL7InQueues(int)} before the given
+	 * date, and are still marked as processing, back in the pending state. These are the claims of
+	 * processors that stopped (e.g. because openmrs was shut down) before they processed the items.
+	 * 
+	 * @param claimedBefore items claimed before this date are released
+	 * @param releaseUndated whether items marked as processing without a claim date, e.g. by an
+	 *            older version of openmrs, are released too
+	 * @return the number of released queue items
+	 * @since 1.11
+	 * @should release items claimed before the given date
+	 * @should not release items claimed after the given date
+	 * @should release items without a claim date only if asked to
+	 */
+	@Authorized(HL7Constants.PRIV_UPDATE_HL7_IN_QUEUE)
+	public int releaseHL7InQueueClaims(Date claimedBefore, boolean releaseUndated) throws APIException;
+	
 	/**
 	 * Completely delete the hl7 in queue item from the database.
 	 * 
@@ -579,11 +613,14 @@ public interface HL7Service extends OpenmrsService {
 	
 	/**
 	 * Method is called by the archives migration thread to transfer hl7 in archives from the
-	 * hl7_in_archives database table to the file system
+	 * hl7_in_archives database table to the file system. The archives are read in pages in the
+	 * order of their ids and appended to one segment file per day, see
+	 * {@link HL7InArchiveSegments}.
 	 * 
 	 * @param progressStatusMap the map holding the number of archives transferred and failed
 	 *            transfers
 	 * @throws APIException
+	 * @should move the hl7 data of processed archives into segment files
 	 */
 	@Authorized(requireAll = true, value = { HL7Constants.PRIV_VIEW_HL7_IN_ARCHIVE, HL7Constants.PRIV_PURGE_HL7_IN_ARCHIVE,
 	        HL7Constants.PRIV_ADD_HL7_IN_QUEUE })
@@ -620,7 +657,8 @@ public interface HL7Service extends OpenmrsService {
 	public Person createPersonFromNK1(NK1 nk1) throws HL7Exception;
 	
 	/**
-	 * Loads data for a list of HL7 archives from the filesystem
+	 * Loads data for a list of HL7 archives from the filesystem. The segment files the archives are
+	 * in are memory mapped while they are loaded.
 	 * 
 	 * @since 1.7
 	 * @throws APIException
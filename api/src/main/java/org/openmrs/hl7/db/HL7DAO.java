@@ -13,7 +13,9 @@
  */
 package org.openmrs.hl7.db;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.openmrs.api.db.DAOException;
 import org.openmrs.hl7.HL7InArchive;
@@ -84,6 +86,16 @@ public interface HL7DAO {
 	 */
 	public HL7InQueue getNextHL7InQueue() throws DAOException;
 	
+	/**
+	 * @see org.openmrs.hl7.HL7Service#claimNextHL7InQueues(int)
+	 */
+	public List<HL7InQueue> claimNextHL7InQueues(int maxResults) throws DAOException;
+	
+	/**
+	 * @see org.openmrs.hl7.HL7Service#releaseHL7InQueueClaims(Date, boolean)
+	 */
+	public int releaseHL7InQueueClaims(Date claimedBefore, boolean releaseUndated) throws DAOException;
+	
 	/**
 	 * @see org.openmrs.hl7.HL7Service#deleteHL7InQueue(org.openmrs.hl7.HL7InQueue)
 	 */
@@ -159,9 +171,23 @@ public interface HL7DAO {
 	public void deleteHL7InArchive(HL7InArchive hl7InArchive) throws DAOException;
 	
 	/**
-	 * provides a list of archives to be migrated
+	 * provides a page of archives to be migrated, in the order of their ids
+	 * 
+	 * @param afterHL7InArchiveId only archives with a greater id are returned, null to start from
+	 *            the first one
+	 * @param maxResults the size of the page
+	 * @since 1.11
+	 */
+	public List<HL7InArchive> getHL7InArchivesToMigrate(Integer afterHL7InArchiveId, int maxResults);
+	
+	/**
+	 * Marks the given archives as migrated and replaces their hl7 data with the location it was
+	 * migrated to, with jdbc batch updates
+	 * 
+	 * @param locations the new location of the hl7 data by archive id
+	 * @since 1.11
 	 */
-	public List<HL7InArchive> getHL7InArchivesToMigrate();
+	public void markHL7InArchivesMigrated(Map<Integer, String> locations) throws DAOException;
 	
 	/* HL7InError */
 
@@ -0,0 +1,129 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.hl7.db.hibernate;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.Transaction;
+import org.hibernate.type.Type;
+import org.openmrs.Concept;
+import org.openmrs.ConceptMap;
+import org.openmrs.ConceptReferenceTerm;
+import org.openmrs.ConceptSource;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Location;
+import org.openmrs.Provider;
+import org.openmrs.User;
+import org.openmrs.hl7.HL7ResolutionCache;
+
+/**
+ * Empties the regions of the {@link HL7ResolutionCache} that depend on the objects being saved or
+ * deleted. A region is emptied as soon as the change is flushed, and again once the transaction
+ * has completed, so that a value read by another thread before the change was committed doesn't
+ * stay in the cache.
+ *
+ * @since 1.11
+ */
+public class HL7ResolutionCacheInterceptor extends EmptyInterceptor {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private static final ThreadLocal<Set<String>> changedRegions = new ThreadLocal<Set<String>>();
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onSave(java.lang.Object, java.io.Serializable,
+	 *      java.lang.Object[], java.lang.String[], org.hibernate.type.Type[])
+	 * @should empty the region of the saved object
+	 */
+	@Override
+	public boolean onSave(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		changed(entity);
+		return false;
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onFlushDirty(java.lang.Object, java.io.Serializable,
+	 *      java.lang.Object[], java.lang.Object[], java.lang.String[], org.hibernate.type.Type[])
+	 */
+	@Override
+	public boolean onFlushDirty(Object entity, Serializable id, Object[] currentState, Object[] previousState,
+	        String[] propertyNames, Type[] types) {
+		changed(entity);
+		return false;
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onDelete(java.lang.Object, java.io.Serializable,
+	 *      java.lang.Object[], java.lang.String[], org.hibernate.type.Type[])
+	 */
+	@Override
+	public void onDelete(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		changed(entity);
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#afterTransactionCompletion(org.hibernate.Transaction)
+	 * @should empty all regions when the transaction is rolled back
+	 */
+	@Override
+	public void afterTransactionCompletion(Transaction tx) {
+		Set<String> regions = changedRegions.get();
+		changedRegions.remove();
+		if (tx != null && tx.wasRolledBack()) {
+			// ids may have been cached for rows that only existed in the rolled back transaction
+			regions = new HashSet<String>(HL7ResolutionCache.getRegionNames());
+		}
+		if (regions != null) {
+			for (String region : regions) {
+				HL7ResolutionCache.clear(region);
+			}
+		}
+	}
+	
+	private void changed(Object entity) {
+		String region = getRegion(entity);
+		if (region != null) {
+			HL7ResolutionCache.clear(region);
+			Set<String> regions = changedRegions.get();
+			if (regions == null) {
+				regions = new HashSet<String>();
+				changedRegions.set(regions);
+			}
+			regions.add(region);
+		}
+	}
+	
+	/**
+	 * @param entity the object being saved or deleted
+	 * @return the cache region that depends on the object, or null if none does
+	 */
+	private static String getRegion(Object entity) {
+		if (entity instanceof Concept || entity instanceof ConceptMap || entity instanceof ConceptReferenceTerm
+		        || entity instanceof ConceptSource) {
+			return HL7ResolutionCache.CONCEPT_BY_MAPPING;
+		} else if (entity instanceof Location) {
+			return HL7ResolutionCache.LOCATION;
+		} else if (entity instanceof Provider) {
+			return HL7ResolutionCache.PROVIDER;
+		} else if (entity instanceof User) {
+			return HL7ResolutionCache.USER;
+		} else if (entity instanceof GlobalProperty) {
+			return HL7ResolutionCache.GLOBAL_PROPERTY;
+		}
+		return null;
+	}
+}
@@ -13,18 +13,28 @@
  */
 package org.openmrs.hl7.db.hibernate;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
+import org.hibernate.Hibernate;
+import org.hibernate.LockMode;
 import org.hibernate.Query;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.jdbc.Work;
 import org.hibernate.type.StandardBasicTypes;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.db.DAOException;
@@ -53,6 +63,8 @@ public class HibernateHL7DAO implements HL7DAO {
 	 */
 	private SessionFactory sessionFactory;
 	
+	private static final int MIGRATION_UPDATE_BATCH_SIZE = 500;
+	
 	public HibernateHL7DAO() {
 	}
 	
@@ -205,6 +217,49 @@ public class HibernateHL7DAO implements HL7DAO {
 		return (HL7InQueue) query.uniqueResult();
 	}
 	
+	/**
+	 * @see org.openmrs.hl7.db.HL7DAO#claimNextHL7InQueues(int)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<HL7InQueue> claimNextHL7InQueues(int maxResults) throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		List<HL7InQueue> hl7InQueues = session.createQuery(
+		    "from HL7InQueue as hiq where hiq.messageState = :pending order by hiq.HL7InQueueId").setParameter("pending",
+		    HL7Constants.HL7_STATUS_PENDING).setMaxResults(maxResults).setLockMode("hiq", LockMode.PESSIMISTIC_WRITE)
+		        .list();
+		if (hl7InQueues.isEmpty()) {
+			return hl7InQueues;
+		}
+		
+		List<Integer> ids = new ArrayList<Integer>(hl7InQueues.size());
+		for (HL7InQueue hl7InQueue : hl7InQueues) {
+			ids.add(hl7InQueue.getHL7InQueueId());
+			// the items are handed to other sessions, so the source has to be loaded now
+			Hibernate.initialize(hl7InQueue.getHL7Source());
+			session.evict(hl7InQueue);
+		}
+		
+		session.createQuery(
+		    "update HL7InQueue set messageState = :processing, dateClaimed = :now where HL7InQueueId in (:ids)"
+		            + " and messageState = :pending").setParameter("processing", HL7Constants.HL7_STATUS_PROCESSING)
+		        .setParameter("pending", HL7Constants.HL7_STATUS_PENDING).setTimestamp("now", new Date())
+		        .setParameterList("ids", ids).executeUpdate();
+		
+		return hl7InQueues;
+	}
+	
+	/**
+	 * @see org.openmrs.hl7.db.HL7DAO#releaseHL7InQueueClaims(java.util.Date, boolean)
+	 */
+	public int releaseHL7InQueueClaims(Date claimedBefore, boolean releaseUndated) throws DAOException {
+		String claimed = releaseUndated ? "(dateClaimed is null or dateClaimed < :claimedBefore)"
+		        : "dateClaimed < :claimedBefore";
+		return sessionFactory.getCurrentSession().createQuery(
+		    "update HL7InQueue set messageState = :pending, dateClaimed = null where messageState = :processing and "
+		            + claimed).setParameter("pending", HL7Constants.HL7_STATUS_PENDING).setParameter("processing",
+		    HL7Constants.HL7_STATUS_PROCESSING).setTimestamp("claimedBefore", claimedBefore).executeUpdate();
+	}
+	
 	/**
 	 * @see org.openmrs.hl7.db.HL7DAO#deleteHL7InQueue(org.openmrs.hl7.HL7InQueue)
 	 */
@@ -343,10 +398,14 @@ public class HibernateHL7DAO implements HL7DAO {
 	 */
 	@Override
 	@SuppressWarnings("unchecked")
-	public List<HL7InArchive> getHL7InArchivesToMigrate() {
+	public List<HL7InArchive> getHL7InArchivesToMigrate(Integer afterHL7InArchiveId, int maxResults) {
 		Integer daysToKeep = Hl7InArchivesMigrateThread.getDaysKept();
 		Criteria crit = getHL7SearchCriteria(HL7InArchive.class, HL7Constants.HL7_STATUS_PROCESSED, null);
-		crit.setMaxResults(HL7Constants.MIGRATION_MAX_BATCH_SIZE);
+		if (afterHL7InArchiveId != null) {
+			crit.add(Restrictions.gt("HL7InArchiveId", afterHL7InArchiveId));
+		}
+		crit.addOrder(Order.asc("HL7InArchiveId"));
+		crit.setMaxResults(maxResults);
 		if (daysToKeep != null) {
 			Calendar cal = Calendar.getInstance();
 			cal.add(Calendar.DATE, -1 * daysToKeep);
@@ -355,4 +414,42 @@ public class HibernateHL7DAO implements HL7DAO {
 		return crit.list();
 	}
 	
+	/**
+	 * @see org.openmrs.hl7.db.HL7DAO#markHL7InArchivesMigrated(java.util.Map)
+	 */
+	@Override
+	public void markHL7InArchivesMigrated(final Map<Integer, String> locations) throws DAOException {
+		if (locations.isEmpty()) {
+			return;
+		}
+		Session session = sessionFactory.getCurrentSession();
+		// the archives must not be written back over the new values
+		session.flush();
+		session.doWork(new Work() {
+			
+			public void execute(Connection connection) throws SQLException {
+				PreparedStatement update = connection
+				        .prepareStatement("update hl7_in_archive set hl7_data = ?, message_state = ? where hl7_in_archive_id = ?");
+				try {
+					int batched = 0;
+					for (Map.Entry<Integer, String> location : locations.entrySet()) {
+						update.setString(1, location.getValue());
+						update.setInt(2, HL7Constants.HL7_STATUS_MIGRATED);
+						update.setInt(3, location.getKey());
+						update.addBatch();
+						if (++batched % MIGRATION_UPDATE_BATCH_SIZE == 0) {
+							update.executeBatch();
+						}
+					}
+					if (batched % MIGRATION_UPDATE_BATCH_SIZE != 0) {
+						update.executeBatch();
+					}
+				}
+				finally {
+					update.close();
+				}
+			}
+		});
+	}
+	
 }
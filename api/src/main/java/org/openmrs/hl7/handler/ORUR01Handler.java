@@ -46,6 +46,7 @@ import org.openmrs.User;
 import org.openmrs.api.context.Context;
 import org.openmrs.hl7.HL7Constants;
 import org.openmrs.hl7.HL7InQueueProcessor;
+import org.openmrs.hl7.HL7ResolutionCache;
 import org.openmrs.hl7.HL7Service;
 import org.openmrs.obs.ComplexData;
 import org.openmrs.util.OpenmrsConstants;
@@ -242,14 +243,14 @@ public class ORUR01Handler implements Application {
 		// create obs_groups for them
 		List<Integer> ignoredConceptIds = new ArrayList<Integer>();
 		
-		String obrConceptId = Context.getAdministrationService().getGlobalProperty(
+		String obrConceptId = HL7ResolutionCache.getGlobalProperty(
 		    OpenmrsConstants.GLOBAL_PROPERTY_MEDICAL_RECORD_OBSERVATIONS, "1238");
 		if (StringUtils.hasLength(obrConceptId)) {
 			ignoredConceptIds.add(Integer.valueOf(obrConceptId));
 		}
 		
 		// we also ignore all PROBLEM_LIST that are OBRs
-		String obrProblemListConceptId = Context.getAdministrationService().getGlobalProperty(
+		String obrProblemListConceptId = HL7ResolutionCache.getGlobalProperty(
 		    OpenmrsConstants.GLOBAL_PROPERTY_PROBLEM_LIST, "1284");
 		if (StringUtils.hasLength(obrProblemListConceptId)) {
 			ignoredConceptIds.add(Integer.valueOf(obrProblemListConceptId));
@@ -990,7 +991,16 @@ public class ORUR01Handler implements Application {
 			}
 		} else {
 			// the concept is not local, look it up in our mapping
-			return Context.getConceptService().getConceptByMapping(hl7ConceptId, codingSystem);
+			String key = HL7ResolutionCache.getKey(codingSystem, hl7ConceptId);
+			Integer conceptId = HL7ResolutionCache.getId(HL7ResolutionCache.CONCEPT_BY_MAPPING, key);
+			if (conceptId != null) {
+				return Context.getConceptService().getConcept(conceptId);
+			}
+			Concept concept = Context.getConceptService().getConceptByMapping(hl7ConceptId, codingSystem);
+			if (concept != null) {
+				HL7ResolutionCache.putId(HL7ResolutionCache.CONCEPT_BY_MAPPING, key, concept.getConceptId());
+			}
+			return concept;
 		}
 	}
 	
@@ -1057,6 +1067,14 @@ public class ORUR01Handler implements Application {
 		String assignAuth = hl7Provider.getAssigningAuthority().getUniversalID().getValue();
 		String type = hl7Provider.getAssigningAuthority().getUniversalIDType().getValue();
 		String errorMessage = "";
+		String key = HL7ResolutionCache.getKey(id, assignAuth, type);
+		Integer providerId = HL7ResolutionCache.getId(HL7ResolutionCache.PROVIDER, key);
+		if (providerId != null) {
+			provider = Context.getProviderService().getProvider(providerId);
+			if (provider != null) {
+				return provider;
+			}
+		}
 		if (StringUtils.hasText(id)) {
 			String specificErrorMsg = "";
 			if (OpenmrsUtil.nullSafeEquals("L", type)) {
@@ -1098,6 +1116,7 @@ public class ORUR01Handler implements Application {
 			throw new HL7Exception(errorMessage);
 		}
 		
+		HL7ResolutionCache.putId(HL7ResolutionCache.PROVIDER, key, provider.getProviderId());
 		return provider;
 	}
 	
@@ -13,20 +13,16 @@
  */
 package org.openmrs.hl7.impl;
 
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -48,9 +44,11 @@ import org.openmrs.api.db.DAOException;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.hl7.HL7Constants;
 import org.openmrs.hl7.HL7InArchive;
+import org.openmrs.hl7.HL7InArchiveSegments;
 import org.openmrs.hl7.HL7InError;
 import org.openmrs.hl7.HL7InQueue;
 import org.openmrs.hl7.HL7QueueItem;
+import org.openmrs.hl7.HL7ResolutionCache;
 import org.openmrs.hl7.HL7Service;
 import org.openmrs.hl7.HL7Source;
 import org.openmrs.hl7.HL7Util;
@@ -90,6 +88,8 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 	
 	private final Log log = LogFactory.getLog(this.getClass());
 	
+	private static final int LOAD_MAX_MAPPED_SEGMENTS = 8;
+	
 	private static HL7ServiceImpl instance;
 	
 	protected HL7DAO dao;
@@ -368,6 +368,20 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 		return dao.getNextHL7InQueue();
 	}
 	
+	/**
+	 * @see org.openmrs.hl7.HL7Service#claimNextHL7InQueues(int)
+	 */
+	public List<HL7InQueue> claimNextHL7InQueues(int maxResults) throws APIException {
+		return dao.claimNextHL7InQueues(maxResults);
+	}
+	
+	/**
+	 * @see org.openmrs.hl7.HL7Service#releaseHL7InQueueClaims(java.util.Date, boolean)
+	 */
+	public int releaseHL7InQueueClaims(Date claimedBefore, boolean releaseUndated) throws APIException {
+		return dao.releaseHL7InQueueClaims(claimedBefore, releaseUndated);
+	}
+	
 	/**
 	 * @see org.openmrs.hl7.HL7Service#deleteHL7InQueue(org.openmrs.hl7.HL7InQueue)
 	 * @deprecated
@@ -466,10 +480,10 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 	}
 	
 	/**
-	 * get a list of archives to be migrated to the filesystem
+	 * get the next page of archives to be migrated to the filesystem
 	 */
-	private List<HL7InArchive> getHL7InArchivesToMigrate() {
-		return dao.getHL7InArchivesToMigrate();
+	private List<HL7InArchive> getHL7InArchivesToMigrate(Integer afterHL7InArchiveId) {
+		return dao.getHL7InArchivesToMigrate(afterHL7InArchiveId, HL7Constants.MIGRATION_MAX_BATCH_SIZE);
 	}
 	
 	/**
@@ -571,11 +585,18 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 		 * ("null".equals(givenName)) givenName = null; if
 		 * ("null".equals(assigningAuthority)) assigningAuthority = null;
 		 */
+		String key = HL7ResolutionCache.getKey(idNumber, familyName, givenName);
+		Integer cachedUserId = HL7ResolutionCache.getId(HL7ResolutionCache.USER, key);
+		if (cachedUserId != null) {
+			return cachedUserId;
+		}
+		
 		if (idNumber != null && idNumber.length() > 0) {
 			// log.debug("searching for user by id " + idNumber);
 			try {
 				Integer userId = new Integer(idNumber);
 				User user = Context.getUserService().getUser(userId);
+				HL7ResolutionCache.putId(HL7ResolutionCache.USER, key, user.getUserId());
 				return user.getUserId();
 			}
 			catch (Exception e) {
@@ -597,6 +618,7 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 				}
 				// log.debug("looking for username '" + username + "'");
 				User user = Context.getUserService().getUserByUsername(username.toString());
+				HL7ResolutionCache.putId(HL7ResolutionCache.USER, key, user.getUserId());
 				return user.getUserId();
 			}
 			catch (Exception e) {
@@ -650,12 +672,19 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 		// location.location_id
 		String pointOfCare = pl.getPointOfCare().getValue();
 		String facility = pl.getFacility().getUniversalID().getValue();
+		String key = HL7ResolutionCache.getKey(pointOfCare, facility);
+		Integer cachedLocationId = HL7ResolutionCache.getId(HL7ResolutionCache.LOCATION, key);
+		if (cachedLocationId != null) {
+			return cachedLocationId;
+		}
+		
 		// HACK: try to treat the first component (which should be "Point of
 		// Care" as an internal openmrs location_id
 		try {
 			Integer locationId = new Integer(pointOfCare);
 			Location l = Context.getLocationService().getLocation(locationId);
 			if (l != null) {
+				HL7ResolutionCache.putId(HL7ResolutionCache.LOCATION, key, l.getLocationId());
 				return l.getLocationId();
 			}
 		}
@@ -672,8 +701,10 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 			Location l = Context.getLocationService().getLocation(facility);
 			if (l == null) {
 				log.debug("Couldn't find a location named '" + facility + "'");
+				return null;
 			}
-			return l == null ? null : l.getLocationId();
+			HL7ResolutionCache.putId(HL7ResolutionCache.LOCATION, key, l.getLocationId());
+			return l.getLocationId();
 		}
 		catch (Exception ex) {
 			log.error("Error trying to treat PL.facility '" + facility + "' as a location.name", ex);
@@ -839,6 +870,7 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 			        + " is already processing. " + ",key=" + hl7InQueue.getHL7SourceKey() + ")");
 		} else {
 			hl7InQueue.setMessageState(HL7Constants.HL7_STATUS_PROCESSING);
+			hl7InQueue.setDateClaimed(new Date());
 		}
 		
 		if (log.isDebugEnabled()) {
@@ -873,12 +905,12 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 			log.debug("Unable to process hl7inqueue: " + hl7InQueue.getHL7InQueueId(), e);
 			log.debug("Hl7inqueue source: " + hl7InQueue.getHL7Source());
 			log.debug("hl7_processor.ignore_missing_patient_non_local? "
-			        + Context.getAdministrationService().getGlobalProperty(
-			            OpenmrsConstants.GLOBAL_PROPERTY_IGNORE_MISSING_NONLOCAL_PATIENTS, "false"));
+			        + HL7ResolutionCache.getGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_IGNORE_MISSING_NONLOCAL_PATIENTS,
+			            "false"));
 			if (e.getCause() != null
 			        && e.getCause().getMessage().equals("Could not resolve patient")
 			        && !hl7InQueue.getHL7Source().getName().equals("local")
-			        && Context.getAdministrationService().getGlobalProperty(
+			        && HL7ResolutionCache.getGlobalProperty(
 			            OpenmrsConstants.GLOBAL_PROPERTY_IGNORE_MISSING_NONLOCAL_PATIENTS, "false").equals("true")) {
 				skipError = true;
 			}
@@ -1149,8 +1181,15 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 	 * @see org.openmrs.hl7.HL7Service#loadHL7InArchiveData(List)
 	 */
 	public void loadHL7InArchiveData(List<HL7InArchive> archives) throws APIException {
-		for (HL7InArchive archive : archives) {
-			loadHL7InArchiveData(archive);
+		// archives of the same days are read from the same segment files, which are mapped once
+		HL7InArchiveSegments.Reader reader = new HL7InArchiveSegments.Reader(LOAD_MAX_MAPPED_SEGMENTS);
+		try {
+			for (HL7InArchive archive : archives) {
+				loadHL7InArchiveData(archive, reader);
+			}
+		}
+		finally {
+			reader.close();
 		}
 	}
 	
@@ -1158,6 +1197,14 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 	 * @see org.openmrs.hl7.HL7Service#loadHL7InArchiveData(HL7InArchive)
 	 */
 	public void loadHL7InArchiveData(HL7InArchive archive) throws APIException {
+		loadHL7InArchiveData(archive, null);
+	}
+	
+	/**
+	 * Loads the hl7 data of a migrated archive with the given reader, or with a positioned read if
+	 * it is null
+	 */
+	private void loadHL7InArchiveData(HL7InArchive archive, HL7InArchiveSegments.Reader reader) throws APIException {
 		// quit early if there is no archive to work with
 		if (archive == null) {
 			return;
@@ -1169,7 +1216,8 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 		}
 		
 		try {
-			archive.setHL7Data(OpenmrsUtil.getFileAsString(new File(new URI(archive.getHL7Data()))));
+			URI location = new URI(archive.getHL7Data());
+			archive.setHL7Data(reader == null ? HL7InArchiveSegments.read(location) : reader.read(location));
 			archive.setLoaded(true);
 		}
 		catch (URISyntaxException e) {
@@ -1187,131 +1235,56 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 		int numberTransferred = 0;
 		int numberOfFailedTransfers = 0;
 		
-		// HL7Constants.HL7_STATUS_ARCHIVED indicates the HL7 has been archived to the filesystem
-		List<HL7InArchive> hl7InArchives = getHL7InArchivesToMigrate();
+		HL7InArchiveSegments.Writer writer = new HL7InArchiveSegments.Writer(HL7Util.getHl7ArchivesDirectory());
+		try {
+			// HL7Constants.HL7_STATUS_ARCHIVED indicates the HL7 has been archived to the filesystem
+			List<HL7InArchive> hl7InArchives = getHL7InArchivesToMigrate(null);
 		
-		// while we still we have any archives to be processed, process them
-		while (Hl7InArchivesMigrateThread.isActive() && Hl7InArchivesMigrateThread.getTransferStatus() == Status.RUNNING
-		        && hl7InArchives != null && hl7InArchives.size() > 0) {
+			// while we still we have any archives to be processed, process them
+			while (Hl7InArchivesMigrateThread.isActive()
+			        && Hl7InArchivesMigrateThread.getTransferStatus() == Status.RUNNING && hl7InArchives != null
+			        && hl7InArchives.size() > 0) {
 			
-			Iterator<HL7InArchive> iterator = hl7InArchives.iterator();
+				Map<Integer, String> locations = new LinkedHashMap<Integer, String>();
+				for (HL7InArchive archive : hl7InArchives) {
+					try {
+						locations.put(archive.getHL7InArchiveId(), writer.append(archive).toString());
+					}
+					catch (IOException e) {
+						log.warn("Failed to write hl7 archive with id '" + archive.getHL7InArchiveId()
+						        + "' to the file system ", e);
+						progressStatusMap.put(HL7Constants.NUMBER_OF_FAILED_TRANSFERS_KEY, ++numberOfFailedTransfers);
+					}
+				}
 			
-			while (Hl7InArchivesMigrateThread.isActive() && Hl7InArchivesMigrateThread.getTransferStatus() == Status.RUNNING
-			        && iterator.hasNext()) {
-				HL7InArchive archive = iterator.next();
-				
+				// the messages must be on the disk before the archives point to them
 				try {
-					migrateHL7InArchive(archive);
-					progressStatusMap.put(HL7Constants.NUMBER_TRANSFERRED_KEY, numberTransferred++);
+					writer.flush();
 				}
-				catch (DAOException e) {
-					progressStatusMap.put(HL7Constants.NUMBER_OF_FAILED_TRANSFERS_KEY, numberOfFailedTransfers++);
+				catch (IOException e) {
+					throw new APIException("could not write HL7 archives to the filesystem", e);
 				}
+				dao.markHL7InArchivesMigrated(locations);
+				numberTransferred += locations.size();
+				progressStatusMap.put(HL7Constants.NUMBER_TRANSFERRED_KEY, numberTransferred);
+				
+				// fetch more archives to be processed, skipping those that failed
+				Integer lastHL7InArchiveId = hl7InArchives.get(hl7InArchives.size() - 1).getHL7InArchiveId();
+				dao.garbageCollect();
+				hl7InArchives = getHL7InArchivesToMigrate(lastHL7InArchiveId);
 			}
-			
-			// fetch more archives to be processed
-			hl7InArchives = getHL7InArchivesToMigrate();
-		}
-		
-		if (log.isDebugEnabled()) {
-			log.debug("Transfer of HL7 archives has completed or has been stopped");
-		}
-	}
-	
-	/**
-	 * moves data to the filesystem from an HL7InArchive
-	 *
-	 * @param archive
-	 * @throws APIException
-	 */
-	private void migrateHL7InArchive(HL7InArchive archive) throws APIException {
-		if (archive == null) {
-			throw new APIException("could not migrate a null HL7 archive");
-		}
-		
-		if (!OpenmrsUtil.nullSafeEquals(archive.getMessageState(), HL7Constants.HL7_STATUS_PROCESSED)) {
-			throw new APIException("could not migrate HL7 archive not in 'processed' state");
-		}
-		
-		try {
-			URI uri = writeHL7InArchiveToFileSystem(archive);
-			archive.setHL7Data(uri.toString());
-			archive.setMessageState(HL7Constants.HL7_STATUS_MIGRATED);
-			saveHL7InArchive(archive);
-		}
-		catch (APIException e) {
-			throw new APIException("could not migrate HL7 archive", e);
-		}
-		
-	}
-	
-	/**
-	 * writes a given hl7 archive to the file system
-	 *
-	 * @param hl7InArchive the hl7 archive to write to the file system
-	 */
-	private URI writeHL7InArchiveToFileSystem(HL7InArchive hl7InArchive) throws APIException {
-		
-		PrintWriter writer = null;
-		File destinationDir = HL7Util.getHl7ArchivesDirectory();
-		try {
-			// number formatter used to format month and day with zero padding
-			DecimalFormat df = new DecimalFormat("00");
-			
-			//write the archive to a separate file while grouping them according to
-			//the year, month and date of month when they were stored in the archives table
-			Calendar calendar = Calendar.getInstance(Context.getLocale());
-			calendar.setTime(hl7InArchive.getDateCreated());
-			
-			//resolve the year folder from the date of creation of the archive
-			File yearDir = new File(destinationDir, Integer.toString(calendar.get(Calendar.YEAR)));
-			if (!yearDir.isDirectory()) {
-				yearDir.mkdirs();
-			}
-			
-			//resolve the appropriate month folder
-			File monthDir = new File(yearDir, df.format(calendar.get(Calendar.MONTH) + 1));
-			if (!monthDir.isDirectory()) {
-				monthDir.mkdirs();
-			}
-			
-			//resolve the appropriate day of month folder
-			File dayDir = new File(monthDir, df.format(calendar.get(Calendar.DAY_OF_MONTH)));
-			if (!dayDir.isDirectory()) {
-				dayDir.mkdirs();
-			}
-			
-			//use the uuid, source id and source key(if present) to generate the file name
-			File fileToWriteTo = new File(dayDir, hl7InArchive.getUuid()
-			        + (StringUtils.isBlank(hl7InArchive.getHL7SourceKey()) ? "" : "_" + hl7InArchive.getHL7SourceKey())
-			        + ".txt");
-			
-			//write the hl7 data to the file
-			writer = new PrintWriter(fileToWriteTo);
-			writer.write(hl7InArchive.getHL7Data());
-			
-			//check if there was an error while writing to the current file
-			if (writer.checkError()) {
-				log.warn("An Error occured while writing hl7 archive with id '" + hl7InArchive.getHL7InArchiveId()
-				        + "' to the file system");
-				throw new APIException("could not write HL7 archive to the filesystem (no error provided)");
-			}
-			
-			// hand back the URI for the file
-			return fileToWriteTo.toURI();
-			
-		}
-		catch (FileNotFoundException e) {
-			log
-			        .warn("Failed to write hl7 archive with id '" + hl7InArchive.getHL7InArchiveId()
-			                + "' to the file system ", e);
-			throw new APIException("could not write HL7 archive to the filesystem", e);
-			
 		}
 		finally {
-			if (writer != null) {
+			try {
 				writer.close();
 			}
+			catch (IOException e) {
+				log.warn("Unable to close the hl7 archive segment files", e);
+			}
+		}
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Transfer of HL7 archives has completed or has been stopped");
 		}
 	}
 	
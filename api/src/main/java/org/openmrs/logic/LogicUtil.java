@@ -0,0 +1,82 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.logic;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.Cohort;
+import org.openmrs.logic.datasource.BatchLogicDataSource;
+import org.openmrs.logic.datasource.LogicDataSource;
+import org.openmrs.logic.result.ColumnarResult;
+import org.openmrs.logic.result.Result;
+
+/**
+ * Utility methods for evaluating logic criteria over whole cohorts with {@link ColumnarResult}s
+ *
+ * @since 1.11
+ */
+public class LogicUtil {
+	
+	private LogicUtil() {
+	}
+	
+	/**
+	 * Reads the data of several criteria from one data source. A {@link BatchLogicDataSource}
+	 * reads them all in one pass; any other data source is asked for each criteria in turn and its
+	 * results are converted.
+	 *
+	 * @param dataSource the data source that has the keys of all of the criteria
+	 * @param context the current logic context
+	 * @param patients the patients for whom to read the data
+	 * @param criteria the criteria identifying which data is to be read
+	 * @return the rows of each criteria, in the order of the criteria
+	 * @throws LogicException
+	 * @should read each criteria from a data source that cannot read in batches
+	 * @should read all criteria at once from a batch data source
+	 */
+	public static Map<LogicCriteria, ColumnarResult> read(LogicDataSource dataSource, LogicContext context,
+	        Cohort patients, List<LogicCriteria> criteria) throws LogicException {
+		Map<LogicCriteria, ColumnarResult> columns = new LinkedHashMap<LogicCriteria, ColumnarResult>();
+		if (dataSource instanceof BatchLogicDataSource) {
+			Map<LogicCriteria, ColumnarResult> read = ((BatchLogicDataSource) dataSource).readColumns(context, patients,
+			    criteria);
+			for (LogicCriteria c : criteria) {
+				ColumnarResult result = read.get(c);
+				columns.put(c, result == null ? ColumnarResult.emptyResult() : result);
+			}
+		} else {
+			for (LogicCriteria c : criteria) {
+				columns.put(c, ColumnarResult.fromResults(dataSource.read(context, patients, c)));
+			}
+		}
+		return columns;
+	}
+	
+	/**
+	 * Converts columnar results to the form returned by
+	 * {@link LogicService#eval(Cohort, List)}
+	 *
+	 * @param columns the rows of each criteria
+	 * @return the result of each patient for each criteria
+	 */
+	public static Map<LogicCriteria, Map<Integer, Result>> toResults(Map<LogicCriteria, ColumnarResult> columns) {
+		Map<LogicCriteria, Map<Integer, Result>> results = new LinkedHashMap<LogicCriteria, Map<Integer, Result>>();
+		for (Map.Entry<LogicCriteria, ColumnarResult> entry : columns.entrySet()) {
+			results.put(entry.getKey(), entry.getValue().toResults());
+		}
+		return results;
+	}
+}
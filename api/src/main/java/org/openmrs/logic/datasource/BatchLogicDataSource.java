@@ -0,0 +1,49 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.logic.datasource;
+
+import java.util.List;
+import java.util.Map;
+
+import org.openmrs.Cohort;
+import org.openmrs.logic.LogicContext;
+import org.openmrs.logic.LogicCriteria;
+import org.openmrs.logic.LogicException;
+import org.openmrs.logic.result.ColumnarResult;
+
+/**
+ * A {@link LogicDataSource} that can read the data of several criteria for a whole cohort in one
+ * pass (e.g. one query for all of the concepts the criteria ask about), straight into
+ * {@link ColumnarResult}s. Evaluating many rules over a large cohort this way avoids one query per
+ * criteria and one {@link org.openmrs.logic.result.Result} object per value.
+ *
+ * @see org.openmrs.logic.LogicUtil#read(LogicDataSource, LogicContext, Cohort, List)
+ * @since 1.11
+ */
+public interface BatchLogicDataSource extends LogicDataSource {
+	
+	/**
+	 * Reads the data of all of the given criteria in one pass
+	 *
+	 * @param context the current logic context
+	 * @param patients the patients for whom to read the data
+	 * @param criteria the criteria identifying which data is to be read, all with keys of this data
+	 *            source
+	 * @return the rows of each criteria
+	 * @throws LogicException
+	 */
+	public Map<LogicCriteria, ColumnarResult> readColumns(LogicContext context, Cohort patients,
+	        List<LogicCriteria> criteria) throws LogicException;
+	
+}
@@ -0,0 +1,908 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.logic.result;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openmrs.Concept;
+import org.openmrs.logic.Duration;
+import org.openmrs.logic.LogicException;
+import org.openmrs.logic.LogicTransform;
+import org.openmrs.logic.op.Operator;
+import org.openmrs.logic.result.Result.Datatype;
+
+/**
+ * The results of a logic query over a cohort, stored column by column in primitive arrays instead
+ * of as one {@link Result} object (with boxed values) per patient and per value. One row holds one
+ * value: the patient id, the result date, the datatype and the numeric, datetime, coded or text
+ * value.<br/>
+ * <br/>
+ * Rows are sorted by patient id and then by result date, with null result dates first. The
+ * patients that have rows are indexed by a sorted array of patient ids holding the offset of each
+ * patient's first row, so patients without results take no space. Datetimes are stored as
+ * milliseconds, coded values as concept ids, and booleans as a numeric 1 or 0. Missing values are
+ * {@link #NULL_DATE}, {@link Double#NaN} and 0. Result objects are not kept.<br/>
+ * <br/>
+ * The operators of the <code>org.openmrs.logic.op</code> package are applied to all patients at
+ * once by the methods of this class, each of which makes one pass over the columns and returns a
+ * new result, e.g.
+ *
+ * <pre>
+ * ColumnarResult cd4 = ColumnarResult.fromResults(dataSource.read(context, cohort, criteria));
+ * ColumnarResult lastLowCd4 = cd4.within(indexDate, Duration.months(6)).lt(200).last();
+ * </pre>
+ *
+ * Instances are immutable.
+ *
+ * @see org.openmrs.logic.datasource.BatchLogicDataSource
+ * @since 1.11
+ */
+public class ColumnarResult {
+	
+	/**
+	 * Stored for a missing result date or datetime value
+	 */
+	public static final long NULL_DATE = Long.MIN_VALUE;
+	
+	private static final Datatype[] DATATYPES = Datatype.values();
+	
+	private static final byte NO_DATATYPE = -1;
+	
+	private static final ColumnarResult EMPTY = new Builder(0).build();
+	
+	private final int[] patientIds;
+	
+	/**
+	 * The rows of patientIds[i] are offsets[i] (inclusive) to offsets[i + 1] (exclusive)
+	 */
+	private final int[] offsets;
+	
+	private final long[] resultDates;
+	
+	private final byte[] datatypes;
+	
+	private final double[] numericValues;
+	
+	private final long[] datetimeValues;
+	
+	private final int[] codedValues;
+	
+	/**
+	 * Null if there are no text values
+	 */
+	private final String[] textValues;
+	
+	private ColumnarResult(int[] patientIds, int[] offsets, long[] resultDates, byte[] datatypes, double[] numericValues,
+	    long[] datetimeValues, int[] codedValues, String[] textValues) {
+		this.patientIds = patientIds;
+		this.offsets = offsets;
+		this.resultDates = resultDates;
+		this.datatypes = datatypes;
+		this.numericValues = numericValues;
+		this.datetimeValues = datetimeValues;
+		this.codedValues = codedValues;
+		this.textValues = textValues;
+	}
+	
+	/**
+	 * @return a result without rows
+	 */
+	public static ColumnarResult emptyResult() {
+		return EMPTY;
+	}
+	
+	/**
+	 * Converts the results of a logic query, as returned by
+	 * {@link org.openmrs.logic.datasource.LogicDataSource#read(org.openmrs.logic.LogicContext, org.openmrs.Cohort, org.openmrs.logic.LogicCriteria)}
+	 *
+	 * @param results the result of each patient
+	 * @return the columnar result
+	 * @should add a row for each value of each patient
+	 */
+	public static ColumnarResult fromResults(Map<Integer, Result> results) {
+		Builder builder = new Builder(results.size());
+		for (Map.Entry<Integer, Result> entry : results.entrySet()) {
+			builder.add(entry.getKey(), entry.getValue());
+		}
+		return builder.build();
+	}
+	
+	/**
+	 * @return the number of patients with rows
+	 */
+	public int getPatientCount() {
+		return patientIds.length;
+	}
+	
+	/**
+	 * @return the number of rows
+	 */
+	public int getRowCount() {
+		return resultDates.length;
+	}
+	
+	/**
+	 * @return the ids of the patients with rows, in ascending order
+	 */
+	public int[] getPatientIds() {
+		return patientIds.clone();
+	}
+	
+	/**
+	 * @param patientId a patient id
+	 * @return true if the patient has rows
+	 */
+	public boolean hasPatient(int patientId) {
+		return Arrays.binarySearch(patientIds, patientId) >= 0;
+	}
+	
+	/**
+	 * @param patientId a patient id
+	 * @return the index of the patient's first row, or -1 if the patient has no rows
+	 */
+	public int getFirstRow(int patientId) {
+		int i = Arrays.binarySearch(patientIds, patientId);
+		return i < 0 ? -1 : offsets[i];
+	}
+	
+	/**
+	 * @param patientId a patient id
+	 * @return the number of rows of the patient
+	 */
+	public int getRowCount(int patientId) {
+		int i = Arrays.binarySearch(patientIds, patientId);
+		return i < 0 ? 0 : offsets[i + 1] - offsets[i];
+	}
+	
+	/**
+	 * @param row a row index
+	 * @return the result date in milliseconds, or {@link #NULL_DATE}
+	 */
+	public long getResultDate(int row) {
+		return resultDates[row];
+	}
+	
+	/**
+	 * @param row a row index
+	 * @return the datatype, or null
+	 */
+	public Datatype getDatatype(int row) {
+		return datatypes[row] == NO_DATATYPE ? null : DATATYPES[datatypes[row]];
+	}
+	
+	/**
+	 * @param row a row index
+	 * @return the numeric value, or {@link Double#NaN}
+	 */
+	public double getNumericValue(int row) {
+		return numericValues[row];
+	}
+	
+	/**
+	 * @param row a row index
+	 * @return the datetime value in milliseconds, or {@link #NULL_DATE}
+	 */
+	public long getDatetimeValue(int row) {
+		return datetimeValues[row];
+	}
+	
+	/**
+	 * @param row a row index
+	 * @return the concept id of the coded value, or 0
+	 */
+	public int getCodedValue(int row) {
+		return codedValues[row];
+	}
+	
+	/**
+	 * @param row a row index
+	 * @return the text value, or null
+	 */
+	public String getTextValue(int row) {
+		return textValues == null ? null : textValues[row];
+	}
+	
+	/**
+	 * Builds the {@link Result} of one patient. Coded values are returned as concepts holding only
+	 * their id.
+	 *
+	 * @param patientId a patient id
+	 * @return the patient's result, a list result if the patient has several rows, or an empty
+	 *         result if the patient has none
+	 * @should return the rows of the patient
+	 */
+	public Result getResult(int patientId) {
+		int i = Arrays.binarySearch(patientIds, patientId);
+		if (i < 0) {
+			return Result.emptyResult();
+		}
+		if (offsets[i + 1] - offsets[i] == 1) {
+			return toResult(offsets[i]);
+		}
+		Result result = new Result();
+		for (int row = offsets[i]; row < offsets[i + 1]; row++) {
+			result.add(toResult(row));
+		}
+		return result;
+	}
+	
+	/**
+	 * Builds the {@link Result} of every patient, for code that expects the results of
+	 * {@link org.openmrs.logic.LogicService#eval(org.openmrs.Cohort, org.openmrs.logic.LogicCriteria)}
+	 *
+	 * @return the result of each patient with rows
+	 * @see #getResult(int)
+	 */
+	public Map<Integer, Result> toResults() {
+		Map<Integer, Result> results = new HashMap<Integer, Result>(patientIds.length * 4 / 3 + 1);
+		for (int patientId : patientIds) {
+			results.put(patientId, getResult(patientId));
+		}
+		return results;
+	}
+	
+	private Result toResult(int row) {
+		Date resultDate = resultDates[row] == NULL_DATE ? null : new Date(resultDates[row]);
+		Datatype datatype = getDatatype(row);
+		double numeric = numericValues[row];
+		Boolean valueBoolean = datatype == Datatype.BOOLEAN && !Double.isNaN(numeric) ? numeric != 0 : null;
+		Concept valueCoded = codedValues[row] == 0 ? null : new Concept(codedValues[row]);
+		Date valueDatetime = datetimeValues[row] == NULL_DATE ? null : new Date(datetimeValues[row]);
+		Double valueNumeric = Double.isNaN(numeric) || datatype == Datatype.BOOLEAN ? null : numeric;
+		return new Result(resultDate, datatype, valueBoolean, valueCoded, valueDatetime, valueNumeric, getTextValue(row),
+		        null);
+	}
+	
+	// --Transform operators
+	
+	/**
+	 * Applies {@link Operator#LAST}
+	 *
+	 * @return the latest row of each patient
+	 * @should keep the latest row of each patient
+	 */
+	public ColumnarResult last() {
+		return last(1);
+	}
+	
+	/**
+	 * Applies {@link Operator#LAST}
+	 *
+	 * @param numResults the number of rows to keep
+	 * @return the latest rows of each patient
+	 */
+	public ColumnarResult last(int numResults) {
+		boolean[] keep = new boolean[getRowCount()];
+		for (int i = 0; i < patientIds.length; i++) {
+			for (int row = Math.max(offsets[i], offsets[i + 1] - numResults); row < offsets[i + 1]; row++) {
+				keep[row] = true;
+			}
+		}
+		return select(keep);
+	}
+	
+	/**
+	 * Applies {@link Operator#FIRST}. Rows without a result date are only used if a patient has
+	 * no dated rows.
+	 *
+	 * @return the earliest row of each patient
+	 * @should skip rows without a result date
+	 */
+	public ColumnarResult first() {
+		return first(1);
+	}
+	
+	/**
+	 * Applies {@link Operator#FIRST}
+	 *
+	 * @param numResults the number of rows to keep
+	 * @return the earliest rows of each patient
+	 * @see #first()
+	 */
+	public ColumnarResult first(int numResults) {
+		boolean[] keep = new boolean[getRowCount()];
+		for (int i = 0; i < patientIds.length; i++) {
+			int from = offsets[i];
+			while (from < offsets[i + 1] - 1 && resultDates[from] == NULL_DATE) {
+				from++;
+			}
+			for (int row = from; row < Math.min(offsets[i + 1], from + numResults); row++) {
+				keep[row] = true;
+			}
+		}
+		return select(keep);
+	}
+	
+	/**
+	 * Applies {@link Operator#COUNT}
+	 *
+	 * @return a numeric row with the number of rows of each patient
+	 */
+	public ColumnarResult count() {
+		Builder builder = new Builder(patientIds.length);
+		for (int i = 0; i < patientIds.length; i++) {
+			builder.add(patientIds[i], NULL_DATE, Datatype.NUMERIC, offsets[i + 1] - offsets[i], NULL_DATE, 0, null);
+		}
+		return builder.build();
+	}
+	
+	/**
+	 * Applies {@link Operator#AVERAGE}
+	 *
+	 * @return a numeric row with the average of the numeric values of each patient that has any
+	 * @should average the numeric values of each patient
+	 */
+	public ColumnarResult average() {
+		Builder builder = new Builder(patientIds.length);
+		for (int i = 0; i < patientIds.length; i++) {
+			double sum = 0;
+			int count = 0;
+			for (int row = offsets[i]; row < offsets[i + 1]; row++) {
+				if (!Double.isNaN(numericValues[row])) {
+					sum += numericValues[row];
+					count++;
+				}
+			}
+			if (count > 0) {
+				builder.add(patientIds[i], NULL_DATE, Datatype.NUMERIC, sum / count, NULL_DATE, 0, null);
+			}
+		}
+		return builder.build();
+	}
+	
+	/**
+	 * Applies {@link Operator#EXISTS}
+	 *
+	 * @return a boolean row with the value true for each patient with rows
+	 */
+	public ColumnarResult exists() {
+		Builder builder = new Builder(patientIds.length);
+		for (int patientId : patientIds) {
+			builder.add(patientId, NULL_DATE, Datatype.BOOLEAN, 1, NULL_DATE, 0, null);
+		}
+		return builder.build();
+	}
+	
+	// --Comparison operators on the result date
+	
+	/**
+	 * Applies {@link Operator#WITHIN}
+	 *
+	 * @param indexDate the index date of the evaluation
+	 * @param duration the duration before the index date (or after it, if negative)
+	 * @return the rows whose result date is within the duration of the index date
+	 * @should keep the rows within the duration before the index date
+	 */
+	public ColumnarResult within(Date indexDate, Duration duration) {
+		long index = indexDate.getTime();
+		long millis = duration.getDurationInMillis();
+		return selectResultDates(Math.min(index, index - millis), Math.max(index, index - millis));
+	}
+	
+	/**
+	 * Applies {@link Operator#BEFORE}
+	 *
+	 * @param date a date
+	 * @return the rows whose result date is before the given date
+	 */
+	public ColumnarResult before(Date date) {
+		return selectResultDates(NULL_DATE + 1, date.getTime() - 1);
+	}
+	
+	/**
+	 * Applies {@link Operator#AFTER}
+	 *
+	 * @param date a date
+	 * @return the rows whose result date is after the given date
+	 */
+	public ColumnarResult after(Date date) {
+		return selectResultDates(date.getTime() + 1, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Applies {@link Operator#ASOF}
+	 *
+	 * @param date a date
+	 * @return the rows whose result date is on or before the given date
+	 */
+	public ColumnarResult asOf(Date date) {
+		return selectResultDates(NULL_DATE + 1, date.getTime());
+	}
+	
+	private ColumnarResult selectResultDates(long from, long to) {
+		boolean[] keep = new boolean[getRowCount()];
+		for (int row = 0; row < keep.length; row++) {
+			keep[row] = resultDates[row] >= from && resultDates[row] <= to;
+		}
+		return select(keep);
+	}
+	
+	// --Comparison operators on the value
+	
+	/**
+	 * Applies {@link Operator#GT}
+	 *
+	 * @param value a number
+	 * @return the rows with a numeric value greater than the given number
+	 * @should keep the rows with a greater numeric value
+	 */
+	public ColumnarResult gt(double value) {
+		boolean[] keep = new boolean[getRowCount()];
+		for (int row = 0; row < keep.length; row++) {
+			keep[row] = numericValues[row] > value;
+		}
+		return select(keep);
+	}
+	
+	/**
+	 * Applies {@link Operator#GTE}
+	 *
+	 * @param value a number
+	 * @return the rows with a numeric value greater than or equal to the given number
+	 */
+	public ColumnarResult gte(double value) {
+		boolean[] keep = new boolean[getRowCount()];
+		for (int row = 0; row < keep.length; row++) {
+			keep[row] = numericValues[row] >= value;
+		}
+		return select(keep);
+	}
+	
+	/**
+	 * Applies {@link Operator#LT}
+	 *
+	 * @param value a number
+	 * @return the rows with a numeric value less than the given number
+	 */
+	public ColumnarResult lt(double value) {
+		boolean[] keep = new boolean[getRowCount()];
+		for (int row = 0; row < keep.length; row++) {
+			keep[row] = numericValues[row] < value;
+		}
+		return select(keep);
+	}
+	
+	/**
+	 * Applies {@link Operator#LTE}
+	 *
+	 * @param value a number
+	 * @return the rows with a numeric value less than or equal to the given number
+	 */
+	public ColumnarResult lte(double value) {
+		boolean[] keep = new boolean[getRowCount()];
+		for (int row = 0; row < keep.length; row++) {
+			keep[row] = numericValues[row] <= value;
+		}
+		return select(keep);
+	}
+	
+	/**
+	 * Applies {@link Operator#EQUALS} to numeric values
+	 *
+	 * @param value a number
+	 * @return the rows with a numeric value equal to the given number
+	 */
+	public ColumnarResult equalTo(double value) {
+		boolean[] keep = new boolean[getRowCount()];
+		for (int row = 0; row < keep.length; row++) {
+			keep[row] = numericValues[row] == value;
+		}
+		return select(keep);
+	}
+	
+	/**
+	 * Applies {@link Operator#EQUALS} to text values
+	 *
+	 * @param value a text
+	 * @return the rows with the given text value
+	 */
+	public ColumnarResult equalTo(String value) {
+		boolean[] keep = new boolean[getRowCount()];
+		if (textValues != null) {
+			for (int row = 0; row < keep.length; row++) {
+				keep[row] = value.equals(textValues[row]);
+			}
+		}
+		return select(keep);
+	}
+	
+	/**
+	 * Applies {@link Operator#EQUALS} and {@link Operator#IN} to coded values
+	 *
+	 * @param conceptIds the ids of the concepts to look for
+	 * @return the rows coded as one of the given concepts
+	 * @should keep the rows coded as one of the concepts
+	 */
+	public ColumnarResult in(int... conceptIds) {
+		int[] sorted = conceptIds.clone();
+		Arrays.sort(sorted);
+		boolean[] keep = new boolean[getRowCount()];
+		for (int row = 0; row < keep.length; row++) {
+			keep[row] = codedValues[row] != 0 && Arrays.binarySearch(sorted, codedValues[row]) >= 0;
+		}
+		return select(keep);
+	}
+	
+	/**
+	 * Applies {@link Operator#CONTAINS}
+	 *
+	 * @param conceptId the id of a concept
+	 * @return all rows of the patients that have a row coded as the given concept
+	 */
+	public ColumnarResult contains(int conceptId) {
+		boolean[] keep = new boolean[getRowCount()];
+		for (int i = 0; i < patientIds.length; i++) {
+			boolean found = false;
+			for (int row = offsets[i]; row < offsets[i + 1] && !found; row++) {
+				found = codedValues[row] == conceptId;
+			}
+			if (found) {
+				Arrays.fill(keep, offsets[i], offsets[i + 1], true);
+			}
+		}
+		return select(keep);
+	}
+	
+	/**
+	 * Applies a comparison operator, for engines that have the operand of a logic expression in
+	 * hand
+	 *
+	 * @param operator one of the comparison operators of {@link Operator}
+	 * @param operand a {@link Number}, {@link String}, {@link Date}, {@link Duration},
+	 *            {@link Concept} or a collection of concepts or concept ids, as the operator needs
+	 * @param indexDate the index date of the evaluation, used by {@link Operator#WITHIN}
+	 * @return the result of the operator
+	 * @throws LogicException if the operator or operand is not supported
+	 * @should apply the comparison operators
+	 * @should fail for an unsupported operand
+	 */
+	public ColumnarResult apply(Operator operator, Object operand, Date indexDate) throws LogicException {
+		if (Operator.WITHIN.equals(operator) && operand instanceof Duration) {
+			return within(indexDate, (Duration) operand);
+		} else if (Operator.BEFORE.equals(operator) && operand instanceof Date) {
+			return before((Date) operand);
+		} else if (Operator.AFTER.equals(operator) && operand instanceof Date) {
+			return after((Date) operand);
+		} else if (Operator.ASOF.equals(operator) && operand instanceof Date) {
+			return asOf((Date) operand);
+		} else if (operand instanceof Number) {
+			double value = ((Number) operand).doubleValue();
+			if (Operator.GT.equals(operator)) {
+				return gt(value);
+			} else if (Operator.GTE.equals(operator)) {
+				return gte(value);
+			} else if (Operator.LT.equals(operator)) {
+				return lt(value);
+			} else if (Operator.LTE.equals(operator)) {
+				return lte(value);
+			} else if (Operator.EQUALS.equals(operator)) {
+				return equalTo(value);
+			}
+		} else if (Operator.EQUALS.equals(operator) && operand instanceof String) {
+			return equalTo((String) operand);
+		} else if (operand instanceof Concept) {
+			int conceptId = ((Concept) operand).getConceptId();
+			if (Operator.EQUALS.equals(operator)) {
+				return in(conceptId);
+			} else if (Operator.CONTAINS.equals(operator)) {
+				return contains(conceptId);
+			}
+		} else if (Operator.IN.equals(operator) && operand instanceof Collection) {
+			Collection<?> values = (Collection<?>) operand;
+			int[] conceptIds = new int[values.size()];
+			int i = 0;
+			for (Object value : values) {
+				if (value instanceof Concept) {
+					conceptIds[i++] = ((Concept) value).getConceptId();
+				} else if (value instanceof Integer) {
+					conceptIds[i++] = (Integer) value;
+				} else {
+					throw new LogicException("Columnar results can only apply IN to concepts, not " + value);
+				}
+			}
+			return in(conceptIds);
+		}
+		throw new LogicException("Columnar results do not support " + operator + " " + operand);
+	}
+	
+	/**
+	 * Applies a transform operator
+	 *
+	 * @param transform the transform of a logic expression
+	 * @return the result of the transform
+	 * @throws LogicException if the transform is not supported
+	 */
+	public ColumnarResult apply(LogicTransform transform) throws LogicException {
+		Operator operator = transform.getTransformOperator();
+		int numResults = transform.getNumResults() == null ? 1 : transform.getNumResults();
+		if (Operator.LAST.equals(operator)) {
+			return last(numResults);
+		} else if (Operator.FIRST.equals(operator)) {
+			return first(numResults);
+		} else if (Operator.COUNT.equals(operator)) {
+			return count();
+		} else if (Operator.AVERAGE.equals(operator)) {
+			return average();
+		} else if (Operator.EXISTS.equals(operator)) {
+			return exists();
+		}
+		throw new LogicException("Columnar results do not support the transform " + transform);
+	}
+	
+	/**
+	 * Copies the rows flagged in the given array
+	 */
+	private ColumnarResult select(boolean[] keep) {
+		int rows = 0;
+		int patients = 0;
+		for (int i = 0; i < patientIds.length; i++) {
+			boolean any = false;
+			for (int row = offsets[i]; row < offsets[i + 1]; row++) {
+				if (keep[row]) {
+					rows++;
+					any = true;
+				}
+			}
+			if (any) {
+				patients++;
+			}
+		}
+		if (rows == getRowCount()) {
+			return this;
+		}
+		
+		int[] newPatientIds = new int[patients];
+		int[] newOffsets = new int[patients + 1];
+		long[] newResultDates = new long[rows];
+		byte[] newDatatypes = new byte[rows];
+		double[] newNumericValues = new double[rows];
+		long[] newDatetimeValues = new long[rows];
+		int[] newCodedValues = new int[rows];
+		String[] newTextValues = textValues == null ? null : new String[rows];
+		
+		int p = 0;
+		int r = 0;
+		for (int i = 0; i < patientIds.length; i++) {
+			int start = r;
+			for (int row = offsets[i]; row < offsets[i + 1]; row++) {
+				if (keep[row]) {
+					newResultDates[r] = resultDates[row];
+					newDatatypes[r] = datatypes[row];
+					newNumericValues[r] = numericValues[row];
+					newDatetimeValues[r] = datetimeValues[row];
+					newCodedValues[r] = codedValues[row];
+					if (newTextValues != null) {
+						newTextValues[r] = textValues[row];
+					}
+					r++;
+				}
+			}
+			if (r > start) {
+				newPatientIds[p] = patientIds[i];
+				newOffsets[p++] = start;
+			}
+		}
+		newOffsets[patients] = rows;
+		return new ColumnarResult(newPatientIds, newOffsets, newResultDates, newDatatypes, newNumericValues,
+		        newDatetimeValues, newCodedValues, newTextValues);
+	}
+	
+	/**
+	 * Collects rows, in any order, into a {@link ColumnarResult}. Data sources can add the values
+	 * they read straight into a builder, without creating {@link Result}s.
+	 */
+	public static class Builder {
+		
+		private int size = 0;
+		
+		private int[] patientIds;
+		
+		private long[] resultDates;
+		
+		private byte[] datatypes;
+		
+		private double[] numericValues;
+		
+		private long[] datetimeValues;
+		
+		private int[] codedValues;
+		
+		private String[] textValues;
+		
+		/**
+		 * @param expectedRows the number of rows to make room for
+		 */
+		public Builder(int expectedRows) {
+			int capacity = Math.max(expectedRows, 16);
+			patientIds = new int[capacity];
+			resultDates = new long[capacity];
+			datatypes = new byte[capacity];
+			numericValues = new double[capacity];
+			datetimeValues = new long[capacity];
+			codedValues = new int[capacity];
+		}
+		
+		/**
+		 * Adds a row
+		 *
+		 * @param patientId the patient id
+		 * @param resultDate the result date in milliseconds, or {@link ColumnarResult#NULL_DATE}
+		 * @param datatype the datatype, or null
+		 * @param numericValue the numeric value (1 or 0 for booleans), or {@link Double#NaN}
+		 * @param datetimeValue the datetime value in milliseconds, or
+		 *            {@link ColumnarResult#NULL_DATE}
+		 * @param codedValue the concept id of the coded value, or 0
+		 * @param textValue the text value, or null
+		 * @return this builder
+		 */
+		public Builder add(int patientId, long resultDate, Datatype datatype, double numericValue, long datetimeValue,
+		        int codedValue, String textValue) {
+			if (size == patientIds.length) {
+				grow();
+			}
+			patientIds[size] = patientId;
+			resultDates[size] = resultDate;
+			datatypes[size] = datatype == null ? NO_DATATYPE : (byte) datatype.ordinal();
+			numericValues[size] = numericValue;
+			datetimeValues[size] = datetimeValue;
+			codedValues[size] = codedValue;
+			if (textValue != null) {
+				if (textValues == null) {
+					textValues = new String[patientIds.length];
+				}
+				textValues[size] = textValue;
+			}
+			size++;
+			return this;
+		}
+		
+		/**
+		 * Adds a row for each value of a result
+		 *
+		 * @param patientId the patient id
+		 * @param result a single or list result
+		 * @return this builder
+		 */
+		public Builder add(int patientId, Result result) {
+			if (result == null || result.isNull()) {
+				return this;
+			}
+			if (!result.isEmpty()) {
+				for (Result value : result) {
+					add(patientId, value);
+				}
+				return this;
+			}
+			
+			Datatype datatype = result.getDatatype();
+			double numeric = Double.NaN;
+			if (datatype == Datatype.BOOLEAN) {
+				Boolean value = result.toBoolean();
+				numeric = value == null ? Double.NaN : (value ? 1 : 0);
+			} else if (datatype == Datatype.NUMERIC && result.toNumber() != null) {
+				numeric = result.toNumber();
+			}
+			Concept coded = datatype == Datatype.CODED ? result.toConcept() : null;
+			Date datetime = datatype == Datatype.DATETIME ? result.toDatetime() : null;
+			String text = datatype == Datatype.TEXT ? result.toString() : null;
+			return add(patientId, toMillis(result.getResultDate()), datatype, numeric, toMillis(datetime),
+			    coded == null || coded.getConceptId() == null ? 0 : coded.getConceptId(), text);
+		}
+		
+		/**
+		 * @return the result holding the rows added so far, sorted by patient id and result date
+		 */
+		public ColumnarResult build() {
+			int[] order = new int[size];
+			boolean sorted = true;
+			for (int row = 0; row < size; row++) {
+				order[row] = row;
+				if (row > 0 && compare(row - 1, row) > 0) {
+					sorted = false;
+				}
+			}
+			if (!sorted) {
+				mergeSort(order, new int[size], 0, size);
+			}
+			
+			int patients = 0;
+			for (int i = 0; i < size; i++) {
+				if (i == 0 || patientIds[order[i]] != patientIds[order[i - 1]]) {
+					patients++;
+				}
+			}
+			
+			int[] indexPatientIds = new int[patients];
+			int[] offsets = new int[patients + 1];
+			long[] sortedResultDates = new long[size];
+			byte[] sortedDatatypes = new byte[size];
+			double[] sortedNumericValues = new double[size];
+			long[] sortedDatetimeValues = new long[size];
+			int[] sortedCodedValues = new int[size];
+			String[] sortedTextValues = textValues == null ? null : new String[size];
+			int p = 0;
+			for (int i = 0; i < size; i++) {
+				int row = order[i];
+				if (i == 0 || patientIds[row] != patientIds[order[i - 1]]) {
+					indexPatientIds[p] = patientIds[row];
+					offsets[p++] = i;
+				}
+				sortedResultDates[i] = resultDates[row];
+				sortedDatatypes[i] = datatypes[row];
+				sortedNumericValues[i] = numericValues[row];
+				sortedDatetimeValues[i] = datetimeValues[row];
+				sortedCodedValues[i] = codedValues[row];
+				if (sortedTextValues != null) {
+					sortedTextValues[i] = textValues[row];
+				}
+			}
+			offsets[patients] = size;
+			return new ColumnarResult(indexPatientIds, offsets, sortedResultDates, sortedDatatypes, sortedNumericValues,
+			        sortedDatetimeValues, sortedCodedValues, sortedTextValues);
+		}
+		
+		private int compare(int a, int b) {
+			if (patientIds[a] != patientIds[b]) {
+				return patientIds[a] < patientIds[b] ? -1 : 1;
+			}
+			return resultDates[a] < resultDates[b] ? -1 : (resultDates[a] == resultDates[b] ? 0 : 1);
+		}
+		
+		/**
+		 * Stable sort of the row indexes in order[from, to)
+		 */
+		private void mergeSort(int[] order, int[] buffer, int from, int to) {
+			if (to - from < 2) {
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			mergeSort(order, buffer, from, middle);
+			mergeSort(order, buffer, middle, to);
+			if (compare(order[middle - 1], order[middle]) <= 0) {
+				return;
+			}
+			System.arraycopy(order, from, buffer, from, to - from);
+			int left = from;
+			int right = middle;
+			for (int i = from; i < to; i++) {
+				if (right >= to || (left < middle && compare(buffer[left], buffer[right]) <= 0)) {
+					order[i] = buffer[left++];
+				} else {
+					order[i] = buffer[right++];
+				}
+			}
+		}
+		
+		private void grow() {
+			int capacity = patientIds.length * 2;
+			patientIds = Arrays.copyOf(patientIds, capacity);
+			resultDates = Arrays.copyOf(resultDates, capacity);
+			datatypes = Arrays.copyOf(datatypes, capacity);
+			numericValues = Arrays.copyOf(numericValues, capacity);
+			datetimeValues = Arrays.copyOf(datetimeValues, capacity);
+			codedValues = Arrays.copyOf(codedValues, capacity);
+			if (textValues != null) {
+				textValues = Arrays.copyOf(textValues, capacity);
+			}
+		}
+		
+		private static long toMillis(Date date) {
+			return date == null ? NULL_DATE : date.getTime();
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Records which files were extracted from a module file, so that a later extraction of the same
+ * module only has to write the entries that changed.<br/>
+ * <br/>
+ * The manifest is a properties file holding the checksum of the whole module file and, for every
+ * extracted file, its path relative to a base directory mapped to the CRC and size of the jar entry
+ * it was extracted from. Both are read from the jar's central directory, so checking an entry does
+ * not require reading or decompressing it. Usage:
+ *
+ * <pre>
+ * ExtractionManifest manifest = new ExtractionManifest(manifestFile, baseDir);
+ * for (each entry) {
+ * 	if (!manifest.isExtracted(path, entry)) {
+ * 		// write the entry to new File(baseDir, path)
+ * 		manifest.setExtracted(path, entry);
+ * 	}
+ * }
+ * manifest.removeStaleFiles();
+ * manifest.setChecksum(ExtractionManifest.getChecksum(moduleFile));
+ * manifest.save();
+ * </pre>
+ *
+ * @since 1.11
+ */
+public class ExtractionManifest {
+	
+	private static final Log log = LogFactory.getLog(ExtractionManifest.class);
+	
+	/**
+	 * The name of the manifest files
+	 */
+	public static final String FILENAME = ".extraction-manifest";
+	
+	private static final String CHECKSUM_KEY = "#checksum";
+	
+	private final File manifestFile;
+	
+	private final File baseDir;
+	
+	private final Properties entries = new Properties();
+	
+	private final Set<String> seen = new HashSet<String>();
+	
+	private boolean changed = false;
+	
+	/**
+	 * Loads the given manifest file, if it exists
+	 *
+	 * @param manifestFile the manifest file
+	 * @param baseDir the directory the recorded paths are relative to
+	 */
+	public ExtractionManifest(File manifestFile, File baseDir) {
+		this.manifestFile = manifestFile;
+		this.baseDir = baseDir;
+		
+		if (manifestFile.exists()) {
+			InputStream in = null;
+			try {
+				in = new FileInputStream(manifestFile);
+				entries.load(in);
+			}
+			catch (IOException e) {
+				log.warn("Unable to read the extraction manifest " + manifestFile.getAbsolutePath(), e);
+				entries.clear();
+			}
+			finally {
+				if (in != null) {
+					try {
+						in.close();
+					}
+					catch (IOException e) { /* pass */}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Computes the checksum of a module file
+	 *
+	 * @param file the file
+	 * @return the checksum
+	 * @throws IOException
+	 */
+	public static String getChecksum(File file) throws IOException {
+		return Long.toHexString(FileUtils.checksumCRC32(file)) + "-" + Long.toHexString(file.length());
+	}
+	
+	/**
+	 * @return the checksum of the module file the recorded files were extracted from, or null
+	 */
+	public String getChecksum() {
+		return entries.getProperty(CHECKSUM_KEY);
+	}
+	
+	/**
+	 * @param checksum the checksum of the module file the files were extracted from
+	 */
+	public void setChecksum(String checksum) {
+		if (!checksum.equals(getChecksum())) {
+			entries.setProperty(CHECKSUM_KEY, checksum);
+			changed = true;
+		}
+	}
+	
+	/**
+	 * Checks whether the given entry was extracted to the given path and the file is still there
+	 *
+	 * @param path the path of the extracted file, relative to the base directory
+	 * @param entry the jar entry
+	 * @return true if the file does not need to be written again
+	 * @should return true for an unchanged entry
+	 * @should return false if the entry changed
+	 * @should return false if the file is missing
+	 */
+	public boolean isExtracted(String path, ZipEntry entry) {
+		seen.add(path);
+		if (!getEntryHash(entry).equals(entries.getProperty(path))) {
+			return false;
+		}
+		File file = new File(baseDir, path);
+		return file.isFile() && (entry.getSize() < 0 || file.length() == entry.getSize());
+	}
+	
+	/**
+	 * Records that the given entry was extracted to the given path
+	 *
+	 * @param path the path of the extracted file, relative to the base directory
+	 * @param entry the jar entry
+	 */
+	public void setExtracted(String path, ZipEntry entry) {
+		seen.add(path);
+		entries.setProperty(path, getEntryHash(entry));
+		changed = true;
+	}
+	
+	/**
+	 * Deletes the recorded files that were not checked or extracted since this manifest was loaded,
+	 * because their entries are no longer in the module file
+	 *
+	 * @return the number of files deleted
+	 * @should delete the files of entries no longer in the module
+	 */
+	public int removeStaleFiles() {
+		int removed = 0;
+		for (String path : entries.stringPropertyNames()) {
+			if (!CHECKSUM_KEY.equals(path) && !seen.contains(path)) {
+				File file = new File(baseDir, path);
+				if (file.isFile() && !file.delete()) {
+					log.debug("Unable to delete stale file " + file.getAbsolutePath());
+				}
+				entries.remove(path);
+				changed = true;
+				removed++;
+			}
+		}
+		return removed;
+	}
+	
+	/**
+	 * Writes the manifest, if anything changed
+	 *
+	 * @throws IOException
+	 */
+	public void save() throws IOException {
+		if (!changed) {
+			return;
+		}
+		
+		File parent = manifestFile.getParentFile();
+		if (parent != null && !parent.exists()) {
+			parent.mkdirs();
+		}
+		OutputStream out = new FileOutputStream(manifestFile);
+		try {
+			entries.store(out, null);
+		}
+		finally {
+			out.close();
+		}
+		changed = false;
+	}
+	
+	private static String getEntryHash(ZipEntry entry) {
+		return Long.toHexString(entry.getCrc()) + "-" + Long.toHexString(entry.getSize());
+	}
+}
@@ -41,6 +41,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
@@ -76,6 +80,12 @@ public class ModuleClassLoader extends URLClassLoader {
 	 */
 	private Map<String, Class<?>> loadedClasses = new HashMap<String, Class<?>>();
 	
+	/**
+	 * The names of the entries in the jars of this classloader, so that names that are not in any
+	 * of them are not looked up jar by jar
+	 */
+	private final ResourceIndex resourceIndex = new ResourceIndex();
+	
 	/**
 	 * @param module Module
 	 * @param urls resources "managed" by this class loader
@@ -93,6 +103,7 @@ public class ModuleClassLoader extends URLClassLoader {
 		}
 		
 		this.module = module;
+		resourceIndex.addAll(urls);
 		collectRequiredModuleImports();
 		collectAwareOfModuleImports();
 		collectFilters();
@@ -172,6 +183,20 @@ public class ModuleClassLoader extends URLClassLoader {
 		File tmpModuleDir = getLibCacheFolderForModule(module);
 		File tmpModuleJar = new File(tmpModuleDir, module.getModuleId() + ".jar");
 		
+		// the manifest records what was already copied and extracted from this module file, so
+		// restarting an unchanged module does not have to do it all again
+		ExtractionManifest manifest = new ExtractionManifest(new File(tmpModuleDir, ExtractionManifest.FILENAME),
+		        tmpModuleDir);
+		String checksum = null;
+		try {
+			checksum = ExtractionManifest.getChecksum(module.getFile());
+		}
+		catch (IOException io) {
+			log.warn("Unable to compute the checksum of " + module.getFile(), io);
+		}
+		boolean unchanged = checksum != null && checksum.equals(manifest.getChecksum()) && tmpModuleJar.exists()
+		        && tmpModuleJar.length() == module.getFile().length();
+		
 		if (!tmpModuleJar.exists()) {
 			try {
 				tmpModuleJar.createNewFile();
@@ -182,25 +207,31 @@ public class ModuleClassLoader extends URLClassLoader {
 		}
 		
 		// copy the module jar into that temporary folder
-		FileInputStream in = null;
-		FileOutputStream out = null;
-		try {
-			in = new FileInputStream(module.getFile());
-			out = new FileOutputStream(tmpModuleJar);
-			OpenmrsUtil.copyFile(in, out);
-		}
-		catch (IOException io) {
-			log.warn("Unable to copy tmpModuleFile", io);
-		}
-		finally {
-			try {
-				in.close();
+		if (unchanged) {
+			if (log.isDebugEnabled()) {
+				log.debug("Module file of " + module.getModuleId() + " is unchanged, reusing " + tmpModuleJar);
 			}
-			catch (Exception e) { /* pass */}
+		} else {
+			FileInputStream in = null;
+			FileOutputStream out = null;
 			try {
-				out.close();
+				in = new FileInputStream(module.getFile());
+				out = new FileOutputStream(tmpModuleJar);
+				OpenmrsUtil.copyFile(in, out);
+			}
+			catch (IOException io) {
+				log.warn("Unable to copy tmpModuleFile", io);
+			}
+			finally {
+				try {
+					in.close();
+				}
+				catch (Exception e) { /* pass */}
+				try {
+					out.close();
+				}
+				catch (Exception e) { /* pass */}
 			}
-			catch (Exception e) { /* pass */}
 		}
 		
 		// add the module jar as a url in the classpath of the classloader
@@ -219,7 +250,12 @@ public class ModuleClassLoader extends URLClassLoader {
 				log.debug("Expanding /lib folder in module");
 			}
 			
-			ModuleUtil.expandJar(module.getFile(), tmpModuleDir, "lib", true);
+			ModuleUtil.expandJar(module.getFile(), tmpModuleDir, "lib", true, manifest);
+			manifest.removeStaleFiles();
+			if (checksum != null) {
+				manifest.setChecksum(checksum);
+			}
+			manifest.save();
 			File libdir = new File(tmpModuleDir, "lib");
 			
 			if (libdir != null && libdir.exists()) {
@@ -283,6 +319,17 @@ public class ModuleClassLoader extends URLClassLoader {
 		return result;
 	}
 	
+	/**
+	 * Adds the url to the classpath of this classloader and to the index of its resources
+	 *
+	 * @see java.net.URLClassLoader#addURL(java.net.URL)
+	 */
+	@Override
+	protected void addURL(URL url) {
+		super.addURL(url);
+		resourceIndex.add(url);
+	}
+	
 	/**
 	 * Get and cache the imports for this module. The imports should just be the modules that set as
 	 * "required" by this module
@@ -533,7 +580,9 @@ public class ModuleClassLoader extends URLClassLoader {
 		// we didn't find a loaded class and this isn't a class
 		// from another module
 		try {
-			result = findClass(name);
+			if (resourceIndex.mightContain(name.replace('.', '/') + ".class")) {
+				result = findClass(name);
+			}
 		}
 		catch (LinkageError le) {
 			throw le;
@@ -873,7 +922,7 @@ public class ModuleClassLoader extends URLClassLoader {
 			return null;
 		}
 		
-		URL result = super.findResource(name);
+		URL result = resourceIndex.mightContain(name) ? super.findResource(name) : null;
 		if (result != null) { // found resource in this module class path
 			if (isResourceVisible(name, result, requestor)) {
 				return result;
@@ -958,10 +1007,12 @@ public class ModuleClassLoader extends URLClassLoader {
 		if ((seenModules != null) && seenModules.contains(getModule().getModuleId())) {
 			return;
 		}
-		for (Enumeration<URL> enm = super.findResources(name); enm.hasMoreElements();) {
-			URL url = enm.nextElement();
-			if (isResourceVisible(name, url, requestor)) {
-				result.add(url);
+		if (resourceIndex.mightContain(name)) {
+			for (Enumeration<URL> enm = super.findResources(name); enm.hasMoreElements();) {
+				URL url = enm.nextElement();
+				if (isResourceVisible(name, url, requestor)) {
+					result.add(url);
+				}
 			}
 		}
 		//		if (resourceLoader != null) {
@@ -1126,4 +1177,92 @@ public class ModuleClassLoader extends URLClassLoader {
 		return "{ModuleClassLoader: uid=" + System.identityHashCode(this) + "; " + module + "}";
 	}
 	
+	
+	/**
+	 * The names of all entries in the jars on the classpath of a module classloader. Directory
+	 * entries are kept both with and without their trailing slash, as jar files find them either
+	 * way. If a url is not a jar file that can be read, or a jar refers to other jars through its
+	 * manifest class path, the index is incomplete and every name might be found.
+	 *
+	 * @since 1.11
+	 */
+	static class ResourceIndex {
+		
+		// replaced rather than modified, so that lookups need no locking
+		private volatile Set<String> names = Collections.emptySet();
+		
+		private volatile boolean complete = true;
+		
+		/**
+		 * Adds the entries of the jar at the given url
+		 *
+		 * @param url the url of a jar
+		 * @should add the entries of the jar
+		 * @should make the index incomplete for a url that is not a jar
+		 * @should make the index incomplete for a jar with a manifest class path
+		 */
+		synchronized void add(URL url) {
+			addAll(Collections.singletonList(url));
+		}
+		
+		/**
+		 * Adds the entries of the jars at the given urls, the names are copied once for all of them
+		 *
+		 * @param urls the urls of jars
+		 * @should add the entries of all the jars
+		 */
+		synchronized void addAll(Collection<URL> urls) {
+			Set<String> newNames = new HashSet<String>(names);
+			for (URL url : urls) {
+				addEntries(url, newNames);
+			}
+			names = newNames;
+		}
+		
+		private void addEntries(URL url, Set<String> newNames) {
+			File file = OpenmrsUtil.url2file(url);
+			if (file == null || !file.isFile() || !file.getName().endsWith(".jar")) {
+				complete = false;
+				return;
+			}
+			
+			JarFile jar = null;
+			try {
+				jar = new JarFile(file);
+				Manifest manifest = jar.getManifest();
+				if (manifest != null && manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH) != null) {
+					complete = false;
+				}
+				for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+					String name = entries.nextElement().getName();
+					newNames.add(name);
+					if (name.endsWith("/")) {
+						newNames.add(name.substring(0, name.length() - 1));
+					}
+				}
+			}
+			catch (IOException e) {
+				log.warn("Unable to index the resources of " + file.getAbsolutePath(), e);
+				complete = false;
+			}
+			finally {
+				if (jar != null) {
+					try {
+						jar.close();
+					}
+					catch (IOException e) {
+						// do nothing
+					}
+				}
+			}
+		}
+		
+		/**
+		 * @param name the name of a resource
+		 * @return false if the resource is known not to be in any of the jars
+		 */
+		boolean mightContain(String name) {
+			return !complete || names.contains(name);
+		}
+	}
 }
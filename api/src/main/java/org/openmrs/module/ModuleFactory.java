@@ -24,6 +24,8 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -32,6 +34,12 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.Vector;
 import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 
@@ -40,6 +48,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.GlobalProperty;
 import org.openmrs.Privilege;
+import org.openmrs.aop.RequiredDataAdvice;
 import org.openmrs.api.AdministrationService;
 import org.openmrs.api.OpenmrsService;
 import org.openmrs.api.context.Context;
@@ -47,6 +56,7 @@ import org.openmrs.api.context.Daemon;
 import org.openmrs.module.Extension.MEDIA_TYPE;
 import org.openmrs.util.DatabaseUpdateException;
 import org.openmrs.util.DatabaseUpdater;
+import org.openmrs.util.HandlerUtil;
 import org.openmrs.util.InputRequiredException;
 import org.openmrs.util.OpenmrsClassLoader;
 import org.openmrs.util.OpenmrsConstants;
@@ -65,12 +75,13 @@ public class ModuleFactory {
 	
 	protected static Map<String, Module> loadedModules = new WeakHashMap<String, Module>();
 	
-	protected static Map<String, Module> startedModules = new WeakHashMap<String, Module>();
+	protected static Map<String, Module> startedModules = Collections.synchronizedMap(new WeakHashMap<String, Module>());
 	
 	protected static Map<String, List<Extension>> extensionMap = new HashMap<String, List<Extension>>();
 	
 	// maps to keep track of the memory and objects to free/close
-	protected static Map<Module, ModuleClassLoader> moduleClassLoaders = new WeakHashMap<Module, ModuleClassLoader>();
+	protected static Map<Module, ModuleClassLoader> moduleClassLoaders = Collections
+	        .synchronizedMap(new WeakHashMap<Module, ModuleClassLoader>());
 	
 	// the name of the file within a module file
 	private static final String MODULE_CHANGELOG_FILENAME = "liquibase.xml";
@@ -79,6 +90,20 @@ public class ModuleFactory {
 	
 	private static Set<String> actualStartupOrder;
 	
+	/**
+	 * Guards the extension map and the startup order, which can be changed by modules starting or
+	 * stopping at the same time
+	 */
+	private static final Object STARTUP_LOCK = new Object();
+	
+	/**
+	 * Modules starting at the same time still run their database changes one after the other
+	 */
+	private static final Object DATABASE_LOCK = new Object();
+	
+	private static final Map<String, ModuleStartupTiming> startupTimings = Collections
+	        .synchronizedMap(new LinkedHashMap<String, ModuleStartupTiming>());
+	
 	/**
 	 * Add a module (in the form of a jar file) to the list of openmrs modules Returns null if an
 	 * error occurred and/or module was not successfully loaded
@@ -194,18 +219,24 @@ public class ModuleFactory {
 	 * Try to start all of the loaded modules that have the global property <i>moduleId</i>.started
 	 * is set to "true" or the property does not exist. Otherwise, leave it as only "loaded"<br/>
 	 * <br/>
-	 * Modules that are already started will be skipped.
+	 * Modules that are already started will be skipped.<br/>
+	 * <br/>
+	 * If the {@link OpenmrsConstants#GLOBAL_PROPERTY_MODULE_STARTUP_THREADS} global property is
+	 * larger than 1, independent modules are started at the same time, see
+	 * {@link #startModulesInParallel(List, int)}. The time each module took to start is logged and
+	 * available from {@link #getModuleStartupTimings()}.
 	 */
 	public static void startModules() {
 		
 		// loop over and try starting each of the loaded modules
 		if (getLoadedModules().size() > 0) {
-			List<Module> leftoverModules = new Vector<Module>();
+			List<Module> modulesToStart = new ArrayList<Module>();
+			int threads;
 			
 			try {
 				Context.addProxyPrivilege("");
 				AdministrationService as = Context.getAdministrationService();
-				// try and start the modules that should be started
+				// find the modules that should be started
 				for (Module mod : getLoadedModulesCoreFirst()) {
 					if (mod.isStarted()) {
 						continue; // skip over modules that are already started
@@ -222,89 +253,315 @@ public class ModuleFactory {
 					// as this is probably the first time they are loading it
 					if (startedProp == null || startedProp.equals("true") || "true".equalsIgnoreCase(mandatoryProp)
 					        || mod.isMandatory() || isCoreToOpenmrs) {
-						if (requiredModulesStarted(mod)) {
-							try {
-								if (log.isDebugEnabled()) {
-									log.debug("starting module: " + mod.getModuleId());
-								}
-								
-								startModule(mod);
-							}
-							catch (Exception e) {
-								log.error("Error while starting module: " + mod.getName(), e);
-								mod.setStartupErrorMessage("Error while starting module", e);
-								notifySuperUsersAboutModuleFailure(mod);
-							}
-						} else {
-							// if not all the modules required by this mod are loaded, save it for later
-							leftoverModules.add(mod);
-							if (log.isDebugEnabled()) {
-								log.debug("cannot start because required modules are not started: " + mod.getModuleId());
-							}
-						}
+						modulesToStart.add(mod);
 					}
 				}
+				
+				threads = getStartupThreads(as);
 			}
 			finally {
 				Context.removeProxyPrivilege("");
 			}
 			
-			// loop over the leftover modules until we can't load
-			// anymore or we've loaded them all
-			boolean atLeastOneModuleLoaded = true;
-			while (leftoverModules.size() > 0 && atLeastOneModuleLoaded) {
+			long start = System.currentTimeMillis();
+			if (threads > 1 && modulesToStart.size() > 1) {
+				startModulesInParallel(modulesToStart, threads);
+			} else {
+				startModulesInOrder(modulesToStart);
+			}
+			
+			if (log.isInfoEnabled() && modulesToStart.size() > 0) {
+				StringBuilder report = new StringBuilder("Started modules in " + (System.currentTimeMillis() - start)
+				        + " ms");
+				for (Module mod : modulesToStart) {
+					ModuleStartupTiming timing = startupTimings.get(mod.getModuleId());
+					if (timing != null) {
+						report.append("\n\t").append(timing);
+					}
+				}
+				log.info(report);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Starts the given modules one after the other, in the given order
+	 *
+	 * @param modulesToStart the modules to start
+	 */
+	private static void startModulesInOrder(List<Module> modulesToStart) {
+		List<Module> leftoverModules = new Vector<Module>();
+		
+		// try and start the modules that should be started
+		for (Module mod : modulesToStart) {
+			if (requiredModulesStarted(mod)) {
+				try {
+					if (log.isDebugEnabled()) {
+						log.debug("starting module: " + mod.getModuleId());
+					}
+					
+					startModule(mod);
+				}
+				catch (Exception e) {
+					log.error("Error while starting module: " + mod.getName(), e);
+					mod.setStartupErrorMessage("Error while starting module", e);
+					notifySuperUsersAboutModuleFailure(mod);
+				}
+			} else {
+				// if not all the modules required by this mod are loaded, save it for later
+				leftoverModules.add(mod);
 				if (log.isDebugEnabled()) {
-					log.debug("Trying to start leftover modules: " + leftoverModules);
+					log.debug("cannot start because required modules are not started: " + mod.getModuleId());
+				}
+			}
+		}
+		
+		// loop over the leftover modules until we can't load
+		// anymore or we've loaded them all
+		boolean atLeastOneModuleLoaded = true;
+		while (leftoverModules.size() > 0 && atLeastOneModuleLoaded) {
+			if (log.isDebugEnabled()) {
+				log.debug("Trying to start leftover modules: " + leftoverModules);
+			}
+			
+			atLeastOneModuleLoaded = false;
+			List<Module> modulesStartedInThisLoop = new Vector<Module>();
+			
+			for (Module leftoverModule : leftoverModules) {
+				if (requiredModulesStarted(leftoverModule)) {
+					if (log.isDebugEnabled()) {
+						log.debug("starting leftover module: " + leftoverModule.getModuleId());
+					}
+					
+					try {
+						// don't need to check globalproperty here because
+						// it would only be on the leftover modules list if
+						// it were set to true already
+						startModule(leftoverModule);
+						
+						// set this boolean flag to true so we keep looping over the modules
+						atLeastOneModuleLoaded = true;
+						
+						// save the module we just started
+						modulesStartedInThisLoop.add(leftoverModule);
+					}
+					catch (Exception e) {
+						log.error("Error while starting leftover module: " + leftoverModule.getName(), e);
+					}
+				} else {
+					if (log.isDebugEnabled()) {
+						log.debug("cannot start leftover module because required modules are not started: "
+						        + leftoverModule.getModuleId());
+					}
+				}
+			}
+			
+			// remove the modules we started in this loop from the overall
+			// leftover modules list
+			leftoverModules.removeAll(modulesStartedInThisLoop);
+		}
+		
+		failLeftoverModules(leftoverModules);
+	}
+	
+	/**
+	 * Starts the given modules with a pool of the given number of threads. The graph of the modules
+	 * each module requires or is aware of is built once, and a module is started as soon as all of
+	 * those that are also being started have been, so independent modules extract their libraries,
+	 * build their class loaders and run their activators at the same time. The database changes of
+	 * the modules are still run one at a time. The application context is refreshed once
+	 * afterwards by the caller, as for sequential startup.
+	 *
+	 * @param modulesToStart the modules to start
+	 * @param threads the number of modules to start at the same time
+	 */
+	private static void startModulesInParallel(List<Module> modulesToStart, int threads) {
+		Map<String, Module> modulesByPackage = new HashMap<String, Module>();
+		for (Module mod : modulesToStart) {
+			modulesByPackage.put(mod.getPackageName(), mod);
+		}
+		
+		// the number of modules each module waits for, and the modules waiting for each module
+		Map<Module, Integer> waitingFor = new HashMap<Module, Integer>();
+		Map<Module, List<Module>> dependents = new HashMap<Module, List<Module>>();
+		for (Module mod : modulesToStart) {
+			Set<Module> dependencies = new HashSet<Module>();
+			List<String> packages = new ArrayList<String>(mod.getRequiredModules());
+			packages.addAll(mod.getAwareOfModules());
+			for (String modulePackage : packages) {
+				Module dependency = modulesByPackage.get(modulePackage);
+				if (dependency != null && dependency != mod) {
+					dependencies.add(dependency);
 				}
+			}
+			
+			waitingFor.put(mod, dependencies.size());
+			for (Module dependency : dependencies) {
+				List<Module> list = dependents.get(dependency);
+				if (list == null) {
+					list = new ArrayList<Module>();
+					dependents.put(dependency, list);
+				}
+				list.add(mod);
+			}
+		}
+		
+		// modules in a dependency cycle or missing a required module are never started
+		List<Module> leftoverModules = new ArrayList<Module>(modulesToStart);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CompletionService<ModuleStartupTask> completionService = new ExecutorCompletionService<ModuleStartupTask>(
+		        executor);
+		int running = 0;
+		try {
+			for (Module mod : modulesToStart) {
+				if (waitingFor.get(mod) == 0) {
+					completionService.submit(new ModuleStartupTask(mod));
+					running++;
+				}
+			}
+			
+			while (running > 0) {
+				ModuleStartupTask task = completionService.take().get();
+				running--;
 				
-				atLeastOneModuleLoaded = false;
-				List<Module> modulesStartedInThisLoop = new Vector<Module>();
+				Module mod = task.getModule();
+				if (task.getError() != null) {
+					log.error("Error while starting module: " + mod.getName(), task.getError());
+					mod.setStartupErrorMessage("Error while starting module", task.getError());
+					notifySuperUsersAboutModuleFailure(mod);
+					leftoverModules.remove(mod);
+				} else if (task.isAttempted()) {
+					leftoverModules.remove(mod);
+				}
 				
-				for (Module leftoverModule : leftoverModules) {
-					if (requiredModulesStarted(leftoverModule)) {
-						if (log.isDebugEnabled()) {
-							log.debug("starting leftover module: " + leftoverModule.getModuleId());
-						}
-						
-						try {
-							// don't need to check globalproperty here because
-							// it would only be on the leftover modules list if
-							// it were set to true already
-							startModule(leftoverModule);
-							
-							// set this boolean flag to true so we keep looping over the modules
-							atLeastOneModuleLoaded = true;
-							
-							// save the module we just started
-							modulesStartedInThisLoop.add(leftoverModule);
-						}
-						catch (Exception e) {
-							log.error("Error while starting leftover module: " + leftoverModule.getName(), e);
-						}
-					} else {
-						if (log.isDebugEnabled()) {
-							log.debug("cannot start leftover module because required modules are not started: "
-							        + leftoverModule.getModuleId());
+				List<Module> waitingModules = dependents.get(mod);
+				if (waitingModules != null) {
+					for (Module waitingModule : waitingModules) {
+						int remaining = waitingFor.get(waitingModule) - 1;
+						waitingFor.put(waitingModule, remaining);
+						if (remaining == 0) {
+							completionService.submit(new ModuleStartupTask(waitingModule));
+							running++;
 						}
 					}
 				}
-				
-				// remove the modules we started in this loop from the overall
-				// leftover modules list
-				leftoverModules.removeAll(modulesStartedInThisLoop);
 			}
-			
-			// if we failed to start all the modules, error out
-			if (leftoverModules.size() > 0) {
-				for (Module leftoverModule : leftoverModules) {
-					String message = getFailedToStartModuleMessage(leftoverModule);
-					log.error(message);
-					leftoverModule.setStartupErrorMessage(message);
-					notifySuperUsersAboutModuleFailure(leftoverModule);
+		}
+		catch (InterruptedException e) {
+			log.warn("Interrupted while starting modules", e);
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e) {
+			// the startup tasks catch their errors
+			log.error("Error while starting modules", e);
+		}
+		finally {
+			executor.shutdown();
+		}
+		
+		failLeftoverModules(leftoverModules);
+	}
+	
+	/**
+	 * Starts a module from the thread pool of {@link ModuleFactory#startModulesInParallel(List, int)}
+	 */
+	private static class ModuleStartupTask implements Callable<ModuleStartupTask> {
+		
+		private final Module module;
+		
+		private boolean attempted = false;
+		
+		private Exception error;
+		
+		public ModuleStartupTask(Module module) {
+			this.module = module;
+		}
+		
+		/**
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		public ModuleStartupTask call() {
+			if (requiredModulesStarted(module)) {
+				if (log.isDebugEnabled()) {
+					log.debug("starting module: " + module.getModuleId());
 				}
+				
+				attempted = true;
+				try {
+					startModule(module);
+				}
+				catch (Exception e) {
+					error = e;
+				}
+			} else if (log.isDebugEnabled()) {
+				log.debug("cannot start because required modules are not started: " + module.getModuleId());
 			}
+			return this;
+		}
+		
+		public Module getModule() {
+			return module;
+		}
+		
+		public boolean isAttempted() {
+			return attempted;
 		}
 		
+		public Exception getError() {
+			return error;
+		}
+	}
+	
+	/**
+	 * Marks the given modules, which could not be started because modules they require are not
+	 * started, as failed to start
+	 *
+	 * @param leftoverModules the modules that could not be started
+	 */
+	private static void failLeftoverModules(List<Module> leftoverModules) {
+		// if we failed to start all the modules, error out
+		if (leftoverModules.size() > 0) {
+			for (Module leftoverModule : leftoverModules) {
+				String message = getFailedToStartModuleMessage(leftoverModule);
+				log.error(message);
+				leftoverModule.setStartupErrorMessage(message);
+				notifySuperUsersAboutModuleFailure(leftoverModule);
+			}
+		}
+	}
+	
+	/**
+	 * Fetch the number of module startup threads from the global properties table
+	 *
+	 * @param as the administration service
+	 * @return the number of modules to start at the same time
+	 */
+	private static int getStartupThreads(AdministrationService as) {
+		try {
+			return Integer.valueOf(as.getGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_MODULE_STARTUP_THREADS, String
+			        .valueOf(OpenmrsConstants.GLOBAL_PROPERTY_MODULE_STARTUP_THREADS_DEFAULT_VALUE)).trim());
+		}
+		catch (Exception e) {
+			log.warn("Unable to convert the global property " + OpenmrsConstants.GLOBAL_PROPERTY_MODULE_STARTUP_THREADS
+			        + " to a valid integer. Returning the default "
+			        + OpenmrsConstants.GLOBAL_PROPERTY_MODULE_STARTUP_THREADS_DEFAULT_VALUE);
+		}
+		
+		return OpenmrsConstants.GLOBAL_PROPERTY_MODULE_STARTUP_THREADS_DEFAULT_VALUE;
+	}
+	
+	/**
+	 * Returns how long the phases of the last start of each module took, in the order the modules
+	 * were started
+	 *
+	 * @return the startup timings
+	 * @since 1.11
+	 */
+	public static List<ModuleStartupTiming> getModuleStartupTimings() {
+		synchronized (startupTimings) {
+			return new ArrayList<ModuleStartupTiming>(startupTimings.values());
+		}
 	}
 	
 	/**
@@ -416,8 +673,12 @@ public class ModuleFactory {
 	 * @return <code>Collection<Module></code> of the started modules
 	 */
 	public static Collection<Module> getStartedModules() {
-		if (getStartedModulesMap().size() > 0) {
-			return getStartedModulesMap().values();
+		Map<String, Module> startedModulesMap = getStartedModulesMap();
+		if (startedModulesMap.size() > 0) {
+			// a copy, because modules starting at the same time may be changing the map
+			synchronized (startedModulesMap) {
+				return new ArrayList<Module>(startedModulesMap.values());
+			}
 		}
 		
 		return Collections.emptyList();
@@ -425,12 +686,14 @@ public class ModuleFactory {
 	
 	public static List<Module> getStartedModulesInOrder() {
 		List<Module> modules = new ArrayList<Module>();
-		if (actualStartupOrder != null) {
-			for (String moduleId : actualStartupOrder) {
-				modules.add(getStartedModulesMap().get(moduleId));
+		synchronized (STARTUP_LOCK) {
+			if (actualStartupOrder != null) {
+				for (String moduleId : actualStartupOrder) {
+					modules.add(getStartedModulesMap().get(moduleId));
+				}
+			} else {
+				modules.addAll(getStartedModules());
 			}
-		} else {
-			modules.addAll(getStartedModules());
 		}
 		return modules;
 	}
@@ -443,7 +706,7 @@ public class ModuleFactory {
 	 */
 	public static Map<String, Module> getStartedModulesMap() {
 		if (startedModules == null) {
-			startedModules = new WeakHashMap<String, Module>();
+			startedModules = Collections.synchronizedMap(new WeakHashMap<String, Module>());
 		}
 		
 		return startedModules;
@@ -566,6 +829,8 @@ public class ModuleFactory {
 		if (module != null) {
 			
 			String moduleId = module.getModuleId();
+			ModuleStartupTiming timing = new ModuleStartupTiming(moduleId);
+			long start = System.currentTimeMillis();
 			try {
 				
 				// check to be sure this module can run with our current version
@@ -579,8 +844,11 @@ public class ModuleFactory {
 				}
 				
 				// fire up the classloader for this module
+				long phaseStart = System.currentTimeMillis();
 				ModuleClassLoader moduleClassLoader = new ModuleClassLoader(module, ModuleFactory.class.getClassLoader());
 				getModuleClassLoaderMap().put(module, moduleClassLoader);
+				OpenmrsClassLoader.clearCachedClasses();
+				timing.setClassLoaderTime(System.currentTimeMillis() - phaseStart);
 				
 				// don't load the advice objects into the Context
 				// At startup, the spring context isn't refreshed until all modules
@@ -619,14 +887,16 @@ public class ModuleFactory {
 					Collections.sort(sortedModuleExtensions, sortOrder);
 					
 					// Get existing extensions, and append the ones from the new module
-					List<Extension> extensions = getExtensionMap().get(moduleExtensionEntry.getKey());
-					if (extensions == null) {
-						extensions = new Vector<Extension>();
-						getExtensionMap().put(moduleExtensionEntry.getKey(), extensions);
-					}
-					for (Extension ext : sortedModuleExtensions) {
-						log.debug("Adding to mapping ext: " + ext.getExtensionId() + " ext.class: " + ext.getClass());
-						extensions.add(ext);
+					synchronized (STARTUP_LOCK) {
+						List<Extension> extensions = getExtensionMap().get(moduleExtensionEntry.getKey());
+						if (extensions == null) {
+							extensions = new Vector<Extension>();
+							getExtensionMap().put(moduleExtensionEntry.getKey(), extensions);
+						}
+						for (Extension ext : sortedModuleExtensions) {
+							log.debug("Adding to mapping ext: " + ext.getExtensionId() + " ext.class: " + ext.getClass());
+							extensions.add(ext);
+						}
 					}
 				}
 				
@@ -636,68 +906,77 @@ public class ModuleFactory {
 				// calls that might hinder startup
 				SortedMap<String, String> diffs = SqlDiffFileParser.getSqlDiffs(module);
 				
-				try {
-					// this method must check and run queries against the database.
-					// to do this, it must be "authenticated".  Give the current
-					// "user" the proxy privilege so this can be done. ("user" might
-					// be nobody because this is being run at startup)
-					Context.addProxyPrivilege("");
-					
-					for (Map.Entry<String, String> entry : diffs.entrySet()) {
-						String version = entry.getKey();
-						String sql = entry.getValue();
-						if (StringUtils.hasText(sql)) {
-							runDiff(module, version, sql);
+				phaseStart = System.currentTimeMillis();
+				synchronized (DATABASE_LOCK) {
+					try {
+						// this method must check and run queries against the database.
+						// to do this, it must be "authenticated".  Give the current
+						// "user" the proxy privilege so this can be done. ("user" might
+						// be nobody because this is being run at startup)
+						Context.addProxyPrivilege("");
+						
+						for (Map.Entry<String, String> entry : diffs.entrySet()) {
+							String version = entry.getKey();
+							String sql = entry.getValue();
+							if (StringUtils.hasText(sql)) {
+								runDiff(module, version, sql);
+							}
 						}
 					}
-				}
-				finally {
-					// take the "authenticated" privilege away from the current "user"
-					Context.removeProxyPrivilege("");
+					finally {
+						// take the "authenticated" privilege away from the current "user"
+						Context.removeProxyPrivilege("");
+					}
+					
+					// run module's optional liquibase.xml immediately after sqldiff.xml
+					runLiquibase(module);
 				}
 				
-				// run module's optional liquibase.xml immediately after sqldiff.xml
-				runLiquibase(module);
-				
 				// effectively mark this module as started successfully
-				getStartedModulesMap().put(moduleId, module);
-				if (actualStartupOrder == null) {
-					actualStartupOrder = new LinkedHashSet<String>();
+				synchronized (STARTUP_LOCK) {
+					getStartedModulesMap().put(moduleId, module);
+					if (actualStartupOrder == null) {
+						actualStartupOrder = new LinkedHashSet<String>();
+					}
+					actualStartupOrder.add(moduleId);
 				}
-				actualStartupOrder.add(moduleId);
 				
-				try {
-					// save the state of this module for future restarts
-					saveGlobalProperty(moduleId + ".started", "true", getGlobalPropertyStartedDescription(moduleId));
+				synchronized (DATABASE_LOCK) {
+					try {
+						// save the state of this module for future restarts
+						saveGlobalProperty(moduleId + ".started", "true", getGlobalPropertyStartedDescription(moduleId));
+						
+						// save the mandatory status
+						saveGlobalProperty(moduleId + ".mandatory", String.valueOf(module.isMandatory()),
+						    getGlobalPropertyMandatoryModuleDescription(moduleId));
+					}
+					catch (Exception e) {
+						// pass over errors because this doesn't really concern startup
+						// passing over this also allows for multiple of the same-named modules
+						// to be loaded in junit tests that are run within one session
+						log.debug("Got an error when trying to set the global property on module startup", e);
+					}
 					
-					// save the mandatory status
-					saveGlobalProperty(moduleId + ".mandatory", String.valueOf(module.isMandatory()),
-					    getGlobalPropertyMandatoryModuleDescription(moduleId));
-				}
-				catch (Exception e) {
-					// pass over errors because this doesn't really concern startup
-					// passing over this also allows for multiple of the same-named modules
-					// to be loaded in junit tests that are run within one session
-					log.debug("Got an error when trying to set the global property on module startup", e);
-				}
-				
-				// (this must be done after putting the module in the started
-				// list)
-				// if this module defined any privileges or global properties,
-				// make sure they are added to the database
-				// (Unfortunately, placing the call here will duplicate work
-				// done at initial app startup)
-				if (module.getPrivileges().size() > 0 || module.getGlobalProperties().size() > 0) {
-					log.debug("Updating core dataset");
-					Context.checkCoreDataset();
-					// checkCoreDataset() currently doesn't throw an error. If
-					// it did, it needs to be
-					// caught and the module needs to be stopped and given a
-					// startup error
+					// (this must be done after putting the module in the started
+					// list)
+					// if this module defined any privileges or global properties,
+					// make sure they are added to the database
+					// (Unfortunately, placing the call here will duplicate work
+					// done at initial app startup)
+					if (module.getPrivileges().size() > 0 || module.getGlobalProperties().size() > 0) {
+						log.debug("Updating core dataset");
+						Context.checkCoreDataset();
+						// checkCoreDataset() currently doesn't throw an error. If
+						// it did, it needs to be
+						// caught and the module needs to be stopped and given a
+						// startup error
+					}
 				}
+				timing.setDatabaseTime(System.currentTimeMillis() - phaseStart);
 				
 				// should be near the bottom so the module has all of its stuff
 				// set up for it already.
+				phaseStart = System.currentTimeMillis();
 				try {
 					if (module.getModuleActivator() != null) {
 						// if extends BaseModuleActivator
@@ -714,6 +993,9 @@ public class ModuleFactory {
 				catch (Exception e) {
 					throw new ModuleException("Error while calling module's Activator.startup()/willStart() method", e);
 				}
+				finally {
+					timing.setActivatorTime(System.currentTimeMillis() - phaseStart);
+				}
 				
 				// erase any previous startup error
 				module.clearStartupError();
@@ -740,6 +1022,8 @@ public class ModuleFactory {
 				}
 			}
 			
+			timing.setTotalTime(System.currentTimeMillis() - start);
+			startupTimings.put(moduleId, timing);
 		}
 		
 		if (applicationContext != null) {
@@ -998,11 +1282,13 @@ public class ModuleFactory {
 				}
 			}
 			
-			getStartedModulesMap().remove(moduleId);
-			if (actualStartupOrder != null) {
-				actualStartupOrder.remove(moduleId);
-				for (Module depModule : dependentModulesStopped) {
-					actualStartupOrder.remove(depModule.getModuleId());
+			synchronized (STARTUP_LOCK) {
+				getStartedModulesMap().remove(moduleId);
+				if (actualStartupOrder != null) {
+					actualStartupOrder.remove(moduleId);
+					for (Module depModule : dependentModulesStopped) {
+						actualStartupOrder.remove(depModule.getModuleId());
+					}
 				}
 			}
 			
@@ -1012,46 +1298,49 @@ public class ModuleFactory {
 			
 			if (getModuleClassLoaderMap().containsKey(mod)) {
 				log.debug("Mod was in classloader map.  Removing advice and extensions.");
-				// remove all advice by this module
-				try {
-					for (AdvicePoint advice : mod.getAdvicePoints()) {
-						Class cls = null;
-						try {
-							cls = Context.loadClass(advice.getPoint());
-							Object aopObject = advice.getClassInstance();
-							if (Advisor.class.isInstance(aopObject)) {
-								log.debug("adding advisor: " + aopObject.getClass());
-								Context.removeAdvisor(cls, (Advisor) aopObject);
-							} else {
-								log.debug("Adding advice: " + aopObject.getClass());
-								Context.removeAdvice(cls, (Advice) aopObject);
+				// modules starting at the same time can be changing the extension map
+				synchronized (STARTUP_LOCK) {
+					// remove all advice by this module
+					try {
+						for (AdvicePoint advice : mod.getAdvicePoints()) {
+							Class cls = null;
+							try {
+								cls = Context.loadClass(advice.getPoint());
+								Object aopObject = advice.getClassInstance();
+								if (Advisor.class.isInstance(aopObject)) {
+									log.debug("adding advisor: " + aopObject.getClass());
+									Context.removeAdvisor(cls, (Advisor) aopObject);
+								} else {
+									log.debug("Adding advice: " + aopObject.getClass());
+									Context.removeAdvice(cls, (Advice) aopObject);
+								}
+							}
+							catch (Exception e) {
+								log.warn("Could not remove advice point: " + advice.getPoint(), e);
 							}
-						}
-						catch (Exception e) {
-							log.warn("Could not remove advice point: " + advice.getPoint(), e);
 						}
 					}
-				}
-				catch (Exception e) {
-					log.warn("Error while getting advicePoints from module: " + moduleId, e);
-				}
-				
-				// remove all extensions by this module
-				try {
-					for (Extension ext : mod.getExtensions()) {
-						String extId = ext.getExtensionId();
-						try {
-							List<Extension> tmpExtensions = getExtensions(extId);
-							tmpExtensions.remove(ext);
-							getExtensionMap().put(extId, tmpExtensions);
-						}
-						catch (Exception exterror) {
-							log.warn("Error while getting extension: " + ext, exterror);
+					catch (Exception e) {
+						log.warn("Error while getting advicePoints from module: " + moduleId, e);
+					}
+					
+					// remove all extensions by this module
+					try {
+						for (Extension ext : mod.getExtensions()) {
+							String extId = ext.getExtensionId();
+							try {
+								List<Extension> tmpExtensions = getExtensions(extId);
+								tmpExtensions.remove(ext);
+								getExtensionMap().put(extId, tmpExtensions);
+							}
+							catch (Exception exterror) {
+								log.warn("Error while getting extension: " + ext, exterror);
+							}
 						}
 					}
-				}
-				catch (Exception e) {
-					log.warn("Error while getting extensions from module: " + moduleId, e);
+					catch (Exception e) {
+						log.warn("Error while getting extensions from module: " + moduleId, e);
+					}
 				}
 			}
 			
@@ -1090,7 +1379,12 @@ public class ModuleFactory {
 			mod.setModuleActivator(null);
 			mod.disposeAdvicePointsClassInstance();
 			
+			// the cached handlers and child collections may hold classes of the module
+			HandlerUtil.clearCachedHandlers();
+			RequiredDataAdvice.clearCachedChildCollections();
+			
 			ModuleClassLoader cl = removeClassLoader(mod);
+			OpenmrsClassLoader.clearCachedClasses();
 			if (cl != null) {
 				cl.dispose();
 				cl = null;
@@ -1308,7 +1602,9 @@ public class ModuleFactory {
 	public static Collection<ModuleClassLoader> getModuleClassLoaders() {
 		Map<Module, ModuleClassLoader> classLoaders = getModuleClassLoaderMap();
 		if (classLoaders.size() > 0) {
-			return classLoaders.values();
+			synchronized (classLoaders) {
+				return new ArrayList<ModuleClassLoader>(classLoaders.values());
+			}
 		}
 		
 		return Collections.emptyList();
@@ -1321,7 +1617,7 @@ public class ModuleFactory {
 	 */
 	public static Map<Module, ModuleClassLoader> getModuleClassLoaderMap() {
 		if (moduleClassLoaders == null) {
-			moduleClassLoaders = new WeakHashMap<Module, ModuleClassLoader>();
+			moduleClassLoaders = Collections.synchronizedMap(new WeakHashMap<Module, ModuleClassLoader>());
 		}
 		
 		return moduleClassLoaders;
@@ -0,0 +1,99 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module;
+
+/**
+ * How long the phases of the last start of a module took, in milliseconds.
+ * 
+ * @see ModuleFactory#getModuleStartupTimings()
+ * @since 1.11
+ */
+public class ModuleStartupTiming {
+	
+	private final String moduleId;
+	
+	private long classLoaderTime;
+	
+	private long databaseTime;
+	
+	private long activatorTime;
+	
+	private long totalTime;
+	
+	public ModuleStartupTiming(String moduleId) {
+		this.moduleId = moduleId;
+	}
+	
+	/**
+	 * @return the module id
+	 */
+	public String getModuleId() {
+		return moduleId;
+	}
+	
+	/**
+	 * @return the time taken to create the module class loader, which extracts the module's libraries
+	 */
+	public long getClassLoaderTime() {
+		return classLoaderTime;
+	}
+	
+	public void setClassLoaderTime(long classLoaderTime) {
+		this.classLoaderTime = classLoaderTime;
+	}
+	
+	/**
+	 * @return the time taken to run the module's sqldiff and liquibase changes and to save its
+	 *         global properties and privileges
+	 */
+	public long getDatabaseTime() {
+		return databaseTime;
+	}
+	
+	public void setDatabaseTime(long databaseTime) {
+		this.databaseTime = databaseTime;
+	}
+	
+	/**
+	 * @return the time taken by the activator's willStart (or startup) method
+	 */
+	public long getActivatorTime() {
+		return activatorTime;
+	}
+	
+	public void setActivatorTime(long activatorTime) {
+		this.activatorTime = activatorTime;
+	}
+	
+	/**
+	 * @return the time taken to start the module, not including the refresh of the application
+	 *         context
+	 */
+	public long getTotalTime() {
+		return totalTime;
+	}
+	
+	public void setTotalTime(long totalTime) {
+		this.totalTime = totalTime;
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return moduleId + ": class loader " + classLoaderTime + " ms, database " + databaseTime + " ms, activator "
+		        + activatorTime + " ms, total " + totalTime + " ms";
+	}
+}
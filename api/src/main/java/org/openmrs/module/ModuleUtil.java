@@ -169,6 +169,7 @@ public class ModuleUtil {
 		ModuleFactory.loadedModules = null;
 		ModuleFactory.moduleClassLoaders = null;
 		ModuleFactory.startedModules = null;
+		OpenmrsClassLoader.clearCachedClasses();
 	}
 	
 	/**
@@ -500,6 +501,28 @@ public class ModuleUtil {
 	 */
 	@SuppressWarnings("unchecked")
 	public static void expandJar(File fileToExpand, File tmpModuleDir, String name, boolean keepFullPath) throws IOException {
+		expandJar(fileToExpand, tmpModuleDir, name, keepFullPath, null);
+	}
+	
+	/**
+	 * Expand the given <code>fileToExpand</code> jar to the <code>tmpModuleFile<code> directory,
+	 * skipping the entries that the given manifest says are already extracted and unchanged. The
+	 * manifest's paths must be relative to <code>tmpModuleDir</code>. Every extracted entry is
+	 * recorded in the manifest, but the manifest is not saved.
+	 *
+	 * @param fileToExpand file pointing at a .jar
+	 * @param tmpModuleDir directory in which to place the files
+	 * @param name filename inside of the jar to look for and expand
+	 * @param keepFullPath if true, will recreate entire directory structure in tmpModuleDir
+	 *            relating to <code>name</code>. if false will start directory structure at
+	 *            <code>name</code>
+	 * @param manifest the manifest of previously extracted files, or null to expand every entry
+	 * @since 1.11
+	 * @see #expandJar(File, File, String, boolean)
+	 * @should only expand the entries that changed
+	 */
+	public static void expandJar(File fileToExpand, File tmpModuleDir, String name, boolean keepFullPath,
+	        ExtractionManifest manifest) throws IOException {
 		JarFile jarFile = null;
 		InputStream input = null;
 		String docBase = tmpModuleDir.getAbsolutePath();
@@ -529,11 +552,17 @@ public class ModuleUtil {
 					if (entryName.endsWith("/") || entryName.equals("")) {
 						continue;
 					}
+					foundName = true;
+					if (manifest != null && manifest.isExtracted(entryName, jarEntry)) {
+						continue;
+					}
 					input = jarFile.getInputStream(jarEntry);
 					expand(input, docBase, entryName);
 					input.close();
 					input = null;
-					foundName = true;
+					if (manifest != null) {
+						manifest.setExtracted(entryName, jarEntry);
+					}
 				}
 			}
 			if (!foundName) {
@@ -140,9 +140,45 @@ public interface AlertService extends OpenmrsService {
 	 * @param user the user that is assigned to the returned alerts
 	 * @return alerts that are unread and not expired
 	 * @throws APIException
+	 * @should not return alerts read by the user
 	 */
 	public List<Alert> getAlertsByUser(User user) throws APIException;
 	
+	/**
+	 * Counts the alerts that {@link #getAlertsByUser(User)} would return, without loading them. The
+	 * unread alerts of all users are held in memory, see {@link #refreshAlertIndex()}.
+	 * 
+	 * @param user the user that is assigned to the alerts, or null for the authenticated user
+	 * @return the number of unread alerts that have not expired
+	 * @throws APIException
+	 * @since 1.11
+	 * @should count the unread alerts of the user
+	 */
+	public int getUnreadAlertCount(User user) throws APIException;
+	
+	/**
+	 * Gets a number that changes whenever the unread alerts of the given user change, so that a
+	 * client polling for alerts only has to fetch them when it differs from the number it got the
+	 * last time. Alerts expiring do not change it.
+	 * 
+	 * @param user the user that is assigned to the alerts, or null for the authenticated user
+	 * @return the version of the user's unread alerts, 0 if the user has none
+	 * @throws APIException
+	 * @since 1.11
+	 * @should change when an alert for the user is saved or read
+	 */
+	public long getUnreadAlertVersion(User user) throws APIException;
+	
+	/**
+	 * The unread alerts of all users are held in memory once read. This makes the next read load
+	 * them again from the database, picking up the alerts written by other instances sharing the
+	 * database. It is called by the {@link org.openmrs.scheduler.tasks.AlertReminderTask}.
+	 * 
+	 * @throws APIException
+	 * @since 1.11
+	 */
+	public void refreshAlertIndex() throws APIException;
+	
 	/**
 	 * @deprecated use {@link #getAlertsByUser(User)} and pass "null" as the parameter for
 	 *             <code>user</code>
@@ -52,4 +52,20 @@ public interface AlertDAO {
 	 */
 	public List<Alert> getAllAlerts(boolean includeExpired);
 	
+	
+	/**
+	 * @see org.openmrs.notification.AlertService#getUnreadAlertCount(org.openmrs.User)
+	 */
+	public int getUnreadAlertCount(User user) throws DAOException;
+	
+	/**
+	 * @see org.openmrs.notification.AlertService#getUnreadAlertVersion(org.openmrs.User)
+	 */
+	public long getUnreadAlertVersion(User user) throws DAOException;
+	
+	/**
+	 * @see org.openmrs.notification.AlertService#refreshAlertIndex()
+	 */
+	public void refreshAlertIndex() throws DAOException;
+	
 }
@@ -0,0 +1,190 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.notification.db.hibernate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the unread alerts of every user in memory, so that the alert list in the page header,
+ * which is rendered for every page and polled by every open browser, can tell that a user has no
+ * unread alerts (the usual case) without a query, and only has to load the alerts by id when there
+ * are some.<br/>
+ * <br/>
+ * For each user the index holds the ids and expiry dates of the alerts that neither the user nor
+ * anyone else has read, and a version number that changes whenever that list changes. Expired
+ * alerts are left out when the index is loaded and filtered out when it is read, so it doesn't have
+ * to be touched when an alert expires.<br/>
+ * <br/>
+ * The index is loaded with one query the first time it is read after being cleared, and is cleared
+ * whenever an alert or alert recipient is written. Like the {@link org.openmrs.api.db.hibernate.GlobalPropertyCache}
+ * the loaded map is never changed, so reads never lock, and a load that started before a write is
+ * thrown away instead of being installed.
+ *
+ * @see AlertIndexInterceptor
+ * @since 1.11
+ */
+public class AlertIndex {
+	
+	private static volatile Map<Integer, UserAlerts> alertsByUser = null;
+	
+	/**
+	 * The last loaded index, used to keep the versions of users whose alerts didn't change
+	 */
+	private static Map<Integer, UserAlerts> previousAlertsByUser = Collections.emptyMap();
+	
+	/**
+	 * Incremented by every write and clear
+	 */
+	private static long generation = 0;
+	
+	/**
+	 * Set when the current thread writes an alert, until its transaction completes
+	 */
+	private static final ThreadLocal<Boolean> changedInTransaction = new ThreadLocal<Boolean>();
+	
+	private AlertIndex() {
+	}
+	
+	/**
+	 * @return the unread alerts keyed by user id, or null if they need to be loaded
+	 */
+	public static Map<Integer, UserAlerts> getAlertsByUser() {
+		return alertsByUser;
+	}
+	
+	/**
+	 * @return the number to pass to {@link #load(List, long)} once the alerts have been read
+	 */
+	public static synchronized long getGeneration() {
+		return generation;
+	}
+	
+	/**
+	 * Installs the unread alerts read from the database, unless an alert was written since they
+	 * started being read
+	 *
+	 * @param rows the user id, alert id and date to expire of each unread alert recipient
+	 * @param loadGeneration the result of {@link #getGeneration()} before the rows were read
+	 * @return the unread alerts keyed by user id
+	 * @should keep the version of users whose alerts did not change
+	 * @should not install alerts loaded before a write
+	 */
+	public static synchronized Map<Integer, UserAlerts> load(List<Object[]> rows, long loadGeneration) {
+		Map<Integer, List<Integer>> alertIds = new HashMap<Integer, List<Integer>>();
+		Map<Integer, List<Date>> expiryDates = new HashMap<Integer, List<Date>>();
+		for (Object[] row : rows) {
+			Integer userId = (Integer) row[0];
+			List<Integer> ids = alertIds.get(userId);
+			if (ids == null) {
+				ids = new ArrayList<Integer>();
+				alertIds.put(userId, ids);
+				expiryDates.put(userId, new ArrayList<Date>());
+			}
+			ids.add((Integer) row[1]);
+			expiryDates.get(userId).add((Date) row[2]);
+		}
+		
+		Map<Integer, UserAlerts> map = new HashMap<Integer, UserAlerts>();
+		for (Map.Entry<Integer, List<Integer>> entry : alertIds.entrySet()) {
+			UserAlerts alerts = new UserAlerts(entry.getValue(), expiryDates.get(entry.getKey()),
+			        loadGeneration + 1);
+			UserAlerts previous = previousAlertsByUser.get(entry.getKey());
+			map.put(entry.getKey(), previous != null && previous.hasSameAlerts(alerts) ? previous : alerts);
+		}
+		map = Collections.unmodifiableMap(map);
+		if (loadGeneration == generation) {
+			alertsByUser = map;
+			previousAlertsByUser = map;
+		}
+		return map;
+	}
+	
+	/**
+	 * Makes the next read load the alerts again from the database
+	 */
+	public static synchronized void clear() {
+		generation++;
+		alertsByUser = null;
+	}
+	
+	/**
+	 * Clears the index because the current thread wrote an alert, and makes it clear the index
+	 * again when its transaction completes, because the write may be rolled back, or the index
+	 * loaded by another thread before the write was committed
+	 */
+	public static void changed() {
+		changedInTransaction.set(Boolean.TRUE);
+		clear();
+	}
+	
+	/**
+	 * Clears the index if the current thread wrote an alert during the transaction that just
+	 * completed
+	 */
+	public static void transactionCompleted() {
+		if (changedInTransaction.get() != null) {
+			changedInTransaction.remove();
+			clear();
+		}
+	}
+	
+	/**
+	 * The unread alerts of one user
+	 */
+	public static class UserAlerts {
+		
+		private final List<Integer> alertIds;
+		
+		private final List<Date> expiryDates;
+		
+		private final long version;
+		
+		UserAlerts(List<Integer> alertIds, List<Date> expiryDates, long version) {
+			this.alertIds = alertIds;
+			this.expiryDates = expiryDates;
+			this.version = version;
+		}
+		
+		/**
+		 * @param now the current date
+		 * @return the ids of the unread alerts that have not expired by the given date
+		 */
+		public List<Integer> getAlertIds(Date now) {
+			List<Integer> ids = new ArrayList<Integer>(alertIds.size());
+			for (int i = 0; i < alertIds.size(); i++) {
+				Date dateToExpire = expiryDates.get(i);
+				if (dateToExpire == null || dateToExpire.after(now)) {
+					ids.add(alertIds.get(i));
+				}
+			}
+			return ids;
+		}
+		
+		/**
+		 * @return a number that changes whenever the user's unread alerts change, never 0
+		 */
+		public long getVersion() {
+			return version;
+		}
+		
+		private boolean hasSameAlerts(UserAlerts other) {
+			return alertIds.equals(other.alertIds) && expiryDates.equals(other.expiryDates);
+		}
+	}
+}
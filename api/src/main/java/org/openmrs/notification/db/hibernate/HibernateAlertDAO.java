@@ -16,6 +16,7 @@ package org.openmrs.notification.db.hibernate;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -27,6 +28,7 @@ import org.openmrs.User;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.notification.Alert;
 import org.openmrs.notification.db.AlertDAO;
+import org.openmrs.notification.db.hibernate.AlertIndex.UserAlerts;
 
 /**
  * Hibernate specific implementation of the
@@ -50,6 +52,7 @@ public class HibernateAlertDAO implements AlertDAO {
 	 */
 	public void setSessionFactory(SessionFactory sessionFactory) {
 		this.sessionFactory = sessionFactory;
+		AlertIndex.clear();
 	}
 	
 	/**
@@ -57,6 +60,7 @@ public class HibernateAlertDAO implements AlertDAO {
 	 */
 	public Alert saveAlert(Alert alert) throws DAOException {
 		sessionFactory.getCurrentSession().saveOrUpdate(alert);
+		AlertIndex.changed();
 		return alert;
 	}
 	
@@ -72,6 +76,7 @@ public class HibernateAlertDAO implements AlertDAO {
 	 */
 	public void deleteAlert(Alert alert) throws DAOException {
 		sessionFactory.getCurrentSession().delete(alert);
+		AlertIndex.changed();
 	}
 	
 	/**
@@ -96,6 +101,18 @@ public class HibernateAlertDAO implements AlertDAO {
 	public List<Alert> getAlerts(User user, boolean includeRead, boolean includeExpired) throws DAOException {
 		log.debug("Getting alerts for user " + user + " read? " + includeRead + " expired? " + includeExpired);
 		
+		// the unread alerts are looked up in the index, and only loaded if there are any
+		if (!includeRead && !includeExpired && user != null && user.getUserId() != null) {
+			List<Integer> alertIds = getUnreadAlertIds(user);
+			if (alertIds.isEmpty()) {
+				return Collections.emptyList();
+			}
+			Criteria crit = sessionFactory.getCurrentSession().createCriteria(Alert.class, "alert");
+			crit.add(Restrictions.in("alertId", alertIds));
+			crit.addOrder(Order.desc("dateChanged"));
+			return crit.list();
+		}
+		
 		Criteria crit = sessionFactory.getCurrentSession().createCriteria(Alert.class, "alert");
 		
 		if (user != null && user.getUserId() != null) {
@@ -127,4 +144,62 @@ public class HibernateAlertDAO implements AlertDAO {
 		return crit.list();
 	}
 	
+	/**
+	 * @see org.openmrs.notification.db.AlertDAO#getUnreadAlertCount(org.openmrs.User)
+	 */
+	public int getUnreadAlertCount(User user) throws DAOException {
+		if (user == null || user.getUserId() == null) {
+			return 0;
+		}
+		return getUnreadAlertIds(user).size();
+	}
+	
+	/**
+	 * @see org.openmrs.notification.db.AlertDAO#getUnreadAlertVersion(org.openmrs.User)
+	 */
+	public long getUnreadAlertVersion(User user) throws DAOException {
+		if (user == null || user.getUserId() == null) {
+			return 0;
+		}
+		UserAlerts alerts = getAlertIndex().get(user.getUserId());
+		return alerts == null ? 0 : alerts.getVersion();
+	}
+	
+	/**
+	 * @see org.openmrs.notification.db.AlertDAO#refreshAlertIndex()
+	 */
+	public void refreshAlertIndex() throws DAOException {
+		AlertIndex.clear();
+	}
+	
+	private List<Integer> getUnreadAlertIds(User user) {
+		UserAlerts alerts = getAlertIndex().get(user.getUserId());
+		if (alerts == null) {
+			return Collections.emptyList();
+		}
+		return alerts.getAlertIds(new Date());
+	}
+	
+	/**
+	 * @return the {@link AlertIndex}, loading it if it was cleared
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<Integer, UserAlerts> getAlertIndex() {
+		Map<Integer, UserAlerts> alertsByUser = AlertIndex.getAlertsByUser();
+		if (alertsByUser != null) {
+			return alertsByUser;
+		}
+		
+		long generation = AlertIndex.getGeneration();
+		// the alerts that expire later on are filtered out by UserAlerts.getAlertIds
+		List<Object[]> rows = sessionFactory.getCurrentSession().createQuery(
+		    "select r.recipientId, a.alertId, a.dateToExpire from Alert a join a.recipients r "
+		            + "where a.alertRead = false and r.alertRead = false"
+		            + " and (a.dateToExpire is null or a.dateToExpire > :now)").setTimestamp("now", new Date()).list();
+		if (log.isDebugEnabled()) {
+			log.debug("Loaded " + rows.size() + " unread alert recipients");
+		}
+		return AlertIndex.load(rows, generation);
+	}
+	
 }
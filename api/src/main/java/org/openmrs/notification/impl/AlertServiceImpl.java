@@ -199,6 +199,36 @@ public class AlertServiceImpl extends BaseOpenmrsService implements Serializable
 		return Context.getAlertService().getAlerts(user, false, false);
 	}
 	
+	/**
+	 * @see org.openmrs.notification.AlertService#getUnreadAlertCount(org.openmrs.User)
+	 */
+	@Transactional(readOnly = true)
+	public int getUnreadAlertCount(User user) throws APIException {
+		return dao.getUnreadAlertCount(getUserOrAuthenticatedUser(user));
+	}
+	
+	/**
+	 * @see org.openmrs.notification.AlertService#getUnreadAlertVersion(org.openmrs.User)
+	 */
+	@Transactional(readOnly = true)
+	public long getUnreadAlertVersion(User user) throws APIException {
+		return dao.getUnreadAlertVersion(getUserOrAuthenticatedUser(user));
+	}
+	
+	/**
+	 * @see org.openmrs.notification.AlertService#refreshAlertIndex()
+	 */
+	public void refreshAlertIndex() throws APIException {
+		dao.refreshAlertIndex();
+	}
+	
+	private User getUserOrAuthenticatedUser(User user) {
+		if (user == null && Context.isAuthenticated()) {
+			return Context.getAuthenticatedUser();
+		}
+		return user;
+	}
+	
 	/**
 	 * @see org.openmrs.notification.AlertService#getAlerts()
 	 * @deprecated
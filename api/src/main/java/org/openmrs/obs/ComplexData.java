@@ -33,6 +33,10 @@ public class ComplexData implements java.io.Serializable {
 	
 	private String title;
 	
+	private String mimeType;
+	
+	private Long length;
+	
 	/**
 	 * Default constructor requires title and data.
 	 * 
@@ -81,4 +85,44 @@ public class ComplexData implements java.io.Serializable {
 		return this.data;
 	}
 	
+	/**
+	 * Get the mime type of the data, if it is known
+	 * 
+	 * @return the mime type
+	 * @since 1.11
+	 */
+	public String getMimeType() {
+		return mimeType;
+	}
+	
+	/**
+	 * Set the mime type of the data
+	 * 
+	 * @param mimeType
+	 * @since 1.11
+	 */
+	public void setMimeType(String mimeType) {
+		this.mimeType = mimeType;
+	}
+	
+	/**
+	 * Get the number of bytes of the data, if it is known
+	 * 
+	 * @return the length
+	 * @since 1.11
+	 */
+	public Long getLength() {
+		return length;
+	}
+	
+	/**
+	 * Set the number of bytes of the data
+	 * 
+	 * @param length
+	 * @since 1.11
+	 */
+	public void setLength(Long length) {
+		this.length = length;
+	}
+	
 }
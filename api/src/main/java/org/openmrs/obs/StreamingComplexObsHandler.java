@@ -0,0 +1,47 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.obs;
+
+import java.io.FileInputStream;
+
+import org.openmrs.Obs;
+import org.openmrs.api.APIException;
+
+/**
+ * Interface for complex obs handlers that store their complex data in files that can be sent as
+ * they are. Instead of decoding the stored data (e.g. reading an image) and encoding it again to
+ * send it, the web layer streams the stored bytes straight to the client, which also allows it to
+ * answer requests for ranges of them.<br/>
+ * <br/>
+ * The streamed data has to be the data {@link #getObs(Obs, String)} returns, in its stored form. A
+ * subclass that overrides getObs therefore has to override {@link #getComplexDataStream(Obs, String)}
+ * too, otherwise the web layer falls back to getObs.
+ * 
+ * @since 1.11
+ */
+public interface StreamingComplexObsHandler extends ComplexObsHandler {
+	
+	/**
+	 * Opens the stored complex data of the obs in the format specified by the view. The data of the
+	 * returned ComplexData is a {@link FileInputStream} (so that its channel can be used to send
+	 * ranges of it) that must be closed by the caller, and its mime type and length are set.
+	 * 
+	 * @param obs a complex obs
+	 * @param view nullable view type, see {@link ComplexObsHandler#getObs(Obs, String)}
+	 * @return the complex data, or null if the stored data cannot be found
+	 * @throws APIException
+	 */
+	public ComplexData getComplexDataStream(Obs obs, String view) throws APIException;
+	
+}
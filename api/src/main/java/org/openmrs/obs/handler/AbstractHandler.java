@@ -14,7 +14,9 @@
 package org.openmrs.obs.handler;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.net.URLConnection;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -22,6 +24,7 @@ import java.util.Date;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Obs;
+import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.obs.ComplexData;
 import org.openmrs.util.OpenmrsConstants;
@@ -157,6 +160,45 @@ public class AbstractHandler {
 		return false;
 	}
 	
+	/**
+	 * Opens the given file as complex data for
+	 * {@link org.openmrs.obs.StreamingComplexObsHandler#getComplexDataStream(Obs, String)}
+	 * 
+	 * @param file the stored file
+	 * @param title the title of the complex data
+	 * @return the complex data with an open stream on the file, or null if the file does not exist
+	 * @throws APIException
+	 * @since 1.11
+	 */
+	protected ComplexData openComplexDataStream(File file, String title) throws APIException {
+		if (!file.exists()) {
+			log.error("Unable to find complex data file " + file.getAbsolutePath());
+			return null;
+		}
+		
+		try {
+			ComplexData complexData = new ComplexData(title, new FileInputStream(file));
+			complexData.setMimeType(getMimeType(file.getName()));
+			complexData.setLength(file.length());
+			return complexData;
+		}
+		catch (IOException e) {
+			throw new APIException("Unable to open complex data file " + file.getAbsolutePath(), e);
+		}
+	}
+	
+	/**
+	 * Guesses the mime type of a file from its name
+	 * 
+	 * @param filename the name of the file
+	 * @return the mime type, application/octet-stream if unknown
+	 * @since 1.11
+	 */
+	public String getMimeType(String filename) {
+		String mimeType = URLConnection.getFileNameMap().getContentTypeFor(filename);
+		return mimeType == null ? "application/octet-stream" : mimeType;
+	}
+	
 	/**
 	 * Convenience method to create and return a file for the stored ComplexData.data Object
 	 * 
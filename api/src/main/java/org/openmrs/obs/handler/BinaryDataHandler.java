@@ -24,6 +24,7 @@ import org.openmrs.Obs;
 import org.openmrs.api.APIException;
 import org.openmrs.obs.ComplexData;
 import org.openmrs.obs.ComplexObsHandler;
+import org.openmrs.obs.StreamingComplexObsHandler;
 import org.openmrs.util.OpenmrsUtil;
 
 /**
@@ -32,7 +33,7 @@ import org.openmrs.util.OpenmrsUtil;
  * 
  * @since 1.5
  */
-public class BinaryDataHandler extends AbstractHandler implements ComplexObsHandler {
+public class BinaryDataHandler extends AbstractHandler implements StreamingComplexObsHandler {
 	
 	public static final Log log = LogFactory.getLog(BinaryDataHandler.class);
 	
@@ -55,16 +56,8 @@ public class BinaryDataHandler extends AbstractHandler implements ComplexObsHand
 		log.debug("file path: " + file.getAbsolutePath());
 		ComplexData complexData = null;
 		
-		// to handle problem with downloading/saving files with blank spaces or commas in their names
-		// also need to remove the "file" text appended to the end of the file name
-		String[] names = obs.getValueComplex().split("\\|");
-		String originalFilename = names[0];
-		if ("download".equals(view)) {
-			originalFilename = originalFilename.replaceAll(",", "").replaceAll(" ", "").replaceAll("file$", "");
-		}
-		
 		try {
-			complexData = new ComplexData(originalFilename, OpenmrsUtil.getFileAsBytes(file));
+			complexData = new ComplexData(getOriginalFilename(obs, view), OpenmrsUtil.getFileAsBytes(file));
 		}
 		catch (IOException e) {
 			log.error("Trying to read file: " + file.getAbsolutePath(), e);
@@ -75,6 +68,26 @@ public class BinaryDataHandler extends AbstractHandler implements ComplexObsHand
 		return obs;
 	}
 	
+	/**
+	 * Currently supports all views
+	 * 
+	 * @see org.openmrs.obs.StreamingComplexObsHandler#getComplexDataStream(org.openmrs.Obs, java.lang.String)
+	 */
+	public ComplexData getComplexDataStream(Obs obs, String view) throws APIException {
+		return openComplexDataStream(getComplexDataFile(obs), getOriginalFilename(obs, view));
+	}
+	
+	private String getOriginalFilename(Obs obs, String view) {
+		// to handle problem with downloading/saving files with blank spaces or commas in their names
+		// also need to remove the "file" text appended to the end of the file name
+		String[] names = obs.getValueComplex().split("\\|");
+		String originalFilename = names[0];
+		if ("download".equals(view)) {
+			originalFilename = originalFilename.replaceAll(",", "").replaceAll(" ", "").replaceAll("file$", "");
+		}
+		return originalFilename;
+	}
+	
 	/**
 	 * TODO should this support a StringReader too?
 	 * 
@@ -25,6 +25,7 @@ import org.openmrs.Obs;
 import org.openmrs.api.APIException;
 import org.openmrs.obs.ComplexData;
 import org.openmrs.obs.ComplexObsHandler;
+import org.openmrs.obs.StreamingComplexObsHandler;
 import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.util.OpenmrsUtil;
 
@@ -34,7 +35,7 @@ import org.openmrs.util.OpenmrsUtil;
  * @see OpenmrsConstants#GLOBAL_PROPERTY_COMPLEX_OBS_DIR
  * @since 1.8
  */
-public class BinaryStreamHandler extends AbstractHandler implements ComplexObsHandler {
+public class BinaryStreamHandler extends AbstractHandler implements StreamingComplexObsHandler {
 	
 	public static final Log log = LogFactory.getLog(BinaryStreamHandler.class);
 	
@@ -60,11 +61,7 @@ public class BinaryStreamHandler extends AbstractHandler implements ComplexObsHa
 		
 		try {
 			File file = getComplexDataFile(obs);
-			String[] names = obs.getValueComplex().split("\\|");
-			String originalFilename = names[0];
-			if ("download".equals(view)) {
-				originalFilename = originalFilename.replace(",", "").replace(" ", "");
-			}
+			String originalFilename = getOriginalFilename(obs, view);
 			
 			if (file.exists()) {
 				FileInputStream fileInputStream = new FileInputStream(file);
@@ -79,6 +76,24 @@ public class BinaryStreamHandler extends AbstractHandler implements ComplexObsHa
 		return obs;
 	}
 	
+	/**
+	 * Returns the stored bytes for all views, with the same title as {@link #getObs(Obs, String)}
+	 * 
+	 * @see StreamingComplexObsHandler#getComplexDataStream(Obs, String)
+	 */
+	public ComplexData getComplexDataStream(Obs obs, String view) throws APIException {
+		return openComplexDataStream(getComplexDataFile(obs), getOriginalFilename(obs, view));
+	}
+	
+	private String getOriginalFilename(Obs obs, String view) {
+		String[] names = obs.getValueComplex().split("\\|");
+		String originalFilename = names[0];
+		if ("download".equals(view)) {
+			originalFilename = originalFilename.replace(",", "").replace(" ", "");
+		}
+		return originalFilename;
+	}
+	
 	/**
 	 * @see ComplexObsHandler#saveObs(Obs)
 	 */
@@ -13,36 +13,60 @@
  */
 package org.openmrs.obs.handler;
 
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import javax.imageio.ImageIO;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Obs;
 import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
 import org.openmrs.obs.ComplexData;
 import org.openmrs.obs.ComplexObsHandler;
+import org.openmrs.obs.StreamingComplexObsHandler;
 import org.openmrs.util.OpenmrsConstants;
+import org.openmrs.util.OpenmrsUtil;
 
 /**
  * Handler for storing basic images for complex obs to the file system. The image mime type used is
  * taken from the image name. if the .* image name suffix matches
  * {@link javax.imageio.ImageIO#getWriterFormatNames()} then that mime type will be used to save the
- * image. Images are stored in the location specified by the global property: "obs.complex_obs_dir"
+ * image. Images are stored in the location specified by the global property: "obs.complex_obs_dir"<br/>
+ * <br/>
+ * For the {@link OpenmrsConstants#THUMBNAIL_VIEW} a scaled down copy of the image is returned. The
+ * thumbnails are made the first time they are requested and kept in a directory next to the complex
+ * obs directory, with a sub directory for each of the sizes in the global property
+ * "obs.complex_obs_thumbnail_sizes".
  * 
  * @see OpenmrsConstants#GLOBAL_PROPERTY_COMPLEX_OBS_DIR
+ * @see OpenmrsConstants#GLOBAL_PROPERTY_COMPLEX_OBS_THUMBNAIL_SIZES
  * @since 1.5
  */
-public class ImageHandler extends AbstractHandler implements ComplexObsHandler {
+public class ImageHandler extends AbstractHandler implements StreamingComplexObsHandler {
 	
 	public static final Log log = LogFactory.getLog(ImageHandler.class);
 	
+	/**
+	 * The suffix of the name of the directory holding the thumbnails, after the name of the complex
+	 * obs directory
+	 */
+	public static final String THUMBNAIL_DIRECTORY_SUFFIX = "_thumbnails";
+	
+	private static final int DEFAULT_THUMBNAIL_SIZE = 128;
+	
 	private Set<String> extensions;
 	
 	/**
@@ -60,18 +84,20 @@ public class ImageHandler extends AbstractHandler implements ComplexObsHandler {
 	}
 	
 	/**
-	 * Currently supports all views and puts the Image file data into the ComplexData object
+	 * Currently supports all views and puts the Image file data into the ComplexData object. For
+	 * the {@link OpenmrsConstants#THUMBNAIL_VIEW} it is the data of the thumbnail.
 	 * 
 	 * @see org.openmrs.obs.ComplexObsHandler#getObs(org.openmrs.Obs, java.lang.String)
 	 */
 	public Obs getObs(Obs obs, String view) {
 		File file = getComplexDataFile(obs);
+		File imageFile = isThumbnailView(view) ? getThumbnailFile(file, getThumbnailSize(view)) : file;
 		BufferedImage img = null;
 		try {
-			img = ImageIO.read(file);
+			img = ImageIO.read(imageFile);
 		}
 		catch (IOException e) {
-			log.error("Trying to read file: " + file.getAbsolutePath(), e);
+			log.error("Trying to read file: " + imageFile.getAbsolutePath(), e);
 		}
 		
 		ComplexData complexData = new ComplexData(file.getName(), img);
@@ -81,6 +107,178 @@ public class ImageHandler extends AbstractHandler implements ComplexObsHandler {
 		return obs;
 	}
 	
+	/**
+	 * Returns the stored image file for all views, except for the
+	 * {@link OpenmrsConstants#THUMBNAIL_VIEW} for which it is the thumbnail file
+	 * 
+	 * @see org.openmrs.obs.StreamingComplexObsHandler#getComplexDataStream(org.openmrs.Obs,
+	 *      java.lang.String)
+	 * @should return the stored image
+	 * @should return the thumbnail for the thumbnail view
+	 */
+	public ComplexData getComplexDataStream(Obs obs, String view) throws APIException {
+		File file = getComplexDataFile(obs);
+		File imageFile = isThumbnailView(view) ? getThumbnailFile(file, getThumbnailSize(view)) : file;
+		return openComplexDataStream(imageFile, file.getName());
+	}
+	
+	/**
+	 * Gets the thumbnail of an image, making it if it does not exist yet or is older than the image
+	 * 
+	 * @param file the image file
+	 * @param size the maximum width and height of the thumbnail
+	 * @return the thumbnail file, or the image file itself if it cannot be read
+	 * @since 1.11
+	 * @should make a thumbnail no larger than the size
+	 * @should copy the image if it is not larger than the size
+	 * @should make the thumbnail again when the image changes
+	 */
+	public File getThumbnailFile(File file, int size) {
+		String extension = getExtension(file.getName()).toLowerCase();
+		String format = extensions.contains(extension) ? extension : "png";
+		File thumbnail = new File(getThumbnailDirectory(size), file.getName()
+		        + (format.equals(extension) ? "" : "." + format));
+		if (!file.exists() || (thumbnail.exists() && thumbnail.lastModified() >= file.lastModified())) {
+			return thumbnail.exists() ? thumbnail : file;
+		}
+		
+		try {
+			BufferedImage img = ImageIO.read(file);
+			if (img == null) {
+				return file;
+			}
+			
+			// write to a temporary file first so that nobody reads a half written thumbnail
+			File directory = thumbnail.getParentFile();
+			directory.mkdirs();
+			File temp = File.createTempFile("thumbnail", "." + format, directory);
+			if (img.getWidth() <= size && img.getHeight() <= size && format.equals(extension)) {
+				// small enough already, copied so that it is not decoded again on the next request
+				FileUtils.copyFile(file, temp);
+			} else if (!ImageIO.write(scale(img, size, format), format, temp)) {
+				temp.delete();
+				return file;
+			}
+			thumbnail.delete();
+			if (!temp.renameTo(thumbnail)) {
+				temp.delete();
+				return file;
+			}
+		}
+		catch (IOException e) {
+			log.error("Unable to make a thumbnail of " + file.getAbsolutePath(), e);
+			return file;
+		}
+		
+		return thumbnail;
+	}
+	
+	/**
+	 * Scales the image down so that it fits in a square of the given size
+	 */
+	private BufferedImage scale(BufferedImage img, int size, String format) {
+		double scale = Math.min(1, Math.min((double) size / img.getWidth(), (double) size / img.getHeight()));
+		int width = Math.max(1, (int) Math.round(img.getWidth() * scale));
+		int height = Math.max(1, (int) Math.round(img.getHeight() * scale));
+		boolean opaque = format.equals("jpg") || format.equals("jpeg") || format.equals("bmp");
+		BufferedImage scaled = new BufferedImage(width, height, opaque ? BufferedImage.TYPE_INT_RGB
+		        : BufferedImage.TYPE_INT_ARGB);
+		Graphics2D graphics = scaled.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.drawImage(img, 0, 0, width, height, null);
+		}
+		finally {
+			graphics.dispose();
+		}
+		return scaled;
+	}
+	
+	/**
+	 * @return the directory holding the thumbnails of the given size
+	 */
+	private File getThumbnailDirectory(int size) {
+		return new File(getThumbnailRootDirectory(), String.valueOf(size));
+	}
+	
+	private File getThumbnailRootDirectory() {
+		File complexObsDir = OpenmrsUtil.getDirectoryInApplicationDataDirectory(Context.getAdministrationService()
+		        .getGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_COMPLEX_OBS_DIR));
+		return new File(complexObsDir.getParentFile(), complexObsDir.getName() + THUMBNAIL_DIRECTORY_SUFFIX);
+	}
+	
+	private boolean isThumbnailView(String view) {
+		return view != null
+		        && (view.equals(OpenmrsConstants.THUMBNAIL_VIEW) || view.startsWith(OpenmrsConstants.THUMBNAIL_VIEW + ":"));
+	}
+	
+	/**
+	 * Picks the smallest of the configured thumbnail sizes that is at least the size requested by
+	 * the view (or the largest size), the view not requesting any size gets the smallest
+	 * 
+	 * @param view the thumbnail view, e.g. THUMBNAIL_VIEW:300
+	 * @return the thumbnail size
+	 * @should pick the smallest configured size that is at least the requested size
+	 */
+	protected int getThumbnailSize(String view) {
+		List<Integer> sizes = new ArrayList<Integer>();
+		String value = Context.getAdministrationService().getGlobalProperty(
+		    OpenmrsConstants.GLOBAL_PROPERTY_COMPLEX_OBS_THUMBNAIL_SIZES,
+		    OpenmrsConstants.GLOBAL_PROPERTY_COMPLEX_OBS_THUMBNAIL_SIZES_DEFAULT_VALUE);
+		for (String size : StringUtils.split(value, ", ")) {
+			try {
+				if (Integer.parseInt(size) > 0) {
+					sizes.add(Integer.valueOf(size));
+				}
+			}
+			catch (NumberFormatException e) {
+				log.warn("Ignoring invalid thumbnail size " + size + " in global property "
+				        + OpenmrsConstants.GLOBAL_PROPERTY_COMPLEX_OBS_THUMBNAIL_SIZES);
+			}
+		}
+		if (sizes.isEmpty()) {
+			return DEFAULT_THUMBNAIL_SIZE;
+		}
+		Collections.sort(sizes);
+		
+		int requested = 0;
+		int colon = view.indexOf(':');
+		if (colon >= 0) {
+			try {
+				requested = Integer.parseInt(view.substring(colon + 1).trim());
+			}
+			catch (NumberFormatException e) {
+				log.warn("Ignoring invalid thumbnail size in view " + view);
+			}
+		}
+		
+		for (Integer size : sizes) {
+			if (size >= requested) {
+				return size;
+			}
+		}
+		return sizes.get(sizes.size() - 1);
+	}
+	
+	/**
+	 * Deletes the thumbnails of the image too
+	 * 
+	 * @see org.openmrs.obs.handler.AbstractHandler#purgeComplexData(org.openmrs.Obs)
+	 */
+	@Override
+	public boolean purgeComplexData(Obs obs) {
+		String filename = getComplexDataFile(obs).getName();
+		File[] sizeDirectories = getThumbnailRootDirectory().listFiles();
+		if (sizeDirectories != null) {
+			for (File directory : sizeDirectories) {
+				new File(directory, filename).delete();
+				new File(directory, filename + ".png").delete();
+			}
+		}
+		
+		return super.purgeComplexData(obs);
+	}
+	
 	/**
 	 * @see org.openmrs.obs.ComplexObsHandler#saveObs(org.openmrs.Obs)
 	 */
@@ -0,0 +1,104 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.patient;
+
+import java.util.Date;
+
+import org.openmrs.BaseOpenmrsObject;
+import org.openmrs.Patient;
+
+/**
+ * A pair of patients found by the duplicate patient detection to likely be the same person, for
+ * someone to review and merge. The pairs are replaced every time the detection runs.
+ *
+ * @see DuplicatePatientDetector
+ * @see org.openmrs.api.PatientService#detectDuplicatePatients()
+ * @see org.openmrs.api.PatientService#getDuplicatePatientCandidates(Integer, Integer)
+ * @since 1.11
+ */
+public class DuplicatePatientCandidate extends BaseOpenmrsObject {
+	
+	private Integer duplicatePatientCandidateId;
+	
+	/**
+	 * The patient with the lower id
+	 */
+	private Patient patient;
+	
+	/**
+	 * The patient with the higher id
+	 */
+	private Patient otherPatient;
+	
+	/**
+	 * How likely the patients are the same person, from 0 to 1
+	 */
+	private Double score;
+	
+	private Date dateCreated;
+	
+	public Integer getDuplicatePatientCandidateId() {
+		return duplicatePatientCandidateId;
+	}
+	
+	public void setDuplicatePatientCandidateId(Integer duplicatePatientCandidateId) {
+		this.duplicatePatientCandidateId = duplicatePatientCandidateId;
+	}
+	
+	public Patient getPatient() {
+		return patient;
+	}
+	
+	public void setPatient(Patient patient) {
+		this.patient = patient;
+	}
+	
+	public Patient getOtherPatient() {
+		return otherPatient;
+	}
+	
+	public void setOtherPatient(Patient otherPatient) {
+		this.otherPatient = otherPatient;
+	}
+	
+	public Double getScore() {
+		return score;
+	}
+	
+	public void setScore(Double score) {
+		this.score = score;
+	}
+	
+	public Date getDateCreated() {
+		return dateCreated;
+	}
+	
+	public void setDateCreated(Date dateCreated) {
+		this.dateCreated = dateCreated;
+	}
+	
+	/**
+	 * @see org.openmrs.OpenmrsObject#getId()
+	 */
+	public Integer getId() {
+		return getDuplicatePatientCandidateId();
+	}
+	
+	/**
+	 * @see org.openmrs.OpenmrsObject#setId(java.lang.Integer)
+	 */
+	public void setId(Integer id) {
+		setDuplicatePatientCandidateId(id);
+	}
+}
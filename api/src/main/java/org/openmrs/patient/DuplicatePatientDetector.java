@@ -0,0 +1,519 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.patient;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
+import org.openmrs.util.PhoneticUtil;
+
+/**
+ * Finds the pairs of patients that are likely to be the same person, without comparing every patient
+ * to every other one. The patients are fed in once (see {@link #addName(Integer, String, Date, String, String)}
+ * and {@link #addIdentifier(Integer, String)}), grouped into blocks by the configured blocking keys,
+ * and only the pairs of patients that share a block are scored. A blocking key is one or more of the
+ * fields {@link #BIRTH_YEAR}, {@link #GENDER}, {@link #GIVEN_NAME}, {@link #FAMILY_NAME} and
+ * {@link #IDENTIFIER}, e.g. "birthYear+familyName" puts the patients born in the same year with a
+ * family name that sounds the same into a block. Names are compared by their phonetic keys (see
+ * {@link PhoneticUtil}), identifiers without case and punctuation.<br/>
+ * <br/>
+ * The score of a pair goes from 0 to 1: the same identifier counts 0.4, the same given and family
+ * name 0.2 each (0.15 if they only sound the same), the same birthdate 0.2 (0.1 for the same birth
+ * year), and a different gender takes off 0.2. The pairs that score at least the threshold are
+ * returned.<br/>
+ * <br/>
+ * Instances are not thread safe while they are being filled, {@link #detect(int)} scores the
+ * blocks on the given number of threads.
+ *
+ * @see org.openmrs.api.PatientService#detectDuplicatePatients()
+ * @since 1.11
+ */
+public class DuplicatePatientDetector {
+	
+	private static final Log log = LogFactory.getLog(DuplicatePatientDetector.class);
+	
+	public static final String BIRTH_YEAR = "birthYear";
+	
+	public static final String GENDER = "gender";
+	
+	public static final String GIVEN_NAME = "givenName";
+	
+	public static final String FAMILY_NAME = "familyName";
+	
+	public static final String IDENTIFIER = "identifier";
+	
+	/**
+	 * Blocks with more patients than this are skipped, because scoring them would take too long and
+	 * their key is too common to say anything (e.g. a placeholder identifier)
+	 */
+	public static final int MAX_BLOCK_SIZE = 1000;
+	
+	private static final Set<String> FIELDS = new HashSet<String>();
+	
+	static {
+		Collections.addAll(FIELDS, BIRTH_YEAR, GENDER, GIVEN_NAME, FAMILY_NAME, IDENTIFIER);
+	}
+	
+	private static final double IDENTIFIER_WEIGHT = 0.4;
+	
+	private static final double NAME_WEIGHT = 0.2;
+	
+	private static final double SOUNDS_LIKE_NAME_WEIGHT = 0.15;
+	
+	private static final double BIRTHDATE_WEIGHT = 0.2;
+	
+	private static final double BIRTH_YEAR_WEIGHT = 0.1;
+	
+	private static final double GENDER_MISMATCH_PENALTY = 0.2;
+	
+	private final List<String[]> blockingKeys = new ArrayList<String[]>();
+	
+	private final double threshold;
+	
+	private final Map<Integer, PatientRecord> records = new HashMap<Integer, PatientRecord>();
+	
+	/**
+	 * @param blockingKeys comma separated blocking keys, each made of fields joined by +
+	 * @param threshold the minimum score of the returned pairs
+	 * @throws IllegalArgumentException if there are no blocking keys or one has an unknown field
+	 * @should fail for an unknown field
+	 */
+	public DuplicatePatientDetector(String blockingKeys, double threshold) {
+		for (String blockingKey : StringUtils.split(StringUtils.defaultString(blockingKeys), ',')) {
+			if (StringUtils.isBlank(blockingKey)) {
+				continue;
+			}
+			String[] fields = StringUtils.split(blockingKey, '+');
+			for (int i = 0; i < fields.length; i++) {
+				fields[i] = fields[i].trim();
+				if (!FIELDS.contains(fields[i])) {
+					throw new IllegalArgumentException("Unknown blocking key field '" + fields[i] + "', expected one of "
+					        + FIELDS);
+				}
+			}
+			this.blockingKeys.add(fields);
+		}
+		if (this.blockingKeys.isEmpty()) {
+			throw new IllegalArgumentException("At least one blocking key is required");
+		}
+		this.threshold = threshold;
+	}
+	
+	/**
+	 * Adds a name of a patient, along with the patient's gender and birthdate
+	 *
+	 * @param patientId the patient id
+	 * @param gender the gender of the patient
+	 * @param birthdate the birthdate of the patient
+	 * @param givenName the given name
+	 * @param familyName the family name
+	 */
+	public void addName(Integer patientId, String gender, Date birthdate, String givenName, String familyName) {
+		PatientRecord record = getRecord(patientId);
+		record.gender = StringUtils.isBlank(gender) ? null : gender.trim().toUpperCase();
+		record.birthdate = birthdate == null ? null : birthdate.getTime();
+		if (birthdate != null) {
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTime(birthdate);
+			record.birthYear = calendar.get(Calendar.YEAR);
+		}
+		record.names.add(new NameKeys(givenName, familyName));
+	}
+	
+	/**
+	 * Adds an identifier of a patient
+	 *
+	 * @param patientId the patient id
+	 * @param identifier the identifier
+	 */
+	public void addIdentifier(Integer patientId, String identifier) {
+		String normalized = normalizeIdentifier(identifier);
+		if (normalized != null) {
+			getRecord(patientId).identifiers.add(normalized);
+		}
+	}
+	
+	/**
+	 * @return the number of patients added so far
+	 */
+	public int getPatientCount() {
+		return records.size();
+	}
+	
+	/**
+	 * Groups the patients into blocks and scores the pairs of patients within each block
+	 *
+	 * @param threads the number of threads to score the blocks with
+	 * @return the pairs that score at least the threshold, by descending score
+	 * @should only compare patients that share a blocking key
+	 * @should match patients with names that sound alike
+	 * @should not return pairs below the threshold
+	 * @should return each pair once
+	 * @should return the same pairs with several threads
+	 */
+	public List<Match> detect(int threads) {
+		final List<List<PatientRecord>> blocks = getBlocks();
+		final ConcurrentMap<Long, Match> matches = new ConcurrentHashMap<Long, Match>();
+		final AtomicInteger nextBlock = new AtomicInteger();
+		
+		Runnable worker = new Runnable() {
+			
+			public void run() {
+				int block;
+				while ((block = nextBlock.getAndIncrement()) < blocks.size()) {
+					scoreBlock(blocks.get(block), matches);
+				}
+			}
+		};
+		
+		if (threads > 1 && blocks.size() > 1) {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				List<Future<?>> futures = new ArrayList<Future<?>>();
+				for (int i = 0; i < threads; i++) {
+					futures.add(executor.submit(worker));
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new APIException("Interrupted while detecting duplicate patients", e);
+			}
+			catch (ExecutionException e) {
+				throw new APIException("Unable to detect duplicate patients", e.getCause());
+			}
+			finally {
+				executor.shutdownNow();
+			}
+		} else {
+			worker.run();
+		}
+		
+		List<Match> result = new ArrayList<Match>(matches.values());
+		Collections.sort(result, new Comparator<Match>() {
+			
+			public int compare(Match match1, Match match2) {
+				int result = Double.compare(match2.getScore(), match1.getScore());
+				if (result == 0) {
+					result = match1.getPatientId().compareTo(match2.getPatientId());
+				}
+				if (result == 0) {
+					result = match1.getOtherPatientId().compareTo(match2.getOtherPatientId());
+				}
+				return result;
+			}
+		});
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Found " + result.size() + " duplicate patient candidates among " + records.size()
+			        + " patients in " + blocks.size() + " blocks");
+		}
+		return result;
+	}
+	
+	/**
+	 * @return the blocks with at least two and at most {@link #MAX_BLOCK_SIZE} patients
+	 */
+	private List<List<PatientRecord>> getBlocks() {
+		Map<String, List<PatientRecord>> blocks = new HashMap<String, List<PatientRecord>>();
+		for (PatientRecord record : records.values()) {
+			for (int i = 0; i < blockingKeys.size(); i++) {
+				for (String value : getBlockingValues(record, blockingKeys.get(i))) {
+					String key = i + ":" + value;
+					List<PatientRecord> block = blocks.get(key);
+					if (block == null) {
+						block = new ArrayList<PatientRecord>(2);
+						blocks.put(key, block);
+					}
+					block.add(record);
+				}
+			}
+		}
+		
+		List<List<PatientRecord>> result = new ArrayList<List<PatientRecord>>();
+		for (Map.Entry<String, List<PatientRecord>> block : blocks.entrySet()) {
+			int size = block.getValue().size();
+			if (size > MAX_BLOCK_SIZE) {
+				log.warn("Skipping the " + size + " patients sharing the blocking key " + block.getKey());
+			} else if (size > 1) {
+				result.add(block.getValue());
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @return the distinct values of the given blocking key for the given patient, one for every
+	 *         combination of its names and identifiers
+	 */
+	private static Set<String> getBlockingValues(PatientRecord record, String[] fields) {
+		Set<String> values = new LinkedHashSet<String>();
+		values.add("");
+		for (String field : fields) {
+			Set<String> fieldValues = new LinkedHashSet<String>();
+			if (BIRTH_YEAR.equals(field)) {
+				if (record.birthYear != null) {
+					fieldValues.add(record.birthYear.toString());
+				}
+			} else if (GENDER.equals(field)) {
+				if (record.gender != null) {
+					fieldValues.add(record.gender);
+				}
+			} else if (GIVEN_NAME.equals(field) || FAMILY_NAME.equals(field)) {
+				for (NameKeys name : record.names) {
+					String soundex = GIVEN_NAME.equals(field) ? name.givenNameSoundex : name.familyNameSoundex;
+					if (soundex != null) {
+						fieldValues.add(soundex);
+					}
+				}
+			} else {
+				fieldValues.addAll(record.identifiers);
+			}
+			
+			Set<String> combined = new LinkedHashSet<String>();
+			for (String value : values) {
+				for (String fieldValue : fieldValues) {
+					combined.add(value + "|" + fieldValue);
+				}
+			}
+			values = combined;
+		}
+		return values;
+	}
+	
+	private void scoreBlock(List<PatientRecord> block, ConcurrentMap<Long, Match> matches) {
+		for (int i = 0; i < block.size(); i++) {
+			PatientRecord record = block.get(i);
+			for (int j = i + 1; j < block.size(); j++) {
+				PatientRecord other = block.get(j);
+				if (record.patientId.equals(other.patientId)) {
+					continue;
+				}
+				int low = Math.min(record.patientId, other.patientId);
+				int high = Math.max(record.patientId, other.patientId);
+				Long pair = ((long) low << 32) | (high & 0xffffffffL);
+				if (matches.containsKey(pair)) {
+					continue;
+				}
+				double score = score(record, other);
+				if (score >= threshold) {
+					matches.putIfAbsent(pair, new Match(low, high, score));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the score of the given pair, see the class comment
+	 */
+	static double score(PatientRecord record, PatientRecord other) {
+		double score = 0;
+		for (String identifier : record.identifiers) {
+			if (other.identifiers.contains(identifier)) {
+				score += IDENTIFIER_WEIGHT;
+				break;
+			}
+		}
+		
+		double nameScore = 0;
+		for (NameKeys name : record.names) {
+			for (NameKeys otherName : other.names) {
+				nameScore = Math.max(nameScore, compareNames(name.givenName, name.givenNameSoundex,
+				    name.givenNameMetaphone, otherName.givenName, otherName.givenNameSoundex,
+				    otherName.givenNameMetaphone)
+				        + compareNames(name.familyName, name.familyNameSoundex, name.familyNameMetaphone,
+				            otherName.familyName, otherName.familyNameSoundex, otherName.familyNameMetaphone));
+			}
+		}
+		score += nameScore;
+		
+		if (record.birthdate != null && other.birthdate != null) {
+			if (record.birthdate.equals(other.birthdate)) {
+				score += BIRTHDATE_WEIGHT;
+			} else if (record.birthYear.equals(other.birthYear)) {
+				score += BIRTH_YEAR_WEIGHT;
+			}
+		}
+		
+		if (record.gender != null && other.gender != null && !record.gender.equals(other.gender)) {
+			score -= GENDER_MISMATCH_PENALTY;
+		}
+		
+		// rounded so that the sums of the weights compare as expected against the threshold
+		return Math.round(score * 1000) / 1000.0;
+	}
+	
+	private static double compareNames(String name, String soundex, String metaphone, String otherName,
+	        String otherSoundex, String otherMetaphone) {
+		if (name == null || otherName == null) {
+			return 0;
+		}
+		if (name.equals(otherName)) {
+			return NAME_WEIGHT;
+		}
+		if ((soundex != null && soundex.equals(otherSoundex)) || (metaphone != null && metaphone.equals(otherMetaphone))) {
+			return SOUNDS_LIKE_NAME_WEIGHT;
+		}
+		return 0;
+	}
+	
+	private PatientRecord getRecord(Integer patientId) {
+		PatientRecord record = records.get(patientId);
+		if (record == null) {
+			record = new PatientRecord(patientId);
+			records.put(patientId, record);
+		}
+		return record;
+	}
+	
+	/**
+	 * @return the identifier in upper case without anything but letters and digits, or null if
+	 *         nothing is left
+	 */
+	private static String normalizeIdentifier(String identifier) {
+		if (identifier == null) {
+			return null;
+		}
+		StringBuilder normalized = new StringBuilder(identifier.length());
+		for (int i = 0; i < identifier.length(); i++) {
+			char c = identifier.charAt(i);
+			if (Character.isLetterOrDigit(c)) {
+				normalized.append(Character.toUpperCase(c));
+			}
+		}
+		return normalized.length() == 0 ? null : normalized.toString();
+	}
+	
+	/**
+	 * @return the name in upper case without surrounding whitespace, or null if blank
+	 */
+	private static String normalizeName(String name) {
+		return StringUtils.isBlank(name) ? null : name.trim().toUpperCase();
+	}
+	
+	/**
+	 * What is compared of a patient
+	 */
+	static class PatientRecord {
+		
+		private final Integer patientId;
+		
+		private String gender;
+		
+		private Long birthdate;
+		
+		private Integer birthYear;
+		
+		private final List<NameKeys> names = new ArrayList<NameKeys>(1);
+		
+		private final Set<String> identifiers = new HashSet<String>(2);
+		
+		PatientRecord(Integer patientId) {
+			this.patientId = patientId;
+		}
+	}
+	
+	/**
+	 * The normalized given and family name of a person name with their phonetic keys
+	 */
+	private static class NameKeys {
+		
+		private final String givenName;
+		
+		private final String givenNameSoundex;
+		
+		private final String givenNameMetaphone;
+		
+		private final String familyName;
+		
+		private final String familyNameSoundex;
+		
+		private final String familyNameMetaphone;
+		
+		NameKeys(String givenName, String familyName) {
+			this.givenName = normalizeName(givenName);
+			this.givenNameSoundex = PhoneticUtil.soundex(givenName);
+			this.givenNameMetaphone = PhoneticUtil.metaphone(givenName);
+			this.familyName = normalizeName(familyName);
+			this.familyNameSoundex = PhoneticUtil.soundex(familyName);
+			this.familyNameMetaphone = PhoneticUtil.metaphone(familyName);
+		}
+	}
+	
+	/**
+	 * A pair of patients that are likely to be the same person
+	 */
+	public static class Match {
+		
+		private final Integer patientId;
+		
+		private final Integer otherPatientId;
+		
+		private final double score;
+		
+		/**
+		 * @param patientId the lower patient id of the pair
+		 * @param otherPatientId the higher patient id of the pair
+		 * @param score the score of the pair
+		 */
+		public Match(Integer patientId, Integer otherPatientId, double score) {
+			this.patientId = patientId;
+			this.otherPatientId = otherPatientId;
+			this.score = score;
+		}
+		
+		/**
+		 * @return the lower patient id of the pair
+		 */
+		public Integer getPatientId() {
+			return patientId;
+		}
+		
+		/**
+		 * @return the higher patient id of the pair
+		 */
+		public Integer getOtherPatientId() {
+			return otherPatientId;
+		}
+		
+		/**
+		 * @return the score of the pair, from 0 to 1
+		 */
+		public double getScore() {
+			return score;
+		}
+	}
+}
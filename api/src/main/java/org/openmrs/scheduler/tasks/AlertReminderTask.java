@@ -43,6 +43,9 @@ public class AlertReminderTask extends AbstractTask {
 				authenticate();
 			}
 			
+			// pick up the alerts written by other instances sharing the database
+			Context.getAlertService().refreshAlertIndex();
+			
 			// Get all unread alerts
 			// TODO Change to getAllAlerts(Boolean includeRead, Boolean includeExpired);
 			Collection<Alert> alerts = Context.getAlertService().getAllAlerts(false);
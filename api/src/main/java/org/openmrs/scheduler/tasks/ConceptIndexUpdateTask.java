@@ -13,27 +13,66 @@
  */
 package org.openmrs.scheduler.tasks;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.openmrs.Concept;
 import org.openmrs.GlobalProperty;
 import org.openmrs.api.APIException;
 import org.openmrs.api.AdministrationService;
 import org.openmrs.api.ConceptService;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
 import org.openmrs.api.impl.ConceptServiceImpl;
 import org.openmrs.scheduler.SchedulerService;
 import org.openmrs.scheduler.TaskDefinition;
 import org.openmrs.util.OpenmrsConstants;
 
 /**
- * A utility class for updating concept words in a scheduled task.
+ * A utility class for updating concept words in a scheduled task.<br/>
+ * <br/>
+ * The concept id range is split into partitions that are rebuilt in parallel by a number of worker
+ * threads (set with the {@link #PROPERTY_WORKER_THREADS} task property), each with its own session.
+ * The concepts of a partition are rebuilt in chunks with
+ * {@link ConceptService#rebuildConceptIndexes(Integer, Integer)}, and the progress of every
+ * partition is saved in the {@link OpenmrsConstants#GP_CONCEPT_INDEX_UPDATE_TASK_LAST_UPDATED_CONCEPT}
+ * global property after each chunk, so that a stopped rebuild resumes where it left off.
  */
 public class ConceptIndexUpdateTask extends AbstractTask {
 	
-	private Log log = LogFactory.getLog(ConceptIndexUpdateTask.class);
+	private static final Log log = LogFactory.getLog(ConceptIndexUpdateTask.class);
+	
+	/**
+	 * The name of the task property holding the number of worker threads
+	 */
+	public static final String PROPERTY_WORKER_THREADS = "workerThreads";
+	
+	/**
+	 * The number of concept ids rebuilt per transaction
+	 */
+	private static final int CHUNK_SIZE = 250;
 	
-	private boolean shouldExecute = true;
+	/**
+	 * The number of partitions per worker thread, more than one so that workers finishing early can
+	 * help with the remaining ones
+	 */
+	private static final int PARTITIONS_PER_WORKER = 4;
+	
+	private static volatile Progress progress;
+	
+	private volatile boolean shouldExecute = true;
+	
+	/**
+	 * @return the progress of the current or last concept index rebuild, or null if none ran since
+	 *         startup
+	 */
+	public static Progress getProgress() {
+		return progress;
+	}
 	
 	/**
 	 * @see org.openmrs.scheduler.tasks.AbstractTask#execute()
@@ -45,54 +84,62 @@ public class ConceptIndexUpdateTask extends AbstractTask {
 			shouldExecute = true;
 			AdministrationService as = Context.getAdministrationService();
 			ConceptService cs = Context.getConceptService();
-			GlobalProperty gp = as
-			        .getGlobalPropertyObject(OpenmrsConstants.GP_CONCEPT_INDEX_UPDATE_TASK_LAST_UPDATED_CONCEPT);
-			if (gp == null) {
-				gp = new GlobalProperty(OpenmrsConstants.GP_CONCEPT_INDEX_UPDATE_TASK_LAST_UPDATED_CONCEPT);
-			}
 			
 			if (log.isDebugEnabled()) {
 				log.debug("Updating concept words ... ");
 			}
 			try {
-				Concept currentConcept = null; // assumes that all conceptIds are positive
-				//check if we have a saved last updated concept id
-				try {
-					currentConcept = cs.getConcept(Integer.valueOf(gp.getPropertyValue()));
-				}
-				catch (NumberFormatException e) {
-					//do nothing, most likely there was none
-				}
+				Integer maxConceptId = cs.getMaxConceptId();
+				final List<Partition> partitions = getPartitions(as
+				        .getGlobalProperty(OpenmrsConstants.GP_CONCEPT_INDEX_UPDATE_TASK_LAST_UPDATED_CONCEPT),
+				    maxConceptId == null ? 0 : maxConceptId, getWorkerThreads());
 				
-				if (currentConcept == null) {
-					currentConcept = new Concept(0);
-				}
+				int workerThreads = Math.min(getWorkerThreads(), Math.max(partitions.size(), 1));
+				progress = new Progress(partitions, workerThreads);
 				
-				currentConcept = cs.getNextConcept(currentConcept);
-				int counter = 0;
-				while (currentConcept != null && shouldExecute) {
-					if (log.isDebugEnabled()) {
-						log.debug("updateConceptWords() : current concept: " + currentConcept);
+				final ConcurrentLinkedQueue<Partition> queue = new ConcurrentLinkedQueue<Partition>();
+				for (Partition partition : partitions) {
+					if (!partition.isDone()) {
+						queue.add(partition);
 					}
-					cs.updateConceptIndex(currentConcept);
+				}
+				
+				Runnable worker = new Runnable() {
 					
-					// keep memory consumption low
-					if (counter++ > 25) {
-						gp.setPropertyValue(currentConcept.getConceptId().toString());
-						as.saveGlobalProperty(gp);
-						
-						//persist to DB prior to releasing memory
-						Context.flushSession();
-						Context.clearSession();
-						counter = 0;
+					public void run() {
+						Partition partition;
+						while (shouldExecute && (partition = queue.poll()) != null) {
+							updatePartition(partition, partitions);
+						}
 					}
-					
-					currentConcept = cs.getNextConcept(currentConcept);
+				};
+				
+				if (workerThreads > 1 && Daemon.isDaemonThread()) {
+					List<Thread> threads = new ArrayList<Thread>();
+					for (int i = 0; i < workerThreads; i++) {
+						threads.add(Daemon.runInNewDaemonThread(worker));
+					}
+					for (Thread thread : threads) {
+						try {
+							thread.join();
+						}
+						catch (InterruptedException e) {
+							shouldExecute = false;
+						}
+					}
+				} else {
+					worker.run();
 				}
 				
+				progress.finish();
+				
 				//we have reached the end, get rid of the GP
-				if (currentConcept == null) {
-					as.purgeGlobalProperty(gp);
+				if (progress.getFailedPartitions() == 0 && progress.getPercentComplete() >= 100) {
+					GlobalProperty gp = as
+					        .getGlobalPropertyObject(OpenmrsConstants.GP_CONCEPT_INDEX_UPDATE_TASK_LAST_UPDATED_CONCEPT);
+					if (gp != null) {
+						as.purgeGlobalProperty(gp);
+					}
 				}
 			}
 			catch (APIException e) {
@@ -100,6 +147,9 @@ public class ConceptIndexUpdateTask extends AbstractTask {
 				throw e;
 			}
 			finally {
+				if (progress != null) {
+					progress.finish();
+				}
 				isExecuting = false;
 				shouldExecute = false;
 				SchedulerService ss = Context.getSchedulerService();
@@ -116,12 +166,150 @@ public class ConceptIndexUpdateTask extends AbstractTask {
 		}
 	}
 	
+	/**
+	 * Rebuilds the remaining concepts of the given partition chunk by chunk, saving the progress of
+	 * all partitions after each chunk
+	 *
+	 * @param partition the partition to rebuild
+	 * @param partitions all partitions, for the checkpoint
+	 */
+	private void updatePartition(Partition partition, List<Partition> partitions) {
+		ConceptService cs = Context.getConceptService();
+		try {
+			while (shouldExecute && !partition.isDone()) {
+				int chunkStart = partition.getLastUpdated() + 1;
+				int chunkEnd = Math.min(chunkStart + CHUNK_SIZE - 1, partition.getEnd());
+				if (log.isDebugEnabled()) {
+					log.debug("updateConceptWords() : concepts " + chunkStart + " to " + chunkEnd);
+				}
+				int updated = cs.rebuildConceptIndexes(chunkStart, chunkEnd);
+				partition.setLastUpdated(chunkEnd);
+				progress.addUpdated(updated, chunkEnd - chunkStart + 1);
+				
+				saveCheckpoint(partitions);
+				
+				// keep memory consumption low
+				Context.clearSession();
+			}
+		}
+		catch (Exception e) {
+			// leave the partition for the next run, the others can still complete
+			log.error("Unable to update the concept words of concepts " + partition.getStart() + " to "
+			        + partition.getEnd(), e);
+			progress.addFailedPartition();
+			Context.clearSession();
+		}
+	}
+	
+	/**
+	 * Saves the progress of all partitions in the global property
+	 *
+	 * @param partitions the partitions
+	 */
+	private synchronized void saveCheckpoint(List<Partition> partitions) {
+		AdministrationService as = Context.getAdministrationService();
+		GlobalProperty gp = as.getGlobalPropertyObject(OpenmrsConstants.GP_CONCEPT_INDEX_UPDATE_TASK_LAST_UPDATED_CONCEPT);
+		if (gp == null) {
+			gp = new GlobalProperty(OpenmrsConstants.GP_CONCEPT_INDEX_UPDATE_TASK_LAST_UPDATED_CONCEPT);
+		}
+		gp.setPropertyValue(formatPartitions(partitions));
+		as.saveGlobalProperty(gp);
+	}
+	
+	/**
+	 * @return the number of worker threads set on the task definition, or the default
+	 */
+	private int getWorkerThreads() {
+		if (taskDefinition != null) {
+			String workerThreads = taskDefinition.getProperty(PROPERTY_WORKER_THREADS);
+			if (StringUtils.isNotBlank(workerThreads)) {
+				try {
+					return Math.max(1, Integer.valueOf(workerThreads.trim()));
+				}
+				catch (NumberFormatException e) {
+					log.warn("Invalid " + PROPERTY_WORKER_THREADS + " task property: " + workerThreads);
+				}
+			}
+		}
+		
+		return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+	}
+	
+	/**
+	 * Restores the partitions saved in the checkpoint, or splits the concept ids up to maxConceptId
+	 * into new ones. A checkpoint holding a single concept id (as saved by earlier versions) means
+	 * that all concepts up to that id are done.
+	 *
+	 * @param checkpoint the saved global property value, may be blank
+	 * @param maxConceptId the highest concept id
+	 * @param workerThreads the number of workers
+	 * @return the partitions
+	 * @should split the concept ids into partitions
+	 * @should restore the partitions from the checkpoint
+	 * @should resume after the concept id saved by earlier versions
+	 */
+	static List<Partition> getPartitions(String checkpoint, int maxConceptId, int workerThreads) {
+		int firstConceptId = 1;
+		if (StringUtils.isNotBlank(checkpoint)) {
+			checkpoint = checkpoint.trim();
+			try {
+				firstConceptId = Integer.valueOf(checkpoint) + 1;
+			}
+			catch (NumberFormatException e) {
+				try {
+					return parsePartitions(checkpoint);
+				}
+				catch (RuntimeException e2) {
+					log.warn("Ignoring invalid concept index checkpoint: " + checkpoint);
+				}
+			}
+		}
+		
+		List<Partition> partitions = new ArrayList<Partition>();
+		int count = workerThreads * PARTITIONS_PER_WORKER;
+		int size = Math.max(CHUNK_SIZE, (maxConceptId - firstConceptId + count) / count);
+		for (int start = firstConceptId; start <= maxConceptId; start += size) {
+			partitions.add(new Partition(start, Math.min(start + size - 1, maxConceptId), start - 1));
+		}
+		return partitions;
+	}
+	
+	/**
+	 * Formats the partitions for the checkpoint, as a comma separated list of
+	 * <code>start-end:lastUpdated</code>
+	 *
+	 * @param partitions the partitions
+	 * @return the formatted partitions
+	 */
+	static String formatPartitions(List<Partition> partitions) {
+		StringBuilder sb = new StringBuilder();
+		for (Partition partition : partitions) {
+			if (sb.length() > 0) {
+				sb.append(",");
+			}
+			sb.append(partition.getStart()).append("-").append(partition.getEnd()).append(":").append(
+			    partition.getLastUpdated());
+		}
+		return sb.toString();
+	}
+	
+	private static List<Partition> parsePartitions(String checkpoint) {
+		List<Partition> partitions = new ArrayList<Partition>();
+		for (String part : checkpoint.split(",")) {
+			String[] range = part.split(":");
+			String[] bounds = range[0].split("-");
+			partitions.add(new Partition(Integer.valueOf(bounds[0].trim()), Integer.valueOf(bounds[1].trim()), Integer
+			        .valueOf(range[1].trim())));
+		}
+		return partitions;
+	}
+	
 	/**
 	 * @see org.openmrs.scheduler.Task#initialize(org.openmrs.scheduler.TaskDefinition)
 	 */
 	@Override
 	public void initialize(TaskDefinition config) {
-		// do nothing
+		super.initialize(config);
 	}
 	
 	/**
@@ -132,4 +320,138 @@ public class ConceptIndexUpdateTask extends AbstractTask {
 		shouldExecute = false;
 	}
 	
+	/**
+	 * A range of concept ids rebuilt by one worker at a time
+	 */
+	static class Partition {
+		
+		private final int start;
+		
+		private final int end;
+		
+		private volatile int lastUpdated;
+		
+		Partition(int start, int end, int lastUpdated) {
+			this.start = start;
+			this.end = end;
+			this.lastUpdated = lastUpdated;
+		}
+		
+		int getStart() {
+			return start;
+		}
+		
+		int getEnd() {
+			return end;
+		}
+		
+		int getLastUpdated() {
+			return lastUpdated;
+		}
+		
+		void setLastUpdated(int lastUpdated) {
+			this.lastUpdated = lastUpdated;
+		}
+		
+		boolean isDone() {
+			return lastUpdated >= end;
+		}
+	}
+	
+	/**
+	 * The progress of a concept index rebuild, shown on the concept index page
+	 */
+	public static class Progress {
+		
+		private final long startTime = System.currentTimeMillis();
+		
+		private volatile long endTime = 0;
+		
+		private final int workerThreads;
+		
+		private final int totalConceptIds;
+		
+		private final AtomicInteger processedConceptIds = new AtomicInteger();
+		
+		private final AtomicInteger updatedConcepts = new AtomicInteger();
+		
+		private final AtomicInteger failedPartitions = new AtomicInteger();
+		
+		Progress(List<Partition> partitions, int workerThreads) {
+			this.workerThreads = workerThreads;
+			int total = 0;
+			for (Partition partition : partitions) {
+				total += partition.getEnd() - partition.getLastUpdated();
+			}
+			this.totalConceptIds = total;
+		}
+		
+		void addUpdated(int concepts, int conceptIds) {
+			updatedConcepts.addAndGet(concepts);
+			processedConceptIds.addAndGet(conceptIds);
+		}
+		
+		void addFailedPartition() {
+			failedPartitions.incrementAndGet();
+		}
+		
+		void finish() {
+			if (endTime == 0) {
+				endTime = System.currentTimeMillis();
+			}
+		}
+		
+		/**
+		 * @return true while the rebuild is running
+		 */
+		public boolean isRunning() {
+			return endTime == 0;
+		}
+		
+		/**
+		 * @return the number of worker threads
+		 */
+		public int getWorkerThreads() {
+			return workerThreads;
+		}
+		
+		/**
+		 * @return the number of concepts rebuilt so far
+		 */
+		public int getUpdatedConcepts() {
+			return updatedConcepts.get();
+		}
+		
+		/**
+		 * @return the number of partitions that failed and will be retried by the next run
+		 */
+		public int getFailedPartitions() {
+			return failedPartitions.get();
+		}
+		
+		/**
+		 * @return the share of the concept id range that has been rebuilt, from 0 to 100
+		 */
+		public int getPercentComplete() {
+			if (totalConceptIds == 0) {
+				return 100;
+			}
+			return (int) (processedConceptIds.get() * 100L / totalConceptIds);
+		}
+		
+		/**
+		 * @return the number of seconds the rebuild has been running, or ran for
+		 */
+		public long getElapsedSeconds() {
+			return ((endTime == 0 ? System.currentTimeMillis() : endTime) - startTime) / 1000;
+		}
+		
+		/**
+		 * @return the average number of concepts rebuilt per second
+		 */
+		public long getConceptsPerSecond() {
+			long elapsed = Math.max(1, (endTime == 0 ? System.currentTimeMillis() : endTime) - startTime);
+			return updatedConcepts.get() * 1000L / elapsed;
+		}
+	}
 }
@@ -0,0 +1,51 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.scheduler.tasks;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+
+/**
+ * A scheduled task that runs the duplicate patient detection, so that the pairs of patients that
+ * are likely to be the same person are ready for review on the merge patients page. It should be
+ * scheduled to run at night, e.g. once a day or week.
+ *
+ * @see org.openmrs.api.PatientService#detectDuplicatePatients()
+ * @since 1.11
+ */
+public class DetectDuplicatePatientsTask extends AbstractTask {
+	
+	private static final Log log = LogFactory.getLog(DetectDuplicatePatientsTask.class);
+	
+	/**
+	 * @see org.openmrs.scheduler.tasks.AbstractTask#execute()
+	 */
+	@Override
+	public void execute() {
+		if (isExecuting) {
+			return;
+		}
+		isExecuting = true;
+		try {
+			long start = System.currentTimeMillis();
+			int candidates = Context.getPatientService().detectDuplicatePatients();
+			log.info("Found " + candidates + " duplicate patient candidates in " + (System.currentTimeMillis() - start)
+			        + " ms");
+		}
+		finally {
+			isExecuting = false;
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.scheduler.tasks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
+import org.openmrs.scheduler.TaskDefinition;
+import org.openmrs.util.ConceptDictionaryExporter;
+import org.openmrs.util.LocaleUtility;
+import org.openmrs.util.OpenmrsUtil;
+
+/**
+ * A scheduled task that exports the concept dictionary to a comma delimited file with the
+ * {@link ConceptDictionaryExporter}, for dictionaries too large to download comfortably through the
+ * web application.<br/>
+ * <br/>
+ * The file is written to the path in the {@link #PROPERTY_OUTPUT_FILE} task property, or to a time
+ * stamped file in the {@link #DEFAULT_OUTPUT_DIRECTORY} directory of the application data directory.
+ * The names and descriptions are exported in the locale of the {@link #PROPERTY_LOCALE} task
+ * property, or in the default locale.
+ *
+ * @since 1.11
+ */
+public class ExportConceptDictionaryTask extends AbstractTask {
+	
+	private static final Log log = LogFactory.getLog(ExportConceptDictionaryTask.class);
+	
+	/**
+	 * The name of the task property holding the path of the file to write
+	 */
+	public static final String PROPERTY_OUTPUT_FILE = "outputFile";
+	
+	/**
+	 * The name of the task property holding the locale to export
+	 */
+	public static final String PROPERTY_LOCALE = "locale";
+	
+	/**
+	 * The directory in the application data directory the exports are written to by default
+	 */
+	public static final String DEFAULT_OUTPUT_DIRECTORY = "concept_dictionary_exports";
+	
+	private String outputFile;
+	
+	private String locale;
+	
+	/**
+	 * @see org.openmrs.scheduler.tasks.AbstractTask#initialize(TaskDefinition)
+	 */
+	@Override
+	public void initialize(TaskDefinition definition) {
+		super.initialize(definition);
+		outputFile = definition.getProperty(PROPERTY_OUTPUT_FILE);
+		locale = definition.getProperty(PROPERTY_LOCALE);
+	}
+	
+	/**
+	 * @see org.openmrs.scheduler.tasks.AbstractTask#execute()
+	 */
+	@Override
+	public void execute() {
+		if (!isExecuting) {
+			if (log.isDebugEnabled()) {
+				log.debug("Starting Export Concept Dictionary Task...");
+			}
+			
+			startExecuting();
+			try {
+				File file = getOutputFile();
+				Locale exportLocale = StringUtils.isBlank(locale) ? LocaleUtility.getDefaultLocale() : LocaleUtility
+				        .fromSpecification(locale);
+				int count = export(new ConceptDictionaryExporter(exportLocale), file);
+				log.info("Exported " + count + " concepts to " + file.getAbsolutePath());
+			}
+			catch (Exception e) {
+				log.error("Error while exporting the concept dictionary:", e);
+			}
+			finally {
+				stopExecuting();
+			}
+		}
+	}
+	
+	/**
+	 * Writes the export to a temporary file next to the given one and renames it when complete, so
+	 * the file never holds a partial export
+	 *
+	 * @param exporter the exporter
+	 * @param file the file to write
+	 * @return the number of concepts exported
+	 * @throws Exception
+	 */
+	static int export(ConceptDictionaryExporter exporter, File file) throws Exception {
+		File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+		int count;
+		try {
+			count = exporter.export(writer);
+		}
+		finally {
+			writer.close();
+		}
+		
+		if ((file.exists() && !file.delete()) || !tempFile.renameTo(file)) {
+			tempFile.delete();
+			throw new APIException("Unable to move the export to " + file.getAbsolutePath());
+		}
+		return count;
+	}
+	
+	private File getOutputFile() {
+		if (StringUtils.isNotBlank(outputFile)) {
+			File file = new File(outputFile);
+			if (file.getParentFile() != null) {
+				file.getParentFile().mkdirs();
+			}
+			return file;
+		}
+		
+		File directory = OpenmrsUtil.getDirectoryInApplicationDataDirectory(DEFAULT_OUTPUT_DIRECTORY);
+		return new File(directory, "conceptDictionary" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date())
+		        + ".csv");
+	}
+}
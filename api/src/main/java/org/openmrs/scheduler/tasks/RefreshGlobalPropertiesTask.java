@@ -0,0 +1,43 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.scheduler.tasks;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+
+/**
+ * A scheduled task that makes this instance pick up the global properties changed by the other
+ * instances sharing its database, for deployments that run several instances. It should be
+ * scheduled to run every minute or so.
+ *
+ * @see org.openmrs.api.AdministrationService#refreshGlobalProperties()
+ * @since 1.11
+ */
+public class RefreshGlobalPropertiesTask extends AbstractTask {
+	
+	private static final Log log = LogFactory.getLog(RefreshGlobalPropertiesTask.class);
+	
+	/**
+	 * @see org.openmrs.scheduler.tasks.AbstractTask#execute()
+	 */
+	@Override
+	public void execute() {
+		if (log.isDebugEnabled()) {
+			log.debug("Refreshing the global properties");
+		}
+		
+		Context.getAdministrationService().refreshGlobalProperties();
+	}
+}
@@ -0,0 +1,1174 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.openmrs.api.APIException;
+
+/**
+ * A compressed set of primitive ints, laid out the same way as a "roaring" bitmap: the 32 bits of
+ * each value are split into a 16 bit key and a 16 bit low part. All values sharing a key are kept
+ * in one container, which is either a sorted array of low parts (sparse chunks) or a 65536 bit
+ * bitmap (dense chunks), switching automatically at {@link #ARRAY_CONTAINER_MAX_SIZE} values.<br/>
+ * <br/>
+ * Compared to a {@link java.util.TreeSet} of Integers this uses 2 bytes per member for sparse ids
+ * and 1 bit per possible id for dense ranges, and the set operations {@link #or(CompressedIntSet)},
+ * {@link #and(CompressedIntSet)} and {@link #andNot(CompressedIntSet)} work container by container
+ * without boxing.<br/>
+ * <br/>
+ * Iteration is always in ascending (signed) int order. This class is not thread safe.
+ *
+ * @since 1.11
+ */
+public class CompressedIntSet implements Iterable<Integer>, Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Array containers holding more than this many values are converted to bitmap containers
+	 */
+	public static final int ARRAY_CONTAINER_MAX_SIZE = 4096;
+	
+	/**
+	 * Version marker written at the start of the serialized form
+	 */
+	private static final int SERIAL_FORMAT_VERSION = 1;
+	
+	private static final byte TYPE_ARRAY = 0;
+	
+	private static final byte TYPE_BITMAP = 1;
+	
+	private static final int BITMAP_WORDS = 1024;
+	
+	private transient char[] keys = new char[0];
+	
+	private transient Container[] containers = new Container[0];
+	
+	private transient int containerCount = 0;
+	
+	private transient int size = 0;
+	
+	private transient int modCount = 0;
+	
+	/**
+	 * Primitive iterator over the members of a {@link CompressedIntSet}
+	 */
+	public interface IntIterator {
+		
+		/**
+		 * @return true if there are more values
+		 */
+		public boolean hasNext();
+		
+		/**
+		 * @return the next value
+		 * @throws NoSuchElementException if there are no more values
+		 */
+		public int next();
+	}
+	
+	public CompressedIntSet() {
+	}
+	
+	/**
+	 * Creates a set containing the given values
+	 *
+	 * @param values the values to add
+	 */
+	public CompressedIntSet(int... values) {
+		if (values != null) {
+			for (int value : values) {
+				add(value);
+			}
+		}
+	}
+	
+	/**
+	 * Creates a set containing the non null values of the given collection
+	 *
+	 * @param values the values to add
+	 */
+	public CompressedIntSet(Collection<Integer> values) {
+		if (values != null) {
+			addAll(values);
+		}
+	}
+	
+	/**
+	 * Creates a copy of the given set
+	 *
+	 * @param other the set to copy
+	 */
+	public CompressedIntSet(CompressedIntSet other) {
+		keys = Arrays.copyOf(other.keys, other.containerCount);
+		containers = new Container[other.containerCount];
+		for (int i = 0; i < other.containerCount; i++) {
+			containers[i] = other.containers[i].copy();
+		}
+		containerCount = other.containerCount;
+		size = other.size;
+	}
+	
+	/**
+	 * Adds a value to this set
+	 *
+	 * @param value the value to add
+	 * @return true if the set did not already contain the value
+	 * @should add the value
+	 * @should return false if the value is already present
+	 * @should convert to a bitmap container when a chunk becomes dense
+	 */
+	public boolean add(int value) {
+		char key = highBits(value);
+		int i = indexOfKey(key);
+		if (i < 0) {
+			i = -i - 1;
+			insertContainer(i, key, new ArrayContainer());
+		}
+		Container c = containers[i];
+		int before = c.cardinality();
+		containers[i] = c.add(lowBits(value));
+		if (containers[i].cardinality() == before) {
+			return false;
+		}
+		size++;
+		modCount++;
+		return true;
+	}
+	
+	/**
+	 * Removes a value from this set
+	 *
+	 * @param value the value to remove
+	 * @return true if the value was present
+	 * @should remove the value
+	 * @should return false if the value is not present
+	 */
+	public boolean remove(int value) {
+		int i = indexOfKey(highBits(value));
+		if (i < 0) {
+			return false;
+		}
+		Container c = containers[i];
+		int before = c.cardinality();
+		containers[i] = c.remove(lowBits(value));
+		if (containers[i].cardinality() == before) {
+			return false;
+		}
+		if (containers[i].cardinality() == 0) {
+			removeContainer(i);
+		}
+		size--;
+		modCount++;
+		return true;
+	}
+	
+	/**
+	 * @param value the value to look for
+	 * @return true if the set contains the value
+	 * @should return true for added values and false otherwise
+	 */
+	public boolean contains(int value) {
+		int i = indexOfKey(highBits(value));
+		return i >= 0 && containers[i].contains(lowBits(value));
+	}
+	
+	/**
+	 * Adds all non null values in the given collection
+	 *
+	 * @param values the values to add
+	 * @return true if this set changed
+	 */
+	public boolean addAll(Collection<Integer> values) {
+		if (values instanceof IntegerSetView) {
+			int before = size;
+			or(((IntegerSetView) values).getBackingSet());
+			return size != before;
+		}
+		boolean changed = false;
+		for (Integer value : values) {
+			if (value != null) {
+				changed |= add(value);
+			}
+		}
+		return changed;
+	}
+	
+	/**
+	 * @return the number of values in this set
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @return true if this set has no values
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Removes all values from this set
+	 */
+	public void clear() {
+		keys = new char[0];
+		containers = new Container[0];
+		containerCount = 0;
+		size = 0;
+		modCount++;
+	}
+	
+	/**
+	 * In place union: adds every value of <code>other</code> to this set
+	 *
+	 * @param other the set to merge into this one
+	 * @return this set
+	 * @should add all values of the other set
+	 */
+	public CompressedIntSet or(CompressedIntSet other) {
+		if (other == null || other.isEmpty()) {
+			return this;
+		}
+		char[] newKeys = new char[containerCount + other.containerCount];
+		Container[] newContainers = new Container[containerCount + other.containerCount];
+		int n = 0, i = 0, j = 0;
+		while (i < containerCount || j < other.containerCount) {
+			if (j >= other.containerCount || (i < containerCount && keys[i] < other.keys[j])) {
+				newKeys[n] = keys[i];
+				newContainers[n++] = containers[i++];
+			} else if (i >= containerCount || other.keys[j] < keys[i]) {
+				newKeys[n] = other.keys[j];
+				newContainers[n++] = other.containers[j++].copy();
+			} else {
+				newKeys[n] = keys[i];
+				newContainers[n++] = containers[i++].or(other.containers[j++]);
+			}
+		}
+		replaceContainers(newKeys, newContainers, n);
+		return this;
+	}
+	
+	/**
+	 * In place intersection: removes every value that is not also in <code>other</code>
+	 *
+	 * @param other the set to intersect with, null is treated as an empty set
+	 * @return this set
+	 * @should retain only values present in both sets
+	 */
+	public CompressedIntSet and(CompressedIntSet other) {
+		if (other == null || other.isEmpty()) {
+			clear();
+			return this;
+		}
+		char[] newKeys = new char[Math.min(containerCount, other.containerCount)];
+		Container[] newContainers = new Container[newKeys.length];
+		int n = 0, i = 0, j = 0;
+		while (i < containerCount && j < other.containerCount) {
+			if (keys[i] < other.keys[j]) {
+				i++;
+			} else if (other.keys[j] < keys[i]) {
+				j++;
+			} else {
+				Container c = containers[i++].and(other.containers[j++]);
+				if (c.cardinality() > 0) {
+					newKeys[n] = keys[i - 1];
+					newContainers[n++] = c;
+				}
+			}
+		}
+		replaceContainers(newKeys, newContainers, n);
+		return this;
+	}
+	
+	/**
+	 * In place difference: removes every value that is in <code>other</code>
+	 *
+	 * @param other the set of values to remove
+	 * @return this set
+	 * @should remove all values of the other set
+	 */
+	public CompressedIntSet andNot(CompressedIntSet other) {
+		if (other == null || other.isEmpty()) {
+			return this;
+		}
+		char[] newKeys = new char[containerCount];
+		Container[] newContainers = new Container[containerCount];
+		int n = 0, j = 0;
+		for (int i = 0; i < containerCount; i++) {
+			while (j < other.containerCount && other.keys[j] < keys[i]) {
+				j++;
+			}
+			Container c = containers[i];
+			if (j < other.containerCount && other.keys[j] == keys[i]) {
+				c = c.andNot(other.containers[j]);
+			}
+			if (c.cardinality() > 0) {
+				newKeys[n] = keys[i];
+				newContainers[n++] = c;
+			}
+		}
+		replaceContainers(newKeys, newContainers, n);
+		return this;
+	}
+	
+	/**
+	 * @return a primitive iterator over the values of this set in ascending order
+	 * @should iterate in ascending order including negative values
+	 */
+	public IntIterator intIterator() {
+		return new SetIntIterator();
+	}
+	
+	/**
+	 * @see java.lang.Iterable#iterator()
+	 */
+	public Iterator<Integer> iterator() {
+		return asSet().iterator();
+	}
+	
+	/**
+	 * @return the values of this set in ascending order
+	 */
+	public int[] toArray() {
+		int[] ret = new int[size];
+		int n = 0;
+		for (IntIterator it = intIterator(); it.hasNext();) {
+			ret[n++] = it.next();
+		}
+		return ret;
+	}
+	
+	/**
+	 * Returns a live, boxed {@link Set} view of this set. Changes made through the view are written
+	 * to this set and vice versa, including removals through the view's {@link Iterator#remove()}.
+	 *
+	 * @return a Set view of this set
+	 * @should write changes through to the backing set
+	 * @should remove values through the iterator
+	 * @should retain the values of any collection
+	 */
+	public Set<Integer> asSet() {
+		return new IntegerSetView(this);
+	}
+	
+	/**
+	 * Counts modifications, so that callers holding derived state can tell whether it is stale
+	 *
+	 * @return a number that changes every time this set is modified
+	 */
+	public int getModificationCount() {
+		return modCount;
+	}
+	
+	/**
+	 * Writes the compact binary form of this set
+	 *
+	 * @param out where to write
+	 * @throws IOException
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(SERIAL_FORMAT_VERSION);
+		out.writeInt(containerCount);
+		for (int i = 0; i < containerCount; i++) {
+			out.writeChar(keys[i]);
+			containers[i].writeTo(out);
+		}
+	}
+	
+	/**
+	 * Reads a set previously written with {@link #writeTo(DataOutput)}
+	 *
+	 * @param in where to read from
+	 * @return the set
+	 * @throws IOException
+	 */
+	public static CompressedIntSet readFrom(DataInput in) throws IOException {
+		CompressedIntSet ret = new CompressedIntSet();
+		ret.readContainers(in);
+		return ret;
+	}
+	
+	/**
+	 * @return the compact binary form of this set
+	 * @should round trip through fromByteArray
+	 */
+	public byte[] toByteArray() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			writeTo(new DataOutputStream(bytes));
+		}
+		catch (IOException e) {
+			throw new APIException("Unable to serialize set", e);
+		}
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * @param bytes the output of {@link #toByteArray()}
+	 * @return the set
+	 */
+	public static CompressedIntSet fromByteArray(byte[] bytes) {
+		try {
+			return readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+		}
+		catch (IOException e) {
+			throw new APIException("Unable to deserialize set", e);
+		}
+	}
+	
+	/**
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CompressedIntSet)) {
+			return false;
+		}
+		CompressedIntSet other = (CompressedIntSet) obj;
+		if (size != other.size || containerCount != other.containerCount) {
+			return false;
+		}
+		for (int i = 0; i < containerCount; i++) {
+			if (keys[i] != other.keys[i] || !containers[i].equals(other.containers[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Same as the hashCode of a {@link Set} of the same Integers
+	 *
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		int hash = 0;
+		for (IntIterator it = intIterator(); it.hasNext();) {
+			hash += it.next();
+		}
+		return hash;
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return asSet().toString();
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		writeTo(out);
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		readContainers(in);
+	}
+	
+	private void readContainers(DataInput in) throws IOException {
+		int version = in.readInt();
+		if (version != SERIAL_FORMAT_VERSION) {
+			throw new IOException("Unsupported serialized set version: " + version);
+		}
+		int count = in.readInt();
+		keys = new char[count];
+		containers = new Container[count];
+		containerCount = count;
+		size = 0;
+		for (int i = 0; i < count; i++) {
+			keys[i] = in.readChar();
+			byte type = in.readByte();
+			if (type == TYPE_ARRAY) {
+				containers[i] = ArrayContainer.readFrom(in);
+			} else if (type == TYPE_BITMAP) {
+				containers[i] = BitmapContainer.readFrom(in);
+			} else {
+				throw new IOException("Unknown container type: " + type);
+			}
+			size += containers[i].cardinality();
+		}
+	}
+	
+	/**
+	 * The sign bit is flipped so that unsigned ordering of keys gives signed ordering of values
+	 */
+	private static char highBits(int value) {
+		return (char) ((value ^ Integer.MIN_VALUE) >>> 16);
+	}
+	
+	private static char lowBits(int value) {
+		return (char) (value & 0xFFFF);
+	}
+	
+	private static int toValue(char key, char low) {
+		return ((key << 16) | low) ^ Integer.MIN_VALUE;
+	}
+	
+	private int indexOfKey(char key) {
+		int low = 0;
+		int high = containerCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			char midKey = keys[mid];
+			if (midKey < key) {
+				low = mid + 1;
+			} else if (midKey > key) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+	
+	private void insertContainer(int index, char key, Container container) {
+		if (containerCount == keys.length) {
+			int newLength = Math.max(4, containerCount * 2);
+			keys = Arrays.copyOf(keys, newLength);
+			containers = Arrays.copyOf(containers, newLength);
+		}
+		System.arraycopy(keys, index, keys, index + 1, containerCount - index);
+		System.arraycopy(containers, index, containers, index + 1, containerCount - index);
+		keys[index] = key;
+		containers[index] = container;
+		containerCount++;
+	}
+	
+	private void removeContainer(int index) {
+		System.arraycopy(keys, index + 1, keys, index, containerCount - index - 1);
+		System.arraycopy(containers, index + 1, containers, index, containerCount - index - 1);
+		containerCount--;
+		containers[containerCount] = null;
+	}
+	
+	private void replaceContainers(char[] newKeys, Container[] newContainers, int count) {
+		keys = newKeys;
+		containers = newContainers;
+		containerCount = count;
+		int newSize = 0;
+		for (int i = 0; i < count; i++) {
+			newSize += containers[i].cardinality();
+		}
+		size = newSize;
+		modCount++;
+	}
+	
+	/**
+	 * Iterates container by container
+	 */
+	private class SetIntIterator implements IntIterator {
+		
+		private int expectedModCount = modCount;
+		
+		private int containerIndex = 0;
+		
+		private char currentKey;
+		
+		private ContainerIterator current;
+		
+		// true once current iterates over a copy of its container, which remove() can't invalidate
+		private boolean currentIsCopy;
+		
+		private int last;
+		
+		private boolean canRemove;
+		
+		public boolean hasNext() {
+			if (expectedModCount != modCount) {
+				throw new ConcurrentModificationException();
+			}
+			while (current == null || !current.hasNext()) {
+				if (containerIndex >= containerCount) {
+					return false;
+				}
+				currentKey = keys[containerIndex];
+				current = containers[containerIndex++].iterator();
+				currentIsCopy = false;
+			}
+			return true;
+		}
+		
+		public int next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			last = toValue(currentKey, current.next());
+			canRemove = true;
+			return last;
+		}
+		
+		/**
+		 * Removes the value last returned by {@link #next()} from the set
+		 */
+		public void remove() {
+			if (!canRemove) {
+				throw new IllegalStateException();
+			}
+			if (expectedModCount != modCount) {
+				throw new ConcurrentModificationException();
+			}
+			canRemove = false;
+			CompressedIntSet.this.remove(last);
+			expectedModCount = modCount;
+			int i = indexOfKey(currentKey);
+			if (i < 0) {
+				// the container became empty and is gone, so nothing is left to iterate in it
+				containerIndex = -(i + 1);
+				current = null;
+			} else {
+				containerIndex = i + 1;
+				if (!currentIsCopy) {
+					current = copyFrom(containers[i], lowBits(last));
+					currentIsCopy = true;
+				}
+			}
+		}
+		
+		private ContainerIterator copyFrom(Container container, char after) {
+			final char[] rest = new char[container.cardinality()];
+			int n = 0;
+			for (ContainerIterator it = container.iterator(); it.hasNext();) {
+				char low = it.next();
+				if (low > after) {
+					rest[n++] = low;
+				}
+			}
+			final int count = n;
+			return new ContainerIterator() {
+				
+				private int j = 0;
+				
+				public boolean hasNext() {
+					return j < count;
+				}
+				
+				public char next() {
+					return rest[j++];
+				}
+			};
+		}
+	}
+	
+	/**
+	 * Boxed view used by {@link CompressedIntSet#asSet()}
+	 */
+	private static class IntegerSetView extends AbstractSet<Integer> implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final CompressedIntSet set;
+		
+		public IntegerSetView(CompressedIntSet set) {
+			this.set = set;
+		}
+		
+		public CompressedIntSet getBackingSet() {
+			return set;
+		}
+		
+		@Override
+		public int size() {
+			return set.size();
+		}
+		
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof Integer && set.contains((Integer) o);
+		}
+		
+		@Override
+		public boolean add(Integer value) {
+			if (value == null) {
+				throw new NullPointerException("Null values are not supported");
+			}
+			return set.add(value);
+		}
+		
+		@Override
+		public boolean remove(Object o) {
+			return o instanceof Integer && set.remove((Integer) o);
+		}
+		
+		@Override
+		public boolean addAll(Collection<? extends Integer> c) {
+			if (c instanceof IntegerSetView) {
+				int before = set.size();
+				set.or(((IntegerSetView) c).getBackingSet());
+				return set.size() != before;
+			}
+			return super.addAll(c);
+		}
+		
+		@Override
+		public boolean retainAll(Collection<?> c) {
+			if (c instanceof IntegerSetView) {
+				int before = set.size();
+				set.and(((IntegerSetView) c).getBackingSet());
+				return set.size() != before;
+			}
+			CompressedIntSet retained = new CompressedIntSet();
+			for (Object o : c) {
+				if (o instanceof Integer) {
+					retained.add((Integer) o);
+				}
+			}
+			int before = set.size();
+			set.and(retained);
+			return set.size() != before;
+		}
+		
+		@Override
+		public boolean removeAll(Collection<?> c) {
+			if (c instanceof IntegerSetView) {
+				int before = set.size();
+				set.andNot(((IntegerSetView) c).getBackingSet());
+				return set.size() != before;
+			}
+			boolean changed = false;
+			for (Object o : c) {
+				changed |= remove(o);
+			}
+			return changed;
+		}
+		
+		@Override
+		public void clear() {
+			set.clear();
+		}
+		
+		@Override
+		public Iterator<Integer> iterator() {
+			return new Iterator<Integer>() {
+				
+				private final SetIntIterator delegate = set.new SetIntIterator();
+				
+				public boolean hasNext() {
+					return delegate.hasNext();
+				}
+				
+				public Integer next() {
+					return delegate.next();
+				}
+				
+				public void remove() {
+					delegate.remove();
+				}
+			};
+		}
+	}
+	
+	private interface ContainerIterator {
+		
+		public boolean hasNext();
+		
+		public char next();
+	}
+	
+	/**
+	 * Holds the low 16 bits of all values that share the same high 16 bits
+	 */
+	private abstract static class Container {
+		
+		abstract int cardinality();
+		
+		abstract boolean contains(char low);
+		
+		/**
+		 * @return this container or its replacement if the representation changed
+		 */
+		abstract Container add(char low);
+		
+		abstract Container remove(char low);
+		
+		abstract Container or(Container other);
+		
+		abstract Container and(Container other);
+		
+		abstract Container andNot(Container other);
+		
+		abstract Container copy();
+		
+		abstract ContainerIterator iterator();
+		
+		abstract void writeTo(DataOutput out) throws IOException;
+		
+		BitmapContainer toBitmap() {
+			BitmapContainer ret = new BitmapContainer();
+			for (ContainerIterator it = iterator(); it.hasNext();) {
+				ret.set(it.next());
+			}
+			return ret;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Container) || ((Container) obj).cardinality() != cardinality()) {
+				return false;
+			}
+			ContainerIterator mine = iterator();
+			ContainerIterator theirs = ((Container) obj).iterator();
+			while (mine.hasNext()) {
+				if (mine.next() != theirs.next()) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		@Override
+		public int hashCode() {
+			return cardinality();
+		}
+	}
+	
+	/**
+	 * Sorted array of low bits, used for sparse chunks
+	 */
+	private static class ArrayContainer extends Container {
+		
+		private char[] values;
+		
+		private int cardinality;
+		
+		ArrayContainer() {
+			this(new char[4], 0);
+		}
+		
+		ArrayContainer(char[] values, int cardinality) {
+			this.values = values;
+			this.cardinality = cardinality;
+		}
+		
+		@Override
+		int cardinality() {
+			return cardinality;
+		}
+		
+		@Override
+		boolean contains(char low) {
+			return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+		}
+		
+		@Override
+		Container add(char low) {
+			int i = Arrays.binarySearch(values, 0, cardinality, low);
+			if (i >= 0) {
+				return this;
+			}
+			if (cardinality >= ARRAY_CONTAINER_MAX_SIZE) {
+				BitmapContainer bitmap = toBitmap();
+				bitmap.set(low);
+				return bitmap;
+			}
+			i = -i - 1;
+			if (cardinality == values.length) {
+				values = Arrays.copyOf(values, Math.min(ARRAY_CONTAINER_MAX_SIZE, values.length * 2));
+			}
+			System.arraycopy(values, i, values, i + 1, cardinality - i);
+			values[i] = low;
+			cardinality++;
+			return this;
+		}
+		
+		@Override
+		Container remove(char low) {
+			int i = Arrays.binarySearch(values, 0, cardinality, low);
+			if (i >= 0) {
+				System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+				cardinality--;
+			}
+			return this;
+		}
+		
+		@Override
+		Container or(Container other) {
+			if (other instanceof BitmapContainer) {
+				return other.or(this);
+			}
+			ArrayContainer o = (ArrayContainer) other;
+			char[] merged = new char[cardinality + o.cardinality];
+			int n = 0, i = 0, j = 0;
+			while (i < cardinality && j < o.cardinality) {
+				if (values[i] < o.values[j]) {
+					merged[n++] = values[i++];
+				} else if (o.values[j] < values[i]) {
+					merged[n++] = o.values[j++];
+				} else {
+					merged[n++] = values[i++];
+					j++;
+				}
+			}
+			while (i < cardinality) {
+				merged[n++] = values[i++];
+			}
+			while (j < o.cardinality) {
+				merged[n++] = o.values[j++];
+			}
+			ArrayContainer ret = new ArrayContainer(merged, n);
+			return n > ARRAY_CONTAINER_MAX_SIZE ? ret.toBitmap() : ret;
+		}
+		
+		@Override
+		Container and(Container other) {
+			char[] kept = new char[cardinality];
+			int n = 0;
+			for (int i = 0; i < cardinality; i++) {
+				if (other.contains(values[i])) {
+					kept[n++] = values[i];
+				}
+			}
+			return new ArrayContainer(kept, n);
+		}
+		
+		@Override
+		Container andNot(Container other) {
+			char[] kept = new char[cardinality];
+			int n = 0;
+			for (int i = 0; i < cardinality; i++) {
+				if (!other.contains(values[i])) {
+					kept[n++] = values[i];
+				}
+			}
+			return new ArrayContainer(kept, n);
+		}
+		
+		@Override
+		Container copy() {
+			return new ArrayContainer(Arrays.copyOf(values, Math.max(cardinality, 1)), cardinality);
+		}
+		
+		@Override
+		ContainerIterator iterator() {
+			return new ContainerIterator() {
+				
+				private int i = 0;
+				
+				public boolean hasNext() {
+					return i < cardinality;
+				}
+				
+				public char next() {
+					return values[i++];
+				}
+			};
+		}
+		
+		@Override
+		void writeTo(DataOutput out) throws IOException {
+			out.writeByte(TYPE_ARRAY);
+			out.writeInt(cardinality);
+			for (int i = 0; i < cardinality; i++) {
+				out.writeChar(values[i]);
+			}
+		}
+		
+		static ArrayContainer readFrom(DataInput in) throws IOException {
+			int cardinality = in.readInt();
+			char[] values = new char[Math.max(cardinality, 1)];
+			for (int i = 0; i < cardinality; i++) {
+				values[i] = in.readChar();
+			}
+			return new ArrayContainer(values, cardinality);
+		}
+	}
+	
+	/**
+	 * Plain 65536 bit bitmap, used for dense chunks
+	 */
+	private static class BitmapContainer extends Container {
+		
+		private final long[] words;
+		
+		private int cardinality;
+		
+		BitmapContainer() {
+			this(new long[BITMAP_WORDS], 0);
+		}
+		
+		BitmapContainer(long[] words, int cardinality) {
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+		
+		void set(char low) {
+			long before = words[low >>> 6];
+			words[low >>> 6] = before | (1L << low);
+			if (before != words[low >>> 6]) {
+				cardinality++;
+			}
+		}
+		
+		@Override
+		int cardinality() {
+			return cardinality;
+		}
+		
+		@Override
+		boolean contains(char low) {
+			return (words[low >>> 6] & (1L << low)) != 0;
+		}
+		
+		@Override
+		Container add(char low) {
+			set(low);
+			return this;
+		}
+		
+		@Override
+		Container remove(char low) {
+			long before = words[low >>> 6];
+			words[low >>> 6] = before & ~(1L << low);
+			if (before != words[low >>> 6]) {
+				cardinality--;
+				if (cardinality <= ARRAY_CONTAINER_MAX_SIZE) {
+					return toArrayContainer();
+				}
+			}
+			return this;
+		}
+		
+		@Override
+		Container or(Container other) {
+			BitmapContainer o = other instanceof BitmapContainer ? (BitmapContainer) other : other.toBitmap();
+			long[] result = new long[BITMAP_WORDS];
+			int count = 0;
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				result[i] = words[i] | o.words[i];
+				count += Long.bitCount(result[i]);
+			}
+			return new BitmapContainer(result, count);
+		}
+		
+		@Override
+		Container and(Container other) {
+			if (other instanceof ArrayContainer) {
+				return other.and(this);
+			}
+			BitmapContainer o = (BitmapContainer) other;
+			long[] result = new long[BITMAP_WORDS];
+			int count = 0;
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				result[i] = words[i] & o.words[i];
+				count += Long.bitCount(result[i]);
+			}
+			return shrinkIfSparse(new BitmapContainer(result, count));
+		}
+		
+		@Override
+		Container andNot(Container other) {
+			BitmapContainer o = other instanceof BitmapContainer ? (BitmapContainer) other : other.toBitmap();
+			long[] result = new long[BITMAP_WORDS];
+			int count = 0;
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				result[i] = words[i] & ~o.words[i];
+				count += Long.bitCount(result[i]);
+			}
+			return shrinkIfSparse(new BitmapContainer(result, count));
+		}
+		
+		@Override
+		Container copy() {
+			return new BitmapContainer(Arrays.copyOf(words, BITMAP_WORDS), cardinality);
+		}
+		
+		@Override
+		BitmapContainer toBitmap() {
+			return this;
+		}
+		
+		@Override
+		ContainerIterator iterator() {
+			return new ContainerIterator() {
+				
+				private int wordIndex = 0;
+				
+				private long word = words[0];
+				
+				public boolean hasNext() {
+					while (word == 0) {
+						if (++wordIndex >= BITMAP_WORDS) {
+							return false;
+						}
+						word = words[wordIndex];
+					}
+					return true;
+				}
+				
+				public char next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					int bit = Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+					return (char) (wordIndex * 64 + bit);
+				}
+			};
+		}
+		
+		@Override
+		void writeTo(DataOutput out) throws IOException {
+			out.writeByte(TYPE_BITMAP);
+			out.writeInt(cardinality);
+			for (long word : words) {
+				out.writeLong(word);
+			}
+		}
+		
+		static BitmapContainer readFrom(DataInput in) throws IOException {
+			int cardinality = in.readInt();
+			long[] words = new long[BITMAP_WORDS];
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				words[i] = in.readLong();
+			}
+			return new BitmapContainer(words, cardinality);
+		}
+		
+		private static Container shrinkIfSparse(BitmapContainer bitmap) {
+			return bitmap.cardinality <= ARRAY_CONTAINER_MAX_SIZE ? bitmap.toArrayContainer() : bitmap;
+		}
+		
+		private ArrayContainer toArrayContainer() {
+			char[] values = new char[Math.max(cardinality, 1)];
+			int n = 0;
+			for (ContainerIterator it = iterator(); it.hasNext();) {
+				values[n++] = it.next();
+			}
+			return new ArrayContainer(values, n);
+		}
+	}
+}
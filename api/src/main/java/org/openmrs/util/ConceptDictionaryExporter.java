@@ -0,0 +1,170 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Concept;
+import org.openmrs.ConceptAnswer;
+import org.openmrs.ConceptDescription;
+import org.openmrs.ConceptName;
+import org.openmrs.ConceptSet;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.context.Context;
+
+/**
+ * Writes all non retired concepts as comma delimited rows.<br/>
+ * <br/>
+ * The dictionary is read in pages ordered by concept id with
+ * {@link ConceptService#getNextConcepts(Integer, boolean, int)}, each row is written straight to the
+ * given writer and the session is cleared after every page, so the memory used does not grow with
+ * the size of the dictionary.
+ *
+ * @since 1.11
+ */
+public class ConceptDictionaryExporter {
+	
+	private static final Log log = LogFactory.getLog(ConceptDictionaryExporter.class);
+	
+	/**
+	 * The header row of the export
+	 */
+	public static final String HEADER = "Concept Id,Name,Description,Synonyms,Answers,Set Members,Class,Datatype,"
+	        + "Changed By,Creator";
+	
+	/**
+	 * The default number of concepts read per page
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 500;
+	
+	private final Locale locale;
+	
+	private int pageSize = DEFAULT_PAGE_SIZE;
+	
+	/**
+	 * @param locale the locale of the exported names and descriptions
+	 */
+	public ConceptDictionaryExporter(Locale locale) {
+		this.locale = locale;
+	}
+	
+	/**
+	 * @param pageSize the number of concepts read per page
+	 */
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+	
+	/**
+	 * Writes the header and one row per non retired concept to the given writer. The writer is
+	 * flushed after every page but not closed.
+	 *
+	 * @param writer the writer to write to
+	 * @return the number of concepts written
+	 * @throws IOException
+	 * @should write a row for each non retired concept
+	 * @should quote the values containing quotes
+	 */
+	public int export(Writer writer) throws IOException {
+		ConceptService cs = Context.getConceptService();
+		long start = System.currentTimeMillis();
+		int count = 0;
+		
+		writer.write(HEADER);
+		writer.write('\n');
+		
+		Integer lastConceptId = null;
+		List<Concept> page = cs.getNextConcepts(lastConceptId, false, pageSize);
+		while (!page.isEmpty()) {
+			StringBuilder rows = new StringBuilder();
+			for (Concept concept : page) {
+				appendRow(rows, concept);
+			}
+			writer.write(rows.toString());
+			writer.flush();
+			
+			count += page.size();
+			lastConceptId = page.get(page.size() - 1).getConceptId();
+			
+			// keep memory consumption low
+			Context.clearSession();
+			page = cs.getNextConcepts(lastConceptId, false, pageSize);
+		}
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Exported " + count + " concepts in " + (System.currentTimeMillis() - start) + " ms");
+		}
+		return count;
+	}
+	
+	/**
+	 * Appends the row of the given concept, including the trailing line break
+	 *
+	 * @param row the buffer to append to
+	 * @param concept the concept
+	 */
+	void appendRow(StringBuilder row, Concept concept) {
+		row.append(concept.getConceptId()).append(',');
+		
+		ConceptName name = concept.getName(locale);
+		appendValue(row, name == null ? null : name.getName()).append(',');
+		
+		ConceptDescription description = concept.getDescription(locale);
+		appendValue(row, description == null ? null : description.getDescription()).append(',');
+		
+		StringBuilder tmp = new StringBuilder();
+		for (ConceptName synonym : concept.getNames()) {
+			tmp.append(synonym).append('\n');
+		}
+		appendValue(row, tmp.toString().trim()).append(',');
+		
+		tmp = new StringBuilder();
+		for (ConceptAnswer answer : concept.getAnswers(false)) {
+			if (answer.getAnswerConcept() != null) {
+				tmp.append(answer.getAnswerConcept().getName()).append('\n');
+			} else if (answer.getAnswerDrug() != null) {
+				tmp.append(answer.getAnswerDrug().getFullName(locale)).append('\n');
+			}
+		}
+		appendValue(row, tmp.toString().trim()).append(',');
+		
+		tmp = new StringBuilder();
+		for (ConceptSet set : concept.getConceptSets()) {
+			if (set.getConcept() != null) {
+				tmp.append(set.getConcept().getName()).append('\n');
+			}
+		}
+		appendValue(row, tmp.toString().trim()).append(',');
+		
+		appendValue(row, concept.getConceptClass() == null ? null : concept.getConceptClass().getName()).append(',');
+		appendValue(row, concept.getDatatype() == null ? null : concept.getDatatype().getName()).append(',');
+		appendValue(row, concept.getChangedBy() == null ? null : String.valueOf(concept.getChangedBy().getPersonName()))
+		        .append(',');
+		appendValue(row, concept.getCreator() == null ? null : String.valueOf(concept.getCreator().getPersonName()))
+		        .append('\n');
+	}
+	
+	private static StringBuilder appendValue(StringBuilder row, String value) {
+		row.append('"');
+		if (value != null) {
+			row.append(value.replace("\"", "\"\""));
+		}
+		return row.append('"');
+	}
+}
@@ -17,23 +17,59 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 
 /**
  * Utility class that provides useful methods for working with classes that are annotated with the
- * {@link Handler} annotation
+ * {@link Handler} annotation.<br/>
+ * <br/>
+ * The handlers found for a handler type and supported type are cached, sorted by order, since
+ * they are looked up for every object that is saved, voided or validated. The cache is cleared
+ * whenever the application context is refreshed (this class is registered as a listener in
+ * applicationContext-service.xml) and when a module is stopped.
  * 
  * @since 1.5
  */
-public class HandlerUtil {
+public class HandlerUtil implements ApplicationListener<ContextRefreshedEvent> {
 	
 	private static Log log = LogFactory.getLog(HandlerUtil.class);
 	
+	/**
+	 * The sorted handlers by handler type and supported type, the handlers of all supported types
+	 * are kept under {@link AnyType}
+	 */
+	private static volatile ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, List<?>>> cachedHandlers = new ConcurrentHashMap<Class<?>, ConcurrentMap<Class<?>, List<?>>>();
+	
+	/**
+	 * Clears the cached handlers when the application context has been refreshed, because the
+	 * registered components may have changed
+	 * 
+	 * @see org.springframework.context.ApplicationListener#onApplicationEvent(org.springframework.context.ApplicationEvent)
+	 * @since 1.11
+	 */
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		clearCachedHandlers();
+	}
+	
+	/**
+	 * Clears the cached handlers, so that the next lookups go through the registered components
+	 * again
+	 * 
+	 * @since 1.11
+	 */
+	public static void clearCachedHandlers() {
+		cachedHandlers = new ConcurrentHashMap<Class<?>, ConcurrentMap<Class<?>, List<?>>>();
+	}
+	
 	/**
 	 * Retrieves a List of all registered components from the Context that are of the passed
 	 * handlerType and one or more of the following is true:
@@ -50,8 +86,37 @@ public class HandlerUtil {
 	 * @should return a list of all classes that can handle the passed type
 	 * @should return classes registered in a module
 	 * @should return an empty list if no classes can handle the passed type
+	 * @should return handlers that the caller can modify
+	 * @should find the handlers again after the cache is cleared
 	 */
+	@SuppressWarnings("unchecked")
 	public static <H, T> List<H> getHandlersForType(Class<H> handlerType, Class<T> type) {
+		// the map is read once so that handlers found before the cache is cleared go to the old map
+		ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, List<?>>> cache = cachedHandlers;
+		ConcurrentMap<Class<?>, List<?>> handlersByType = cache.get(handlerType);
+		if (handlersByType == null) {
+			handlersByType = new ConcurrentHashMap<Class<?>, List<?>>();
+			ConcurrentMap<Class<?>, List<?>> existing = cache.putIfAbsent(handlerType, handlersByType);
+			if (existing != null) {
+				handlersByType = existing;
+			}
+		}
+		
+		Class<?> key = type == null ? AnyType.class : type;
+		List<H> handlers = (List<H>) handlersByType.get(key);
+		if (handlers == null) {
+			handlers = findHandlersForType(handlerType, type);
+			handlersByType.put(key, handlers);
+		}
+		
+		return new ArrayList<H>(handlers);
+	}
+	
+	/**
+	 * Goes through the registered components to find the handlers for
+	 * {@link #getHandlersForType(Class, Class)}
+	 */
+	private static <H, T> List<H> findHandlersForType(Class<H> handlerType, Class<T> type) {
 		
 		List<H> handlers = new ArrayList<H>();
 		
@@ -87,7 +152,7 @@ public class HandlerUtil {
 			}
 		});
 		
-		return handlers;
+		return Collections.unmodifiableList(handlers);
 	}
 	
 	/**
@@ -140,4 +205,10 @@ public class HandlerUtil {
 		}
 		return annotation.order();
 	}
+	
+	/**
+	 * The key of the handlers cached for a null type
+	 */
+	private static final class AnyType {
+	}
 }
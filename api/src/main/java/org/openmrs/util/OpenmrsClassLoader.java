@@ -28,13 +28,20 @@ import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import net.sf.ehcache.CacheManager;
 
@@ -50,7 +57,13 @@ import org.openmrs.scheduler.SchedulerService;
 
 /**
  * This classloader knows about the current ModuleClassLoaders and will attempt to load classes from
- * them if needed
+ * them if needed.<br/>
+ * <br/>
+ * The module classloaders are indexed by the packages they provide, so that a class is only
+ * offered to the modules whose package (or one of whose additional packages) it starts with. The
+ * classes found, and a bounded number of the names that were not found anywhere, are cached. The
+ * index and the caches are cleared by {@link ModuleFactory} whenever a module is started or
+ * stopped, see {@link #clearCachedClasses()}.
  */
 public class OpenmrsClassLoader extends URLClassLoader {
 	
@@ -69,6 +82,15 @@ public class OpenmrsClassLoader extends URLClassLoader {
 	// suffix of the OpenMRS required library cache folder
 	private static final String LIBCACHESUFFIX = ".openmrs-lib-cache";
 	
+	// the maximum number of class names remembered as not found
+	private static final int MISSING_CLASSES_CACHE_SIZE = 5000;
+	
+	// the module classloader index and the class caches, null until the next class is loaded
+	private final AtomicReference<ClassCaches> classCaches = new AtomicReference<ClassCaches>();
+	
+	// incremented every time the class caches are cleared
+	private final AtomicLong classCachesGeneration = new AtomicLong();
+	
 	/**
 	 * Creates the instance for the OpenmrsClassLoader
 	 */
@@ -125,33 +147,27 @@ public class OpenmrsClassLoader extends URLClassLoader {
 	 */
 	@Override
 	public Class<?> loadClass(String name, final boolean resolve) throws ClassNotFoundException {
-		for (ModuleClassLoader classLoader : ModuleFactory.getModuleClassLoaders()) {
-			// this is to prevent unnecessary looping over providedPackages
-			boolean tryToLoad = name.startsWith(classLoader.getModule().getPackageName());
-			
-			// the given class name doesn't match the config.xml package in this module,
-			// check the "providedPackage" list to see if its in a lib
-			if (!tryToLoad) {
-				
-				for (String providedPackage : classLoader.getAdditionalPackages()) {
-					// break out early if we match a package
-					if (name.startsWith(providedPackage)) {
-						tryToLoad = true;
-						break;
-					}
-				}
+		// classes found while the caches are being cleared end up in the discarded caches
+		ClassCaches caches = getClassCaches();
+		Class<?> c = caches.classes.get(name);
+		if (c != null) {
+			return c;
+		}
+		if (caches.isMissing(name)) {
+			throw new ClassNotFoundException(name);
+		}
+		
+		// only the modules whose package or "providedPackage" list matches the class name are tried
+		for (ModuleClassLoader classLoader : caches.moduleClassLoaders.getMatches(name)) {
+			try {
+				//if (classLoader.isLoadingFromParent() == false)
+				c = classLoader.loadClass(name);
+				loadedClasses.add(c);
+				caches.classes.put(name, c);
+				return c;
 			}
-			
-			if (tryToLoad) {
-				try {
-					//if (classLoader.isLoadingFromParent() == false)
-					Class<?> c = classLoader.loadClass(name);
-					loadedClasses.add(c);
-					return c;
-				}
-				catch (ClassNotFoundException e) {
-					//log.debug("Didn't find entry for: " + name);
-				}
+			catch (ClassNotFoundException e) {
+				//log.debug("Didn't find entry for: " + name);
 			}
 		}
 		
@@ -160,8 +176,9 @@ public class OpenmrsClassLoader extends URLClassLoader {
 		ClassNotFoundException ex = null;
 		
 		try {
-			Class<?> c = getParent().loadClass(name);
+			c = getParent().loadClass(name);
 			loadedClasses.add(c);
+			caches.classes.put(name, c);
 			return c;
 		}
 		catch (ClassNotFoundException e) {
@@ -169,16 +186,64 @@ public class OpenmrsClassLoader extends URLClassLoader {
 		}
 		
 		try {
-			Class<?> c = this.findClass(name);
+			c = this.findClass(name);
+			caches.classes.put(name, c);
 			return c;
 		}
 		catch (ClassNotFoundException e) {
 			ex = e;
 		}
 		
+		caches.setMissing(name);
 		throw ex;
 	}
 	
+	/**
+	 * @return the current module classloader index and class caches, built from the module
+	 *         classloaders if they have been cleared
+	 */
+	private ClassCaches getClassCaches() {
+		ClassCaches caches = classCaches.get();
+		if (caches == null) {
+			long generation = classCachesGeneration.get();
+			caches = new ClassCaches(ModuleFactory.getModuleClassLoaders());
+			if (!classCaches.compareAndSet(null, caches)) {
+				// another thread built them first
+				ClassCaches installed = classCaches.get();
+				if (installed != null) {
+					caches = installed;
+				}
+			} else if (classCachesGeneration.get() != generation) {
+				// cleared while they were being built, so they may be missing a module classloader
+				classCaches.compareAndSet(caches, null);
+			}
+		}
+		return caches;
+	}
+	
+	/**
+	 * Drops the class caches, to be built again from the current module classloaders when the next
+	 * class is loaded
+	 */
+	private void discardClassCaches() {
+		classCachesGeneration.incrementAndGet();
+		classCaches.set(null);
+	}
+	
+	/**
+	 * Clears the index of the module classloaders by package, the cached classes and the class
+	 * names remembered as not found. This must be called when a module classloader is added or
+	 * removed.
+	 *
+	 * @since 1.11
+	 */
+	public static void clearCachedClasses() {
+		OpenmrsClassLoader instance = OpenmrsClassLoaderHolder.INSTANCE;
+		if (instance != null) {
+			instance.discardClassCaches();
+		}
+	}
+	
 	/**
 	 * @see java.net.URLClassLoader#findResource(java.lang.String)
 	 */
@@ -557,6 +622,7 @@ public class OpenmrsClassLoader extends URLClassLoader {
 		OpenmrsClassLoader.log = null;
 		
 		getInstance().loadedClasses.clear();
+		getInstance().discardClassCaches();
 	}
 	
 	/**
@@ -870,4 +936,138 @@ public class OpenmrsClassLoader extends URLClassLoader {
 		}
 		
 	}
+	
+	/**
+	 * The module classloaders indexed by package along with the classes found and not found through
+	 * them. An instance is only used until the module classloaders change.
+	 */
+	private static class ClassCaches {
+		
+		private final PackageIndex<ModuleClassLoader> moduleClassLoaders = new PackageIndex<ModuleClassLoader>();
+		
+		private final Map<String, Class<?>> classes = new ConcurrentHashMap<String, Class<?>>();
+		
+		private final Map<String, Boolean> missingClasses = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+				return size() > MISSING_CLASSES_CACHE_SIZE;
+			}
+		};
+		
+		ClassCaches(Collection<ModuleClassLoader> classLoaders) {
+			for (ModuleClassLoader classLoader : new ArrayList<ModuleClassLoader>(classLoaders)) {
+				List<String> packages = new ArrayList<String>();
+				packages.add(classLoader.getModule().getPackageName());
+				packages.addAll(classLoader.getAdditionalPackages());
+				moduleClassLoaders.add(classLoader, packages);
+			}
+		}
+		
+		boolean isMissing(String name) {
+			synchronized (missingClasses) {
+				return missingClasses.containsKey(name);
+			}
+		}
+		
+		void setMissing(String name) {
+			synchronized (missingClasses) {
+				missingClasses.put(name, Boolean.TRUE);
+			}
+		}
+	}
+	
+	/**
+	 * Finds the values whose prefixes a name starts with, like the module classloaders providing
+	 * the package of a class. The prefixes are kept in a trie with a node per character, so the
+	 * lookup only walks the name once however many prefixes there are. Not safe for adding values
+	 * from several threads, but safe for lookups once all have been added.
+	 *
+	 * @param <T> the type of values
+	 * @since 1.11
+	 */
+	static class PackageIndex<T> {
+		
+		private final List<T> values = new ArrayList<T>();
+		
+		private final Node root = new Node();
+		
+		/**
+		 * Adds a value for the given prefixes. Values added earlier come first in the matches.
+		 *
+		 * @param value the value
+		 * @param prefixes the prefixes (package names) of the value
+		 */
+		void add(T value, Collection<String> prefixes) {
+			int ordinal = values.size();
+			values.add(value);
+			for (String prefix : prefixes) {
+				if (prefix == null) {
+					continue;
+				}
+				Node node = root;
+				for (int i = 0; i < prefix.length(); i++) {
+					node = node.getOrAddChild(prefix.charAt(i));
+				}
+				if (node.ordinals == null) {
+					node.ordinals = new BitSet();
+				}
+				node.ordinals.set(ordinal);
+			}
+		}
+		
+		/**
+		 * @param name the name, like a class name
+		 * @return the values of which the name starts with a prefix, in the order they were added
+		 * @should return the values whose prefixes the name starts with in the order they were added
+		 * @should match prefixes that end within a package name
+		 * @should return each value once
+		 */
+		List<T> getMatches(String name) {
+			BitSet matches = null;
+			Node node = root;
+			for (int i = 0; node != null; i++) {
+				if (node.ordinals != null) {
+					if (matches == null) {
+						matches = new BitSet();
+					}
+					matches.or(node.ordinals);
+				}
+				if (i == name.length() || node.children == null) {
+					break;
+				}
+				node = node.children.get(name.charAt(i));
+			}
+			
+			if (matches == null) {
+				return Collections.emptyList();
+			}
+			List<T> result = new ArrayList<T>(matches.cardinality());
+			for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+				result.add(values.get(i));
+			}
+			return result;
+		}
+		
+		private static class Node {
+			
+			private Map<Character, Node> children;
+			
+			private BitSet ordinals;
+			
+			Node getOrAddChild(char c) {
+				if (children == null) {
+					children = new HashMap<Character, Node>(4);
+				}
+				Node child = children.get(c);
+				if (child == null) {
+					child = new Node();
+					children.put(c, child);
+				}
+				return child;
+			}
+		}
+	}
 }
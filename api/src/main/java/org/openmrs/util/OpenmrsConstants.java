@@ -785,6 +785,14 @@ public final class OpenmrsConstants {
 	
 	public static final String GLOBAL_PROPERTY_CONCEPTS_LOCKED = "concepts.locked";
 	
+	/**
+	 * Whether concept word searches are answered from the in memory concept word index instead of
+	 * the concept_word table
+	 * 
+	 * @since 1.11
+	 */
+	public static final String GLOBAL_PROPERTY_CONCEPT_WORD_INDEX_ENABLED = "concept.wordIndexEnabled";
+	
 	public static final String GLOBAL_PROPERTY_PATIENT_LISTING_ATTRIBUTES = "patient.listingAttributeTypes";
 	
 	public static final String GLOBAL_PROPERTY_PATIENT_VIEWING_ATTRIBUTES = "patient.viewingAttributeTypes";
@@ -829,8 +837,56 @@ public final class OpenmrsConstants {
 	
 	public static final int GLOBAL_PROPERTY_PERSON_SEARCH_MAX_RESULTS_DEFAULT_VALUE = 1000;
 	
+	/**
+	 * Cohorts with more members than this are joined through a temporary table instead of an IN list
+	 * when querying patient data for them
+	 * 
+	 * @since 1.11
+	 */
+	public static final String GLOBAL_PROPERTY_COHORT_TEMPORARY_TABLE_THRESHOLD = "cohort.temporaryTableThreshold";
+	
+	public static final int GLOBAL_PROPERTY_COHORT_TEMPORARY_TABLE_THRESHOLD_DEFAULT_VALUE = 1000;
+	
+	/**
+	 * The blocking keys that group the patients whose pairs are compared by the duplicate patient
+	 * detection, see {@link org.openmrs.patient.DuplicatePatientDetector}
+	 * 
+	 * @since 1.11
+	 */
+	public static final String GLOBAL_PROPERTY_DUPLICATE_PATIENT_BLOCKING_KEYS = "patient.duplicateDetection.blockingKeys";
+	
+	public static final String GLOBAL_PROPERTY_DUPLICATE_PATIENT_BLOCKING_KEYS_DEFAULT_VALUE = "birthYear+familyName,identifier";
+	
+	/**
+	 * The score, from 0 to 1, from which the duplicate patient detection keeps a pair of patients as
+	 * a candidate for merging
+	 * 
+	 * @since 1.11
+	 */
+	public static final String GLOBAL_PROPERTY_DUPLICATE_PATIENT_THRESHOLD = "patient.duplicateDetection.threshold";
+	
+	public static final double GLOBAL_PROPERTY_DUPLICATE_PATIENT_THRESHOLD_DEFAULT_VALUE = 0.6;
+	
 	public static final String GLOBAL_PROPERTY_GZIP_ENABLED = "gzip.enabled";
 	
+	/**
+	 * The number of bytes from which the gzip filter compresses responses
+	 * 
+	 * @since 1.11
+	 */
+	public static final String GLOBAL_PROPERTY_GZIP_MINIMUM_SIZE = "gzip.minimumSize";
+	
+	public static final int GLOBAL_PROPERTY_GZIP_MINIMUM_SIZE_DEFAULT_VALUE = 1024;
+	
+	/**
+	 * The content types of the responses that the gzip filter compresses
+	 * 
+	 * @since 1.11
+	 */
+	public static final String GLOBAL_PROPERTY_GZIP_CONTENT_TYPES = "gzip.contentTypes";
+	
+	public static final String GLOBAL_PROPERTY_GZIP_CONTENT_TYPES_DEFAULT_VALUE = "text/*,application/javascript,application/x-javascript,application/json,application/xml,application/xhtml+xml";
+	
 	public static final String GLOBAL_PROPERTY_MEDICAL_RECORD_OBSERVATIONS = "concept.medicalRecordObservations";
 	
 	public static final String GLOBAL_PROPERTY_PROBLEM_LIST = "concept.problemList";
@@ -860,6 +916,24 @@ public final class OpenmrsConstants {
 	
 	public static final String GLOBAL_PROPERTY_COMPLEX_OBS_DIR = "obs.complex_obs_dir";
 	
+	/**
+	 * The sizes, in pixels, of the thumbnails of complex obs images
+	 * 
+	 * @since 1.11
+	 */
+	public static final String GLOBAL_PROPERTY_COMPLEX_OBS_THUMBNAIL_SIZES = "obs.complex_obs_thumbnail_sizes";
+	
+	public static final String GLOBAL_PROPERTY_COMPLEX_OBS_THUMBNAIL_SIZES_DEFAULT_VALUE = "128,512";
+	
+	/**
+	 * The number of modules started at the same time at startup, 1 starts them one after the other
+	 * 
+	 * @since 1.11
+	 */
+	public static final String GLOBAL_PROPERTY_MODULE_STARTUP_THREADS = "module.startup_threads";
+	
+	public static final int GLOBAL_PROPERTY_MODULE_STARTUP_THREADS_DEFAULT_VALUE = 1;
+	
 	public static final String GLOBAL_PROPERTY_MIN_SEARCH_CHARACTERS = "minSearchCharacters";
 	
 	public static final int GLOBAL_PROPERTY_DEFAULT_MIN_SEARCH_CHARACTERS = 3;
@@ -884,6 +958,26 @@ public final class OpenmrsConstants {
 	
 	public static final String GLOBAL_PROPERTY_IGNORE_MISSING_NONLOCAL_PATIENTS = "hl7_processor.ignore_missing_patient_non_local";
 	
+	/**
+	 * Global property name for the number of threads that process the hl7 inbound queue
+	 * concurrently
+	 * 
+	 * @since 1.11
+	 */
+	public static final String GLOBAL_PROPERTY_HL7_PROCESSOR_WORKER_THREADS = "hl7_processor.worker_threads";
+	
+	public static final int GLOBAL_PROPERTY_HL7_PROCESSOR_WORKER_THREADS_DEFAULT_VALUE = 1;
+	
+	/**
+	 * Global property name for the number of minutes after which hl7 inbound queue items claimed by
+	 * a processor, but not processed, are put back in the pending state
+	 * 
+	 * @since 1.11
+	 */
+	public static final String GLOBAL_PROPERTY_HL7_PROCESSOR_CLAIM_TIMEOUT = "hl7_processor.claim_timeout";
+	
+	public static final int GLOBAL_PROPERTY_HL7_PROCESSOR_CLAIM_TIMEOUT_DEFAULT_VALUE = 60;
+	
 	public static final String GLOBAL_PROPERTY_TRUE_CONCEPT = "concept.true";
 	
 	public static final String GLOBAL_PROPERTY_FALSE_CONCEPT = "concept.false";
@@ -1273,6 +1367,10 @@ public final class OpenmrsConstants {
 		props.add(new GlobalProperty(GLOBAL_PROPERTY_CONCEPTS_LOCKED, "false", "if true, do not allow editing concepts",
 		        BooleanDatatype.class, null));
 		
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_CONCEPT_WORD_INDEX_ENABLED, "true",
+		        "if true, concept searches are answered from an in memory index of the concept words instead of querying the concept_word table",
+		        BooleanDatatype.class, null));
+		
 		props.add(new GlobalProperty(GLOBAL_PROPERTY_PATIENT_LISTING_ATTRIBUTES, "",
 		        "A comma delimited list of PersonAttributeType names that should be displayed for patients in _lists_"));
 		props
@@ -1325,12 +1423,32 @@ public final class OpenmrsConstants {
 		        .valueOf(GLOBAL_PROPERTY_PERSON_SEARCH_MAX_RESULTS_DEFAULT_VALUE),
 		        "The maximum number of results returned by patient searches"));
 		
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_COHORT_TEMPORARY_TABLE_THRESHOLD, String
+		        .valueOf(GLOBAL_PROPERTY_COHORT_TEMPORARY_TABLE_THRESHOLD_DEFAULT_VALUE),
+		        "Cohorts with more members than this are loaded into a temporary table and joined against, instead of being passed as an IN list, when fetching patient data for them (e.g. in data exports). Zero or a negative number always uses IN lists"));
+		
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_DUPLICATE_PATIENT_BLOCKING_KEYS,
+		        GLOBAL_PROPERTY_DUPLICATE_PATIENT_BLOCKING_KEYS_DEFAULT_VALUE,
+		        "Comma separated list of the blocking keys of the duplicate patient detection. Only patients with the same value for at least one of the keys are compared. A key is one or more of birthYear, gender, givenName, familyName (which compare by sound) and identifier, joined by +"));
+		
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_DUPLICATE_PATIENT_THRESHOLD, String
+		        .valueOf(GLOBAL_PROPERTY_DUPLICATE_PATIENT_THRESHOLD_DEFAULT_VALUE),
+		        "The score from 0 to 1 (e.g. 0.6 for the same name and birthdate, or the same identifier and family name) from which the duplicate patient detection keeps a pair of patients as a candidate for merging"));
+		
 		props
 		        .add(new GlobalProperty(
 		                GLOBAL_PROPERTY_GZIP_ENABLED,
 		                "false",
 		                "Set to 'true' to turn on OpenMRS's gzip filter, and have the webapp compress data before sending it to any client that supports it. Generally use this if you are running Tomcat standalone. If you are running Tomcat behind Apache, then you'd want to use Apache to do gzip compression.",
 		                BooleanDatatype.class, null));
+		
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_GZIP_MINIMUM_SIZE, String
+		        .valueOf(GLOBAL_PROPERTY_GZIP_MINIMUM_SIZE_DEFAULT_VALUE),
+		        "Responses smaller than this number of bytes are not compressed by the gzip filter, because it is not worth it. Requires a restart to take effect"));
+		
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_GZIP_CONTENT_TYPES, GLOBAL_PROPERTY_GZIP_CONTENT_TYPES_DEFAULT_VALUE,
+		        "Comma separated list of the content types that are compressed by the gzip filter, e.g. text/html or text/* for all text types. Requires a restart to take effect"));
+		
 		props
 		        .add(new GlobalProperty(GLOBAL_PROPERTY_REPORT_XML_MACROS, "",
 		                "Macros that will be applied to Report Schema XMLs when they are interpreted. This should be java.util.properties format."));
@@ -1374,6 +1492,14 @@ public final class OpenmrsConstants {
 		props.add(new GlobalProperty(GLOBAL_PROPERTY_COMPLEX_OBS_DIR, "complex_obs",
 		        "Default directory for storing complex obs."));
 		
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_COMPLEX_OBS_THUMBNAIL_SIZES,
+		        GLOBAL_PROPERTY_COMPLEX_OBS_THUMBNAIL_SIZES_DEFAULT_VALUE,
+		        "Comma separated list of the sizes in pixels of the thumbnails of complex obs images. A thumbnail is made for the smallest size that is at least the one requested, and kept in a directory next to the complex obs directory"));
+		
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_MODULE_STARTUP_THREADS, String
+		        .valueOf(GLOBAL_PROPERTY_MODULE_STARTUP_THREADS_DEFAULT_VALUE),
+		        "The number of modules that are started at the same time when OpenMRS starts. Modules are only started once the modules they require or are aware of have started. 1 starts the modules one after the other"));
+		
 		props
 		        .add(new GlobalProperty(
 		                GLOBAL_PROPERTY_ENCOUNTER_FORM_OBS_SORT_ORDER,
@@ -1426,6 +1552,14 @@ public final class OpenmrsConstants {
 		        "If true, hl7 messages for patients that are not found and are non-local will silently be dropped/ignored",
 		        BooleanDatatype.class, null));
 		
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_HL7_PROCESSOR_CLAIM_TIMEOUT, String
+		        .valueOf(GLOBAL_PROPERTY_HL7_PROCESSOR_CLAIM_TIMEOUT_DEFAULT_VALUE),
+		        "The number of minutes after which hl7 messages that a processor claimed but did not process (e.g. because it was shut down) are put back in the queue"));
+		
+		props.add(new GlobalProperty(GLOBAL_PROPERTY_HL7_PROCESSOR_WORKER_THREADS, String
+		        .valueOf(GLOBAL_PROPERTY_HL7_PROCESSOR_WORKER_THREADS_DEFAULT_VALUE),
+		        "The number of threads that process the hl7 inbound queue at the same time. Messages about the same patient are always processed by the same thread, in the order they were received"));
+		
 		props
 		        .add(new GlobalProperty(
 		                GLOBAL_PROPERTY_SHOW_PATIENT_NAME,
@@ -1801,6 +1935,14 @@ public final class OpenmrsConstants {
 	
 	public static final String TEXT_VIEW = "TEXT_VIEW";
 	
+	/**
+	 * A scaled down copy of an image, optionally followed by a colon and the size in pixels, e.g.
+	 * THUMBNAIL_VIEW:512, see {@link #GLOBAL_PROPERTY_COMPLEX_OBS_THUMBNAIL_SIZES}
+	 * 
+	 * @since 1.11
+	 */
+	public static final String THUMBNAIL_VIEW = "THUMBNAIL_VIEW";
+	
 	public static final String ORDER_NUMBER_DEFAULT_PREFIX = "OR:";
 	
 	/** The data type to return on failing to load a custom data type. */
@@ -0,0 +1,281 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.util;
+
+/**
+ * Phonetic encodings of (person) names, used to find names that sound alike without comparing
+ * them one by one. The keys are computed in java rather than by the database because the soundex
+ * functions of the supported databases do not agree with each other (MySQL does not truncate its
+ * codes to four characters) and cannot be indexed.
+ *
+ * @since 1.11
+ */
+public final class PhoneticUtil {
+	
+	/**
+	 * The length of the keys returned by {@link #soundex(String)}
+	 */
+	public static final int SOUNDEX_LENGTH = 4;
+	
+	/**
+	 * The maximum length of the keys returned by {@link #metaphone(String)}
+	 */
+	public static final int METAPHONE_MAX_LENGTH = 6;
+	
+	/**
+	 * The soundex digit of every letter from A to Z, where '0' marks the vowels (which separate
+	 * letters with the same digit) and '-' marks H and W (which do not)
+	 */
+	private static final String SOUNDEX_DIGITS = "0123012-02245501262301-202";
+	
+	private static final String VOWELS = "AEIOU";
+	
+	private static final String FRONT_VOWELS = "EIY";
+	
+	private static final String SILENT_H_AFTER = "CSPTG";
+	
+	private PhoneticUtil() {
+	}
+	
+	/**
+	 * Computes the American soundex code of the given name: its first letter followed by three
+	 * digits for the consonants that follow it. Characters other than the letters A to Z are
+	 * ignored.
+	 *
+	 * @param name the name to encode
+	 * @return the soundex code, or null if the name has no letters
+	 * @should encode names that sound alike with the same code
+	 * @should pad short names with zeros
+	 * @should not separate letters with the same code by h or w
+	 * @should return null for names without letters
+	 */
+	public static String soundex(String name) {
+		String letters = getLetters(name);
+		if (letters.length() == 0) {
+			return null;
+		}
+		
+		StringBuilder code = new StringBuilder(SOUNDEX_LENGTH);
+		code.append(letters.charAt(0));
+		char last = soundexDigit(letters.charAt(0));
+		for (int i = 1; i < letters.length() && code.length() < SOUNDEX_LENGTH; i++) {
+			char digit = soundexDigit(letters.charAt(i));
+			if (digit == '-') {
+				continue;
+			}
+			if (digit != '0' && digit != last) {
+				code.append(digit);
+			}
+			last = digit;
+		}
+		while (code.length() < SOUNDEX_LENGTH) {
+			code.append('0');
+		}
+		return code.toString();
+	}
+	
+	/**
+	 * Computes the metaphone key of the given name. Metaphone knows more about english spelling than
+	 * soundex (e.g. that "ph" sounds like "f" and that "c" sounds like "s" before "e"), and does not
+	 * keep the first letter as is, so that names like Catherine and Katherine get the same key.
+	 * Characters other than the letters A to Z are ignored.
+	 *
+	 * @param name the name to encode
+	 * @return the metaphone key, at most {@link #METAPHONE_MAX_LENGTH} characters long, or null if
+	 *         the name has no letters
+	 * @should encode names that sound alike with the same key
+	 * @should apply the rules for the initial letters
+	 * @should return null for names without letters
+	 */
+	public static String metaphone(String name) {
+		String word = getLetters(name);
+		if (word.length() == 0) {
+			return null;
+		}
+		
+		StringBuilder key = new StringBuilder(METAPHONE_MAX_LENGTH);
+		int start = 0;
+		if (word.length() > 1) {
+			String initial = word.substring(0, 2);
+			if (initial.equals("AE") || initial.equals("GN") || initial.equals("KN") || initial.equals("PN")
+			        || initial.equals("WR")) {
+				start = 1;
+			} else if (initial.equals("WH")) {
+				key.append('W');
+				start = 2;
+			}
+		}
+		if (word.charAt(0) == 'X') {
+			key.append('S');
+			start = 1;
+		}
+		
+		int length = word.length();
+		for (int i = start; i < length && key.length() < METAPHONE_MAX_LENGTH; i++) {
+			char c = word.charAt(i);
+			char previous = i > 0 ? word.charAt(i - 1) : 0;
+			char next = i + 1 < length ? word.charAt(i + 1) : 0;
+			char afterNext = i + 2 < length ? word.charAt(i + 2) : 0;
+			
+			// only c can be doubled
+			if (c == previous && c != 'C') {
+				continue;
+			}
+			
+			switch (c) {
+				case 'A':
+				case 'E':
+				case 'I':
+				case 'O':
+				case 'U':
+					if (i == start && key.length() == 0) {
+						key.append(c);
+					}
+					break;
+				case 'B':
+					// silent in a final mb
+					if (!(previous == 'M' && next == 0)) {
+						key.append('B');
+					}
+					break;
+				case 'C':
+					if (next == 'I' && afterNext == 'A') {
+						key.append('X');
+					} else if (next == 'H') {
+						key.append(previous == 'S' ? 'K' : 'X');
+						i++;
+					} else if (isFrontVowel(next)) {
+						// silent in sce, sci and scy
+						if (previous != 'S') {
+							key.append('S');
+						}
+					} else {
+						key.append('K');
+					}
+					break;
+				case 'D':
+					if (next == 'G' && isFrontVowel(afterNext)) {
+						key.append('J');
+						i += 2;
+					} else {
+						key.append('T');
+					}
+					break;
+				case 'G':
+					if (next == 'H' && !(i + 2 == length || isVowel(afterNext))) {
+						// silent as in night
+						break;
+					}
+					if (next == 'N' && (i + 2 == length || word.startsWith("NED", i + 1) && i + 4 == length)) {
+						// silent as in sign and signed
+						break;
+					}
+					if (isFrontVowel(next) && previous != 'G') {
+						key.append('J');
+					} else {
+						key.append('K');
+					}
+					break;
+				case 'H':
+					if (next != 0 && SILENT_H_AFTER.indexOf(previous) < 0 && isVowel(next)) {
+						key.append('H');
+					}
+					break;
+				case 'K':
+					if (previous != 'C') {
+						key.append('K');
+					}
+					break;
+				case 'P':
+					key.append(next == 'H' ? 'F' : 'P');
+					break;
+				case 'Q':
+					key.append('K');
+					break;
+				case 'S':
+					if (next == 'H') {
+						key.append('X');
+						i++;
+					} else if (next == 'I' && (afterNext == 'O' || afterNext == 'A')) {
+						key.append('X');
+					} else {
+						key.append('S');
+					}
+					break;
+				case 'T':
+					if (next == 'I' && (afterNext == 'O' || afterNext == 'A')) {
+						key.append('X');
+					} else if (next == 'H') {
+						key.append('0');
+						i++;
+					} else if (!(next == 'C' && afterNext == 'H')) {
+						key.append('T');
+					}
+					break;
+				case 'V':
+					key.append('F');
+					break;
+				case 'W':
+				case 'Y':
+					if (isVowel(next)) {
+						key.append(c);
+					}
+					break;
+				case 'X':
+					key.append('K');
+					if (key.length() < METAPHONE_MAX_LENGTH) {
+						key.append('S');
+					}
+					break;
+				case 'Z':
+					key.append('S');
+					break;
+				default:
+					// f, j, l, m, n and r sound as they are written
+					key.append(c);
+			}
+		}
+		
+		return key.length() == 0 ? null : key.toString();
+	}
+	
+	/**
+	 * @return the upper cased letters A to Z of the given string, without anything else
+	 */
+	private static String getLetters(String name) {
+		if (name == null) {
+			return "";
+		}
+		StringBuilder letters = new StringBuilder(name.length());
+		for (int i = 0; i < name.length(); i++) {
+			char c = Character.toUpperCase(name.charAt(i));
+			if (c >= 'A' && c <= 'Z') {
+				letters.append(c);
+			}
+		}
+		return letters.toString();
+	}
+	
+	private static char soundexDigit(char letter) {
+		return SOUNDEX_DIGITS.charAt(letter - 'A');
+	}
+	
+	private static boolean isVowel(char c) {
+		return c != 0 && VOWELS.indexOf(c) >= 0;
+	}
+	
+	private static boolean isFrontVowel(char c) {
+		return c != 0 && FRONT_VOWELS.indexOf(c) >= 0;
+	}
+}
@@ -0,0 +1,151 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.util.databasechange;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import liquibase.change.custom.CustomChange;
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.SetupException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.PersonName;
+import org.openmrs.api.handler.PersonNameSaveHandler;
+
+/**
+ * This change set computes the soundex and metaphone keys of the existing person names that don't
+ * have them yet, the same way {@link PersonNameSaveHandler#setPhoneticKeys(PersonName)} does for
+ * the names saved later on
+ */
+public class PersonNamePhoneticKeysChangeSet implements CustomTaskChange {
+	
+	protected final static Log log = LogFactory.getLog(PersonNamePhoneticKeysChangeSet.class);
+	
+	private static final int BATCH_SIZE = 1000;
+	
+	private int updatedNames = 0;
+	
+	/**
+	 * @see CustomTaskChange#execute(Database)
+	 */
+	@Override
+	public void execute(Database database) throws CustomChangeException {
+		JdbcConnection connection = (JdbcConnection) database.getConnection();
+		
+		StringBuilder updateKeysSql = new StringBuilder();
+		updateKeysSql.append("UPDATE person_name SET given_name_soundex=?, middle_name_soundex=?,");
+		updateKeysSql.append(" family_name_soundex=?, family_name2_soundex=?, given_name_metaphone=?,");
+		updateKeysSql.append(" middle_name_metaphone=?, family_name_metaphone=?, family_name2_metaphone=?");
+		updateKeysSql.append(" WHERE person_name_id=?");
+		
+		Statement selectStatement = null;
+		PreparedStatement updateStatement = null;
+		
+		try {
+			selectStatement = connection.createStatement();
+			updateStatement = connection.prepareStatement(updateKeysSql.toString());
+			
+			ResultSet names = selectStatement
+			        .executeQuery("SELECT person_name_id, given_name, middle_name, family_name, family_name2 FROM person_name"
+			                + " WHERE given_name_soundex IS NULL AND family_name_soundex IS NULL");
+			while (names.next()) {
+				PersonName name = new PersonName(names.getString(2), names.getString(3), names.getString(4));
+				name.setFamilyName2(names.getString(5));
+				PersonNameSaveHandler.setPhoneticKeys(name);
+				
+				updateStatement.setString(1, name.getGivenNameSoundex());
+				updateStatement.setString(2, name.getMiddleNameSoundex());
+				updateStatement.setString(3, name.getFamilyNameSoundex());
+				updateStatement.setString(4, name.getFamilyName2Soundex());
+				updateStatement.setString(5, name.getGivenNameMetaphone());
+				updateStatement.setString(6, name.getMiddleNameMetaphone());
+				updateStatement.setString(7, name.getFamilyNameMetaphone());
+				updateStatement.setString(8, name.getFamilyName2Metaphone());
+				updateStatement.setInt(9, names.getInt(1));
+				updateStatement.addBatch();
+				
+				if (++updatedNames % BATCH_SIZE == 0) {
+					updateStatement.executeBatch();
+				}
+			}
+			updateStatement.executeBatch();
+			names.close();
+		}
+		catch (SQLException e) {
+			throw new CustomChangeException("Unable to compute the phonetic keys of the person names", e);
+		}
+		catch (DatabaseException dbex) {
+			throw new CustomChangeException("Unable to compute the phonetic keys of the person names", dbex);
+		}
+		finally {
+			// cleanup
+			if (selectStatement != null) {
+				try {
+					selectStatement.close();
+				}
+				catch (SQLException e) {
+					log.warn("Failed to close the statement", e);
+				}
+			}
+			if (updateStatement != null) {
+				try {
+					updateStatement.close();
+				}
+				catch (SQLException e) {
+					log.warn("Failed to close the statement", e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @see CustomChange#getConfirmationMessage()
+	 */
+	@Override
+	public String getConfirmationMessage() {
+		return "Finished computing the phonetic keys of " + updatedNames + " person names";
+	}
+	
+	/**
+	 * @see CustomChange#setFileOpener(ResourceAccessor)
+	 */
+	@Override
+	public void setFileOpener(ResourceAccessor fo) {
+	}
+	
+	/**
+	 * @see CustomChange#setUp()
+	 */
+	@Override
+	public void setUp() throws SetupException {
+	}
+	
+	/**
+	 * @see CustomChange#validate(Database)
+	 */
+	@Override
+	public ValidationErrors validate(Database db) {
+		return new ValidationErrors();
+	}
+}
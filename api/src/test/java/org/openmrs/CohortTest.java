@@ -0,0 +1,72 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs;
+
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the {@link Cohort} class
+ */
+public class CohortTest {
+	
+	/**
+	 * @see {@link Cohort#union(Cohort,Cohort)}
+	 */
+	@Test
+	@Verifies(value = "should contain the members of both cohorts", method = "union(Cohort,Cohort)")
+	public void union_shouldContainTheMembersOfBothCohorts() throws Exception {
+		Cohort union = Cohort.union(new Cohort("1,2,3"), new Cohort("3,4"));
+		Assert.assertEquals("1,2,3,4", union.getCommaSeparatedPatientIds());
+	}
+	
+	/**
+	 * @see {@link Cohort#intersect(Cohort,Cohort)}
+	 */
+	@Test
+	@Verifies(value = "should contain only the members in both cohorts", method = "intersect(Cohort,Cohort)")
+	public void intersect_shouldContainOnlyTheMembersInBothCohorts() throws Exception {
+		Cohort intersection = Cohort.intersect(new Cohort("1,2,3"), new Cohort("3,4,2"));
+		Assert.assertEquals("2,3", intersection.getCommaSeparatedPatientIds());
+		Assert.assertTrue(Cohort.intersect(new Cohort("1,2,3"), null).isEmpty());
+	}
+	
+	/**
+	 * @see {@link Cohort#subtract(Cohort,Cohort)}
+	 */
+	@Test
+	@Verifies(value = "should not contain the members of the subtracted cohort", method = "subtract(Cohort,Cohort)")
+	public void subtract_shouldNotContainTheMembersOfTheSubtractedCohort() throws Exception {
+		Cohort difference = Cohort.subtract(new Cohort("1,2,3"), new Cohort("3,4"));
+		Assert.assertEquals("1,2", difference.getCommaSeparatedPatientIds());
+	}
+	
+	/**
+	 * @see {@link Cohort#getMemberIds()}
+	 */
+	@Test
+	@Verifies(value = "should reflect changes made to the cohort", method = "getMemberIds()")
+	public void getMemberIds_shouldReflectChangesMadeToTheCohort() throws Exception {
+		Cohort cohort = new Cohort("5,6");
+		Set<Integer> memberIds = cohort.getMemberIds();
+		cohort.addMember(7);
+		Assert.assertTrue(memberIds.contains(7));
+		memberIds.remove(5);
+		Assert.assertFalse(cohort.contains(5));
+		Assert.assertEquals(2, cohort.size());
+	}
+}
@@ -13,6 +13,7 @@
  */
 package org.openmrs;
 
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.Set;
 
@@ -58,4 +59,20 @@ public class ConceptWordTest extends BaseContextSensitiveTest {
 		Set<ConceptWord> words = ConceptWord.makeConceptWords(concept);
 		Assert.assertEquals(3, words.size());
 	}
+	
+	/**
+	 * @see {@link ConceptWord#makeConceptWords(Concept,List)}
+	 */
+	@Test
+	@Verifies(value = "should leave out the given stop words", method = "makeConceptWords(Concept,List)")
+	public void makeConceptWords_shouldLeaveOutTheGivenStopWords() throws Exception {
+		Concept concept = new Concept(1);
+		concept.addName(new ConceptName("name number one", Locale.ENGLISH));
+		
+		Set<ConceptWord> words = ConceptWord.makeConceptWords(concept, Arrays.asList("NUMBER"));
+		Assert.assertEquals(2, words.size());
+		for (ConceptWord word : words) {
+			Assert.assertFalse("NUMBER".equals(word.getWord()));
+		}
+	}
 }
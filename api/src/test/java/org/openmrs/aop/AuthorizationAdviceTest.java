@@ -4,6 +4,7 @@
  */
 package org.openmrs.aop;
 
+import java.lang.reflect.Method;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
@@ -14,9 +15,11 @@ import org.junit.Test;
 import org.openmrs.Concept;
 import org.openmrs.PrivilegeListener;
 import org.openmrs.User;
+import org.openmrs.api.ConceptService;
 import org.openmrs.api.context.Context;
 import org.openmrs.test.BaseContextSensitiveTest;
 import org.openmrs.test.Verifies;
+import org.openmrs.util.PrivilegeConstants;
 import org.springframework.stereotype.Component;
 
 /**
@@ -61,6 +64,20 @@ public class AuthorizationAdviceTest extends BaseContextSensitiveTest {
 		Assert.assertEquals(0, listener2.lacksPrivileges.size());
 	}
 	
+	/**
+	 * @see {@link AuthorizationAdvice#before(Method,Object[],Object)}
+	 */
+	@Test
+	@Verifies(value = "should parse the annotations of a method only once", method = "before(Method,Object[],Object)")
+	public void before_shouldParseTheAnnotationsOfAMethodOnlyOnce() throws Exception {
+		AuthorizationAdvice advice = new AuthorizationAdvice();
+		Method method = ConceptService.class.getMethod("getConcept", Integer.class);
+		
+		AuthorizationAdvice.MethodAuthorization authorization = advice.getMethodAuthorization(method);
+		Assert.assertArrayEquals(new String[] { PrivilegeConstants.GET_CONCEPTS }, authorization.getPrivileges().toArray());
+		Assert.assertSame(authorization, advice.getMethodAuthorization(method));
+	}
+	
 	@Component("listener1")
 	public static class Listener1 implements PrivilegeListener {
 		
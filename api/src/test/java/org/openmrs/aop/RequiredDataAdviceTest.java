@@ -34,6 +34,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -62,6 +63,7 @@ import org.openmrs.api.handler.UnvoidHandler;
 import org.openmrs.api.handler.VoidHandler;
 import org.openmrs.api.impl.ConceptServiceImpl;
 import org.openmrs.test.Verifies;
+import org.openmrs.util.HandlerUtil;
 import org.openmrs.util.Reflect;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
@@ -84,6 +86,7 @@ public class RequiredDataAdviceTest {
 	@Before
 	public void setUp() {
 		this.requiredDataAdvice = new RequiredDataAdvice();
+		HandlerUtil.clearCachedHandlers();
 		
 		PowerMockito.mockStatic(Context.class);
 		
@@ -96,6 +99,12 @@ public class RequiredDataAdviceTest {
 		when(Context.getAdministrationService()).thenReturn(administrationService);
 	}
 	
+	@After
+	public void clearCachedHandlers() {
+		// the mocked handlers must not be found by later tests
+		HandlerUtil.clearCachedHandlers();
+	}
+	
 	/**
 	 * Class with a private field without getter
 	 */
@@ -116,6 +125,45 @@ public class RequiredDataAdviceTest {
 		}
 	}
 	
+	/**
+	 * @see {@link RequiredDataAdvice#getChildCollections(Class)}
+	 */
+	@Test
+	@Verifies(value = "should get the collection fields of the class and the handlers they disable", method = "getChildCollections(Class)")
+	public void getChildCollections_shouldGetTheCollectionFieldsOfTheClassAndTheHandlersTheyDisable() throws Exception {
+		List<RequiredDataAdvice.ChildCollection> childCollections = RequiredDataAdvice
+		        .getChildCollections(ClassWithDisableHandlersAnnotation.class);
+		Assert.assertEquals(2, childCollections.size());
+		
+		ClassWithDisableHandlersAnnotation openmrsObject = new ClassWithDisableHandlersAnnotation();
+		List<Person> persons = new ArrayList<Person>();
+		openmrsObject.setPersons(persons);
+		for (RequiredDataAdvice.ChildCollection childCollection : childCollections) {
+			if (childCollection.getField().getName().equals("persons")) {
+				Assert.assertTrue(childCollection.isHandlerDisabled(VoidHandler.class));
+				Assert.assertFalse(childCollection.isHandlerDisabled(UnvoidHandler.class));
+				Assert.assertSame(persons, childCollection.get(openmrsObject));
+			} else {
+				Assert.assertFalse(childCollection.isHandlerDisabled(VoidHandler.class));
+				Assert.assertNull(childCollection.get(openmrsObject));
+			}
+		}
+	}
+	
+	/**
+	 * @see {@link RequiredDataAdvice#getChildCollections(Class)}
+	 */
+	@Test
+	@Verifies(value = "should return the cached child collections for a class that was seen before", method = "getChildCollections(Class)")
+	public void getChildCollections_shouldReturnTheCachedChildCollectionsForAClassThatWasSeenBefore() throws Exception {
+		List<RequiredDataAdvice.ChildCollection> childCollections = RequiredDataAdvice
+		        .getChildCollections(MiniOpenmrsObject.class);
+		Assert.assertSame(childCollections, RequiredDataAdvice.getChildCollections(MiniOpenmrsObject.class));
+		
+		RequiredDataAdvice.clearCachedChildCollections();
+		Assert.assertNotSame(childCollections, RequiredDataAdvice.getChildCollections(MiniOpenmrsObject.class));
+	}
+	
 	/**
 	 * @see {@link RequiredDataAdvice#getChildCollection(OpenmrsObject, Field)}
 	 */
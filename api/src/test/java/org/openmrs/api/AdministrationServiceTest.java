@@ -800,4 +800,21 @@ public class AdministrationServiceTest extends BaseContextSensitiveTest {
 		BindException errors = new BindException(new Object(), "");
 		Context.getAdministrationService().validate(null, errors);
 	}
+	
+	/**
+	 * @see {@link AdministrationService#refreshGlobalProperties()}
+	 */
+	@Test
+	@Verifies(value = "should pick up values changed directly in the database", method = "refreshGlobalProperties()")
+	public void refreshGlobalProperties_shouldPickUpValuesChangedDirectlyInTheDatabase() throws Exception {
+		executeDataSet("org/openmrs/api/include/AdministrationServiceTest-globalproperties.xml");
+		Assert.assertEquals("anothervalue", adminService.getGlobalProperty("another-global-property"));
+		
+		adminService.executeSQL(
+		    "update global_property set property_value = 'changed' where property = 'another-global-property'", false);
+		Assert.assertEquals("anothervalue", adminService.getGlobalProperty("another-global-property"));
+		
+		adminService.refreshGlobalProperties();
+		Assert.assertEquals("changed", adminService.getGlobalProperty("another-global-property"));
+	}
 }
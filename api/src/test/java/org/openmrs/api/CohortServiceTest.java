@@ -193,6 +193,33 @@ public class CohortServiceTest extends BaseContextSensitiveTest {
 		assertTrue(service.getCohort(2).getDescription().equals(modifiedCohortDescription));
 	}
 	
+	/**
+	 * @see {@link CohortService#saveCohort(Cohort)}
+	 */
+	@Test
+	@Verifies(value = "should save member changes made to a loaded cohort", method = "saveCohort(Cohort)")
+	public void saveCohort_shouldSaveMemberChangesMadeToALoadedCohort() throws Exception {
+		executeDataSet(COHORT_XML);
+		
+		Cohort cohort = service.getCohort(2);
+		int originalSize = cohort.size();
+		cohort.addMember(4);
+		service.saveCohort(cohort);
+		Context.flushSession();
+		Context.clearSession();
+		
+		cohort = service.getCohort(2);
+		assertEquals(originalSize + 1, cohort.size());
+		assertTrue(cohort.contains(4));
+		
+		cohort.removeMember(4);
+		service.saveCohort(cohort);
+		Context.flushSession();
+		Context.clearSession();
+		
+		assertEquals(originalSize, service.getCohort(2).size());
+	}
+	
 	/**
 	 * @see {@link CohortService#voidCohort(Cohort,String)}
 	 * 
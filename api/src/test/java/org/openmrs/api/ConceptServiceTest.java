@@ -38,6 +38,7 @@ import junit.framework.Assert;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.BooleanUtils;
+import org.hibernate.Hibernate;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -2096,7 +2097,7 @@ public class ConceptServiceTest extends BaseContextSensitiveTest {
 		List<ConceptReferenceTerm> matches = Context.getConceptService().getConceptReferenceTerms("cd4", null, null, null,
 		    true);
 		Assert.assertEquals(3,
-
+		
 		matches.size());
 		Set<ConceptReferenceTerm> uniqueTerms = new HashSet<ConceptReferenceTerm>();
 		//check that we have only unique terms
@@ -2676,4 +2677,88 @@ public class ConceptServiceTest extends BaseContextSensitiveTest {
 		concept.removeName(concept.getSynonyms().iterator().next());
 		conceptService.saveConcept(concept);
 	}
+	
+	private long getCountOfConceptWordRows(String where) {
+		List<List<Object>> rows = Context.getAdministrationService().executeSQL(
+		    "select count(*) from concept_word where " + where, true);
+		return ((Number) rows.get(0).get(0)).longValue();
+	}
+	
+	/**
+	 * @see {@link ConceptService#rebuildConceptIndexes(Integer,Integer)}
+	 */
+	@Test
+	@Verifies(value = "should rebuild the index of the concepts in the range", method = "rebuildConceptIndexes(Integer,Integer)")
+	public void rebuildConceptIndexes_shouldRebuildTheIndexOfTheConceptsInTheRange() throws Exception {
+		conceptService.updateConceptIndex(conceptService.getConcept(3));
+		long wordsOfConcept3 = getCountOfConceptWordRows("concept_id = 3");
+		Assert.assertTrue(wordsOfConcept3 > 0);
+		Context.getAdministrationService().executeSQL("delete from concept_word", false);
+		
+		Assert.assertEquals(3, conceptService.rebuildConceptIndexes(3, 5));
+		Assert.assertEquals(wordsOfConcept3, getCountOfConceptWordRows("concept_id = 3"));
+		Assert.assertTrue(getCountOfConceptWordRows("concept_id = 4") > 0);
+		Assert.assertTrue(getCountOfConceptWordRows("concept_id = 5") > 0);
+		
+		// running it again replaces the words instead of adding to them
+		conceptService.rebuildConceptIndexes(3, 5);
+		Assert.assertEquals(wordsOfConcept3, getCountOfConceptWordRows("concept_id = 3"));
+	}
+	
+	/**
+	 * @see {@link ConceptService#rebuildConceptIndexes(Integer,Integer)}
+	 */
+	@Test
+	@Verifies(value = "should not change the index of concepts outside the range", method = "rebuildConceptIndexes(Integer,Integer)")
+	public void rebuildConceptIndexes_shouldNotChangeTheIndexOfConceptsOutsideTheRange() throws Exception {
+		conceptService.updateConceptIndex(conceptService.getConcept(6));
+		long wordsOfConcept6 = getCountOfConceptWordRows("concept_id = 6");
+		Context.getAdministrationService().executeSQL("delete from concept_word where concept_id <> 6", false);
+		
+		conceptService.rebuildConceptIndexes(3, 5);
+		Assert.assertEquals(0, getCountOfConceptWordRows("concept_id = 7"));
+		Assert.assertEquals(wordsOfConcept6, getCountOfConceptWordRows("concept_id = 6"));
+	}
+	
+	/**
+	 * @see {@link ConceptService#getNextConcepts(Integer,boolean,int)}
+	 */
+	@Test
+	@Verifies(value = "should return concepts in ascending concept id order starting after the given id", method = "getNextConcepts(Integer,boolean,int)")
+	public void getNextConcepts_shouldReturnConceptsInAscendingConceptIdOrderStartingAfterTheGivenId() throws Exception {
+		List<Concept> concepts = conceptService.getNextConcepts(null, true, 3);
+		Assert.assertEquals(3, concepts.size());
+		Assert.assertEquals(3, concepts.get(0).getConceptId().intValue());
+		
+		Integer last = concepts.get(2).getConceptId();
+		concepts = conceptService.getNextConcepts(last, true, 2);
+		Assert.assertEquals(2, concepts.size());
+		Assert.assertTrue(concepts.get(0).getConceptId() > last);
+		Assert.assertTrue(concepts.get(1).getConceptId() > concepts.get(0).getConceptId());
+		Assert.assertTrue(Hibernate.isInitialized(concepts.get(0).getNames()));
+	}
+	
+	/**
+	 * @see {@link ConceptService#getNextConcepts(Integer,boolean,int)}
+	 */
+	@Test
+	@Verifies(value = "should not return retired concepts if includeRetired is false", method = "getNextConcepts(Integer,boolean,int)")
+	public void getNextConcepts_shouldNotReturnRetiredConceptsIfIncludeRetiredIsFalse() throws Exception {
+		Assert.assertTrue(conceptService.getConcept(24).isRetired());
+		
+		List<Concept> concepts = conceptService.getNextConcepts(23, false, 1000);
+		for (Concept concept : concepts) {
+			Assert.assertFalse(concept.isRetired());
+		}
+		Assert.assertEquals(24, conceptService.getNextConcepts(23, true, 1).get(0).getConceptId().intValue());
+	}
+	
+	/**
+	 * @see {@link ConceptService#getNextConcepts(Integer,boolean,int)}
+	 */
+	@Test
+	@Verifies(value = "should return an empty list after the last concept", method = "getNextConcepts(Integer,boolean,int)")
+	public void getNextConcepts_shouldReturnAnEmptyListAfterTheLastConcept() throws Exception {
+		Assert.assertTrue(conceptService.getNextConcepts(conceptService.getMaxConceptId(), true, 10).isEmpty());
+	}
 }
@@ -72,6 +72,7 @@ import org.openmrs.activelist.Problem;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.PatientServiceImpl;
 import org.openmrs.comparator.PatientIdentifierTypeDefaultComparator;
+import org.openmrs.patient.DuplicatePatientCandidate;
 import org.openmrs.patient.IdentifierValidator;
 import org.openmrs.person.PersonMergeLog;
 import org.openmrs.person.PersonMergeLogData;
@@ -3454,4 +3455,117 @@ public class PatientServiceTest extends BaseContextSensitiveTest {
 	public void savePatientIdentifier_shouldThrowAnAPIExceptionWhenANullArgumentIsPassed() throws Exception {
 		patientService.savePatientIdentifier(null);
 	}
+	
+	/**
+	 * @see {@link PatientService#getDuplicatePatientsByAttributes(List)}
+	 */
+	@Test
+	@Verifies(value = "should fetch patients that exactly match on all given attributes", method = "getDuplicatePatientsByAttributes(List)")
+	public void getDuplicatePatientsByAttributes_shouldFetchPatientsThatExactlyMatchOnAllGivenAttributes() throws Exception {
+		Patient patient = patientService.getPatient(6);
+		patient.setBirthdate(patientService.getPatient(2).getBirthdate());
+		patientService.savePatient(patient);
+		
+		List<Patient> duplicates = patientService.getDuplicatePatientsByAttributes(Arrays.asList("gender", "birthdate"));
+		assertEquals(2, duplicates.size());
+		assertEquals(2, duplicates.get(0).getPatientId().intValue());
+		assertEquals(6, duplicates.get(1).getPatientId().intValue());
+	}
+	
+	/**
+	 * @see {@link PatientService#getDuplicatePatientsByAttributes(List)}
+	 */
+	@Test
+	@Verifies(value = "should not return patients that exactly match on some but not all given attributes", method = "getDuplicatePatientsByAttributes(List)")
+	public void getDuplicatePatientsByAttributes_shouldNotReturnPatientsThatExactlyMatchOnSomeButNotAllGivenAttributes()
+	        throws Exception {
+		assertEquals(4, patientService.getDuplicatePatientsByAttributes(Arrays.asList("gender")).size());
+		assertEquals(0, patientService.getDuplicatePatientsByAttributes(Arrays.asList("gender", "birthdate")).size());
+	}
+	
+	/**
+	 * Gives patient 6 the name and birthdate of patient 2, and patient 8 a name that sounds like
+	 * the one of patient 7 and the birthdate of patient 7
+	 */
+	private void makeLikelyDuplicates() {
+		Patient horatio = patientService.getPatient(2);
+		Patient patient = patientService.getPatient(6);
+		patient.addName(new PersonName("Horatio", null, "Hornblower"));
+		patient.setBirthdate(horatio.getBirthdate());
+		patientService.savePatient(patient);
+		
+		Patient collet = patientService.getPatient(7);
+		patient = patientService.getPatient(8);
+		patient.addName(new PersonName("Colet", null, "Chebaskwony"));
+		patient.setBirthdate(collet.getBirthdate());
+		patientService.savePatient(patient);
+		
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_DUPLICATE_PATIENT_THRESHOLD, "0.5"));
+	}
+	
+	/**
+	 * @see {@link PatientService#detectDuplicatePatients()}
+	 */
+	@Test
+	@Verifies(value = "should save the pairs of patients that are likely to be the same person", method = "detectDuplicatePatients()")
+	public void detectDuplicatePatients_shouldSaveThePairsOfPatientsThatAreLikelyToBeTheSamePerson() throws Exception {
+		makeLikelyDuplicates();
+		
+		assertEquals(2, patientService.detectDuplicatePatients());
+		List<DuplicatePatientCandidate> candidates = patientService.getDuplicatePatientCandidates(null, null);
+		assertEquals(2, candidates.size());
+		assertEquals(2, candidates.get(0).getPatient().getPatientId().intValue());
+		assertEquals(6, candidates.get(0).getOtherPatient().getPatientId().intValue());
+		assertEquals(0.6, candidates.get(0).getScore(), 0);
+		assertNotNull(candidates.get(0).getUuid());
+	}
+	
+	/**
+	 * @see {@link PatientService#detectDuplicatePatients()}
+	 */
+	@Test
+	@Verifies(value = "should replace the candidates of the previous run", method = "detectDuplicatePatients()")
+	public void detectDuplicatePatients_shouldReplaceTheCandidatesOfThePreviousRun() throws Exception {
+		makeLikelyDuplicates();
+		assertEquals(2, patientService.detectDuplicatePatients());
+		
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_DUPLICATE_PATIENT_THRESHOLD, "0.6"));
+		assertEquals(1, patientService.detectDuplicatePatients());
+		List<DuplicatePatientCandidate> candidates = patientService.getDuplicatePatientCandidates(null, null);
+		assertEquals(1, candidates.size());
+		assertEquals(6, candidates.get(0).getOtherPatient().getPatientId().intValue());
+	}
+	
+	/**
+	 * @see {@link PatientService#getDuplicatePatientCandidates(Integer,Integer)}
+	 */
+	@Test
+	@Verifies(value = "should get the candidates by descending score", method = "getDuplicatePatientCandidates(Integer,Integer)")
+	public void getDuplicatePatientCandidates_shouldGetTheCandidatesByDescendingScore() throws Exception {
+		makeLikelyDuplicates();
+		patientService.detectDuplicatePatients();
+		
+		List<DuplicatePatientCandidate> candidates = patientService.getDuplicatePatientCandidates(1, 10);
+		assertEquals(1, candidates.size());
+		assertEquals(7, candidates.get(0).getPatient().getPatientId().intValue());
+		assertEquals(8, candidates.get(0).getOtherPatient().getPatientId().intValue());
+		assertEquals(0.55, candidates.get(0).getScore(), 0);
+	}
+	
+	/**
+	 * @see {@link PatientService#getDuplicatePatientCandidates(Integer,Integer)}
+	 */
+	@Test
+	@Verifies(value = "should leave out pairs with a voided patient", method = "getDuplicatePatientCandidates(Integer,Integer)")
+	public void getDuplicatePatientCandidates_shouldLeaveOutPairsWithAVoidedPatient() throws Exception {
+		makeLikelyDuplicates();
+		patientService.detectDuplicatePatients();
+		
+		patientService.voidPatient(patientService.getPatient(6), "merged");
+		List<DuplicatePatientCandidate> candidates = patientService.getDuplicatePatientCandidates(null, null);
+		assertEquals(1, candidates.size());
+		assertEquals(7, candidates.get(0).getPatient().getPatientId().intValue());
+	}
 }
@@ -501,6 +501,24 @@ public class PersonServiceTest extends BaseContextSensitiveTest {
 		Assert.assertTrue(containsId(matches, 1007));
 	}
 	
+	/**
+	 * @see {@link PersonService#getSimilarPeople(String,Integer,String)}
+	 */
+	@Test
+	@Verifies(value = "should match names that are spelled differently but sound alike", method = "getSimilarPeople(String,Integer,String)")
+	public void getSimilarPeople_shouldMatchNamesThatAreSpelledDifferentlyButSoundAlike() throws Exception {
+		executeDataSet("org/openmrs/api/include/PersonServiceTest-names.xml");
+		PersonService ps = Context.getPersonService();
+		Person person = ps.getPerson(1008);
+		person.getPersonName().setFamilyName("Katherine");
+		ps.savePerson(person);
+		
+		Set<Person> matches = ps.getSimilarPeople("Catherine", 1979, "M");
+		Assert.assertEquals(1, matches.size());
+		Assert.assertTrue(containsId(matches, 1008));
+		Assert.assertEquals(6, ps.getSimilarPeople("Dareus Grahame", 1979, "M").size());
+	}
+	
 	/**
 	 * @see {@link PersonService#getPeople(String,Boolean)}
 	 */
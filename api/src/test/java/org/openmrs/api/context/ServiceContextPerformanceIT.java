@@ -0,0 +1,74 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.context;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.PatientService;
+import org.openmrs.test.BaseContextSensitiveTest;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import com.carrotsearch.junitbenchmarks.annotation.BenchmarkHistoryChart;
+
+/**
+ * Performance tests for {@link ServiceContext}.
+ */
+@BenchmarkHistoryChart
+public class ServiceContextPerformanceIT extends BaseContextSensitiveTest {
+	
+	@Rule
+	public TestRule benchmarkRule = new BenchmarkRule();
+	
+	@Test
+	@BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 1)
+	public void shouldTestGetServiceFromConcurrentCallers() throws Exception {
+		final ServiceContext serviceContext = ServiceContext.getInstance();
+		final int threads = 32;
+		final int lookups = 100000;
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		
+		for (int i = 0; i < threads; i++) {
+			new Thread() {
+				
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int j = 0; j < lookups; j++) {
+							serviceContext.getService(ConceptService.class);
+							serviceContext.getService(PatientService.class);
+						}
+					}
+					catch (InterruptedException e) {
+						// the test fails on the timeout below
+					}
+					finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		
+		start.countDown();
+		Assert.assertTrue(done.await(60, TimeUnit.SECONDS));
+	}
+}
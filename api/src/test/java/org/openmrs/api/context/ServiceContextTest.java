@@ -0,0 +1,110 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.context;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.PatientService;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the methods on the {@link ServiceContext} class
+ */
+public class ServiceContextTest extends BaseContextSensitiveTest {
+	
+	/**
+	 * @see {@link ServiceContext#getService(Class)}
+	 */
+	@Test
+	@Verifies(value = "should wait while the context is being refreshed", method = "getService(Class)")
+	public void getService_shouldWaitWhileTheContextIsBeingRefreshed() throws Exception {
+		final ServiceContext serviceContext = ServiceContext.getInstance();
+		final List<Object> found = new ArrayList<Object>();
+		Thread thread = new Thread() {
+			
+			@Override
+			public void run() {
+				found.add(serviceContext.getService(ConceptService.class));
+			}
+		};
+		
+		serviceContext.startRefreshingContext();
+		try {
+			thread.start();
+			thread.join(200);
+			Assert.assertTrue(thread.isAlive());
+			Assert.assertTrue(found.isEmpty());
+		}
+		finally {
+			serviceContext.doneRefreshingContext();
+		}
+		
+		thread.join(5000);
+		Assert.assertFalse(thread.isAlive());
+		Assert.assertSame(Context.getConceptService(), found.get(0));
+	}
+	
+	/**
+	 * @see {@link ServiceContext#getService(Class)}
+	 * @see ServiceContextPerformanceIT
+	 */
+	@Test
+	@Verifies(value = "should return the services to concurrent callers", method = "getService(Class)")
+	public void getService_shouldReturnTheServicesToConcurrentCallers() throws Exception {
+		final ServiceContext serviceContext = ServiceContext.getInstance();
+		final Object conceptService = serviceContext.getService(ConceptService.class);
+		final Object patientService = serviceContext.getService(PatientService.class);
+		final int threads = 8;
+		final int lookups = 100;
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicInteger mismatches = new AtomicInteger();
+		
+		for (int i = 0; i < threads; i++) {
+			new Thread() {
+				
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int j = 0; j < lookups; j++) {
+							if (serviceContext.getService(ConceptService.class) != conceptService
+							        || serviceContext.getService(PatientService.class) != patientService) {
+								mismatches.incrementAndGet();
+							}
+						}
+					}
+					catch (InterruptedException e) {
+						mismatches.incrementAndGet();
+					}
+					finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		
+		start.countDown();
+		Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(0, mismatches.get());
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.context;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Privilege;
+import org.openmrs.Role;
+import org.openmrs.User;
+import org.openmrs.api.UserService;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the {@link UserContext} class
+ */
+public class UserContextTest extends BaseContextSensitiveTest {
+	
+	/**
+	 * @see {@link UserContext#hasPrivilege(String)}
+	 */
+	@Test
+	@Verifies(value = "should not authorize after the privilege is removed from the user's role", method = "hasPrivilege(String)")
+	public void hasPrivilege_shouldNotAuthorizeAfterThePrivilegeIsRemovedFromTheUsersRole() throws Exception {
+		UserService userService = Context.getUserService();
+		Privilege privilege = userService.savePrivilege(new Privilege("Some Test Privilege", "A test privilege"));
+		Role role = userService.getRole("Provider");
+		role.addPrivilege(privilege);
+		userService.saveRole(role);
+		
+		UserContext userContext = new UserContext();
+		userContext.becomeUser("butch");
+		Assert.assertFalse(userContext.getAuthenticatedUser().isSuperUser());
+		Assert.assertTrue(userContext.hasPrivilege("Some Test Privilege"));
+		Assert.assertTrue(userContext.hasPrivilege("Some Test Privilege"));
+		
+		role.removePrivilege(privilege);
+		userService.saveRole(role);
+		Assert.assertFalse(userContext.hasPrivilege("Some Test Privilege"));
+	}
+	
+	/**
+	 * @see {@link UserContext#invalidatePrivilegeCache(User)}
+	 */
+	@Test
+	@Verifies(value = "should only invalidate the privileges cached for the given user", method = "invalidatePrivilegeCache(User)")
+	public void invalidatePrivilegeCache_shouldOnlyInvalidateThePrivilegesCachedForTheGivenUser() throws Exception {
+		UserService userService = Context.getUserService();
+		Privilege privilege = userService.savePrivilege(new Privilege("Some Test Privilege", "A test privilege"));
+		
+		UserContext butch = new UserContext();
+		butch.becomeUser("butch");
+		User retiredUser = userService.getUser(501);
+		retiredUser.setRetired(false);
+		Context.flushSession();
+		UserContext bruno = new UserContext();
+		bruno.becomeUser("bruno");
+		Assert.assertFalse(butch.hasPrivilege("Some Test Privilege"));
+		Assert.assertFalse(bruno.hasPrivilege("Some Test Privilege"));
+		
+		// both users have this role, but only butch is invalidated
+		userService.getRole("Provider").addPrivilege(privilege);
+		UserContext.invalidatePrivilegeCache(butch.getAuthenticatedUser());
+		Assert.assertTrue(butch.hasPrivilege("Some Test Privilege"));
+		Assert.assertFalse(bruno.hasPrivilege("Some Test Privilege"));
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.hibernate.SessionFactory;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Cohort;
+import org.openmrs.GlobalProperty;
+import org.openmrs.PatientProgram;
+import org.openmrs.Program;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.test.TestUtil;
+import org.openmrs.test.Verifies;
+import org.openmrs.util.OpenmrsConstants;
+
+/**
+ * Tests the {@link CohortRestriction} class
+ */
+public class CohortRestrictionTest extends BaseContextSensitiveTest {
+	
+	private SessionFactory sessionFactory;
+	
+	@Before
+	public void getSessionFactory() throws Exception {
+		sessionFactory = (SessionFactory) applicationContext.getBean("sessionFactory");
+	}
+	
+	private void setThreshold(int threshold) {
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_COHORT_TEMPORARY_TABLE_THRESHOLD, String.valueOf(threshold)));
+	}
+	
+	/**
+	 * @see {@link CohortRestriction#getCriterion(Class,String)}
+	 */
+	@Test
+	@Verifies(value = "should use an in list for cohorts below the threshold", method = "getCriterion(Class,String)")
+	public void getCriterion_shouldUseAnInListForCohortsBelowTheThreshold() throws Exception {
+		setThreshold(10);
+		Cohort cohort = new Cohort("2,3,4,5,6,7");
+		Assert.assertFalse(CohortRestriction.forCohort(sessionFactory, cohort).isUsingTemporaryTable());
+		
+		Map<Integer, PatientProgram> map = Context.getPatientSetService().getPatientPrograms(cohort, new Program(2));
+		TestUtil.assertCollectionContentsEquals(Arrays.asList(2, 7), map.keySet());
+	}
+	
+	/**
+	 * @see {@link CohortRestriction#getCriterion(Class,String)}
+	 */
+	@Test
+	@Verifies(value = "should use the temporary table for cohorts above the threshold", method = "getCriterion(Class,String)")
+	public void getCriterion_shouldUseTheTemporaryTableForCohortsAboveTheThreshold() throws Exception {
+		setThreshold(1);
+		Cohort cohort = new Cohort("2,3,4,5,6,7");
+		Assert.assertTrue(CohortRestriction.forCohort(sessionFactory, cohort).isUsingTemporaryTable());
+		
+		Map<Integer, PatientProgram> map = Context.getPatientSetService().getPatientPrograms(cohort, new Program(2));
+		TestUtil.assertCollectionContentsEquals(Arrays.asList(2, 7), map.keySet());
+		
+		// the table is emptied after use, so a second query with another cohort sees only its own members
+		map = Context.getPatientSetService().getPatientPrograms(new Cohort("7,8"), new Program(2));
+		TestUtil.assertCollectionContentsEquals(Arrays.asList(7), map.keySet());
+	}
+}
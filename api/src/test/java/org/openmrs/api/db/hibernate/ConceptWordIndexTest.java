@@ -0,0 +1,214 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.hibernate.SessionFactory;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.ConceptClass;
+import org.openmrs.ConceptDatatype;
+import org.openmrs.ConceptName;
+import org.openmrs.ConceptWord;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.test.Verifies;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Tests the {@link ConceptWordIndex} class
+ */
+public class ConceptWordIndexTest extends BaseContextSensitiveTest {
+	
+	private ConceptWordIndex index;
+	
+	private int nextConceptWordId = 100001;
+	
+	@Before
+	public void buildIndex() throws Exception {
+		index = new ConceptWordIndex();
+		index.build(((SessionFactory) applicationContext.getBean("sessionFactory")).getCurrentSession());
+	}
+	
+	private Concept addConcept(Integer conceptId, Integer conceptClassId, String... names) {
+		Concept concept = new Concept(conceptId);
+		concept.setConceptClass(new ConceptClass(conceptClassId));
+		concept.setDatatype(new ConceptDatatype(4));
+		concept.setRetired(false);
+		
+		List<ConceptWord> words = new ArrayList<ConceptWord>();
+		int nameId = conceptId * 10;
+		for (String name : names) {
+			ConceptName conceptName = new ConceptName(name, Locale.ENGLISH);
+			conceptName.setConceptNameId(nameId++);
+			for (String word : name.split(" ")) {
+				ConceptWord conceptWord = new ConceptWord(word, concept, conceptName, Locale.ENGLISH);
+				conceptWord.setConceptWordId(nextConceptWordId++);
+				conceptWord.setWeight((double) word.length());
+				words.add(conceptWord);
+			}
+		}
+		
+		index.updateConcept(concept, words);
+		commit();
+		return concept;
+	}
+	
+	/**
+	 * Applies the index changes of the test transaction as if it had been committed
+	 */
+	private void commit() {
+		for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+			if (synchronization instanceof ConceptWordIndex.PendingChanges) {
+				synchronization.afterCommit();
+			}
+		}
+	}
+	
+	private List<ConceptWordIndex.Entry> search(boolean includeRetired, List<ConceptClass> excludeClasses,
+	        String... words) {
+		List<ConceptClass> none = Collections.emptyList();
+		List<ConceptDatatype> noDatatypes = Collections.emptyList();
+		List<Concept> noAnswers = Collections.emptyList();
+		return index.search(Arrays.asList(words), Arrays.asList(Locale.ENGLISH), includeRetired, none, excludeClasses,
+		    noDatatypes, noDatatypes, noAnswers);
+	}
+	
+	private List<ConceptWordIndex.Entry> search(String... words) {
+		List<ConceptClass> none = Collections.emptyList();
+		return search(false, none, words);
+	}
+	
+	/**
+	 * @see {@link ConceptWordIndex#search(List,Collection,boolean,Collection,Collection,Collection,Collection,Collection)}
+	 */
+	@Test
+	@Verifies(value = "should find words starting with the search word", method = "search(List,Collection,boolean,Collection,Collection,Collection,Collection,Collection)")
+	public void search_shouldFindWordsStartingWithTheSearchWord() throws Exception {
+		Assert.assertTrue(index.isBuilt());
+		addConcept(90001, 1, "ZYGOTE XYLOPHONE");
+		addConcept(90002, 1, "ZYGOMA");
+		
+		List<ConceptWordIndex.Entry> entries = search("ZYGO");
+		Assert.assertEquals(2, entries.size());
+		Assert.assertEquals(0, search("YGO").size());
+		Assert.assertEquals(1, search("XYLOPHONE").size());
+	}
+	
+	/**
+	 * @see {@link ConceptWordIndex#search(List,Collection,boolean,Collection,Collection,Collection,Collection,Collection)}
+	 */
+	@Test
+	@Verifies(value = "should require the other search words to be in the same concept name", method = "search(List,Collection,boolean,Collection,Collection,Collection,Collection,Collection)")
+	public void search_shouldRequireTheOtherSearchWordsToBeInTheSameConceptName() throws Exception {
+		addConcept(90001, 1, "ZYGOTE XYLOPHONE", "QUUXLY");
+		
+		List<ConceptWordIndex.Entry> entries = search("ZYG", "XYL");
+		Assert.assertEquals(1, entries.size());
+		Assert.assertEquals("ZYGOTE", entries.get(0).getWord());
+		Assert.assertEquals(0, search("ZYG", "QUUX").size());
+	}
+	
+	/**
+	 * @see {@link ConceptWordIndex#search(List,Collection,boolean,Collection,Collection,Collection,Collection,Collection)}
+	 */
+	@Test
+	@Verifies(value = "should apply the concept filters", method = "search(List,Collection,boolean,Collection,Collection,Collection,Collection,Collection)")
+	public void search_shouldApplyTheConceptFilters() throws Exception {
+		addConcept(90001, 1, "ZYGOTE");
+		Concept retired = addConcept(90002, 2, "ZYGOMA");
+		retired.setRetired(true);
+		index.updateConceptAttributes(retired);
+		commit();
+		
+		Assert.assertEquals(1, search("ZYG").size());
+		Assert.assertEquals(2, search(true, Collections.<ConceptClass> emptyList(), "ZYG").size());
+		
+		List<ConceptWordIndex.Entry> entries = search(true, Arrays.asList(new ConceptClass(1)), "ZYG");
+		Assert.assertEquals(1, entries.size());
+		Assert.assertEquals(90002, entries.get(0).getConceptId().intValue());
+		
+		index.removeConcept(90002);
+		commit();
+		Assert.assertEquals(1, search(true, Collections.<ConceptClass> emptyList(), "ZYG").size());
+	}
+	
+	/**
+	 * @see {@link ConceptWordIndex#search(List,Collection,boolean,Collection,Collection,Collection,Collection,Collection)}
+	 */
+	@Test
+	@Verifies(value = "should order the entries by descending weight", method = "search(List,Collection,boolean,Collection,Collection,Collection,Collection,Collection)")
+	public void search_shouldOrderTheEntriesByDescendingWeight() throws Exception {
+		addConcept(90001, 1, "ZYG");
+		addConcept(90002, 1, "ZYGOMATIC");
+		addConcept(90003, 1, "ZYGOTE");
+		
+		List<ConceptWordIndex.Entry> entries = search("ZYG");
+		Assert.assertEquals(3, entries.size());
+		Assert.assertEquals("ZYGOMATIC", entries.get(0).getWord());
+		Assert.assertEquals("ZYGOTE", entries.get(1).getWord());
+		Assert.assertEquals("ZYG", entries.get(2).getWord());
+	}
+	
+	/**
+	 * @see {@link ConceptWordIndex#updateConcept(Concept,Collection)}
+	 */
+	@Test
+	@Verifies(value = "should not apply the change before the transaction commits", method = "updateConcept(Concept,Collection)")
+	public void updateConcept_shouldNotApplyTheChangeBeforeTheTransactionCommits() throws Exception {
+		Concept concept = new Concept(90001);
+		concept.setConceptClass(new ConceptClass(1));
+		concept.setDatatype(new ConceptDatatype(4));
+		ConceptName name = new ConceptName("ZYGOTE", Locale.ENGLISH);
+		name.setConceptNameId(900010);
+		ConceptWord word = new ConceptWord("ZYGOTE", concept, name, Locale.ENGLISH);
+		word.setConceptWordId(nextConceptWordId++);
+		word.setWeight(1.0);
+		
+		index.updateConcept(concept, Collections.singletonList(word));
+		Assert.assertTrue(index.hasPendingChanges());
+		Assert.assertEquals(0, search("ZYG").size());
+		
+		commit();
+		Assert.assertFalse(index.hasPendingChanges());
+		Assert.assertEquals(1, search("ZYG").size());
+	}
+	
+	/**
+	 * @see {@link ConceptWordIndex#groupByConceptAndWord(List)}
+	 */
+	@Test
+	@Verifies(value = "should keep the highest weight and lowest concept name id of each concept and word", method = "groupByConceptAndWord(List)")
+	public void groupByConceptAndWord_shouldKeepTheHighestWeightAndLowestConceptNameIdOfEachConceptAndWord()
+	        throws Exception {
+		List<ConceptWordIndex.Entry> entries = new ArrayList<ConceptWordIndex.Entry>();
+		entries.add(new ConceptWordIndex.Entry(1, "ZYGOTE", Locale.ENGLISH, 90001, 12, 5.0));
+		entries.add(new ConceptWordIndex.Entry(2, "ZYGOMA", Locale.ENGLISH, 90001, 13, 4.0));
+		entries.add(new ConceptWordIndex.Entry(3, "ZYGOTE", Locale.ENGLISH, 90001, 11, 3.0));
+		
+		List<ConceptWordIndex.Entry> groups = ConceptWordIndex.groupByConceptAndWord(entries);
+		Assert.assertEquals(2, groups.size());
+		Assert.assertEquals("ZYGOTE", groups.get(0).getWord());
+		Assert.assertEquals(5.0, groups.get(0).getWeight(), 0);
+		Assert.assertEquals(11, groups.get(0).getConceptNameId().intValue());
+		Assert.assertEquals("ZYGOMA", groups.get(1).getWord());
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.db.hibernate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the {@link GlobalPropertyCache} class
+ */
+public class GlobalPropertyCacheTest {
+	
+	@After
+	public void clearCache() {
+		GlobalPropertyCache.transactionCompleted(false);
+		GlobalPropertyCache.clear();
+	}
+	
+	private static Map<String, String> load(long generation) {
+		Map<String, String> values = new HashMap<String, String>();
+		values.put("Some.Property", "some value");
+		return GlobalPropertyCache.load(values, generation);
+	}
+	
+	/**
+	 * @see {@link GlobalPropertyCache#load(Map,long)}
+	 */
+	@Test
+	@Verifies(value = "should not install values loaded before a write", method = "load(Map,long)")
+	public void load_shouldNotInstallValuesLoadedBeforeAWrite() throws Exception {
+		GlobalPropertyCache.clear();
+		long generation = GlobalPropertyCache.getGeneration();
+		GlobalPropertyCache.put("Some.Property", "new value");
+		GlobalPropertyCache.transactionCompleted(true);
+		
+		Map<String, String> values = load(generation);
+		Assert.assertEquals("some value", values.get("some.property"));
+		Assert.assertNull(GlobalPropertyCache.getValues());
+		
+		load(GlobalPropertyCache.getGeneration());
+		Assert.assertEquals("some value", GlobalPropertyCache.getValues().get("some.property"));
+	}
+	
+	/**
+	 * @see {@link GlobalPropertyCache#put(String,String)}
+	 */
+	@Test
+	@Verifies(value = "should find the value whatever the case of the property name", method = "put(String,String)")
+	public void put_shouldFindTheValueWhateverTheCaseOfThePropertyName() throws Exception {
+		GlobalPropertyCache.clear();
+		load(GlobalPropertyCache.getGeneration());
+		
+		GlobalPropertyCache.put("SOME.property", "new value");
+		GlobalPropertyCache.transactionCompleted(true);
+		Map<String, String> values = GlobalPropertyCache.getValues();
+		Assert.assertEquals(1, values.size());
+		Assert.assertEquals("new value", values.get(GlobalPropertyCache.getKey("some.PROPERTY")));
+		
+		GlobalPropertyCache.remove("some.property");
+		GlobalPropertyCache.transactionCompleted(true);
+		Assert.assertTrue(GlobalPropertyCache.getValues().isEmpty());
+	}
+	
+	/**
+	 * @see {@link GlobalPropertyCache#put(String,String)}
+	 */
+	@Test
+	@Verifies(value = "should only publish the value once the transaction commits", method = "put(String,String)")
+	public void put_shouldOnlyPublishTheValueOnceTheTransactionCommits() throws Exception {
+		GlobalPropertyCache.clear();
+		load(GlobalPropertyCache.getGeneration());
+		
+		GlobalPropertyCache.put("some.property", "new value");
+		Assert.assertEquals("new value", GlobalPropertyCache.getPendingValues().get("some.property"));
+		Assert.assertEquals("some value", GlobalPropertyCache.getValues().get("some.property"));
+		
+		GlobalPropertyCache.transactionCompleted(true);
+		Assert.assertNull(GlobalPropertyCache.getPendingValues());
+		Assert.assertEquals("new value", GlobalPropertyCache.getValues().get("some.property"));
+	}
+	
+	/**
+	 * @see {@link GlobalPropertyCache#transactionCompleted(Boolean)}
+	 */
+	@Test
+	@Verifies(value = "should publish the values written by the thread if the transaction committed", method = "transactionCompleted(Boolean)")
+	public void transactionCompleted_shouldPublishTheValuesWrittenByTheThreadIfTheTransactionCommitted() throws Exception {
+		GlobalPropertyCache.clear();
+		load(GlobalPropertyCache.getGeneration());
+		
+		GlobalPropertyCache.put("other.property", "other value");
+		GlobalPropertyCache.remove("some.property");
+		GlobalPropertyCache.transactionCompleted(true);
+		
+		Map<String, String> values = GlobalPropertyCache.getValues();
+		Assert.assertEquals(1, values.size());
+		Assert.assertEquals("other value", values.get("other.property"));
+	}
+	
+	/**
+	 * @see {@link GlobalPropertyCache#transactionCompleted(Boolean)}
+	 */
+	@Test
+	@Verifies(value = "should drop the values written by the thread if the transaction was rolled back", method = "transactionCompleted(Boolean)")
+	public void transactionCompleted_shouldDropTheValuesWrittenByTheThreadIfTheTransactionWasRolledBack() throws Exception {
+		GlobalPropertyCache.clear();
+		load(GlobalPropertyCache.getGeneration());
+		
+		GlobalPropertyCache.put("some.property", "new value");
+		GlobalPropertyCache.transactionCompleted(false);
+		
+		Assert.assertNull(GlobalPropertyCache.getPendingValues());
+		Assert.assertEquals("some value", GlobalPropertyCache.getValues().get("some.property"));
+	}
+}
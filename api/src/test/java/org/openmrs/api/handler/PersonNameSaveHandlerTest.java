@@ -0,0 +1,62 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.handler;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.PersonName;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the {@link PersonNameSaveHandler} class.
+ */
+public class PersonNameSaveHandlerTest {
+	
+	/**
+	 * @see {@link PersonNameSaveHandler#setPhoneticKeys(PersonName)}
+	 */
+	@Test
+	@Verifies(value = "should set the phonetic keys of the name parts", method = "setPhoneticKeys(PersonName)")
+	public void setPhoneticKeys_shouldSetThePhoneticKeysOfTheNameParts() throws Exception {
+		PersonName name = new PersonName("Catherine", "Ashcraft", "Smith");
+		name.setFamilyName2("Philip");
+		new PersonNameSaveHandler().handle(name, null, null, null);
+		
+		Assert.assertEquals("C365", name.getGivenNameSoundex());
+		Assert.assertEquals("A261", name.getMiddleNameSoundex());
+		Assert.assertEquals("S530", name.getFamilyNameSoundex());
+		Assert.assertEquals("P410", name.getFamilyName2Soundex());
+		Assert.assertEquals("K0RN", name.getGivenNameMetaphone());
+		Assert.assertEquals("AXKRFT", name.getMiddleNameMetaphone());
+		Assert.assertEquals("SM0", name.getFamilyNameMetaphone());
+		Assert.assertEquals("FLP", name.getFamilyName2Metaphone());
+	}
+	
+	/**
+	 * @see {@link PersonNameSaveHandler#setPhoneticKeys(PersonName)}
+	 */
+	@Test
+	@Verifies(value = "should set empty keys for blank name parts", method = "setPhoneticKeys(PersonName)")
+	public void setPhoneticKeys_shouldSetEmptyKeysForBlankNameParts() throws Exception {
+		PersonName name = new PersonName("Catherine", "Ashcraft", "Smith");
+		PersonNameSaveHandler.setPhoneticKeys(name);
+		
+		name.setMiddleName(" ");
+		PersonNameSaveHandler.setPhoneticKeys(name);
+		Assert.assertEquals("C365", name.getGivenNameSoundex());
+		Assert.assertEquals("", name.getMiddleNameSoundex());
+		Assert.assertEquals("", name.getMiddleNameMetaphone());
+		Assert.assertEquals("", name.getFamilyName2Soundex());
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.api.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.PrivilegeListener;
+import org.openmrs.User;
+import org.openmrs.api.impl.PrivilegeListenerNotifier.PrivilegeCheck;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the {@link PrivilegeListenerNotifier} class
+ */
+public class PrivilegeListenerNotifierTest {
+	
+	private static class RecordingListener implements PrivilegeListener {
+		
+		private final List<String> checks = Collections.synchronizedList(new ArrayList<String>());
+		
+		private volatile Thread thread;
+		
+		public void privilegeChecked(User user, String privilege, boolean hasPrivilege) {
+			thread = Thread.currentThread();
+			checks.add((user == null ? null : user.getUserId()) + ":" + privilege + ":" + hasPrivilege);
+		}
+	}
+	
+	/**
+	 * @see {@link PrivilegeListenerNotifier#publish(User,String,boolean)}
+	 */
+	@Test
+	@Verifies(value = "should deliver the checks to the listeners from another thread", method = "publish(User,String,boolean)")
+	public void publish_shouldDeliverTheChecksToTheListenersFromAnotherThread() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		PrivilegeListenerNotifier notifier = new PrivilegeListenerNotifier(Collections
+		        .<PrivilegeListener> singletonList(listener));
+		
+		notifier.publish(new User(1), "Get Concepts", true);
+		for (int i = 0; i < 100 && listener.checks.isEmpty(); i++) {
+			Thread.sleep(50);
+		}
+		
+		Assert.assertEquals(Collections.singletonList("1:Get Concepts:true"), listener.checks);
+		Assert.assertNotSame(Thread.currentThread(), listener.thread);
+	}
+	
+	/**
+	 * @see {@link PrivilegeListenerNotifier#deliver()}
+	 */
+	@Test
+	@Verifies(value = "should deliver a repeated check only once per batch", method = "deliver()")
+	public void deliver_shouldDeliverARepeatedCheckOnlyOncePerBatch() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		PrivilegeListenerNotifier notifier = new PrivilegeListenerNotifier(Collections
+		        .<PrivilegeListener> singletonList(listener));
+		
+		notifier.offer(new PrivilegeCheck(new User(1), "Get Concepts", true));
+		notifier.offer(new PrivilegeCheck(new User(2), "Get Concepts", false));
+		notifier.offer(new PrivilegeCheck(new User(1), "Get Concepts", true));
+		notifier.offer(new PrivilegeCheck(null, "Get Concepts", false));
+		Assert.assertEquals(3, notifier.deliver());
+		Assert.assertEquals(0, notifier.deliver());
+		
+		notifier.offer(new PrivilegeCheck(new User(1), "Get Concepts", true));
+		Assert.assertEquals(1, notifier.deliver());
+		
+		List<String> expected = new ArrayList<String>();
+		expected.add("1:Get Concepts:true");
+		expected.add("2:Get Concepts:false");
+		expected.add("null:Get Concepts:false");
+		expected.add("1:Get Concepts:true");
+		Assert.assertEquals(expected, listener.checks);
+		Assert.assertSame(Thread.currentThread(), listener.thread);
+	}
+	
+	/**
+	 * @see {@link PrivilegeListenerNotifier#deliver()}
+	 */
+	@Test
+	@Verifies(value = "should drop checks when the buffer is full", method = "deliver()")
+	public void deliver_shouldDropChecksWhenTheBufferIsFull() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		PrivilegeListenerNotifier notifier = new PrivilegeListenerNotifier(Collections
+		        .<PrivilegeListener> singletonList(listener));
+		
+		for (int i = 0; i < PrivilegeListenerNotifier.BUFFER_SIZE; i++) {
+			Assert.assertTrue(notifier.offer(new PrivilegeCheck(null, "Privilege " + i, true)));
+		}
+		Assert.assertFalse(notifier.offer(new PrivilegeCheck(null, "One too many", true)));
+		Assert.assertEquals(1, notifier.getDroppedCount());
+		
+		Assert.assertEquals(PrivilegeListenerNotifier.BUFFER_SIZE, notifier.deliver());
+		Assert.assertTrue(notifier.offer(new PrivilegeCheck(null, "Privilege 0", true)));
+		Assert.assertEquals(1, notifier.deliver());
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.hl7;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.net.URI;
+import java.util.Calendar;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.test.Verifies;
+import org.openmrs.util.OpenmrsUtil;
+
+/**
+ * Tests methods in the {@link HL7InArchiveSegments}
+ */
+public class HL7InArchiveSegmentsTest {
+	
+	private File directory;
+	
+	@Before
+	public void createDirectory() throws Exception {
+		directory = File.createTempFile("hl7archives", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+	
+	@After
+	public void deleteDirectory() throws Exception {
+		OpenmrsUtil.deleteDirectory(directory);
+	}
+	
+	private HL7InArchive newArchive(int id, int year, int month, int day, String data) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.set(year, month - 1, day, 10, 30);
+		HL7InArchive archive = new HL7InArchive();
+		archive.setHL7InArchiveId(id);
+		archive.setDateCreated(calendar.getTime());
+		archive.setHL7Data(data);
+		return archive;
+	}
+	
+	/**
+	 * @see {@link HL7InArchiveSegments#read(URI)}
+	 */
+	@Test
+	@Verifies(value = "should read a message written by a writer", method = "read(URI)")
+	public void read_shouldReadAMessageWrittenByAWriter() throws Exception {
+		HL7InArchiveSegments.Writer writer = new HL7InArchiveSegments.Writer(directory);
+		URI first = writer.append(newArchive(1, 2013, 5, 21, "MSH|^~\\&|first"));
+		URI second = writer.append(newArchive(2, 2013, 5, 21, "MSH|^~\\&|s\u00e9cond"));
+		URI third = writer.append(newArchive(3, 2013, 5, 22, "MSH|^~\\&|third"));
+		writer.close();
+		
+		Assert.assertEquals(new File(directory, "2013/05/21.segment").toURI().getPath(), first.getPath());
+		Assert.assertEquals(first.getPath(), second.getPath());
+		Assert.assertTrue(new File(directory, "2013/05/21.index").exists());
+		Assert.assertEquals("MSH|^~\\&|s\u00e9cond", HL7InArchiveSegments.read(new URI(second.toString())));
+		
+		HL7InArchiveSegments.Reader reader = new HL7InArchiveSegments.Reader(1);
+		Assert.assertEquals("MSH|^~\\&|first", reader.read(first));
+		Assert.assertEquals("MSH|^~\\&|third", reader.read(third));
+		Assert.assertEquals("MSH|^~\\&|s\u00e9cond", reader.read(second));
+		reader.close();
+		
+		// appending to the segment of a day later on doesn't move what is already there
+		writer = new HL7InArchiveSegments.Writer(directory);
+		URI fourth = writer.append(newArchive(4, 2013, 5, 21, "MSH|^~\\&|fourth"));
+		writer.close();
+		Assert.assertEquals("MSH|^~\\&|first", HL7InArchiveSegments.read(first));
+		Assert.assertEquals("MSH|^~\\&|fourth", HL7InArchiveSegments.read(fourth));
+	}
+	
+	/**
+	 * @see {@link HL7InArchiveSegments.Writer#append(HL7InArchive)}
+	 */
+	@Test
+	@Verifies(value = "should not overlap messages appended by another writer", method = "append(HL7InArchive)")
+	public void append_shouldNotOverlapMessagesAppendedByAnotherWriter() throws Exception {
+		HL7InArchiveSegments.Writer writer = new HL7InArchiveSegments.Writer(directory);
+		HL7InArchiveSegments.Writer other = new HL7InArchiveSegments.Writer(directory);
+		URI first = writer.append(newArchive(1, 2013, 5, 21, "MSH|^~\\&|first"));
+		URI second = other.append(newArchive(2, 2013, 5, 21, "MSH|^~\\&|second"));
+		URI third = writer.append(newArchive(3, 2013, 5, 21, "MSH|^~\\&|third"));
+		writer.close();
+		other.close();
+		
+		Assert.assertEquals("MSH|^~\\&|first", HL7InArchiveSegments.read(first));
+		Assert.assertEquals("MSH|^~\\&|second", HL7InArchiveSegments.read(second));
+		Assert.assertEquals("MSH|^~\\&|third", HL7InArchiveSegments.read(third));
+	}
+	
+	/**
+	 * @see {@link HL7InArchiveSegments#read(URI)}
+	 */
+	@Test
+	@Verifies(value = "should read a whole file for a location without offset", method = "read(URI)")
+	public void read_shouldReadAWholeFileForALocationWithoutOffset() throws Exception {
+		File file = new File(directory, "archive.txt");
+		FileWriter writer = new FileWriter(file);
+		writer.write("MSH|^~\\&|legacy");
+		writer.close();
+		
+		Assert.assertEquals("MSH|^~\\&|legacy", HL7InArchiveSegments.read(file.toURI()));
+	}
+}
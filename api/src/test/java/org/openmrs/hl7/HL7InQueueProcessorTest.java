@@ -0,0 +1,55 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.hl7;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests methods in the {@link HL7InQueueProcessor}
+ */
+public class HL7InQueueProcessorTest {
+	
+	private HL7InQueue newHL7InQueue(String hl7Data) {
+		HL7Source source = new HL7Source();
+		source.setHL7SourceId(1);
+		HL7InQueue hl7InQueue = new HL7InQueue();
+		hl7InQueue.setHL7Source(source);
+		hl7InQueue.setHL7Data(hl7Data);
+		return hl7InQueue;
+	}
+	
+	/**
+	 * @see {@link HL7InQueueProcessor#getPartitionKey(HL7InQueue)}
+	 */
+	@Test
+	@Verifies(value = "should return the first patient identifier of the message", method = "getPartitionKey(HL7InQueue)")
+	public void getPartitionKey_shouldReturnTheFirstPatientIdentifierOfTheMessage() throws Exception {
+		String hl7Data = "MSH|^~\\&|FORMENTRY|AMRS.ELD|HL7LISTENER|AMRS.ELD|20080226102656||ORU^R01|JqnfhKKtouEz8kzTk6Zo|P|2.5|1\r"
+		        + "PID|||3^^^^~4^^^^||John3^Doe^\r" + "PV1||O|1^Unknown Location||||1^Super User (1-8)|||||||||||||||||||\r";
+		Assert.assertEquals("PID:3^^^^", HL7InQueueProcessor.getPartitionKey(newHL7InQueue(hl7Data)));
+		Assert.assertEquals("PID:7^^^^", HL7InQueueProcessor.getPartitionKey(newHL7InQueue("PID|||7^^^^||John7^Doe^")));
+	}
+	
+	/**
+	 * @see {@link HL7InQueueProcessor#getPartitionKey(HL7InQueue)}
+	 */
+	@Test
+	@Verifies(value = "should return the source for messages without a patient identifier", method = "getPartitionKey(HL7InQueue)")
+	public void getPartitionKey_shouldReturnTheSourceForMessagesWithoutAPatientIdentifier() throws Exception {
+		Assert.assertEquals("source:1", HL7InQueueProcessor.getPartitionKey(newHL7InQueue("a malformed hl7 message")));
+		Assert.assertEquals("source:1", HL7InQueueProcessor.getPartitionKey(newHL7InQueue("MSH|^~\\&|FORMENTRY\rPID|||")));
+	}
+}
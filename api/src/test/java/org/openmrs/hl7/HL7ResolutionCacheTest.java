@@ -0,0 +1,99 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.hl7;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests methods in the {@link HL7ResolutionCache}
+ */
+public class HL7ResolutionCacheTest extends BaseContextSensitiveTest {
+	
+	@Before
+	public void clearCache() throws Exception {
+		HL7ResolutionCache.clearAll();
+	}
+	
+	/**
+	 * @see {@link HL7ResolutionCache#getId(String,String)}
+	 */
+	@Test
+	@Verifies(value = "should return the id put for the key", method = "getId(String,String)")
+	public void getId_shouldReturnTheIdPutForTheKey() throws Exception {
+		String key = HL7ResolutionCache.getKey("SNOMED CT", "2332523");
+		Assert.assertNull(HL7ResolutionCache.getId(HL7ResolutionCache.CONCEPT_BY_MAPPING, key));
+		
+		HL7ResolutionCache.putId(HL7ResolutionCache.CONCEPT_BY_MAPPING, key, 5089);
+		Assert.assertEquals(5089, HL7ResolutionCache.getId(HL7ResolutionCache.CONCEPT_BY_MAPPING, key).intValue());
+		Assert.assertNull(HL7ResolutionCache.getId(HL7ResolutionCache.LOCATION, key));
+		Assert.assertNull(HL7ResolutionCache.getId(HL7ResolutionCache.CONCEPT_BY_MAPPING, HL7ResolutionCache.getKey(
+		    "SNOMED CT|2332523")));
+	}
+	
+	/**
+	 * @see {@link HL7ResolutionCache#getId(String,String)}
+	 */
+	@Test
+	@Verifies(value = "should count hits and misses", method = "getId(String,String)")
+	public void getId_shouldCountHitsAndMisses() throws Exception {
+		String key = HL7ResolutionCache.getKey("1", null);
+		HL7ResolutionCache.getId(HL7ResolutionCache.LOCATION, key);
+		HL7ResolutionCache.putId(HL7ResolutionCache.LOCATION, key, 1);
+		HL7ResolutionCache.getId(HL7ResolutionCache.LOCATION, key);
+		HL7ResolutionCache.getId(HL7ResolutionCache.LOCATION, key);
+		
+		Assert.assertEquals(2, HL7ResolutionCache.getHits(HL7ResolutionCache.LOCATION));
+		Assert.assertEquals(1, HL7ResolutionCache.getMisses(HL7ResolutionCache.LOCATION));
+	}
+	
+	/**
+	 * @see {@link HL7ResolutionCache#putId(String,String,Integer)}
+	 */
+	@Test
+	@Verifies(value = "should evict the least recently used entries", method = "putId(String,String,Integer)")
+	public void putId_shouldEvictTheLeastRecentlyUsedEntries() throws Exception {
+		for (int i = 0; i < HL7ResolutionCache.MAX_ENTRIES_PER_REGION; i++) {
+			HL7ResolutionCache.putId(HL7ResolutionCache.USER, String.valueOf(i), i);
+		}
+		// use the first entry so that the second one is the least recently used
+		Assert.assertNotNull(HL7ResolutionCache.getId(HL7ResolutionCache.USER, "0"));
+		HL7ResolutionCache.putId(HL7ResolutionCache.USER, "new", -1);
+		
+		Assert.assertEquals(HL7ResolutionCache.MAX_ENTRIES_PER_REGION, HL7ResolutionCache.getSize(HL7ResolutionCache.USER));
+		Assert.assertNotNull(HL7ResolutionCache.getId(HL7ResolutionCache.USER, "0"));
+		Assert.assertNull(HL7ResolutionCache.getId(HL7ResolutionCache.USER, "1"));
+		Assert.assertNotNull(HL7ResolutionCache.getId(HL7ResolutionCache.USER, "new"));
+	}
+	
+	/**
+	 * @see {@link HL7ResolutionCache#getGlobalProperty(String,String)}
+	 */
+	@Test
+	@Verifies(value = "should return the value saved after it was cached", method = "getGlobalProperty(String,String)")
+	public void getGlobalProperty_shouldReturnTheValueSavedAfterItWasCached() throws Exception {
+		Assert.assertEquals("default", HL7ResolutionCache.getGlobalProperty("hl7.test.property", "default"));
+		Assert.assertEquals("default", HL7ResolutionCache.getGlobalProperty("hl7.test.property", "default"));
+		Assert.assertEquals(1, HL7ResolutionCache.getHits(HL7ResolutionCache.GLOBAL_PROPERTY));
+		
+		Context.getAdministrationService().saveGlobalProperty(new GlobalProperty("hl7.test.property", "saved"));
+		Context.flushSession();
+		Assert.assertEquals("saved", HL7ResolutionCache.getGlobalProperty("hl7.test.property", "default"));
+	}
+}
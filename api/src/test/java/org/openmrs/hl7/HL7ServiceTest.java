@@ -16,9 +16,12 @@ package org.openmrs.hl7;
 import static org.junit.Assert.assertEquals;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.apache.commons.logging.Log;
@@ -731,4 +734,154 @@ public class HL7ServiceTest extends BaseContextSensitiveTest {
 		Assert.assertNull(locationId);
 	}
 	
+
+	/**
+	 * @see {@link HL7Service#claimNextHL7InQueues(int)}
+	 */
+	@Test
+	@Verifies(value = "should claim the first pending queue items", method = "claimNextHL7InQueues(int)")
+	public void claimNextHL7InQueues_shouldClaimTheFirstPendingQueueItems() throws Exception {
+		executeDataSet("org/openmrs/hl7/include/ORUTest-initialData.xml");
+		HL7Service hl7service = Context.getHL7Service();
+
+		List<HL7InQueue> claimed = hl7service.claimNextHL7InQueues(1);
+		Assert.assertEquals(1, claimed.size());
+		Assert.assertEquals(1, claimed.get(0).getHL7InQueueId().intValue());
+		Assert.assertEquals(HL7Constants.HL7_STATUS_PENDING, claimed.get(0).getMessageState());
+		Assert.assertEquals(HL7Constants.HL7_STATUS_PROCESSING, hl7service.getHL7InQueue(1).getMessageState());
+		Assert.assertEquals(HL7Constants.HL7_STATUS_PENDING, hl7service.getHL7InQueue(2).getMessageState());
+
+		// the claimed items can be processed as before, by another session
+		Context.clearSession();
+		hl7service.processHL7InQueue(claimed.get(0));
+		Assert.assertNull(hl7service.getHL7InQueue(1));
+	}
+
+	/**
+	 * @see {@link HL7Service#claimNextHL7InQueues(int)}
+	 */
+	@Test
+	@Verifies(value = "should not claim queue items again", method = "claimNextHL7InQueues(int)")
+	public void claimNextHL7InQueues_shouldNotClaimQueueItemsAgain() throws Exception {
+		executeDataSet("org/openmrs/hl7/include/ORUTest-initialData.xml");
+		HL7Service hl7service = Context.getHL7Service();
+
+		Assert.assertEquals(2, hl7service.claimNextHL7InQueues(10).size());
+		Assert.assertEquals(0, hl7service.claimNextHL7InQueues(10).size());
+		Assert.assertNull(hl7service.getNextHL7InQueue());
+	}
+	
+	/**
+	 * @see {@link HL7Service#releaseHL7InQueueClaims(Date,boolean)}
+	 */
+	@Test
+	@Verifies(value = "should release items claimed before the given date", method = "releaseHL7InQueueClaims(Date,boolean)")
+	public void releaseHL7InQueueClaims_shouldReleaseItemsClaimedBeforeTheGivenDate() throws Exception {
+		executeDataSet("org/openmrs/hl7/include/ORUTest-initialData.xml");
+		HL7Service hl7service = Context.getHL7Service();
+		Assert.assertEquals(2, hl7service.claimNextHL7InQueues(10).size());
+		
+		Calendar later = Calendar.getInstance();
+		later.add(Calendar.MINUTE, 1);
+		Assert.assertEquals(2, hl7service.releaseHL7InQueueClaims(later.getTime(), false));
+		Context.clearSession();
+		Assert.assertEquals(HL7Constants.HL7_STATUS_PENDING, hl7service.getHL7InQueue(1).getMessageState());
+		Assert.assertNull(hl7service.getHL7InQueue(1).getDateClaimed());
+		Assert.assertEquals(2, hl7service.claimNextHL7InQueues(10).size());
+	}
+	
+	/**
+	 * @see {@link HL7Service#releaseHL7InQueueClaims(Date,boolean)}
+	 */
+	@Test
+	@Verifies(value = "should not release items claimed after the given date", method = "releaseHL7InQueueClaims(Date,boolean)")
+	public void releaseHL7InQueueClaims_shouldNotReleaseItemsClaimedAfterTheGivenDate() throws Exception {
+		executeDataSet("org/openmrs/hl7/include/ORUTest-initialData.xml");
+		HL7Service hl7service = Context.getHL7Service();
+		Assert.assertEquals(2, hl7service.claimNextHL7InQueues(10).size());
+		
+		Calendar earlier = Calendar.getInstance();
+		earlier.add(Calendar.MINUTE, -1);
+		Assert.assertEquals(0, hl7service.releaseHL7InQueueClaims(earlier.getTime(), true));
+		Context.clearSession();
+		Assert.assertEquals(HL7Constants.HL7_STATUS_PROCESSING, hl7service.getHL7InQueue(1).getMessageState());
+		Assert.assertNotNull(hl7service.getHL7InQueue(1).getDateClaimed());
+	}
+	
+	/**
+	 * @see {@link HL7Service#releaseHL7InQueueClaims(Date,boolean)}
+	 */
+	@Test
+	@Verifies(value = "should release items without a claim date only if asked to", method = "releaseHL7InQueueClaims(Date,boolean)")
+	public void releaseHL7InQueueClaims_shouldReleaseItemsWithoutAClaimDateOnlyIfAskedTo() throws Exception {
+		executeDataSet("org/openmrs/hl7/include/ORUTest-initialData.xml");
+		HL7Service hl7service = Context.getHL7Service();
+		HL7InQueue hl7InQueue = hl7service.getHL7InQueue(1);
+		hl7InQueue.setMessageState(HL7Constants.HL7_STATUS_PROCESSING);
+		hl7service.saveHL7InQueue(hl7InQueue);
+		Context.flushSession();
+		
+		Date now = new Date();
+		Assert.assertEquals(0, hl7service.releaseHL7InQueueClaims(now, false));
+		Assert.assertEquals(1, hl7service.releaseHL7InQueueClaims(now, true));
+		Context.clearSession();
+		Assert.assertEquals(HL7Constants.HL7_STATUS_PENDING, hl7service.getHL7InQueue(1).getMessageState());
+	}
+	
+	/**
+	 * @see {@link HL7Service#migrateHl7InArchivesToFileSystem(Map)}
+	 */
+	@Test
+	@Verifies(value = "should move the hl7 data of processed archives into segment files", method = "migrateHl7InArchivesToFileSystem(Map)")
+	public void migrateHl7InArchivesToFileSystem_shouldMoveTheHl7DataOfProcessedArchivesIntoSegmentFiles()
+	        throws Exception {
+		File tempDir = new File(System.getProperty("java.io.tmpdir"), "hl7_archive_segments_test");
+		if (tempDir.exists()) {
+			OpenmrsUtil.deleteDirectory(tempDir);
+		}
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_HL7_ARCHIVE_DIRECTORY, tempDir.getAbsolutePath()));
+		
+		HL7Service hl7service = Context.getHL7Service();
+		HL7Source source = hl7service.getHL7Source(1);
+		List<HL7InArchive> archives = new ArrayList<HL7InArchive>();
+		for (int i = 0; i < 3; i++) {
+			Calendar calendar = Calendar.getInstance();
+			calendar.add(Calendar.YEAR, -2);
+			calendar.add(Calendar.DATE, i / 2);
+			HL7InArchive archive = new HL7InArchive();
+			archive.setHL7Source(source);
+			archive.setHL7Data("MSH|^~\\&|" + i);
+			archive.setDateCreated(calendar.getTime());
+			archive.setMessageState(HL7Constants.HL7_STATUS_PROCESSED);
+			archives.add(hl7service.saveHL7InArchive(archive));
+		}
+		
+		Map<String, Integer> progress = new HashMap<String, Integer>();
+		Hl7InArchivesMigrateThread.setActive(true);
+		Hl7InArchivesMigrateThread.setTransferStatus(Hl7InArchivesMigrateThread.Status.RUNNING);
+		try {
+			hl7service.migrateHl7InArchivesToFileSystem(progress);
+		}
+		finally {
+			Hl7InArchivesMigrateThread.setActive(false);
+			Hl7InArchivesMigrateThread.setTransferStatus(Hl7InArchivesMigrateThread.Status.NONE);
+		}
+		Assert.assertEquals(3, progress.get(HL7Constants.NUMBER_TRANSFERRED_KEY).intValue());
+		
+		Context.clearSession();
+		List<HL7InArchive> migrated = new ArrayList<HL7InArchive>();
+		for (HL7InArchive archive : archives) {
+			HL7InArchive reloaded = hl7service.getHL7InArchive(archive.getHL7InArchiveId());
+			Assert.assertEquals(HL7Constants.HL7_STATUS_MIGRATED, reloaded.getMessageState());
+			Assert.assertTrue(reloaded.getHL7Data().contains(HL7InArchiveSegments.SEGMENT_FILE_EXTENSION + "#"));
+			migrated.add(reloaded);
+		}
+		
+		hl7service.loadHL7InArchiveData(migrated);
+		for (int i = 0; i < 3; i++) {
+			Assert.assertEquals("MSH|^~\\&|" + i, migrated.get(i).getHL7Data());
+		}
+		OpenmrsUtil.deleteDirectory(tempDir);
+	}
 }
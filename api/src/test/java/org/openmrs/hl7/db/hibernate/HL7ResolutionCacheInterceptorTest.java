@@ -0,0 +1,68 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.hl7.db.hibernate;
+
+import org.hibernate.Transaction;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.openmrs.Location;
+import org.openmrs.api.context.Context;
+import org.openmrs.hl7.HL7ResolutionCache;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the {@link HL7ResolutionCacheInterceptor}
+ */
+public class HL7ResolutionCacheInterceptorTest extends BaseContextSensitiveTest {
+	
+	/**
+	 * @see {@link HL7ResolutionCacheInterceptor#onSave(Object,Serializable,Object[],String[],Type[])}
+	 */
+	@Test
+	@Verifies(value = "should empty the region of the saved object", method = "onSave(Object,Serializable,Object[],String[],Type[])")
+	public void onSave_shouldEmptyTheRegionOfTheSavedObject() throws Exception {
+		HL7ResolutionCache.clearAll();
+		HL7ResolutionCache.putId(HL7ResolutionCache.LOCATION, "Xanadu", 1);
+		HL7ResolutionCache.putId(HL7ResolutionCache.USER, "admin", 1);
+		
+		Location location = new Location();
+		location.setName("Xanadu");
+		Context.getLocationService().saveLocation(location);
+		Context.flushSession();
+		
+		Assert.assertEquals(0, HL7ResolutionCache.getSize(HL7ResolutionCache.LOCATION));
+		Assert.assertEquals(1, HL7ResolutionCache.getSize(HL7ResolutionCache.USER));
+	}
+	
+	/**
+	 * @see {@link HL7ResolutionCacheInterceptor#afterTransactionCompletion(Transaction)}
+	 */
+	@Test
+	@Verifies(value = "should empty all regions when the transaction is rolled back", method = "afterTransactionCompletion(Transaction)")
+	public void afterTransactionCompletion_shouldEmptyAllRegionsWhenTheTransactionIsRolledBack() throws Exception {
+		HL7ResolutionCache.clearAll();
+		HL7ResolutionCache.putId(HL7ResolutionCache.PROVIDER, "1", 1);
+		
+		Transaction tx = Mockito.mock(Transaction.class);
+		Mockito.when(tx.wasRolledBack()).thenReturn(false);
+		new HL7ResolutionCacheInterceptor().afterTransactionCompletion(tx);
+		Assert.assertEquals(1, HL7ResolutionCache.getSize(HL7ResolutionCache.PROVIDER));
+		
+		Mockito.when(tx.wasRolledBack()).thenReturn(true);
+		new HL7ResolutionCacheInterceptor().afterTransactionCompletion(tx);
+		Assert.assertEquals(0, HL7ResolutionCache.getSize(HL7ResolutionCache.PROVIDER));
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.logic;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Cohort;
+import org.openmrs.logic.datasource.BatchLogicDataSource;
+import org.openmrs.logic.datasource.LogicDataSource;
+import org.openmrs.logic.result.ColumnarResult;
+import org.openmrs.logic.result.Result;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the {@link LogicUtil} class
+ */
+public class LogicUtilTest {
+	
+	/**
+	 * @see {@link LogicUtil#read(LogicDataSource,LogicContext,Cohort,List)}
+	 */
+	@Test
+	@Verifies(value = "should read each criteria from a data source that cannot read in batches", method = "read(LogicDataSource,LogicContext,Cohort,List)")
+	public void read_shouldReadEachCriteriaFromADataSourceThatCannotReadInBatches() throws Exception {
+		LogicCriteria weight = mock(LogicCriteria.class);
+		LogicCriteria height = mock(LogicCriteria.class);
+		LogicDataSource dataSource = mock(LogicDataSource.class);
+		Map<Integer, Result> weights = new HashMap<Integer, Result>();
+		weights.put(2, new Result(60.0));
+		when(dataSource.read(any(LogicContext.class), any(Cohort.class), eq(weight))).thenReturn(weights);
+		when(dataSource.read(any(LogicContext.class), any(Cohort.class), eq(height))).thenReturn(
+		    Collections.<Integer, Result> emptyMap());
+		
+		Map<LogicCriteria, ColumnarResult> columns = LogicUtil.read(dataSource, null, new Cohort(), Arrays.asList(weight,
+		    height));
+		Assert.assertEquals(Arrays.asList(weight, height), Arrays.asList(columns.keySet().toArray()));
+		Assert.assertEquals(60.0, columns.get(weight).getNumericValue(columns.get(weight).getFirstRow(2)), 0);
+		Assert.assertEquals(0, columns.get(height).getRowCount());
+		Assert.assertEquals(60.0, LogicUtil.toResults(columns).get(weight).get(2).toNumber(), 0);
+	}
+	
+	/**
+	 * @see {@link LogicUtil#read(LogicDataSource,LogicContext,Cohort,List)}
+	 */
+	@Test
+	@Verifies(value = "should read all criteria at once from a batch data source", method = "read(LogicDataSource,LogicContext,Cohort,List)")
+	public void read_shouldReadAllCriteriaAtOnceFromABatchDataSource() throws Exception {
+		LogicCriteria weight = mock(LogicCriteria.class);
+		LogicCriteria height = mock(LogicCriteria.class);
+		List<LogicCriteria> criteria = Arrays.asList(weight, height);
+		BatchLogicDataSource dataSource = mock(BatchLogicDataSource.class);
+		Map<LogicCriteria, ColumnarResult> read = new HashMap<LogicCriteria, ColumnarResult>();
+		read.put(weight, new ColumnarResult.Builder(1).add(2, ColumnarResult.NULL_DATE, Result.Datatype.NUMERIC, 60.0,
+		    ColumnarResult.NULL_DATE, 0, null).build());
+		when(dataSource.readColumns(null, null, criteria)).thenReturn(read);
+		
+		Map<LogicCriteria, ColumnarResult> columns = LogicUtil.read(dataSource, null, null, criteria);
+		verify(dataSource, times(1)).readColumns(null, null, criteria);
+		verify(dataSource, times(0)).read(any(LogicContext.class), any(Cohort.class), any(LogicCriteria.class));
+		Assert.assertEquals(1, columns.get(weight).getRowCount());
+		Assert.assertEquals(0, columns.get(height).getRowCount());
+	}
+}
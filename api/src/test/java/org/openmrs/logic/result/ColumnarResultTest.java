@@ -0,0 +1,208 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.logic.result;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.logic.Duration;
+import org.openmrs.logic.LogicException;
+import org.openmrs.logic.op.Operator;
+import org.openmrs.logic.result.Result.Datatype;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the {@link ColumnarResult} class
+ */
+public class ColumnarResultTest {
+	
+	private static final long DAY = 86400000L;
+	
+	private static final Date INDEX_DATE = new Date(1000 * DAY);
+	
+	/**
+	 * Builds numeric rows from patient id, days before the index date and value triples, added out
+	 * of order
+	 */
+	private static ColumnarResult numeric(double... rows) {
+		ColumnarResult.Builder builder = new ColumnarResult.Builder(0);
+		for (int i = rows.length - 3; i >= 0; i -= 3) {
+			builder.add((int) rows[i], INDEX_DATE.getTime() - (long) rows[i + 1] * DAY, Datatype.NUMERIC, rows[i + 2],
+			    ColumnarResult.NULL_DATE, 0, null);
+		}
+		return builder.build();
+	}
+	
+	private static double[] values(ColumnarResult result) {
+		double[] values = new double[result.getRowCount()];
+		for (int row = 0; row < values.length; row++) {
+			values[row] = result.getNumericValue(row);
+		}
+		return values;
+	}
+	
+	/**
+	 * @see {@link ColumnarResult#fromResults(Map)}
+	 */
+	@Test
+	@Verifies(value = "should add a row for each value of each patient", method = "fromResults(Map)")
+	public void fromResults_shouldAddARowForEachValueOfEachPatient() throws Exception {
+		Map<Integer, Result> results = new HashMap<Integer, Result>();
+		Result list = new Result();
+		list.add(new Result(new Date(2 * DAY), 5.0, null));
+		list.add(new Result(new Date(DAY), new Concept(7), null));
+		results.put(20, list);
+		results.put(10, new Result(new Date(3 * DAY), "text", null));
+		results.put(30, Result.emptyResult());
+		
+		ColumnarResult columns = ColumnarResult.fromResults(results);
+		Assert.assertEquals(3, columns.getRowCount());
+		Assert.assertArrayEquals(new int[] { 10, 20 }, columns.getPatientIds());
+		Assert.assertFalse(columns.hasPatient(30));
+		Assert.assertEquals("text", columns.getTextValue(0));
+		
+		int row = columns.getFirstRow(20);
+		Assert.assertEquals(2, columns.getRowCount(20));
+		Assert.assertEquals(DAY, columns.getResultDate(row));
+		Assert.assertEquals(Datatype.CODED, columns.getDatatype(row));
+		Assert.assertEquals(7, columns.getCodedValue(row));
+		Assert.assertEquals(5.0, columns.getNumericValue(row + 1), 0);
+	}
+	
+	/**
+	 * @see {@link ColumnarResult#getResult(int)}
+	 */
+	@Test
+	@Verifies(value = "should return the rows of the patient", method = "getResult(int)")
+	public void getResult_shouldReturnTheRowsOfThePatient() throws Exception {
+		ColumnarResult columns = numeric(1, 2, 5.0, 1, 1, 6.0, 2, 1, 7.0);
+		
+		Result result = columns.getResult(1);
+		Assert.assertEquals(2, result.size());
+		Assert.assertEquals(5.0, result.get(0).toNumber(), 0);
+		Assert.assertEquals(6.0, result.latest().toNumber(), 0);
+		Assert.assertEquals(7.0, columns.getResult(2).toNumber(), 0);
+		Assert.assertTrue(columns.getResult(3).isNull());
+		Assert.assertEquals(2, columns.toResults().size());
+	}
+	
+	/**
+	 * @see {@link ColumnarResult#last()}
+	 */
+	@Test
+	@Verifies(value = "should keep the latest row of each patient", method = "last()")
+	public void last_shouldKeepTheLatestRowOfEachPatient() throws Exception {
+		ColumnarResult last = numeric(1, 3, 5.0, 1, 1, 6.0, 1, 2, 7.0, 2, 1, 8.0).last();
+		Assert.assertArrayEquals(new double[] { 6.0, 8.0 }, values(last), 0);
+	}
+	
+	/**
+	 * @see {@link ColumnarResult#first()}
+	 */
+	@Test
+	@Verifies(value = "should skip rows without a result date", method = "first()")
+	public void first_shouldSkipRowsWithoutAResultDate() throws Exception {
+		ColumnarResult columns = new ColumnarResult.Builder(3).add(1, ColumnarResult.NULL_DATE, Datatype.NUMERIC, 1.0,
+		    ColumnarResult.NULL_DATE, 0, null).add(1, 5 * DAY, Datatype.NUMERIC, 2.0, ColumnarResult.NULL_DATE, 0, null)
+		        .add(2, ColumnarResult.NULL_DATE, Datatype.NUMERIC, 3.0, ColumnarResult.NULL_DATE, 0, null).build();
+		
+		Assert.assertArrayEquals(new double[] { 2.0, 3.0 }, values(columns.first()), 0);
+		Assert.assertArrayEquals(new double[] { 2.0, 3.0 }, values(columns.first(2)), 0);
+	}
+	
+	/**
+	 * @see {@link ColumnarResult#average()}
+	 */
+	@Test
+	@Verifies(value = "should average the numeric values of each patient", method = "average()")
+	public void average_shouldAverageTheNumericValuesOfEachPatient() throws Exception {
+		ColumnarResult average = numeric(1, 3, 5.0, 1, 1, 7.0, 2, 1, 8.0).average();
+		Assert.assertArrayEquals(new int[] { 1, 2 }, average.getPatientIds());
+		Assert.assertArrayEquals(new double[] { 6.0, 8.0 }, values(average), 0);
+		Assert.assertArrayEquals(new double[] { 2.0, 1.0 }, values(numeric(1, 3, 5.0, 1, 1, 7.0, 2, 1, 8.0).count()), 0);
+	}
+	
+	/**
+	 * @see {@link ColumnarResult#within(Date,Duration)}
+	 */
+	@Test
+	@Verifies(value = "should keep the rows within the duration before the index date", method = "within(Date,Duration)")
+	public void within_shouldKeepTheRowsWithinTheDurationBeforeTheIndexDate() throws Exception {
+		ColumnarResult columns = numeric(1, 10, 5.0, 1, 3, 6.0, 2, 8, 7.0, 3, -1, 8.0);
+		ColumnarResult within = columns.within(INDEX_DATE, Duration.days(7));
+		Assert.assertArrayEquals(new int[] { 1 }, within.getPatientIds());
+		Assert.assertArrayEquals(new double[] { 6.0 }, values(within), 0);
+	}
+	
+	/**
+	 * @see {@link ColumnarResult#gt(double)}
+	 */
+	@Test
+	@Verifies(value = "should keep the rows with a greater numeric value", method = "gt(double)")
+	public void gt_shouldKeepTheRowsWithAGreaterNumericValue() throws Exception {
+		ColumnarResult columns = numeric(1, 3, 150.0, 1, 1, 250.0, 2, 1, 200.0);
+		Assert.assertArrayEquals(new double[] { 250.0 }, values(columns.gt(200)), 0);
+		Assert.assertArrayEquals(new double[] { 250.0, 200.0 }, values(columns.gte(200)), 0);
+		Assert.assertArrayEquals(new double[] { 150.0 }, values(columns.lt(200)), 0);
+		
+		// the operators chain like logic criteria
+		Assert.assertArrayEquals(new double[] { 150.0 }, values(columns.lt(200).last()), 0);
+		Assert.assertArrayEquals(new double[] { 250.0, 200.0 }, values(columns.last().gte(200)), 0);
+	}
+	
+	/**
+	 * @see {@link ColumnarResult#in(int[])}
+	 */
+	@Test
+	@Verifies(value = "should keep the rows coded as one of the concepts", method = "in(int[])")
+	public void in_shouldKeepTheRowsCodedAsOneOfTheConcepts() throws Exception {
+		ColumnarResult columns = new ColumnarResult.Builder(3).add(1, DAY, Datatype.CODED, Double.NaN,
+		    ColumnarResult.NULL_DATE, 7, null).add(1, 2 * DAY, Datatype.CODED, Double.NaN, ColumnarResult.NULL_DATE, 8,
+		    null).add(2, DAY, Datatype.CODED, Double.NaN, ColumnarResult.NULL_DATE, 9, null).build();
+		
+		ColumnarResult in = columns.in(9, 7);
+		Assert.assertEquals(2, in.getRowCount());
+		Assert.assertEquals(7, in.getCodedValue(0));
+		Assert.assertEquals(9, in.getCodedValue(1));
+		Assert.assertEquals(2, columns.contains(8).getRowCount());
+	}
+	
+	/**
+	 * @see {@link ColumnarResult#apply(Operator,Object,Date)}
+	 */
+	@Test
+	@Verifies(value = "should apply the comparison operators", method = "apply(Operator,Object,Date)")
+	public void apply_shouldApplyTheComparisonOperators() throws Exception {
+		ColumnarResult columns = numeric(1, 10, 150.0, 1, 1, 250.0);
+		Assert.assertEquals(1, columns.apply(Operator.GT, 200, INDEX_DATE).getRowCount());
+		Assert.assertEquals(1, columns.apply(Operator.WITHIN, Duration.days(5), INDEX_DATE).getRowCount());
+		Assert.assertEquals(1, columns.apply(Operator.BEFORE, new Date(INDEX_DATE.getTime() - 5 * DAY), INDEX_DATE)
+		        .getRowCount());
+		Assert.assertEquals(0, columns.apply(Operator.IN, Arrays.asList(new Concept(7)), INDEX_DATE).getRowCount());
+	}
+	
+	/**
+	 * @see {@link ColumnarResult#apply(Operator,Object,Date)}
+	 */
+	@Test(expected = LogicException.class)
+	@Verifies(value = "should fail for an unsupported operand", method = "apply(Operator,Object,Date)")
+	public void apply_shouldFailForAnUnsupportedOperand() throws Exception {
+		numeric(1, 10, 150.0).apply(Operator.BEFORE, 200, INDEX_DATE);
+	}
+}
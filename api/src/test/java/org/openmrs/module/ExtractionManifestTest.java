@@ -0,0 +1,110 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module;
+
+import java.io.File;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the {@link ExtractionManifest} class
+ */
+public class ExtractionManifestTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private ZipEntry createEntry(String name, long crc, long size) {
+		ZipEntry entry = new ZipEntry(name);
+		entry.setCrc(crc);
+		entry.setSize(size);
+		return entry;
+	}
+	
+	private File getManifestFile() {
+		return new File(folder.getRoot(), ExtractionManifest.FILENAME);
+	}
+	
+	/**
+	 * @see {@link ExtractionManifest#isExtracted(String,ZipEntry)}
+	 */
+	@Test
+	@Verifies(value = "should return true for an unchanged entry", method = "isExtracted(String,ZipEntry)")
+	public void isExtracted_shouldReturnTrueForAnUnchangedEntry() throws Exception {
+		FileUtils.writeStringToFile(new File(folder.getRoot(), "lib/a.jar"), "12345");
+		ExtractionManifest manifest = new ExtractionManifest(getManifestFile(), folder.getRoot());
+		Assert.assertFalse(manifest.isExtracted("lib/a.jar", createEntry("lib/a.jar", 42, 5)));
+		manifest.setExtracted("lib/a.jar", createEntry("lib/a.jar", 42, 5));
+		manifest.setChecksum("abc");
+		manifest.save();
+		
+		manifest = new ExtractionManifest(getManifestFile(), folder.getRoot());
+		Assert.assertEquals("abc", manifest.getChecksum());
+		Assert.assertTrue(manifest.isExtracted("lib/a.jar", createEntry("lib/a.jar", 42, 5)));
+	}
+	
+	/**
+	 * @see {@link ExtractionManifest#isExtracted(String,ZipEntry)}
+	 */
+	@Test
+	@Verifies(value = "should return false if the entry changed", method = "isExtracted(String,ZipEntry)")
+	public void isExtracted_shouldReturnFalseIfTheEntryChanged() throws Exception {
+		FileUtils.writeStringToFile(new File(folder.getRoot(), "lib/a.jar"), "12345");
+		ExtractionManifest manifest = new ExtractionManifest(getManifestFile(), folder.getRoot());
+		manifest.setExtracted("lib/a.jar", createEntry("lib/a.jar", 42, 5));
+		
+		Assert.assertFalse(manifest.isExtracted("lib/a.jar", createEntry("lib/a.jar", 43, 5)));
+		Assert.assertFalse(manifest.isExtracted("lib/a.jar", createEntry("lib/a.jar", 42, 6)));
+	}
+	
+	/**
+	 * @see {@link ExtractionManifest#isExtracted(String,ZipEntry)}
+	 */
+	@Test
+	@Verifies(value = "should return false if the file is missing", method = "isExtracted(String,ZipEntry)")
+	public void isExtracted_shouldReturnFalseIfTheFileIsMissing() throws Exception {
+		ExtractionManifest manifest = new ExtractionManifest(getManifestFile(), folder.getRoot());
+		manifest.setExtracted("lib/a.jar", createEntry("lib/a.jar", 42, 5));
+		
+		Assert.assertFalse(manifest.isExtracted("lib/a.jar", createEntry("lib/a.jar", 42, 5)));
+	}
+	
+	/**
+	 * @see {@link ExtractionManifest#removeStaleFiles()}
+	 */
+	@Test
+	@Verifies(value = "should delete the files of entries no longer in the module", method = "removeStaleFiles()")
+	public void removeStaleFiles_shouldDeleteTheFilesOfEntriesNoLongerInTheModule() throws Exception {
+		File kept = new File(folder.getRoot(), "lib/a.jar");
+		File stale = new File(folder.getRoot(), "lib/b.jar");
+		FileUtils.writeStringToFile(kept, "12345");
+		FileUtils.writeStringToFile(stale, "12345");
+		ExtractionManifest manifest = new ExtractionManifest(getManifestFile(), folder.getRoot());
+		manifest.setExtracted("lib/a.jar", createEntry("lib/a.jar", 42, 5));
+		manifest.setExtracted("lib/b.jar", createEntry("lib/b.jar", 42, 5));
+		manifest.save();
+		
+		manifest = new ExtractionManifest(getManifestFile(), folder.getRoot());
+		Assert.assertTrue(manifest.isExtracted("lib/a.jar", createEntry("lib/a.jar", 42, 5)));
+		Assert.assertEquals(1, manifest.removeStaleFiles());
+		Assert.assertTrue(kept.exists());
+		Assert.assertFalse(stale.exists());
+	}
+}
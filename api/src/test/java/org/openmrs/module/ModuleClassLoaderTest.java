@@ -0,0 +1,117 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the {@link ModuleClassLoader} class
+ */
+public class ModuleClassLoaderTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File createJar(String name, Manifest manifest, String... entries) throws Exception {
+		File file = new File(folder.getRoot(), name);
+		JarOutputStream out = manifest == null ? new JarOutputStream(new FileOutputStream(file)) : new JarOutputStream(
+		        new FileOutputStream(file), manifest);
+		try {
+			for (String entry : entries) {
+				out.putNextEntry(new JarEntry(entry));
+				out.closeEntry();
+			}
+		}
+		finally {
+			out.close();
+		}
+		return file;
+	}
+	
+	/**
+	 * @see {@link ModuleClassLoader.ResourceIndex#add(java.net.URL)}
+	 */
+	@Test
+	@Verifies(value = "should add the entries of the jar", method = "add(URL)")
+	public void add_shouldAddTheEntriesOfTheJar() throws Exception {
+		ModuleClassLoader.ResourceIndex index = new ModuleClassLoader.ResourceIndex();
+		index.add(ModuleUtil.file2url(createJar("first.jar", null, "org/", "org/openmrs/", "org/openmrs/Foo.class")));
+		index.add(ModuleUtil.file2url(createJar("second.jar", null, "moduleApplicationContext.xml")));
+		
+		Assert.assertTrue(index.mightContain("org/openmrs/Foo.class"));
+		Assert.assertTrue(index.mightContain("org/openmrs/"));
+		Assert.assertTrue(index.mightContain("org/openmrs"));
+		Assert.assertTrue(index.mightContain("moduleApplicationContext.xml"));
+		Assert.assertFalse(index.mightContain("org/openmrs/Bar.class"));
+		Assert.assertFalse(index.mightContain("messages.properties"));
+	}
+	
+	/**
+	 * @see {@link ModuleClassLoader.ResourceIndex#addAll(java.util.Collection)}
+	 */
+	@Test
+	@Verifies(value = "should add the entries of all the jars", method = "addAll(Collection)")
+	public void addAll_shouldAddTheEntriesOfAllTheJars() throws Exception {
+		ModuleClassLoader.ResourceIndex index = new ModuleClassLoader.ResourceIndex();
+		index.add(ModuleUtil.file2url(createJar("first.jar", null, "org/openmrs/Foo.class")));
+		index.addAll(Arrays.asList(ModuleUtil.file2url(createJar("second.jar", null, "org/openmrs/Bar.class")),
+		    ModuleUtil.file2url(createJar("third.jar", null, "moduleApplicationContext.xml"))));
+		
+		Assert.assertTrue(index.mightContain("org/openmrs/Foo.class"));
+		Assert.assertTrue(index.mightContain("org/openmrs/Bar.class"));
+		Assert.assertTrue(index.mightContain("moduleApplicationContext.xml"));
+		Assert.assertFalse(index.mightContain("messages.properties"));
+	}
+	
+	/**
+	 * @see {@link ModuleClassLoader.ResourceIndex#add(java.net.URL)}
+	 */
+	@Test
+	@Verifies(value = "should make the index incomplete for a url that is not a jar", method = "add(URL)")
+	public void add_shouldMakeTheIndexIncompleteForAUrlThatIsNotAJar() throws Exception {
+		ModuleClassLoader.ResourceIndex index = new ModuleClassLoader.ResourceIndex();
+		index.add(ModuleUtil.file2url(createJar("first.jar", null, "org/openmrs/Foo.class")));
+		Assert.assertFalse(index.mightContain("messages.properties"));
+		
+		index.add(ModuleUtil.file2url(folder.newFolder("classes")));
+		Assert.assertTrue(index.mightContain("messages.properties"));
+	}
+	
+	/**
+	 * @see {@link ModuleClassLoader.ResourceIndex#add(java.net.URL)}
+	 */
+	@Test
+	@Verifies(value = "should make the index incomplete for a jar with a manifest class path", method = "add(URL)")
+	public void add_shouldMakeTheIndexIncompleteForAJarWithAManifestClassPath() throws Exception {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, "other.jar");
+		
+		ModuleClassLoader.ResourceIndex index = new ModuleClassLoader.ResourceIndex();
+		index.add(ModuleUtil.file2url(createJar("first.jar", manifest, "org/openmrs/Foo.class")));
+		Assert.assertTrue(index.mightContain("org/openmrs/Bar.class"));
+	}
+}
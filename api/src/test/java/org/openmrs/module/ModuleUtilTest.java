@@ -18,13 +18,20 @@ import static org.hamcrest.Matchers.empty;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.util.Arrays;
 import java.util.Properties;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 
 import junit.framework.Assert;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.After;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mock;
 import org.openmrs.GlobalProperty;
 import org.openmrs.api.AdministrationService;
@@ -46,6 +53,9 @@ public class ModuleUtilTest extends BaseContextMockTest {
 	
 	Properties initialRuntimeProperties;
 	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
 	/**
 	 * @see {@link org.openmrs.module.ModuleUtil#checkMandatoryModulesStarted()}
 	 */
@@ -453,4 +463,48 @@ public class ModuleUtilTest extends BaseContextMockTest {
 		String requiredOpenmrsVersion = "1.9.2-ALPHA";
 		ModuleUtil.checkRequiredVersion(openMRSVersion, requiredOpenmrsVersion);
 	}
+	
+	private File createJar(String name, String... entriesAndContents) throws Exception {
+		File file = new File(folder.getRoot(), name);
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+		try {
+			for (int i = 0; i < entriesAndContents.length; i += 2) {
+				out.putNextEntry(new JarEntry(entriesAndContents[i]));
+				out.write(entriesAndContents[i + 1].getBytes("UTF-8"));
+				out.closeEntry();
+			}
+		}
+		finally {
+			out.close();
+		}
+		return file;
+	}
+	
+	/**
+	 * @see {@link ModuleUtil#expandJar(File,File,String,boolean,ExtractionManifest)}
+	 */
+	@Test
+	@Verifies(value = "should only expand the entries that changed", method = "expandJar(File,File,String,boolean,ExtractionManifest)")
+	public void expandJar_shouldOnlyExpandTheEntriesThatChanged() throws Exception {
+		File dir = folder.newFolder("expanded");
+		File manifestFile = new File(dir, ExtractionManifest.FILENAME);
+		File jar = createJar("first.omod", "lib/a.jar", "aaaa", "lib/b.jar", "bbbb", "other.xml", "xml");
+		
+		ExtractionManifest manifest = new ExtractionManifest(manifestFile, dir);
+		ModuleUtil.expandJar(jar, dir, "lib", true, manifest);
+		manifest.save();
+		Assert.assertEquals("aaaa", FileUtils.readFileToString(new File(dir, "lib/a.jar")));
+		Assert.assertEquals("bbbb", FileUtils.readFileToString(new File(dir, "lib/b.jar")));
+		Assert.assertFalse(new File(dir, "other.xml").exists());
+		
+		// mark the extracted files, so we can tell which ones get written again
+		FileUtils.writeStringToFile(new File(dir, "lib/a.jar"), "AAAA");
+		FileUtils.writeStringToFile(new File(dir, "lib/b.jar"), "BBBB");
+		jar = createJar("second.omod", "lib/a.jar", "aaaa", "lib/b.jar", "cccc");
+		
+		manifest = new ExtractionManifest(manifestFile, dir);
+		ModuleUtil.expandJar(jar, dir, "lib", true, manifest);
+		Assert.assertEquals("AAAA", FileUtils.readFileToString(new File(dir, "lib/a.jar")));
+		Assert.assertEquals("cccc", FileUtils.readFileToString(new File(dir, "lib/b.jar")));
+	}
 }
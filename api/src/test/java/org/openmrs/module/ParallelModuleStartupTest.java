@@ -0,0 +1,66 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.context.Context;
+import org.openmrs.util.OpenmrsConstants;
+
+/**
+ * Tests starting the modules with more than one
+ * {@link OpenmrsConstants#GLOBAL_PROPERTY_MODULE_STARTUP_THREADS}
+ */
+public class ParallelModuleStartupTest extends BaseModuleActivatorTest {
+	
+	@Override
+	protected void init() {
+		super.init();
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_MODULE_STARTUP_THREADS, "4"));
+	}
+	
+	@Test
+	public void shouldStartModulesAfterTheModulesTheyRequire() throws Exception {
+		assertTrue(ModuleFactory.isModuleStarted(MODULE1_ID));
+		assertTrue(ModuleFactory.isModuleStarted(MODULE2_ID));
+		assertTrue(ModuleFactory.isModuleStarted(MODULE3_ID));
+		
+		assertEquals(1, moduleTestData.getWillStartCallCount(MODULE1_ID).intValue());
+		assertEquals(1, moduleTestData.getWillStartCallCount(MODULE2_ID).intValue());
+		assertEquals(1, moduleTestData.getWillStartCallCount(MODULE3_ID).intValue());
+		
+		//module2 depends on module1 while module3 depends on module2
+		assertTrue(moduleTestData.getWillStartCallTime(MODULE1_ID) <= moduleTestData.getWillStartCallTime(MODULE2_ID));
+		assertTrue(moduleTestData.getWillStartCallTime(MODULE2_ID) <= moduleTestData.getWillStartCallTime(MODULE3_ID));
+	}
+	
+	@Test
+	public void shouldRecordTheStartupTimingOfEachModule() throws Exception {
+		Set<String> moduleIds = new HashSet<String>();
+		for (ModuleStartupTiming timing : ModuleFactory.getModuleStartupTimings()) {
+			moduleIds.add(timing.getModuleId());
+			assertTrue(timing.getTotalTime() >= timing.getClassLoaderTime() + timing.getActivatorTime());
+		}
+		assertTrue(moduleIds.contains(MODULE1_ID));
+		assertTrue(moduleIds.contains(MODULE2_ID));
+		assertTrue(moduleIds.contains(MODULE3_ID));
+	}
+}
@@ -1,7 +1,10 @@
 package org.openmrs.notification;
 
+import java.util.Date;
+
 import org.junit.Assert;
 import org.junit.Test;
+import org.openmrs.User;
 import org.openmrs.api.context.Context;
 import org.openmrs.notification.impl.AlertServiceImpl;
 import org.openmrs.test.BaseContextSensitiveTest;
@@ -32,4 +35,64 @@ public class AlertServiceTest extends BaseContextSensitiveTest {
 		//Test that alert contains the expected content
 		Assert.assertTrue(alertOne.getText().equals("Module.startupError.notification.message"));
 	}
+	
+	/**
+	 * @see {@link AlertService#getAlertsByUser(User)}
+	 */
+	@Test
+	@Verifies(value = "should not return alerts read by the user", method = "getAlertsByUser(User)")
+	public void getAlertsByUser_shouldNotReturnAlertsReadByTheUser() throws Exception {
+		AlertService as = Context.getAlertService();
+		Alert alert = as.saveAlert(new Alert("first", Context.getAuthenticatedUser()));
+		as.saveAlert(new Alert("second", Context.getAuthenticatedUser()));
+		Assert.assertEquals(2, as.getAlertsByUser(null).size());
+		
+		as.saveAlert(alert.markAlertRead());
+		Assert.assertEquals(1, as.getAlertsByUser(null).size());
+		Assert.assertEquals("second", as.getAlertsByUser(null).get(0).getText());
+	}
+	
+	/**
+	 * @see {@link AlertService#getUnreadAlertCount(User)}
+	 */
+	@Test
+	@Verifies(value = "should count the unread alerts of the user", method = "getUnreadAlertCount(User)")
+	public void getUnreadAlertCount_shouldCountTheUnreadAlertsOfTheUser() throws Exception {
+		AlertService as = Context.getAlertService();
+		User other = Context.getUserService().getUser(501);
+		Assert.assertEquals(0, as.getUnreadAlertCount(null));
+		
+		as.saveAlert(new Alert("unread", Context.getAuthenticatedUser()));
+		as.saveAlert(new Alert("for someone else", other));
+		Alert expired = new Alert("expired", Context.getAuthenticatedUser());
+		expired.setDateToExpire(new Date(System.currentTimeMillis() - 60000));
+		as.saveAlert(expired);
+		
+		Assert.assertEquals(1, as.getUnreadAlertCount(null));
+		Assert.assertEquals(1, as.getUnreadAlertCount(other));
+	}
+	
+	/**
+	 * @see {@link AlertService#getUnreadAlertVersion(User)}
+	 */
+	@Test
+	@Verifies(value = "should change when an alert for the user is saved or read", method = "getUnreadAlertVersion(User)")
+	public void getUnreadAlertVersion_shouldChangeWhenAnAlertForTheUserIsSavedOrRead() throws Exception {
+		AlertService as = Context.getAlertService();
+		Assert.assertEquals(0, as.getUnreadAlertVersion(null));
+		
+		Alert alert = as.saveAlert(new Alert("unread", Context.getAuthenticatedUser()));
+		long version = as.getUnreadAlertVersion(null);
+		Assert.assertTrue(version != 0);
+		
+		as.saveAlert(new Alert("for someone else", Context.getUserService().getUser(501)));
+		Assert.assertEquals(version, as.getUnreadAlertVersion(null));
+		
+		as.saveAlert(new Alert("another", Context.getAuthenticatedUser()));
+		long secondVersion = as.getUnreadAlertVersion(null);
+		Assert.assertTrue(secondVersion != version);
+		
+		as.saveAlert(alert.markAlertRead());
+		Assert.assertTrue(as.getUnreadAlertVersion(null) != secondVersion);
+	}
 }
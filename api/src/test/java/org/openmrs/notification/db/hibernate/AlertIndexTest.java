@@ -0,0 +1,82 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.notification.db.hibernate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.notification.db.hibernate.AlertIndex.UserAlerts;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the {@link AlertIndex} class
+ */
+public class AlertIndexTest {
+	
+	@After
+	public void clearIndex() {
+		AlertIndex.transactionCompleted();
+		AlertIndex.clear();
+	}
+	
+	private static List<Object[]> rows(Object... values) {
+		List<Object[]> rows = new ArrayList<Object[]>();
+		for (int i = 0; i < values.length; i += 3) {
+			rows.add(new Object[] { values[i], values[i + 1], values[i + 2] });
+		}
+		return rows;
+	}
+	
+	/**
+	 * @see {@link AlertIndex#load(List,long)}
+	 */
+	@Test
+	@Verifies(value = "should not install alerts loaded before a write", method = "load(List,long)")
+	public void load_shouldNotInstallAlertsLoadedBeforeAWrite() throws Exception {
+		AlertIndex.clear();
+		long generation = AlertIndex.getGeneration();
+		AlertIndex.changed();
+		
+		Map<Integer, UserAlerts> alerts = AlertIndex.load(rows(1, 10, null), generation);
+		Assert.assertEquals(1, alerts.get(1).getAlertIds(new Date()).size());
+		Assert.assertNull(AlertIndex.getAlertsByUser());
+		
+		AlertIndex.load(rows(1, 10, null), AlertIndex.getGeneration());
+		Assert.assertNotNull(AlertIndex.getAlertsByUser());
+	}
+	
+	/**
+	 * @see {@link AlertIndex#load(List,long)}
+	 */
+	@Test
+	@Verifies(value = "should keep the version of users whose alerts did not change", method = "load(List,long)")
+	public void load_shouldKeepTheVersionOfUsersWhoseAlertsDidNotChange() throws Exception {
+		Date now = new Date();
+		Date past = new Date(now.getTime() - 1000);
+		Map<Integer, UserAlerts> first = AlertIndex.load(rows(1, 10, null, 1, 11, past, 2, 12, null), AlertIndex
+		        .getGeneration());
+		Assert.assertEquals(1, first.get(1).getAlertIds(now).size());
+		
+		AlertIndex.clear();
+		Map<Integer, UserAlerts> second = AlertIndex.load(rows(1, 10, null, 1, 11, past, 2, 13, null), AlertIndex
+		        .getGeneration());
+		Assert.assertEquals(first.get(1).getVersion(), second.get(1).getVersion());
+		Assert.assertTrue(first.get(2).getVersion() != second.get(2).getVersion());
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.obs.handler;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Obs;
+import org.openmrs.api.context.Context;
+import org.openmrs.obs.ComplexData;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.test.Verifies;
+import org.openmrs.util.OpenmrsConstants;
+import org.openmrs.util.OpenmrsUtil;
+
+/**
+ * Tests the {@link ImageHandler} class
+ */
+public class ImageHandlerTest extends BaseContextSensitiveTest {
+	
+	protected static final String COMPLEX_OBS_XML = "org/openmrs/api/include/ObsServiceTest-complex.xml";
+	
+	private static final String FILENAME = "imageHandlerTest.png";
+	
+	private ImageHandler handler;
+	
+	private File image;
+	
+	private Obs obs;
+	
+	@Before
+	public void before() throws Exception {
+		executeDataSet(COMPLEX_OBS_XML);
+		handler = new ImageHandler();
+		File complexObsDir = OpenmrsUtil.getDirectoryInApplicationDataDirectory(Context.getAdministrationService()
+		        .getGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_COMPLEX_OBS_DIR));
+		image = new File(complexObsDir, FILENAME);
+		writeImage(300, 200);
+		
+		obs = new Obs();
+		obs.setValueComplex("png image |" + FILENAME);
+	}
+	
+	@After
+	public void after() throws Exception {
+		// the files are outside of the database so they are not rolled back
+		handler.purgeComplexData(obs);
+	}
+	
+	private void writeImage(int width, int height) throws Exception {
+		ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", image);
+	}
+	
+	private static BufferedImage read(File file) throws Exception {
+		return ImageIO.read(file);
+	}
+	
+	/**
+	 * @see {@link ImageHandler#getThumbnailFile(File,int)}
+	 */
+	@Test
+	@Verifies(value = "should make a thumbnail no larger than the size", method = "getThumbnailFile(File,int)")
+	public void getThumbnailFile_shouldMakeAThumbnailNoLargerThanTheSize() throws Exception {
+		File thumbnail = handler.getThumbnailFile(image, 150);
+		Assert.assertFalse(image.equals(thumbnail));
+		Assert.assertEquals(FILENAME, thumbnail.getName());
+		
+		BufferedImage img = read(thumbnail);
+		Assert.assertEquals(150, img.getWidth());
+		Assert.assertEquals(100, img.getHeight());
+		
+		// made once
+		long lastModified = thumbnail.lastModified();
+		Assert.assertEquals(thumbnail, handler.getThumbnailFile(image, 150));
+		Assert.assertEquals(lastModified, thumbnail.lastModified());
+	}
+	
+	/**
+	 * @see {@link ImageHandler#getThumbnailFile(File,int)}
+	 */
+	@Test
+	@Verifies(value = "should copy the image if it is not larger than the size", method = "getThumbnailFile(File,int)")
+	public void getThumbnailFile_shouldCopyTheImageIfItIsNotLargerThanTheSize() throws Exception {
+		File thumbnail = handler.getThumbnailFile(image, 400);
+		Assert.assertFalse(image.equals(thumbnail));
+		Assert.assertEquals(image.length(), thumbnail.length());
+		Assert.assertEquals(300, read(thumbnail).getWidth());
+	}
+	
+	/**
+	 * @see {@link ImageHandler#getThumbnailFile(File,int)}
+	 */
+	@Test
+	@Verifies(value = "should make the thumbnail again when the image changes", method = "getThumbnailFile(File,int)")
+	public void getThumbnailFile_shouldMakeTheThumbnailAgainWhenTheImageChanges() throws Exception {
+		File thumbnail = handler.getThumbnailFile(image, 150);
+		thumbnail.setLastModified(image.lastModified() - 10000);
+		writeImage(150, 300);
+		
+		thumbnail = handler.getThumbnailFile(image, 150);
+		Assert.assertEquals(75, read(thumbnail).getWidth());
+		Assert.assertEquals(150, read(thumbnail).getHeight());
+	}
+	
+	/**
+	 * @see {@link ImageHandler#getThumbnailSize(String)}
+	 */
+	@Test
+	@Verifies(value = "should pick the smallest configured size that is at least the requested size", method = "getThumbnailSize(String)")
+	public void getThumbnailSize_shouldPickTheSmallestConfiguredSizeThatIsAtLeastTheRequestedSize() throws Exception {
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_COMPLEX_OBS_THUMBNAIL_SIZES, "512, 64,128"));
+		
+		Assert.assertEquals(64, handler.getThumbnailSize(OpenmrsConstants.THUMBNAIL_VIEW));
+		Assert.assertEquals(128, handler.getThumbnailSize(OpenmrsConstants.THUMBNAIL_VIEW + ":100"));
+		Assert.assertEquals(512, handler.getThumbnailSize(OpenmrsConstants.THUMBNAIL_VIEW + ":512"));
+		Assert.assertEquals(512, handler.getThumbnailSize(OpenmrsConstants.THUMBNAIL_VIEW + ":2000"));
+	}
+	
+	/**
+	 * @see {@link ImageHandler#getComplexDataStream(Obs,String)}
+	 */
+	@Test
+	@Verifies(value = "should return the stored image", method = "getComplexDataStream(Obs,String)")
+	public void getComplexDataStream_shouldReturnTheStoredImage() throws Exception {
+		ComplexData complexData = handler.getComplexDataStream(obs, OpenmrsConstants.RAW_VIEW);
+		try {
+			Assert.assertEquals(FILENAME, complexData.getTitle());
+			Assert.assertEquals("image/png", complexData.getMimeType());
+			Assert.assertEquals(image.length(), complexData.getLength().longValue());
+			Assert.assertEquals(300, ImageIO.read((FileInputStream) complexData.getData()).getWidth());
+		}
+		finally {
+			((FileInputStream) complexData.getData()).close();
+		}
+	}
+	
+	/**
+	 * @see {@link ImageHandler#getComplexDataStream(Obs,String)}
+	 */
+	@Test
+	@Verifies(value = "should return the thumbnail for the thumbnail view", method = "getComplexDataStream(Obs,String)")
+	public void getComplexDataStream_shouldReturnTheThumbnailForTheThumbnailView() throws Exception {
+		ComplexData complexData = handler.getComplexDataStream(obs, OpenmrsConstants.THUMBNAIL_VIEW);
+		try {
+			Assert.assertEquals(FILENAME, complexData.getTitle());
+			Assert.assertEquals(128, ImageIO.read((FileInputStream) complexData.getData()).getWidth());
+		}
+		finally {
+			((FileInputStream) complexData.getData()).close();
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.patient;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the {@link DuplicatePatientDetector} class
+ */
+public class DuplicatePatientDetectorTest {
+	
+	private static Date date(String date) throws Exception {
+		return new SimpleDateFormat("yyyy-MM-dd").parse(date);
+	}
+	
+	/**
+	 * @see {@link DuplicatePatientDetector#DuplicatePatientDetector(String,double)}
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	@Verifies(value = "should fail for an unknown field", method = "DuplicatePatientDetector(String,double)")
+	public void DuplicatePatientDetector_shouldFailForAnUnknownField() throws Exception {
+		new DuplicatePatientDetector("birthYear+shoeSize", 0.6);
+	}
+	
+	/**
+	 * @see {@link DuplicatePatientDetector#detect(int)}
+	 */
+	@Test
+	@Verifies(value = "should only compare patients that share a blocking key", method = "detect(int)")
+	public void detect_shouldOnlyComparePatientsThatShareABlockingKey() throws Exception {
+		DuplicatePatientDetector detector = new DuplicatePatientDetector("birthYear+familyName", 0.4);
+		detector.addName(1, "M", date("1970-01-01"), "John", "Smith");
+		detector.addName(2, "M", date("1971-01-01"), "John", "Smith");
+		detector.addName(3, "M", date("1970-06-01"), "John", "Smith");
+		
+		List<DuplicatePatientDetector.Match> matches = detector.detect(1);
+		Assert.assertEquals(1, matches.size());
+		Assert.assertEquals(1, matches.get(0).getPatientId().intValue());
+		Assert.assertEquals(3, matches.get(0).getOtherPatientId().intValue());
+		Assert.assertEquals(0.5, matches.get(0).getScore(), 0);
+	}
+	
+	/**
+	 * @see {@link DuplicatePatientDetector#detect(int)}
+	 */
+	@Test
+	@Verifies(value = "should match patients with names that sound alike", method = "detect(int)")
+	public void detect_shouldMatchPatientsWithNamesThatSoundAlike() throws Exception {
+		DuplicatePatientDetector detector = new DuplicatePatientDetector("birthYear+familyName", 0.5);
+		detector.addName(1, "M", date("1970-01-01"), "John", "Smith");
+		detector.addName(2, "M", date("1970-01-01"), "Jon", "Smyth");
+		detector.addName(3, "M", date("1970-01-01"), "Peter", "Jones");
+		
+		List<DuplicatePatientDetector.Match> matches = detector.detect(1);
+		Assert.assertEquals(1, matches.size());
+		Assert.assertEquals(2, matches.get(0).getOtherPatientId().intValue());
+		Assert.assertEquals(0.5, matches.get(0).getScore(), 0);
+	}
+	
+	/**
+	 * @see {@link DuplicatePatientDetector#detect(int)}
+	 */
+	@Test
+	@Verifies(value = "should not return pairs below the threshold", method = "detect(int)")
+	public void detect_shouldNotReturnPairsBelowTheThreshold() throws Exception {
+		DuplicatePatientDetector detector = new DuplicatePatientDetector("birthYear+familyName", 0.6);
+		detector.addName(1, "M", date("1970-01-01"), "John", "Smith");
+		detector.addName(2, "M", date("1970-01-01"), "Jon", "Smyth");
+		detector.addName(3, "F", date("1970-01-01"), "John", "Smith");
+		
+		Assert.assertEquals(0, detector.detect(1).size());
+	}
+	
+	/**
+	 * @see {@link DuplicatePatientDetector#detect(int)}
+	 */
+	@Test
+	@Verifies(value = "should return each pair once", method = "detect(int)")
+	public void detect_shouldReturnEachPairOnce() throws Exception {
+		DuplicatePatientDetector detector = new DuplicatePatientDetector("birthYear+familyName,identifier,gender", 0.6);
+		detector.addName(1, "M", date("1970-01-01"), "John", "Smith");
+		detector.addName(1, "M", date("1970-01-01"), "Johnny", "Smith");
+		detector.addIdentifier(1, "101-6");
+		detector.addName(2, "M", date("1970-01-01"), "John", "Smith");
+		detector.addIdentifier(2, "1016");
+		
+		List<DuplicatePatientDetector.Match> matches = detector.detect(1);
+		Assert.assertEquals(1, matches.size());
+		Assert.assertEquals(1.0, matches.get(0).getScore(), 0);
+	}
+	
+	/**
+	 * @see {@link DuplicatePatientDetector#detect(int)}
+	 */
+	@Test
+	@Verifies(value = "should return the same pairs with several threads", method = "detect(int)")
+	public void detect_shouldReturnTheSamePairsWithSeveralThreads() throws Exception {
+		String[] givenNames = { "John", "Jon", "Mary", "Marie", "Peter" };
+		String[] familyNames = { "Smith", "Smyth", "Otieno", "Ochieng", "Jones" };
+		DuplicatePatientDetector detector = new DuplicatePatientDetector("birthYear+familyName,identifier", 0.5);
+		for (int i = 1; i <= 500; i++) {
+			detector.addName(i, i % 2 == 0 ? "M" : "F", date((1950 + i % 7) + "-01-0" + (1 + i % 3)), givenNames[i % 5],
+			    familyNames[(i / 5) % 5]);
+			detector.addIdentifier(i, "ID-" + (i % 97));
+		}
+		
+		List<DuplicatePatientDetector.Match> expected = detector.detect(1);
+		List<DuplicatePatientDetector.Match> actual = detector.detect(4);
+		Assert.assertFalse(expected.isEmpty());
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i).getPatientId(), actual.get(i).getPatientId());
+			Assert.assertEquals(expected.get(i).getOtherPatientId(), actual.get(i).getOtherPatientId());
+			Assert.assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 0);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.scheduler.tasks;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.scheduler.tasks.ConceptIndexUpdateTask.Partition;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the {@link ConceptIndexUpdateTask} class
+ */
+public class ConceptIndexUpdateTaskTest {
+	
+	/**
+	 * @see {@link ConceptIndexUpdateTask#getPartitions(String,int,int)}
+	 */
+	@Test
+	@Verifies(value = "should split the concept ids into partitions", method = "getPartitions(String,int,int)")
+	public void getPartitions_shouldSplitTheConceptIdsIntoPartitions() throws Exception {
+		List<Partition> partitions = ConceptIndexUpdateTask.getPartitions(null, 10000, 2);
+		Assert.assertEquals(8, partitions.size());
+		Assert.assertEquals(1, partitions.get(0).getStart());
+		Assert.assertEquals(0, partitions.get(0).getLastUpdated());
+		Assert.assertEquals(10000, partitions.get(7).getEnd());
+		for (int i = 1; i < partitions.size(); i++) {
+			Assert.assertEquals(partitions.get(i - 1).getEnd() + 1, partitions.get(i).getStart());
+		}
+	}
+	
+	/**
+	 * @see {@link ConceptIndexUpdateTask#getPartitions(String,int,int)}
+	 */
+	@Test
+	@Verifies(value = "should restore the partitions from the checkpoint", method = "getPartitions(String,int,int)")
+	public void getPartitions_shouldRestoreThePartitionsFromTheCheckpoint() throws Exception {
+		List<Partition> partitions = ConceptIndexUpdateTask.getPartitions(null, 10000, 1);
+		partitions.get(1).setLastUpdated(3000);
+		partitions.get(3).setLastUpdated(partitions.get(3).getEnd());
+		
+		List<Partition> restored = ConceptIndexUpdateTask.getPartitions(ConceptIndexUpdateTask
+		        .formatPartitions(partitions), 20000, 1);
+		Assert.assertEquals(partitions.size(), restored.size());
+		Assert.assertEquals(3000, restored.get(1).getLastUpdated());
+		Assert.assertTrue(restored.get(3).isDone());
+		Assert.assertFalse(restored.get(0).isDone());
+		Assert.assertEquals(10000, restored.get(3).getEnd());
+	}
+	
+	/**
+	 * @see {@link ConceptIndexUpdateTask#getPartitions(String,int,int)}
+	 */
+	@Test
+	@Verifies(value = "should resume after the concept id saved by earlier versions", method = "getPartitions(String,int,int)")
+	public void getPartitions_shouldResumeAfterTheConceptIdSavedByEarlierVersions() throws Exception {
+		List<Partition> partitions = ConceptIndexUpdateTask.getPartitions("5000", 10000, 1);
+		Assert.assertEquals(5001, partitions.get(0).getStart());
+		Assert.assertEquals(10000, partitions.get(partitions.size() - 1).getEnd());
+	}
+}
@@ -74,7 +74,9 @@ import org.openmrs.User;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.context.ContextAuthenticationException;
 import org.openmrs.api.context.ContextMockHelper;
+import org.openmrs.api.db.hibernate.GlobalPropertyCache;
 import org.openmrs.module.ModuleConstants;
+import org.openmrs.notification.db.hibernate.AlertIndex;
 import org.openmrs.util.OpenmrsClassLoader;
 import org.openmrs.util.OpenmrsConstants;
 import org.springframework.test.context.ContextConfiguration;
@@ -680,6 +682,10 @@ public abstract class BaseContextSensitiveTest extends AbstractJUnit4SpringConte
 		//Do the actual update/insert:
 		//insert new rows, update existing rows, and leave others alone
 		DatabaseOperation.REFRESH.execute(dbUnitConn, dataset);
+		
+		// the dataset may contain global properties and alerts
+		GlobalPropertyCache.clear();
+		AlertIndex.clear();
 	}
 	
 	private IDatabaseConnection setupDatabaseConnection(Connection connection) throws DatabaseUnitException {
@@ -723,6 +729,8 @@ public abstract class BaseContextSensitiveTest extends AbstractJUnit4SpringConte
 		
 		// clear the (hibernate) session to make sure nothing is cached, etc
 		Context.clearSession();
+		GlobalPropertyCache.clear();
+		AlertIndex.clear();
 		
 		// needed because the authenticatedUser is the only object that sticks
 		// around after tests and the clearSession call
@@ -0,0 +1,243 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the {@link CompressedIntSet} class
+ */
+public class CompressedIntSetTest {
+	
+	/**
+	 * @see {@link CompressedIntSet#add(int)}
+	 */
+	@Test
+	@Verifies(value = "should add the value", method = "add(int)")
+	public void add_shouldAddTheValue() throws Exception {
+		CompressedIntSet set = new CompressedIntSet();
+		Assert.assertTrue(set.add(7));
+		Assert.assertTrue(set.add(70000));
+		Assert.assertEquals(2, set.size());
+		Assert.assertTrue(set.contains(7));
+		Assert.assertTrue(set.contains(70000));
+	}
+	
+	/**
+	 * @see {@link CompressedIntSet#add(int)}
+	 */
+	@Test
+	@Verifies(value = "should return false if the value is already present", method = "add(int)")
+	public void add_shouldReturnFalseIfTheValueIsAlreadyPresent() throws Exception {
+		CompressedIntSet set = new CompressedIntSet(7);
+		Assert.assertFalse(set.add(7));
+		Assert.assertEquals(1, set.size());
+	}
+	
+	/**
+	 * @see {@link CompressedIntSet#add(int)}
+	 */
+	@Test
+	@Verifies(value = "should convert to a bitmap container when a chunk becomes dense", method = "add(int)")
+	public void add_shouldConvertToABitmapContainerWhenAChunkBecomesDense() throws Exception {
+		CompressedIntSet set = new CompressedIntSet();
+		for (int i = 0; i < 10000; i++) {
+			set.add(i * 2);
+		}
+		Assert.assertEquals(10000, set.size());
+		Assert.assertTrue(set.contains(19998));
+		Assert.assertFalse(set.contains(19999));
+		
+		// and back again
+		for (int i = 0; i < 9000; i++) {
+			set.remove(i * 2);
+		}
+		Assert.assertEquals(1000, set.size());
+		Assert.assertTrue(set.contains(19998));
+		Assert.assertFalse(set.contains(0));
+	}
+	
+	/**
+	 * @see {@link CompressedIntSet#remove(int)}
+	 */
+	@Test
+	@Verifies(value = "should remove the value", method = "remove(int)")
+	public void remove_shouldRemoveTheValue() throws Exception {
+		CompressedIntSet set = new CompressedIntSet(1, 2, 3);
+		Assert.assertTrue(set.remove(2));
+		Assert.assertEquals(2, set.size());
+		Assert.assertFalse(set.contains(2));
+	}
+	
+	/**
+	 * @see {@link CompressedIntSet#remove(int)}
+	 */
+	@Test
+	@Verifies(value = "should return false if the value is not present", method = "remove(int)")
+	public void remove_shouldReturnFalseIfTheValueIsNotPresent() throws Exception {
+		CompressedIntSet set = new CompressedIntSet(1, 2, 3);
+		Assert.assertFalse(set.remove(4));
+		Assert.assertFalse(set.remove(100000));
+		Assert.assertEquals(3, set.size());
+	}
+	
+	/**
+	 * @see {@link CompressedIntSet#contains(int)}
+	 */
+	@Test
+	@Verifies(value = "should return true for added values and false otherwise", method = "contains(int)")
+	public void contains_shouldReturnTrueForAddedValuesAndFalseOtherwise() throws Exception {
+		CompressedIntSet set = new CompressedIntSet(-5, 0, 65536);
+		Assert.assertTrue(set.contains(-5));
+		Assert.assertTrue(set.contains(0));
+		Assert.assertTrue(set.contains(65536));
+		Assert.assertFalse(set.contains(5));
+		Assert.assertFalse(set.contains(65537));
+	}
+	
+	/**
+	 * @see {@link CompressedIntSet#or(CompressedIntSet)}
+	 */
+	@Test
+	@Verifies(value = "should add all values of the other set", method = "or(CompressedIntSet)")
+	public void or_shouldAddAllValuesOfTheOtherSet() throws Exception {
+		CompressedIntSet a = range(0, 6000, 1);
+		CompressedIntSet b = range(3000, 200000, 3);
+		Set<Integer> expected = new TreeSet<Integer>(a.asSet());
+		expected.addAll(b.asSet());
+		
+		a.or(b);
+		Assert.assertEquals(expected, a.asSet());
+	}
+	
+	/**
+	 * @see {@link CompressedIntSet#and(CompressedIntSet)}
+	 */
+	@Test
+	@Verifies(value = "should retain only values present in both sets", method = "and(CompressedIntSet)")
+	public void and_shouldRetainOnlyValuesPresentInBothSets() throws Exception {
+		CompressedIntSet a = range(0, 100000, 2);
+		CompressedIntSet b = range(50000, 150000, 3);
+		Set<Integer> expected = new TreeSet<Integer>(a.asSet());
+		expected.retainAll(b.asSet());
+		
+		a.and(b);
+		Assert.assertEquals(expected, a.asSet());
+		Assert.assertEquals(expected.size(), a.size());
+	}
+	
+	/**
+	 * @see {@link CompressedIntSet#andNot(CompressedIntSet)}
+	 */
+	@Test
+	@Verifies(value = "should remove all values of the other set", method = "andNot(CompressedIntSet)")
+	public void andNot_shouldRemoveAllValuesOfTheOtherSet() throws Exception {
+		CompressedIntSet a = range(0, 100000, 1);
+		CompressedIntSet b = range(0, 100000, 7);
+		Set<Integer> expected = new TreeSet<Integer>(a.asSet());
+		expected.removeAll(b.asSet());
+		
+		a.andNot(b);
+		Assert.assertEquals(expected, a.asSet());
+	}
+	
+	/**
+	 * @see {@link CompressedIntSet#intIterator()}
+	 */
+	@Test
+	@Verifies(value = "should iterate in ascending order including negative values", method = "intIterator()")
+	public void intIterator_shouldIterateInAscendingOrderIncludingNegativeValues() throws Exception {
+		CompressedIntSet set = new CompressedIntSet(300000, -70000, 5, -1, Integer.MAX_VALUE, Integer.MIN_VALUE);
+		int[] expected = { Integer.MIN_VALUE, -70000, -1, 5, 300000, Integer.MAX_VALUE };
+		Assert.assertTrue(Arrays.equals(expected, set.toArray()));
+	}
+	
+	/**
+	 * @see {@link CompressedIntSet#asSet()}
+	 */
+	@Test
+	@Verifies(value = "should write changes through to the backing set", method = "asSet()")
+	public void asSet_shouldWriteChangesThroughToTheBackingSet() throws Exception {
+		CompressedIntSet set = new CompressedIntSet(1, 2, 3, 4);
+		Set<Integer> view = set.asSet();
+		view.add(10);
+		view.remove(1);
+		view.removeAll(Arrays.asList(2, 4, 10));
+		Assert.assertTrue(Arrays.equals(new int[] { 3 }, set.toArray()));
+		Assert.assertEquals(new TreeSet<Integer>(Arrays.asList(3)), view);
+	}
+	
+	/**
+	 * @see {@link CompressedIntSet#asSet()}
+	 */
+	@Test
+	@Verifies(value = "should remove values through the iterator", method = "asSet()")
+	public void asSet_shouldRemoveValuesThroughTheIterator() throws Exception {
+		CompressedIntSet set = new CompressedIntSet(-5, 1, 2, 3, 70000, 70001);
+		List<Integer> seen = new ArrayList<Integer>();
+		for (Iterator<Integer> i = set.asSet().iterator(); i.hasNext();) {
+			Integer value = i.next();
+			seen.add(value);
+			if (value != 3 && value != 70001) {
+				i.remove();
+			}
+		}
+		Assert.assertEquals(Arrays.asList(-5, 1, 2, 3, 70000, 70001), seen);
+		Assert.assertTrue(Arrays.equals(new int[] { 3, 70001 }, set.toArray()));
+		Assert.assertEquals(2, set.size());
+	}
+	
+	/**
+	 * @see {@link CompressedIntSet#asSet()}
+	 */
+	@Test
+	@Verifies(value = "should retain the values of any collection", method = "asSet()")
+	public void asSet_shouldRetainTheValuesOfAnyCollection() throws Exception {
+		CompressedIntSet set = new CompressedIntSet(1, 2, 3, 70000);
+		Assert.assertTrue(set.asSet().retainAll(new HashSet<Integer>(Arrays.asList(2, 70000, 5))));
+		Assert.assertTrue(Arrays.equals(new int[] { 2, 70000 }, set.toArray()));
+	}
+	
+	/**
+	 * @see {@link CompressedIntSet#toByteArray()}
+	 */
+	@Test
+	@Verifies(value = "should round trip through fromByteArray", method = "toByteArray()")
+	public void toByteArray_shouldRoundTripThroughFromByteArray() throws Exception {
+		CompressedIntSet set = range(0, 20000, 1);
+		set.add(1000000);
+		set.add(-3);
+		CompressedIntSet copy = CompressedIntSet.fromByteArray(set.toByteArray());
+		Assert.assertEquals(set, copy);
+		Assert.assertEquals(set.size(), copy.size());
+	}
+	
+	private CompressedIntSet range(int from, int to, int step) {
+		CompressedIntSet ret = new CompressedIntSet();
+		for (int i = from; i < to; i += step) {
+			ret.add(i);
+		}
+		return ret;
+	}
+}
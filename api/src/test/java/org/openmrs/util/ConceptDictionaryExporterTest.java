@@ -0,0 +1,66 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.util;
+
+import java.io.StringWriter;
+import java.util.Locale;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the {@link ConceptDictionaryExporter} class
+ */
+public class ConceptDictionaryExporterTest extends BaseContextSensitiveTest {
+	
+	/**
+	 * @see {@link ConceptDictionaryExporter#export(java.io.Writer)}
+	 */
+	@Test
+	@Verifies(value = "should write a row for each non retired concept", method = "export(Writer)")
+	public void export_shouldWriteARowForEachNonRetiredConcept() throws Exception {
+		ConceptDictionaryExporter exporter = new ConceptDictionaryExporter(Locale.ENGLISH);
+		// more than one page
+		exporter.setPageSize(4);
+		StringWriter writer = new StringWriter();
+		int count = exporter.export(writer);
+		
+		int nonRetired = Context.getConceptService().getNextConcepts(null, false, 1000).size();
+		Assert.assertEquals(nonRetired, count);
+		
+		String csv = writer.toString();
+		Assert.assertTrue(csv.startsWith(ConceptDictionaryExporter.HEADER + "\n"));
+		Assert.assertTrue(csv.contains("\n3,\"COUGH SYRUP\",\"This is used for coughs\","));
+		Assert.assertFalse(csv.contains("\n24,"));
+	}
+	
+	/**
+	 * @see {@link ConceptDictionaryExporter#export(java.io.Writer)}
+	 */
+	@Test
+	@Verifies(value = "should quote the values containing quotes", method = "export(Writer)")
+	public void export_shouldQuoteTheValuesContainingQuotes() throws Exception {
+		Concept concept = Context.getConceptService().getConcept(3);
+		concept.getDescription(Locale.ENGLISH).setDescription("a \"quoted\" description");
+		
+		StringBuilder row = new StringBuilder();
+		new ConceptDictionaryExporter(Locale.ENGLISH).appendRow(row, concept);
+		Assert.assertTrue(row.toString().startsWith("3,\"COUGH SYRUP\",\"a \"\"quoted\"\" description\","));
+		Assert.assertTrue(row.toString().endsWith("\"\n"));
+	}
+}
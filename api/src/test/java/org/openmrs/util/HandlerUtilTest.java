@@ -57,6 +57,34 @@ public class HandlerUtilTest extends BaseContextSensitiveTest {
 		Assert.assertEquals(0, l.size());
 	}
 	
+	/**
+	 * @see {@link HandlerUtil#getHandlersForType(Class, Class)}
+	 */
+	@Test
+	@Verifies(value = "should return handlers that the caller can modify", method = "getHandlersForType(Class, Class)")
+	public void getHandlersForType_shouldReturnHandlersThatTheCallerCanModify() throws Exception {
+		List<Validator> l = HandlerUtil.getHandlersForType(Validator.class, DrugOrder.class);
+		l.clear();
+		Assert.assertEquals(2, HandlerUtil.getHandlersForType(Validator.class, DrugOrder.class).size());
+	}
+	
+	/**
+	 * @see {@link HandlerUtil#getHandlersForType(Class, Class)}
+	 */
+	@Test
+	@Verifies(value = "should find the handlers again after the cache is cleared", method = "getHandlersForType(Class, Class)")
+	public void getHandlersForType_shouldFindTheHandlersAgainAfterTheCacheIsCleared() throws Exception {
+		List<Validator> all = HandlerUtil.getHandlersForType(Validator.class, null);
+		Assert.assertTrue(all.size() > 2);
+		List<Validator> l = HandlerUtil.getHandlersForType(Validator.class, DrugOrder.class);
+		
+		HandlerUtil.clearCachedHandlers();
+		Assert.assertEquals(all.size(), HandlerUtil.getHandlersForType(Validator.class, null).size());
+		List<Validator> found = HandlerUtil.getHandlersForType(Validator.class, DrugOrder.class);
+		Assert.assertEquals(l.size(), found.size());
+		Assert.assertSame(l.get(0), found.get(0));
+	}
+	
 	/**
 	 * @see {@link HandlerUtil#getPreferredHandler(Class, Class)}
 	 */
@@ -2,6 +2,9 @@ package org.openmrs.util;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.util.Arrays;
+import java.util.List;
+
 import junit.framework.Assert;
 import org.junit.Test;
 import org.openmrs.test.BaseContextSensitiveTest;
@@ -37,4 +40,69 @@ public class OpenmrsClassLoaderTest extends BaseContextSensitiveTest {
 		if (beforeDelete > 1)
 			Assert.assertTrue(beforeDelete > afterDelete);
 	}
+	
+	/**
+	 * @see OpenmrsClassLoader.PackageIndex#getMatches(String)
+	 * @verifies return the values whose prefixes the name starts with in the order they were added
+	 */
+	@Test
+	public void getMatches_shouldReturnTheValuesWhosePrefixesTheNameStartsWithInTheOrderTheyWereAdded() throws Exception {
+		OpenmrsClassLoader.PackageIndex<String> index = new OpenmrsClassLoader.PackageIndex<String>();
+		index.add("webservices", Arrays.asList("org.openmrs.module.webservices", "org.codehaus.jackson"));
+		index.add("reporting", Arrays.asList("org.openmrs.module.reporting", "org.openmrs.module.reporting.serializer"));
+		index.add("serialization", Arrays.asList("org.openmrs.module"));
+		
+		List<String> matches = index.getMatches("org.openmrs.module.reporting.serializer.ReportingSerializer");
+		Assert.assertEquals(Arrays.asList("reporting", "serialization"), matches);
+		Assert.assertEquals(Arrays.asList("webservices"), index.getMatches("org.codehaus.jackson.map.ObjectMapper"));
+		Assert.assertTrue(index.getMatches("org.openmrs.Patient").isEmpty());
+		Assert.assertTrue(index.getMatches("org.openmrs.mod").isEmpty());
+	}
+	
+	/**
+	 * @see OpenmrsClassLoader.PackageIndex#getMatches(String)
+	 * @verifies match prefixes that end within a package name
+	 */
+	@Test
+	public void getMatches_shouldMatchPrefixesThatEndWithinAPackageName() throws Exception {
+		OpenmrsClassLoader.PackageIndex<String> index = new OpenmrsClassLoader.PackageIndex<String>();
+		index.add("foo", Arrays.asList("org.openmrs.module.foo"));
+		
+		Assert.assertEquals(Arrays.asList("foo"), index.getMatches("org.openmrs.module.foobar.Bar"));
+		Assert.assertEquals(Arrays.asList("foo"), index.getMatches("org.openmrs.module.foo"));
+	}
+	
+	/**
+	 * @see OpenmrsClassLoader.PackageIndex#getMatches(String)
+	 * @verifies return each value once
+	 */
+	@Test
+	public void getMatches_shouldReturnEachValueOnce() throws Exception {
+		OpenmrsClassLoader.PackageIndex<String> index = new OpenmrsClassLoader.PackageIndex<String>();
+		index.add("foo", Arrays.asList("org.openmrs.module.foo", "org.openmrs.module.foo.api", "org.openmrs.module.foo"));
+		
+		Assert.assertEquals(Arrays.asList("foo"), index.getMatches("org.openmrs.module.foo.api.FooService"));
+	}
+	
+	/**
+	 * @see OpenmrsClassLoader#loadClass(String,boolean)
+	 * @verifies load classes again after the caches are cleared
+	 */
+	@Test
+	public void loadClass_shouldLoadClassesAgainAfterTheCachesAreCleared() throws Exception {
+		OpenmrsClassLoader classLoader = OpenmrsClassLoader.getInstance();
+		Assert.assertSame(OpenmrsUtil.class, classLoader.loadClass("org.openmrs.util.OpenmrsUtil"));
+		for (int i = 0; i < 2; i++) {
+			try {
+				classLoader.loadClass("org.openmrs.util.NoSuchClass");
+				Assert.fail("the class should not have been found");
+			}
+			catch (ClassNotFoundException e) {
+				Assert.assertEquals("org.openmrs.util.NoSuchClass", e.getMessage());
+			}
+		}
+		
+		OpenmrsClassLoader.clearCachedClasses();
+		Assert.assertSame(OpenmrsUtil.class, classLoader.loadClass("org.openmrs.util.OpenmrsUtil"));
+	}
 }
@@ -0,0 +1,104 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the methods in {@link PhoneticUtil}
+ */
+public class PhoneticUtilTest {
+	
+	/**
+	 * @see {@link PhoneticUtil#soundex(String)}
+	 */
+	@Test
+	@Verifies(value = "should encode names that sound alike with the same code", method = "soundex(String)")
+	public void soundex_shouldEncodeNamesThatSoundAlikeWithTheSameCode() throws Exception {
+		Assert.assertEquals("R163", PhoneticUtil.soundex("Robert"));
+		Assert.assertEquals("R163", PhoneticUtil.soundex("Rupert"));
+		Assert.assertEquals("R163", PhoneticUtil.soundex(" rupert "));
+		Assert.assertEquals("T522", PhoneticUtil.soundex("Tymczak"));
+		Assert.assertEquals("P236", PhoneticUtil.soundex("Pfister"));
+	}
+	
+	/**
+	 * @see {@link PhoneticUtil#soundex(String)}
+	 */
+	@Test
+	@Verifies(value = "should pad short names with zeros", method = "soundex(String)")
+	public void soundex_shouldPadShortNamesWithZeros() throws Exception {
+		Assert.assertEquals("L000", PhoneticUtil.soundex("Lee"));
+		Assert.assertEquals("J000", PhoneticUtil.soundex("J"));
+	}
+	
+	/**
+	 * @see {@link PhoneticUtil#soundex(String)}
+	 */
+	@Test
+	@Verifies(value = "should not separate letters with the same code by h or w", method = "soundex(String)")
+	public void soundex_shouldNotSeparateLettersWithTheSameCodeByHOrW() throws Exception {
+		Assert.assertEquals("A261", PhoneticUtil.soundex("Ashcraft"));
+		Assert.assertEquals("T522", PhoneticUtil.soundex("Tymczak"));
+	}
+	
+	/**
+	 * @see {@link PhoneticUtil#soundex(String)}
+	 */
+	@Test
+	@Verifies(value = "should return null for names without letters", method = "soundex(String)")
+	public void soundex_shouldReturnNullForNamesWithoutLetters() throws Exception {
+		Assert.assertNull(PhoneticUtil.soundex(null));
+		Assert.assertNull(PhoneticUtil.soundex(""));
+		Assert.assertNull(PhoneticUtil.soundex(" 12-3 "));
+	}
+	
+	/**
+	 * @see {@link PhoneticUtil#metaphone(String)}
+	 */
+	@Test
+	@Verifies(value = "should encode names that sound alike with the same key", method = "metaphone(String)")
+	public void metaphone_shouldEncodeNamesThatSoundAlikeWithTheSameKey() throws Exception {
+		Assert.assertEquals("K0RN", PhoneticUtil.metaphone("Catherine"));
+		Assert.assertEquals("K0RN", PhoneticUtil.metaphone("Katherine"));
+		Assert.assertEquals("FLP", PhoneticUtil.metaphone("Philip"));
+		Assert.assertEquals("FLP", PhoneticUtil.metaphone("Filip"));
+		Assert.assertEquals("SM0", PhoneticUtil.metaphone("Smith"));
+		Assert.assertEquals("SM0", PhoneticUtil.metaphone("Smyth"));
+	}
+	
+	/**
+	 * @see {@link PhoneticUtil#metaphone(String)}
+	 */
+	@Test
+	@Verifies(value = "should apply the rules for the initial letters", method = "metaphone(String)")
+	public void metaphone_shouldApplyTheRulesForTheInitialLetters() throws Exception {
+		Assert.assertEquals("NT", PhoneticUtil.metaphone("Knight"));
+		Assert.assertEquals("RT", PhoneticUtil.metaphone("Wright"));
+		Assert.assertEquals("SFR", PhoneticUtil.metaphone("Xavier"));
+		Assert.assertEquals("ELS", PhoneticUtil.metaphone("Aelus"));
+	}
+	
+	/**
+	 * @see {@link PhoneticUtil#metaphone(String)}
+	 */
+	@Test
+	@Verifies(value = "should return null for names without letters", method = "metaphone(String)")
+	public void metaphone_shouldReturnNullForNamesWithoutLetters() throws Exception {
+		Assert.assertNull(PhoneticUtil.metaphone(null));
+		Assert.assertNull(PhoneticUtil.metaphone("123"));
+	}
+}
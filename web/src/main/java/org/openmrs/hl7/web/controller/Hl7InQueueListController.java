@@ -26,6 +26,7 @@ import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.hl7.HL7Constants;
 import org.openmrs.hl7.HL7InQueue;
+import org.openmrs.hl7.HL7InQueueProcessor;
 import org.openmrs.hl7.HL7Service;
 import org.openmrs.messagesource.MessageSourceService;
 import org.openmrs.web.WebConstants;
@@ -52,6 +53,7 @@ public class Hl7InQueueListController {
 	@RequestMapping("/admin/hl7/hl7InQueuePending.htm")
 	public String listPendingHL7s(ModelMap modelMap) {
 		modelMap.addAttribute("messageState", HL7Constants.HL7_STATUS_PENDING);
+		modelMap.addAttribute("statistics", HL7InQueueProcessor.getStatistics());
 		return "/admin/hl7/hl7InQueueList";
 	}
 	
@@ -14,8 +14,9 @@
 package org.openmrs.module.web;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -26,54 +27,94 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.module.Module;
 import org.openmrs.module.ModuleUtil;
-import org.openmrs.util.OpenmrsUtil;
+import org.openmrs.web.FileResponseUtil;
+import org.openmrs.web.filter.PrecompressedResourceCache;
 
+/**
+ * Serves the files in the /web/module/resources folder of the modules, at
+ * /moduleResources/moduleId/path.<br/>
+ * <br/>
+ * The files that have been requested are remembered with their content type and ETag, until they
+ * change or a module is started or stopped, see {@link #clearResourceCache()}. Responses support
+ * conditional and range requests (see {@link FileResponseUtil}). When the url is versioned with the
+ * version of the module, as {@link org.openmrs.web.taglib.HtmlIncludeTag} does, the response can be
+ * cached forever, unless the module is a snapshot. Otherwise clients revalidate with the ETag.
+ */
 public class ModuleResourcesServlet extends HttpServlet {
 	
 	private final String MODULE_PATH = "/WEB-INF/view/module/";
 	
 	private static final long serialVersionUID = 1239820102030344L;
 	
+	// request path to resolved file
+	private static volatile ConcurrentMap<String, ModuleResource> resourceCache = new ConcurrentHashMap<String, ModuleResource>();
+	
 	private Log log = LogFactory.getLog(this.getClass());
 	
 	/**
-	 * Used for caching purposes
-	 *
-	 * @see javax.servlet.http.HttpServlet#getLastModified(javax.servlet.http.HttpServletRequest)
+	 * Forgets the files that have been requested, must be called when the files of a module are
+	 * added to or removed from the webapp
+	 * 
+	 * @since 1.11
 	 */
-	@Override
-	protected long getLastModified(HttpServletRequest req) {
-		File f = getFile(req);
-		
-		if (f == null) {
-			return super.getLastModified(req);
-		}
-		
-		return f.lastModified();
+	public static void clearResourceCache() {
+		resourceCache = new ConcurrentHashMap<String, ModuleResource>();
 	}
 	
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		log.debug("In service method for module servlet: " + request.getPathInfo());
 		
-		File f = getFile(request);
-		if (f == null) {
+		ModuleResource resource = getResource(request);
+		if (resource == null) {
 			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
 			return;
 		}
 		
-		response.setDateHeader("Last-Modified", f.lastModified());
-		response.setContentLength(Long.valueOf(f.length()).intValue());
-		String mimeType = getServletContext().getMimeType(f.getName());
-		response.setContentType(mimeType);
+		// the version in the url changes with the file, see HtmlIncludeTag
+		if (resource.isVersionedBy(request.getParameter("v"))) {
+			FileResponseUtil.setFarFutureCacheHeaders(response);
+		}
 		
-		FileInputStream is = new FileInputStream(f);
-		try {
-			OpenmrsUtil.copyFile(is, response.getOutputStream());
+		File f = resource.getFile();
+		// a range can't be answered from the precompressed file, unless it is going to be ignored anyway
+		boolean sendRange = request.getHeader("Range") != null
+		        && FileResponseUtil.acceptsRanges(request, resource.getContentType(), f.length());
+		if (!sendRange && PrecompressedResourceCache.getInstance().serve(request, response, f, resource.getContentType())) {
+			return;
 		}
-		finally {
-			OpenmrsUtil.closeStream(is);
+		
+		FileResponseUtil.sendFile(request, response, f, resource.getContentType(), resource.getETag());
+	}
+	
+	/**
+	 * Gets the file for the given request from the cache, or resolves it
+	 *
+	 * @param request the current http request
+	 * @return the resource being requested or null if not found
+	 */
+	private ModuleResource getResource(HttpServletRequest request) {
+		String path = request.getPathInfo();
+		if (path == null) {
+			return null;
+		}
+		
+		ConcurrentMap<String, ModuleResource> cache = resourceCache;
+		ModuleResource resource = cache.get(path);
+		if (resource == null || !resource.isCurrent()) {
+			File f = getFile(request);
+			if (f == null) {
+				cache.remove(path);
+				return null;
+			}
+			
+			Module module = ModuleUtil.getModuleForPath(path);
+			resource = new ModuleResource(f, getServletContext().getMimeType(f.getName()), module == null ? null
+			        : module.getVersion());
+			cache.put(path, resource);
 		}
+		
+		return resource;
 	}
 	
 	/**
@@ -106,4 +147,55 @@ public class ModuleResourcesServlet extends HttpServlet {
 		return f;
 	}
 	
+	/**
+	 * A resolved module resource file, with the details needed to serve it
+	 */
+	private static class ModuleResource {
+		
+		private final File file;
+		
+		private final String contentType;
+		
+		private final long lastModified;
+		
+		private final String eTag;
+		
+		private final String moduleVersion;
+		
+		public ModuleResource(File file, String contentType, String moduleVersion) {
+			this.file = file;
+			this.contentType = contentType;
+			this.lastModified = file.lastModified();
+			this.eTag = FileResponseUtil.getETag(file);
+			this.moduleVersion = moduleVersion;
+		}
+		
+		public File getFile() {
+			return file;
+		}
+		
+		public String getContentType() {
+			return contentType;
+		}
+		
+		public String getETag() {
+			return eTag;
+		}
+		
+		/**
+		 * @param version the version in the url of the request
+		 * @return true if the version is the one of the module, and the module is not a snapshot
+		 *         whose files change without a new version
+		 */
+		public boolean isVersionedBy(String version) {
+			return version != null && version.equals(moduleVersion) && !moduleVersion.endsWith("SNAPSHOT");
+		}
+		
+		/**
+		 * @return true if the file has not changed since it was resolved
+		 */
+		public boolean isCurrent() {
+			return file.lastModified() == lastModified;
+		}
+	}
 }
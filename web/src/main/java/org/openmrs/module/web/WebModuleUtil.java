@@ -22,6 +22,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringReader;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -48,6 +49,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.ExtractionManifest;
 import org.openmrs.module.Module;
 import org.openmrs.module.ModuleConstants;
 import org.openmrs.module.ModuleException;
@@ -56,6 +58,7 @@ import org.openmrs.module.ModuleUtil;
 import org.openmrs.module.web.filter.ModuleFilterConfig;
 import org.openmrs.module.web.filter.ModuleFilterDefinition;
 import org.openmrs.module.web.filter.ModuleFilterMapping;
+import org.openmrs.module.web.filter.ModuleFilterMatcher;
 import org.openmrs.util.OpenmrsUtil;
 import org.openmrs.util.PrivilegeConstants;
 import org.openmrs.web.DispatcherServlet;
@@ -95,6 +98,10 @@ public class WebModuleUtil {
 	private static List<ModuleFilterMapping> moduleFilterMappings = Collections
 	        .synchronizedList(new Vector<ModuleFilterMapping>());
 	
+	// the filter mappings compiled for matching requests, null until the next request after
+	// filters have been loaded or unloaded
+	private static volatile ModuleFilterMatcher moduleFilterMatcher = null;
+	
 	/**
 	 * Performs the webapp specific startup needs for modules Normal startup is done in
 	 * {@link ModuleFactory#startModule(Module)} If delayContextRefresh is true, the spring context
@@ -131,12 +138,20 @@ public class WebModuleUtil {
 			boolean moduleNeedsContextRefresh = false;
 			
 			// copy the html files into the webapp (from /web/module/ in the module)
-			// also looks for a spring context file. If found, schedules spring to be restarted
+			// also looks for a spring context file. If found, schedules spring to be restarted.
+			// Files that are unchanged since the last time the module was started are not copied again
+			File webInfFolder = new File((realPath + "/WEB-INF").replace("/", File.separator));
+			ExtractionManifest manifest = new ExtractionManifest(getExtractionManifestFile(mod, realPath), webInfFolder);
+			int copied = 0;
 			JarFile jarFile = null;
 			OutputStream outStream = null;
 			InputStream inStream = null;
 			try {
 				File modFile = mod.getFile();
+				String checksum = ExtractionManifest.getChecksum(modFile);
+				// the web files of a module file that was extracted before are in place already, the
+				// entries are still looked through for the context files
+				boolean unchanged = checksum.equals(manifest.getChecksum());
 				jarFile = new JarFile(modFile);
 				Enumeration<JarEntry> entries = jarFile.entries();
 				
@@ -145,34 +160,41 @@ public class WebModuleUtil {
 					String name = entry.getName();
 					log.debug("Entry name: " + name);
 					if (name.startsWith("web/module/")) {
+						if (unchanged) {
+							continue;
+						}
+						
 						// trim out the starting path of "web/module/"
 						String filepath = name.substring(11);
 						
-						StringBuffer absPath = new StringBuffer(realPath + "/WEB-INF");
+						StringBuffer relativePath = new StringBuffer();
 						
 						// If this is within the tag file directory, copy it into /WEB-INF/tags/module/moduleId/...
 						if (filepath.startsWith("tags/")) {
 							filepath = filepath.substring(5);
-							absPath.append("/tags/module/");
+							relativePath.append("tags/module/");
 						}
 						// Otherwise, copy it into /WEB-INF/view/module/moduleId/...
 						else {
-							absPath.append("/view/module/");
+							relativePath.append("view/module/");
 						}
 						
 						// if a module id has a . in it, we should treat that as a /, i.e. files in the module
 						// ui.springmvc should go in folder names like .../ui/springmvc/...
-						absPath.append(mod.getModuleIdAsPath() + "/" + filepath);
+						relativePath.append(mod.getModuleIdAsPath() + "/" + filepath);
+						String absPath = realPath + "/WEB-INF/" + relativePath;
 						if (log.isDebugEnabled()) {
 							log.debug("Moving file from: " + name + " to " + absPath);
 						}
 						
 						// get the output file
-						File outFile = new File(absPath.toString().replace("/", File.separator));
+						File outFile = new File(absPath.replace("/", File.separator));
 						if (entry.isDirectory()) {
 							if (!outFile.exists()) {
 								outFile.mkdirs();
 							}
+						} else if (manifest.isExtracted(relativePath.toString(), entry)) {
+							log.debug("File is unchanged: " + absPath);
 						} else {
 							// make the parent directories in case it doesn't exist
 							File parentDir = outFile.getParentFile();
@@ -186,7 +208,12 @@ public class WebModuleUtil {
 							// copy the contents over to the webapp for non directories
 							outStream = new FileOutputStream(outFile, false);
 							inStream = jarFile.getInputStream(entry);
+							// copyFile closes both streams
 							OpenmrsUtil.copyFile(inStream, outStream);
+							outStream = null;
+							inStream = null;
+							manifest.setExtracted(relativePath.toString(), entry);
+							copied++;
 						}
 					} else if (name.equals("moduleApplicationContext.xml") || name.equals("webModuleApplicationContext.xml")) {
 						moduleNeedsContextRefresh = true;
@@ -196,6 +223,21 @@ public class WebModuleUtil {
 						throw new ModuleException(msg, mod.getModuleId());
 					}
 				}
+				
+				if (unchanged) {
+					if (log.isDebugEnabled()) {
+						log.debug("Module file of " + mod.getModuleId() + " is unchanged, its web files are in place");
+					}
+				} else {
+					// remove the files of entries that are no longer in the module
+					int removed = manifest.removeStaleFiles();
+					manifest.setChecksum(checksum);
+					manifest.save();
+					if (log.isDebugEnabled()) {
+						log.debug("Copied " + copied + " and removed " + removed + " web files of module "
+						        + mod.getModuleId());
+					}
+				}
 			}
 			catch (IOException io) {
 				log.warn("Unable to copy files from module " + mod.getModuleId() + " to the web layer", io);
@@ -226,6 +268,7 @@ public class WebModuleUtil {
 					}
 				}
 			}
+			ModuleResourcesServlet.clearResourceCache();
 			
 			// find and add the dwr code to the dwr-modules.xml file (if defined)
 			InputStream inputStream = null;
@@ -594,6 +637,7 @@ public class WebModuleUtil {
 		// Load Filter Mappings
 		List<ModuleFilterMapping> modMappings = ModuleFilterMapping.retrieveFilterMappings(module);
 		moduleFilterMappings.addAll(modMappings);
+		clearFilterMatcher();
 		log.debug("Module: " + module.getModuleId() + " successfully loaded " + modMappings.size() + " filter mappings.");
 	}
 	
@@ -636,6 +680,41 @@ public class WebModuleUtil {
 				}
 			}
 		}
+		clearFilterMatcher();
+	}
+	
+	/**
+	 * Drops the compiled filter mappings, so that they are compiled again from the loaded filters
+	 * and filter mappings for the next request
+	 */
+	private static synchronized void clearFilterMatcher() {
+		moduleFilterMatcher = null;
+	}
+	
+	/**
+	 * @return the compiled filter mappings, compiled from the loaded filters and filter mappings if
+	 *         they have changed
+	 */
+	private static ModuleFilterMatcher getFilterMatcher() {
+		ModuleFilterMatcher matcher = moduleFilterMatcher;
+		if (matcher == null) {
+			synchronized (WebModuleUtil.class) {
+				matcher = moduleFilterMatcher;
+				if (matcher == null) {
+					List<ModuleFilterMapping> mappings;
+					synchronized (moduleFilterMappings) {
+						mappings = new ArrayList<ModuleFilterMapping>(moduleFilterMappings);
+					}
+					Map<String, Filter> filters;
+					synchronized (moduleFiltersByName) {
+						filters = new HashMap<String, Filter>(moduleFiltersByName);
+					}
+					matcher = new ModuleFilterMatcher(mappings, filters);
+					moduleFilterMatcher = matcher;
+				}
+			}
+		}
+		return matcher;
 	}
 	
 	/**
@@ -659,14 +738,15 @@ public class WebModuleUtil {
 	
 	/**
 	 * Return List of Filters that have been loaded through Modules that have mappings that pass for
-	 * the passed request
+	 * the passed request. The filter mappings are matched through a {@link ModuleFilterMatcher},
+	 * which is compiled again after filters are loaded or unloaded.
 	 *
 	 * @param request - The request to check for matching {@link Filter}s
-	 * @return List of all {@link Filter}s that have filter mappings that match the passed request
+	 * @return List of all {@link Filter}s that have filter mappings that match the passed request,
+	 *         which must not be modified
 	 */
 	public static List<Filter> getFiltersForRequest(ServletRequest request) {
 		
-		List<Filter> filters = new Vector<Filter>();
 		if (request != null) {
 			HttpServletRequest httpRequest = (HttpServletRequest) request;
 			String requestPath = httpRequest.getRequestURI();
@@ -675,20 +755,10 @@ public class WebModuleUtil {
 				if (requestPath.startsWith(httpRequest.getContextPath())) {
 					requestPath = requestPath.substring(httpRequest.getContextPath().length());
 				}
-				for (ModuleFilterMapping filterMapping : WebModuleUtil.getFilterMappings()) {
-					if (ModuleFilterMapping.filterMappingPasses(filterMapping, requestPath)) {
-						Filter passedFilter = moduleFiltersByName.get(filterMapping.getFilterName());
-						if (passedFilter != null) {
-							filters.add(passedFilter);
-						} else {
-							log.warn("Unable to retrieve filter that has a name of " + filterMapping.getFilterName()
-							        + " in filter mapping.");
-						}
-					}
-				}
+				return getFilterMatcher().getFilters(requestPath);
 			}
 		}
-		return filters;
+		return Collections.emptyList();
 	}
 	
 	/**
@@ -741,9 +811,10 @@ public class WebModuleUtil {
 			}
 		}
 		
-		// call web shutdown for each module
+		// call web shutdown for each module. The web files are left in place so that the modules
+		// don't have to copy them again on the next startup if they haven't changed
 		for (Module mod : ModuleFactory.getLoadedModules()) {
-			stopModule(mod, servletContext, true);
+			stopModule(mod, servletContext, true, true);
 		}
 		
 	}
@@ -766,6 +837,18 @@ public class WebModuleUtil {
 	 * @param skipRefresh
 	 */
 	private static void stopModule(Module mod, ServletContext servletContext, boolean skipRefresh) {
+		stopModule(mod, servletContext, skipRefresh, false);
+	}
+	
+	/**
+	 * Reverses all visible activities done by startModule(org.openmrs.module.Module)
+	 *
+	 * @param mod
+	 * @param servletContext
+	 * @param skipRefresh
+	 * @param keepWebFiles true to leave the module's files in the webapp for the next startup
+	 */
+	private static void stopModule(Module mod, ServletContext servletContext, boolean skipRefresh, boolean keepWebFiles) {
 		
 		String moduleId = mod.getModuleId();
 		String modulePackage = mod.getPackageName();
@@ -773,7 +856,7 @@ public class WebModuleUtil {
 		// stop all dependent modules
 		for (Module dependentModule : ModuleFactory.getStartedModules()) {
 			if (!dependentModule.equals(mod) && dependentModule.getRequiredModules().contains(modulePackage)) {
-				stopModule(dependentModule, servletContext, skipRefresh);
+				stopModule(dependentModule, servletContext, skipRefresh, keepWebFiles);
 			}
 		}
 		
@@ -782,7 +865,7 @@ public class WebModuleUtil {
 		// delete the web files from the webapp
 		String absPath = realPath + "/WEB-INF/view/module/" + moduleId;
 		File moduleWebFolder = new File(absPath.replace("/", File.separator));
-		if (moduleWebFolder.exists()) {
+		if (moduleWebFolder.exists() && !keepWebFiles) {
 			try {
 				OpenmrsUtil.deleteDirectory(moduleWebFolder);
 			}
@@ -790,6 +873,7 @@ public class WebModuleUtil {
 				log.warn("Couldn't delete: " + moduleWebFolder.getAbsolutePath(), io);
 			}
 		}
+		ModuleResourcesServlet.clearResourceCache();
 		
 		// (not) deleting module message properties
 		
@@ -971,6 +1055,20 @@ public class WebModuleUtil {
 		return moduleServlets.get(servletName);
 	}
 	
+	/**
+	 * Gets the manifest file recording which web files of the given module were copied into the
+	 * webapp. It lives in the module's view folder, so deleting that folder when the module is
+	 * stopped causes all of the files to be copied again when it is started.
+	 *
+	 * @param mod the module
+	 * @param realPath the real path of the webapp
+	 * @return the manifest file
+	 */
+	private static File getExtractionManifestFile(Module mod, String realPath) {
+		String path = realPath + "/WEB-INF/view/module/" + mod.getModuleIdAsPath() + "/" + ExtractionManifest.FILENAME;
+		return new File(path.replace("/", File.separator));
+	}
+	
 	/**
 	 * Retrieves a path to a folder that stores web files of a module. <br/>
 	 * (path-to-openmrs/WEB-INF/view/module/moduleid)
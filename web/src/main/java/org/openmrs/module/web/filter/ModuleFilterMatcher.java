@@ -0,0 +1,196 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.web.filter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.Filter;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Finds the module {@link Filter}s whose {@link ModuleFilterMapping}s pass for a request path
+ * without going through all of the mappings. The url patterns and servlet names of the mappings
+ * are compiled once into:
+ * <ul>
+ * <li>the mappings that pass for every path (<code>*</code> and <code>/*</code>)</li>
+ * <li>a map of exact paths (every url pattern and servlet name matches itself)</li>
+ * <li>a map of path prefixes, for the patterns ending with <code>/*</code>, which is looked up
+ * with the path up to each of its slashes</li>
+ * <li>a map of extensions, for the patterns starting with <code>*.</code></li>
+ * </ul>
+ * The matches give the same filters, in the same order, as checking each mapping with
+ * {@link ModuleFilterMapping#filterMappingPasses(ModuleFilterMapping, String)}. The filters of
+ * the most recently requested paths are kept in a small LRU cache.<br/>
+ * <br/>
+ * An instance never changes, a new one must be compiled when module filters are loaded or
+ * unloaded.
+ *
+ * @since 1.11
+ */
+public class ModuleFilterMatcher {
+	
+	private static final Log log = LogFactory.getLog(ModuleFilterMatcher.class);
+	
+	/**
+	 * The number of request paths of which the filters are cached
+	 */
+	public static final int CACHE_SIZE = 500;
+	
+	private final List<ModuleFilterMapping> mappings;
+	
+	private final Map<String, Filter> filtersByName;
+	
+	private final BitSet matchAll = new BitSet();
+	
+	private final Map<String, BitSet> exactPaths = new HashMap<String, BitSet>();
+	
+	private final Map<String, BitSet> pathPrefixes = new HashMap<String, BitSet>();
+	
+	private final Map<String, BitSet> extensions = new HashMap<String, BitSet>();
+	
+	private final Map<String, List<Filter>> cache = new LinkedHashMap<String, List<Filter>>(16, 0.75f, true) {
+		
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, List<Filter>> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+	
+	/**
+	 * Compiles the given mappings
+	 *
+	 * @param mappings the filter mappings, in the order their filters are to be run
+	 * @param filtersByName the filters by filter name
+	 */
+	public ModuleFilterMatcher(List<ModuleFilterMapping> mappings, Map<String, Filter> filtersByName) {
+		this.mappings = new ArrayList<ModuleFilterMapping>(mappings);
+		this.filtersByName = new HashMap<String, Filter>(filtersByName);
+		
+		for (int i = 0; i < this.mappings.size(); i++) {
+			ModuleFilterMapping mapping = this.mappings.get(i);
+			for (String pattern : mapping.getUrlPatterns()) {
+				if (pattern == null) {
+					continue;
+				}
+				if (pattern.equals("*") || pattern.equals("/*")) {
+					matchAll.set(i);
+					continue;
+				}
+				add(exactPaths, pattern, i);
+				if (pattern.endsWith("/*")) {
+					add(pathPrefixes, pattern.substring(0, pattern.length() - 2), i);
+				} else if (pattern.startsWith("*.")) {
+					add(extensions, pattern.substring(2), i);
+				}
+			}
+			for (String servletName : mapping.getServletNames()) {
+				if ("*".equals(servletName)) {
+					matchAll.set(i);
+				} else if (servletName != null) {
+					add(exactPaths, servletName, i);
+				}
+			}
+		}
+	}
+	
+	private static void add(Map<String, BitSet> map, String key, int mapping) {
+		BitSet mappings = map.get(key);
+		if (mappings == null) {
+			mappings = new BitSet();
+			map.put(key, mappings);
+		}
+		mappings.set(mapping);
+	}
+	
+	/**
+	 * Gets the filters of the mappings that pass for the given path
+	 *
+	 * @param requestPath the request path, relative to the context path
+	 * @return the filters, in the order of their mappings, which must not be modified
+	 * @should return no filters for a null path
+	 * @should match the patterns for every path
+	 * @should match exact paths and servlet names
+	 * @should match path prefixes only up to a slash
+	 * @should match extensions only in the last path segment
+	 * @should return the filters in the order of their mappings
+	 */
+	public List<Filter> getFilters(String requestPath) {
+		if (requestPath == null) {
+			return Collections.emptyList();
+		}
+		
+		List<Filter> filters;
+		synchronized (cache) {
+			filters = cache.get(requestPath);
+		}
+		if (filters == null) {
+			filters = findFilters(requestPath);
+			synchronized (cache) {
+				cache.put(requestPath, filters);
+			}
+		}
+		return filters;
+	}
+	
+	private List<Filter> findFilters(String requestPath) {
+		BitSet passed = (BitSet) matchAll.clone();
+		or(passed, exactPaths.get(requestPath));
+		
+		if (!pathPrefixes.isEmpty()) {
+			for (int slash = requestPath.indexOf('/'); slash >= 0; slash = requestPath.indexOf('/', slash + 1)) {
+				or(passed, pathPrefixes.get(requestPath.substring(0, slash)));
+			}
+			or(passed, pathPrefixes.get(requestPath));
+		}
+		
+		if (!extensions.isEmpty()) {
+			int slash = requestPath.lastIndexOf('/');
+			int period = requestPath.lastIndexOf('.');
+			if (slash >= 0 && period > slash && period != requestPath.length() - 1) {
+				or(passed, extensions.get(requestPath.substring(period + 1)));
+			}
+		}
+		
+		if (passed.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<Filter> filters = new ArrayList<Filter>(passed.cardinality());
+		for (int i = passed.nextSetBit(0); i >= 0; i = passed.nextSetBit(i + 1)) {
+			String filterName = mappings.get(i).getFilterName();
+			Filter filter = filtersByName.get(filterName);
+			if (filter != null) {
+				filters.add(filter);
+			} else {
+				log.warn("Unable to retrieve filter that has a name of " + filterName + " in filter mapping.");
+			}
+		}
+		return Collections.unmodifiableList(filters);
+	}
+	
+	private static void or(BitSet passed, BitSet mappings) {
+		if (mappings != null) {
+			passed.or(mappings);
+		}
+	}
+}
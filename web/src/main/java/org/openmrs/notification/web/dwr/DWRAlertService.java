@@ -58,6 +58,41 @@ public class DWRAlertService {
 		return alerts;
 	}
 	
+	/**
+	 * Calls the corresponding AlertService.getUnreadAlertCount(null) method to count the alerts
+	 * {@link #getAlerts()} would return
+	 *
+	 * @return the number of unread alerts of the current user
+	 * @since 1.11
+	 */
+	public Integer getUnreadAlertCount() {
+		try {
+			return Context.getAlertService().getUnreadAlertCount(null);
+		}
+		catch (Exception e) {
+			log.error("Error counting alerts", e);
+		}
+		return 0;
+	}
+	
+	/**
+	 * Calls the corresponding AlertService.getUnreadAlertVersion(null) method. Clients polling for
+	 * alerts can call this and only call {@link #getAlerts()} when the result differs from the last
+	 * one.
+	 *
+	 * @return the version of the current user's unread alerts
+	 * @since 1.11
+	 */
+	public Long getUnreadAlertVersion() {
+		try {
+			return Context.getAlertService().getUnreadAlertVersion(null);
+		}
+		catch (Exception e) {
+			log.error("Error getting the alert version", e);
+		}
+		return 0L;
+	}
+	
 	/**
 	 * Calls the corresponding AlertService.markAlertRead(Alert) method
 	 *
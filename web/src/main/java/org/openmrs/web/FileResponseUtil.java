@@ -0,0 +1,341 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.web;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.util.OpenmrsUtil;
+import org.openmrs.web.filter.GZIPFilter;
+import org.openmrs.web.filter.GZIPResponseWrapper;
+
+/**
+ * Sends files in http responses, answering conditional (If-None-Match, If-Modified-Since) and
+ * partial (Range) requests.<br/>
+ * <br/>
+ * The bytes of the file do not go through the heap: on containers that support it (Tomcat's
+ * sendfile) the container is asked to send the file itself, otherwise it is transferred with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)} to the response stream.
+ * 
+ * @since 1.11
+ */
+public class FileResponseUtil {
+	
+	private static final Log log = LogFactory.getLog(FileResponseUtil.class);
+	
+	/**
+	 * The number of seconds that responses with far future cache headers can be cached, one year
+	 */
+	public static final int FAR_FUTURE_MAX_AGE = 365 * 24 * 60 * 60;
+	
+	private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+	
+	private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+	
+	private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+	
+	private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+	
+	/**
+	 * Builds the ETag of the given file from its length and last modified date
+	 * 
+	 * @param file the file
+	 * @return the quoted ETag
+	 * @should change when the file changes
+	 */
+	public static String getETag(File file) {
+		return "\"" + Long.toHexString(file.length()) + "-" + Long.toHexString(file.lastModified()) + "\"";
+	}
+	
+	/**
+	 * Lets clients and proxies cache the response for a year without checking back, which is only
+	 * right for urls that change when the content changes (e.g. with the version as a parameter)
+	 * 
+	 * @param response the response
+	 */
+	public static void setFarFutureCacheHeaders(HttpServletResponse response) {
+		response.setHeader("Cache-Control", "public, max-age=" + FAR_FUTURE_MAX_AGE);
+		response.setDateHeader("Expires", System.currentTimeMillis() + FAR_FUTURE_MAX_AGE * 1000L);
+	}
+	
+	/**
+	 * Sends the given file, or the requested range of it, unless the client has an up to date copy
+	 * 
+	 * @param request the current request
+	 * @param response the response to send the file in
+	 * @param file the file
+	 * @param contentType the content type of the file
+	 * @param eTag the ETag of the file, see {@link #getETag(File)}
+	 * @throws IOException
+	 * @should send the whole file
+	 * @should answer a matching if none match header with not modified
+	 * @should answer an if modified since header with not modified when the file has not changed
+	 * @should send the requested range
+	 * @should send the whole file when the if range header does not match
+	 * @should answer an unsatisfiable range with requested range not satisfiable
+	 * @should not send the body of head requests
+	 * @should send the whole file when the response is compressed
+	 */
+	public static void sendFile(HttpServletRequest request, HttpServletResponse response, File file, String contentType,
+	        String eTag) throws IOException {
+		long[] range = writeHeaders(request, response, file.length(), file.lastModified(), contentType, eTag);
+		if (range == null) {
+			return;
+		}
+		
+		// the container can only send the file itself if nothing needs to see the bytes, like the gzip filter
+		if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))
+		        && request.getAttribute(GZIPFilter.RESPONSE_WRAPPER_ATTRIBUTE) == null) {
+			request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, file.getCanonicalPath());
+			request.setAttribute(SENDFILE_START_ATTRIBUTE, range[0]);
+			request.setAttribute(SENDFILE_END_ATTRIBUTE, range[0] + range[1]);
+			return;
+		}
+		
+		FileInputStream in = new FileInputStream(file);
+		try {
+			transfer(in.getChannel(), range[0], range[1], response);
+		}
+		finally {
+			OpenmrsUtil.closeStream(in);
+		}
+	}
+	
+	/**
+	 * Sends the content of the given stream, or the requested range of it, unless the client has an
+	 * up to date copy. The stream is not closed.
+	 * 
+	 * @param request the current request
+	 * @param response the response to send the content in
+	 * @param in the stream on the file holding the content
+	 * @param length the number of bytes of the content
+	 * @param lastModified the last modified date of the content, or -1 if it is not known
+	 * @param contentType the content type of the content
+	 * @param eTag the ETag of the content
+	 * @throws IOException
+	 * @should send the requested range of the stream
+	 */
+	public static void sendStream(HttpServletRequest request, HttpServletResponse response, FileInputStream in,
+	        long length, long lastModified, String contentType, String eTag) throws IOException {
+		long[] range = writeHeaders(request, response, length, lastModified, contentType, eTag);
+		if (range != null) {
+			transfer(in.getChannel(), range[0], range[1], response);
+		}
+	}
+	
+	/**
+	 * Tells whether a range of the content can be sent. It can't when the gzip filter is going to
+	 * compress the response, because the range would then apply to the compressed bytes.
+	 * 
+	 * @param request the current request
+	 * @param contentType the content type of the content
+	 * @param length the number of bytes of the content
+	 * @return true if the Range header of the request can be answered
+	 */
+	public static boolean acceptsRanges(HttpServletRequest request, String contentType, long length) {
+		GZIPResponseWrapper wrapper = (GZIPResponseWrapper) request.getAttribute(GZIPFilter.RESPONSE_WRAPPER_ATTRIBUTE);
+		return wrapper == null || length < wrapper.getMinimumSize() || !wrapper.isCompressible(contentType);
+	}
+	
+	/**
+	 * Answers the conditional and range headers of the request
+	 * 
+	 * @return the first byte and the number of bytes to send, or null if there is nothing more to
+	 *         send
+	 */
+	private static long[] writeHeaders(HttpServletRequest request, HttpServletResponse response, long length,
+	        long lastModified, String contentType, String eTag) throws IOException {
+		boolean acceptsRanges = acceptsRanges(request, contentType, length);
+		response.setHeader("Accept-Ranges", acceptsRanges ? "bytes" : "none");
+		response.setHeader("ETag", eTag);
+		if (lastModified > 0) {
+			response.setDateHeader("Last-Modified", lastModified);
+		}
+		if (isNotModified(request, eTag, lastModified)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return null;
+		}
+		
+		long start = 0;
+		long end = length - 1;
+		String range = request.getHeader("Range");
+		if (range != null && acceptsRanges && isRangeCurrent(request, eTag, lastModified)) {
+			long[] requested = parseRange(range, length);
+			if (requested != null && requested.length == 0) {
+				response.setHeader("Content-Range", "bytes */" + length);
+				response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return null;
+			} else if (requested != null) {
+				start = requested[0];
+				end = requested[1];
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+			}
+		}
+		
+		long count = end - start + 1;
+		if (contentType != null) {
+			response.setContentType(contentType);
+		}
+		if (count <= Integer.MAX_VALUE) {
+			response.setContentLength((int) count);
+		} else {
+			response.setHeader("Content-Length", String.valueOf(count));
+		}
+		
+		if ("HEAD".equals(request.getMethod()) || count <= 0) {
+			return null;
+		}
+		
+		return new long[] { start, count };
+	}
+	
+	private static void transfer(FileChannel channel, long start, long count, HttpServletResponse response)
+	        throws IOException {
+		WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+		long position = start;
+		long remaining = count;
+		while (remaining > 0) {
+			long sent = channel.transferTo(position, remaining, out);
+			if (sent <= 0) {
+				// the file got shorter since its length was sent
+				log.warn("Only sent " + (count - remaining) + " of " + count + " bytes");
+				break;
+			}
+			position += sent;
+			remaining -= sent;
+		}
+	}
+	
+	/**
+	 * @return true if the If-None-Match or, without it, the If-Modified-Since header of the request
+	 *         shows that the client has the current version of the file
+	 */
+	private static boolean isNotModified(HttpServletRequest request, String eTag, long lastModified) {
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			for (String tag : StringUtils.split(ifNoneMatch, ",")) {
+				tag = tag.trim();
+				if (tag.equals("*") || tag.equals(eTag) || tag.equals("W/" + eTag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+		// http dates only have a precision of seconds
+		return lastModified > 0 && ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+	}
+	
+	/**
+	 * @return true if the request has no If-Range header, or if it matches the current version of
+	 *         the file, otherwise the whole file has to be sent instead of the range
+	 */
+	private static boolean isRangeCurrent(HttpServletRequest request, String eTag, long lastModified) {
+		String ifRange = request.getHeader("If-Range");
+		if (ifRange == null) {
+			return true;
+		}
+		
+		ifRange = ifRange.trim();
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+			return ifRange.equals(eTag);
+		}
+		
+		long date = getDateHeader(request, "If-Range");
+		return lastModified > 0 && date != -1 && lastModified / 1000 == date / 1000;
+	}
+	
+	private static long getDateHeader(HttpServletRequest request, String name) {
+		try {
+			return request.getDateHeader(name);
+		}
+		catch (IllegalArgumentException e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * Parses the value of a Range header of a request for a file. Only a single range is supported,
+	 * requests for several ranges get the whole file as allowed by rfc 2616.
+	 * 
+	 * @param range the value of the header, like bytes=0-499, bytes=500- or bytes=-500
+	 * @param length the length of the file
+	 * @return the first and last byte of the range, an empty array if the range is not
+	 *         satisfiable, or null if the whole file should be sent
+	 * @should parse the first and last byte
+	 * @should parse open ended and suffix ranges
+	 * @should return null for malformed or multiple ranges
+	 * @should return an empty array for unsatisfiable ranges
+	 */
+	static long[] parseRange(String range, long length) {
+		range = range.trim();
+		if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+			return null;
+		}
+		
+		String spec = range.substring("bytes=".length()).trim();
+		int dash = spec.indexOf('-');
+		if (dash < 0) {
+			return null;
+		}
+		
+		try {
+			String first = spec.substring(0, dash).trim();
+			String last = spec.substring(dash + 1).trim();
+			long start;
+			long end;
+			if (first.length() == 0) {
+				// the last bytes of the file
+				long suffix = Long.parseLong(last);
+				if (suffix <= 0) {
+					return new long[0];
+				}
+				start = Math.max(0, length - suffix);
+				end = length - 1;
+			} else {
+				start = Long.parseLong(first);
+				if (last.length() == 0) {
+					end = length - 1;
+				} else {
+					end = Long.parseLong(last);
+					if (end < start) {
+						// syntactically invalid, see rfc 2616 section 14.35.1
+						return null;
+					}
+					end = Math.min(end, length - 1);
+				}
+			}
+			
+			if (start >= length || start > end) {
+				return new long[0];
+			}
+			return new long[] { start, end };
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
@@ -65,6 +65,13 @@ public class WebConstants {
 	
 	public static final String HYPERLINK_VIEW = "hyperlink_view";
 	
+	/**
+	 * An html tag showing a thumbnail of the complex data, linking to the full data
+	 * 
+	 * @since 1.11
+	 */
+	public static final String THUMBNAIL_HTML_VIEW = "thumbnail_html_view";
+	
 	/**
 	 * Page in the webapp used for initial setup of the database connection if no valid one exists
 	 */
@@ -13,9 +13,11 @@
  */
 package org.openmrs.web.controller;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Map;
 
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -24,6 +26,8 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.GlobalProperty;
 import org.openmrs.api.GlobalPropertyListener;
+import org.openmrs.web.filter.PrecompressedResourceCache;
+import org.springframework.web.context.ServletContextAware;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.Controller;
 import org.springframework.web.servlet.mvc.LastModified;
@@ -35,9 +39,11 @@ import org.springframework.web.servlet.mvc.LastModified;
  * If you specify any 'rewrites' then the specified paths are remapped, e.g:<br/>
  * /scripts/jquery/jquery-1.3.2.min.js -> /scripts/jquery/jquery.min.js <br/>
  * All jstl files are cached in the browser until a server restart or a global property is
- * added/changed/deleted
+ * added/changed/deleted <br/>
+ * Files that are not interpreted are sent from the {@link PrecompressedResourceCache} when the
+ * response is being compressed
  */
-public class PseudoStaticContentController implements Controller, LastModified, GlobalPropertyListener {
+public class PseudoStaticContentController implements Controller, LastModified, GlobalPropertyListener, ServletContextAware {
 	
 	protected final Log log = LogFactory.getLog(getClass());
 	
@@ -47,6 +53,8 @@ public class PseudoStaticContentController implements Controller, LastModified,
 	
 	private static Long lastModified = System.currentTimeMillis();
 	
+	private ServletContext servletContext;
+	
 	public Boolean getInterpretJstl() {
 		return interpretJstl;
 	}
@@ -63,6 +71,13 @@ public class PseudoStaticContentController implements Controller, LastModified,
 		this.rewrites = rewrites;
 	}
 	
+	/**
+	 * @see org.springframework.web.context.ServletContextAware#setServletContext(javax.servlet.ServletContext)
+	 */
+	public void setServletContext(ServletContext servletContext) {
+		this.servletContext = servletContext;
+	}
+	
 	public ModelAndView handleRequest(HttpServletRequest request, HttpServletResponse response) throws ServletException,
 	        IOException {
 		String path = request.getServletPath() + request.getPathInfo();
@@ -72,6 +87,16 @@ public class PseudoStaticContentController implements Controller, LastModified,
 		}
 		if (interpretJstl) {
 			path += ".withjstl";
+		} else if (servletContext != null) {
+			String realPath = servletContext.getRealPath(path);
+			if (realPath != null) {
+				File file = new File(realPath);
+				if (file.isFile()
+				        && PrecompressedResourceCache.getInstance().serve(request, response, file,
+				            servletContext.getMimeType(path))) {
+					return null;
+				}
+			}
 		}
 		
 		return new ModelAndView(path);
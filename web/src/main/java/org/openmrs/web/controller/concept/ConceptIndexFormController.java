@@ -13,6 +13,9 @@
  */
 package org.openmrs.web.controller.concept;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
@@ -21,8 +24,10 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Concept;
 import org.openmrs.api.context.Context;
+import org.openmrs.scheduler.tasks.ConceptIndexUpdateTask;
 import org.openmrs.web.WebConstants;
 import org.springframework.validation.BindException;
+import org.springframework.validation.Errors;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.SimpleFormController;
 import org.springframework.web.servlet.view.RedirectView;
@@ -89,4 +94,16 @@ public class ConceptIndexFormController extends SimpleFormController {
 		
 		return new ModelAndView(new RedirectView(view));
 	}
+	
+	/**
+	 * Adds the progress of the running (or last) concept index rebuild
+	 * 
+	 * @see org.springframework.web.servlet.mvc.SimpleFormController#referenceData(javax.servlet.http.HttpServletRequest,
+	 *      java.lang.Object, org.springframework.validation.Errors)
+	 */
+	protected Map<String, Object> referenceData(HttpServletRequest request, Object obj, Errors errs) throws Exception {
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("progress", ConceptIndexUpdateTask.getProgress());
+		return map;
+	}
 }
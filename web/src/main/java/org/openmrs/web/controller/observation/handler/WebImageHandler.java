@@ -16,6 +16,7 @@ package org.openmrs.web.controller.observation.handler;
 import org.openmrs.Obs;
 import org.openmrs.obs.ComplexData;
 import org.openmrs.obs.handler.ImageHandler;
+import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.web.WebConstants;
 
 /**
@@ -42,6 +43,9 @@ public class WebImageHandler extends ImageHandler {
 	 * Gives a link to the ComplexServlet for this obs
 	 * <li>{@link WebConstants#HTML_VIEW}: An html tag that will display this complex data. For this
 	 * ImageHandler, its an html img tag.
+	 * <li>{@link WebConstants#THUMBNAIL_HTML_VIEW}: An html img tag showing the thumbnail of the
+	 * image (see {@link OpenmrsConstants#THUMBNAIL_VIEW}), linking to the image. Use it in lists so
+	 * that the full size images are not sent.
 	 * </ul>
 	 * 
 	 * @see org.openmrs.obs.handler.ImageHandler#getComplexData(org.openmrs.Obs, java.lang.String)
@@ -58,6 +62,12 @@ public class WebImageHandler extends ImageHandler {
 			ComplexData cd = new ComplexData(obs.getValueAsString(null), imgtag);
 			obs.setComplexData(cd);
 			return obs;
+		} else if (WebConstants.THUMBNAIL_HTML_VIEW.equals(view)) {
+			String imgtag = "<a href='" + getHyperlink(obs) + "'><img src='" + getHyperlink(obs) + "&view="
+			        + OpenmrsConstants.THUMBNAIL_VIEW + "'/></a>";
+			ComplexData cd = new ComplexData(obs.getValueAsString(null), imgtag);
+			obs.setComplexData(cd);
+			return obs;
 		} else {
 			// fall through to default parent ImageHandler action
 		}
@@ -65,6 +75,24 @@ public class WebImageHandler extends ImageHandler {
 		return super.getObs(obs, view);
 	}
 	
+	/**
+	 * Streams the stored image, or its thumbnail, for the views that {@link #getObs(Obs, String)}
+	 * leaves to the parent class. The web views are html rather than the image, so they are not
+	 * streamed.
+	 * 
+	 * @see org.openmrs.obs.handler.ImageHandler#getComplexDataStream(org.openmrs.Obs,
+	 *      java.lang.String)
+	 */
+	@Override
+	public ComplexData getComplexDataStream(Obs obs, String view) {
+		if (WebConstants.HYPERLINK_VIEW.equals(view) || WebConstants.HTML_VIEW.equals(view)
+		        || WebConstants.THUMBNAIL_HTML_VIEW.equals(view)) {
+			return null;
+		}
+		
+		return super.getComplexDataStream(obs, view);
+	}
+	
 	/**
 	 * Return the link to the complex obs servlet that will write out the contents of the complex
 	 * obs to the response
@@ -50,6 +50,7 @@ import org.openmrs.api.LocationService;
 import org.openmrs.api.PatientIdentifierException;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
+import org.openmrs.patient.DuplicatePatientCandidate;
 import org.openmrs.patient.IdentifierValidator;
 import org.openmrs.patient.UnallowedIdentifierException;
 import org.openmrs.util.OpenmrsConstants;
@@ -353,6 +354,34 @@ public class DWRPatientService implements GlobalPropertyListener {
 		return patientList;
 	}
 	
+	/**
+	 * Gets a page of the pairs of patients found by the duplicate patient detection, the most likely
+	 * ones first. The two patients of each pair follow each other in the returned list.
+	 *
+	 * @param start the index of the first pair to get
+	 * @param length the maximum number of pairs to get
+	 * @return list of patientListItems
+	 * @see org.openmrs.api.PatientService#getDuplicatePatientCandidates(Integer, Integer)
+	 * @since 1.11
+	 */
+	public Vector<Object> findDuplicatePatientCandidates(Integer start, Integer length) {
+		Vector<Object> patientList = new Vector<Object>();
+		
+		try {
+			for (DuplicatePatientCandidate candidate : Context.getPatientService().getDuplicatePatientCandidates(start,
+			    length)) {
+				patientList.add(new PatientListItem(candidate.getPatient()));
+				patientList.add(new PatientListItem(candidate.getOtherPatient()));
+			}
+		}
+		catch (Exception e) {
+			log.error(e);
+			patientList.add("Error while attempting to find duplicate patients - " + e.getMessage());
+		}
+		
+		return patientList;
+	}
+	
 	/**
 	 * Auto generated method comment
 	 *
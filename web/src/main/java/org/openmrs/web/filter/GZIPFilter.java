@@ -14,12 +14,15 @@
 package org.openmrs.web.filter;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.api.context.Context;
@@ -30,14 +33,32 @@ import org.springframework.web.filter.OncePerRequestFilter;
  * Filter that compresses output with gzip (assuming that browser supports gzip). Code from <a
  * href="http://www.onjava.com/pub/a/onjava/2003/11/19/filters.html">
  * http://www.onjava.com/pub/a/onjava/2003/11/19/filters.html</a>. &copy; 2003 Jayson Falkner You
- * may freely use the code both commercially and non-commercially.
+ * may freely use the code both commercially and non-commercially.<br/>
+ * <br/>
+ * Only responses of at least {@link OpenmrsConstants#GLOBAL_PROPERTY_GZIP_MINIMUM_SIZE} bytes and of
+ * one of the {@link OpenmrsConstants#GLOBAL_PROPERTY_GZIP_CONTENT_TYPES} are compressed, and they are
+ * compressed while they are written, see {@link GZIPResponseStream}. The response wrapper is
+ * available to the servlets as the {@link #RESPONSE_WRAPPER_ATTRIBUTE} request attribute, so they
+ * can send resources they have compressed beforehand, see {@link PrecompressedResourceCache}.
  */
 public class GZIPFilter extends OncePerRequestFilter {
 	
 	private static final Log log = LogFactory.getLog(GZIPFilter.class);
 	
+	/**
+	 * The name of the request attribute holding the {@link GZIPResponseWrapper} of a compressed
+	 * response
+	 * 
+	 * @since 1.11
+	 */
+	public static final String RESPONSE_WRAPPER_ATTRIBUTE = GZIPFilter.class.getName() + ".responseWrapper";
+	
 	private Boolean cachedGZipEnabledFlag = null;
 	
+	private Integer cachedMinimumSize = null;
+	
+	private List<String> cachedContentTypes = null;
+	
 	/**
 	 * @see org.springframework.web.filter.OncePerRequestFilter#doFilterInternal(javax.servlet.http.HttpServletRequest,
 	 *      javax.servlet.http.HttpServletResponse, javax.servlet.FilterChain)
@@ -48,9 +69,15 @@ public class GZIPFilter extends OncePerRequestFilter {
 		if (isGZIPSupported(request) && isGZIPEnabled()) {
 			log.debug("GZIP supported and enabled, compressing response");
 			
-			GZIPResponseWrapper wrappedResponse = new GZIPResponseWrapper(response);
+			GZIPResponseWrapper wrappedResponse = new GZIPResponseWrapper(response, getMinimumSize(), getContentTypes());
 			
-			chain.doFilter(request, wrappedResponse);
+			request.setAttribute(RESPONSE_WRAPPER_ATTRIBUTE, wrappedResponse);
+			try {
+				chain.doFilter(request, wrappedResponse);
+			}
+			finally {
+				request.removeAttribute(RESPONSE_WRAPPER_ATTRIBUTE);
+			}
 			wrappedResponse.finishResponse();
 			
 			return;
@@ -105,4 +132,51 @@ public class GZIPFilter extends OncePerRequestFilter {
 			return false;
 		}
 	}
+	
+	/**
+	 * Returns global property gzip.minimumSize as int
+	 */
+	private int getMinimumSize() {
+		if (cachedMinimumSize == null) {
+			try {
+				cachedMinimumSize = Integer.valueOf(Context.getAdministrationService().getGlobalProperty(
+				    OpenmrsConstants.GLOBAL_PROPERTY_GZIP_MINIMUM_SIZE,
+				    String.valueOf(OpenmrsConstants.GLOBAL_PROPERTY_GZIP_MINIMUM_SIZE_DEFAULT_VALUE)).trim());
+			}
+			catch (Exception e) {
+				log.warn("Unable to convert the global property " + OpenmrsConstants.GLOBAL_PROPERTY_GZIP_MINIMUM_SIZE
+				        + " to a valid integer. Using the default "
+				        + OpenmrsConstants.GLOBAL_PROPERTY_GZIP_MINIMUM_SIZE_DEFAULT_VALUE);
+				cachedMinimumSize = OpenmrsConstants.GLOBAL_PROPERTY_GZIP_MINIMUM_SIZE_DEFAULT_VALUE;
+			}
+		}
+		
+		return cachedMinimumSize;
+	}
+	
+	/**
+	 * Returns global property gzip.contentTypes as a list of lower case content types
+	 */
+	private List<String> getContentTypes() {
+		if (cachedContentTypes == null) {
+			String contentTypes = OpenmrsConstants.GLOBAL_PROPERTY_GZIP_CONTENT_TYPES_DEFAULT_VALUE;
+			try {
+				contentTypes = Context.getAdministrationService().getGlobalProperty(
+				    OpenmrsConstants.GLOBAL_PROPERTY_GZIP_CONTENT_TYPES, contentTypes);
+			}
+			catch (Exception e) {
+				log.warn("Unable to get the global property: " + OpenmrsConstants.GLOBAL_PROPERTY_GZIP_CONTENT_TYPES, e);
+			}
+			
+			List<String> types = new ArrayList<String>();
+			for (String type : StringUtils.split(contentTypes, ",")) {
+				if (StringUtils.isNotBlank(type)) {
+					types.add(type.trim().toLowerCase());
+				}
+			}
+			cachedContentTypes = types;
+		}
+		
+		return cachedContentTypes;
+	}
 }
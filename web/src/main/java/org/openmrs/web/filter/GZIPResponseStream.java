@@ -16,19 +16,36 @@ package org.openmrs.web.filter;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Collection;
 import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 
 /**
- * Wraps Response Stream for GZipFilter
+ * Wraps Response Stream for GZipFilter<br/>
+ * <br/>
+ * The first bytes of the response (up to the minimum size) are kept in memory. If the response
+ * ends before reaching the minimum size it is sent as is, because compressing it would not save
+ * anything worth the cpu time. Otherwise it is decided once, from the content type of the response,
+ * whether to compress it: if so the buffered bytes and everything written afterwards go through a
+ * {@link GZIPOutputStream} straight to the client, which writes out the compressed chunks as the
+ * deflater produces them, instead of holding the whole response in memory. Responses that already
+ * have a Content-Encoding (e.g. precompressed resources) are never compressed again.
  * 
  * @author Matt Raible
  * @version $Revision: 1.3 $ $Date: 2004/05/16 02:17:00 $
  */
 public class GZIPResponseStream extends ServletOutputStream {
 	
+	/**
+	 * The default number of bytes from which responses are compressed
+	 */
+	public static final int DEFAULT_MINIMUM_SIZE = 1024;
+	
+	// size of the buffer of the deflater, the compressed bytes are written out in chunks of this size
+	private static final int COMPRESSION_BUFFER_SIZE = 8192;
+	
 	// abstraction of the output stream used for compression
 	protected OutputStream bufferedOutput = null;
 	
@@ -41,15 +58,33 @@ public class GZIPResponseStream extends ServletOutputStream {
 	// reference to the output stream to the client's browser
 	protected ServletOutputStream output = null;
 	
-	// default size of the in-memory buffer
-	private int bufferSize = 50000;
+	// responses smaller than this are not compressed
+	private int minimumSize;
+	
+	// the compressible content types, null to compress all content types
+	private Collection<String> contentTypes;
 	
 	public GZIPResponseStream(HttpServletResponse response) throws IOException {
+		this(response, DEFAULT_MINIMUM_SIZE, null);
+	}
+	
+	/**
+	 * @param response the response to write to
+	 * @param minimumSize the number of bytes from which the response is compressed
+	 * @param contentTypes the content types that are compressed, see
+	 *            {@link #isCompressible(String, Collection)}, or null for all content types
+	 * @throws IOException
+	 * @since 1.11
+	 */
+	public GZIPResponseStream(HttpServletResponse response, int minimumSize, Collection<String> contentTypes)
+	    throws IOException {
 		super();
 		closed = false;
 		this.response = response;
 		this.output = response.getOutputStream();
-		bufferedOutput = new ByteArrayOutputStream();
+		this.minimumSize = minimumSize;
+		this.contentTypes = contentTypes;
+		bufferedOutput = new ByteArrayOutputStream(Math.max(minimumSize, 32));
 	}
 	
 	public void close() throws IOException {
@@ -58,42 +93,23 @@ public class GZIPResponseStream extends ServletOutputStream {
 			throw new IOException("This output stream has already been closed");
 		}
 		
-		// if we buffered everything in memory, gzip it
+		// if the response is still in memory it is too small to be worth compressing
 		if (bufferedOutput instanceof ByteArrayOutputStream) {
-			// get the content
 			ByteArrayOutputStream baos = (ByteArrayOutputStream) bufferedOutput;
-			
-			// prepare a gzip stream
-			ByteArrayOutputStream compressedContent = new ByteArrayOutputStream();
-			GZIPOutputStream gzipstream = new GZIPOutputStream(compressedContent);
-			byte[] bytes = baos.toByteArray();
-			gzipstream.write(bytes);
-			gzipstream.finish();
-			
-			// get the compressed content
-			byte[] compressedBytes = compressedContent.toByteArray();
-			
-			// set appropriate HTTP headers
-			response.setContentLength(compressedBytes.length);
-			response.addHeader("Content-Encoding", "gzip");
-			output.write(compressedBytes);
-			output.flush();
-			output.close();
-			closed = true;
+			if (!response.isCommitted()) {
+				response.setContentLength(baos.size());
+			}
+			baos.writeTo(output);
 		}
-		// if things were not buffered in memory, finish the GZIP stream and response
+		// if things were not buffered in memory, finish the GZIP stream
 		else if (bufferedOutput instanceof GZIPOutputStream) {
-			// cast to appropriate type
-			GZIPOutputStream gzipstream = (GZIPOutputStream) bufferedOutput;
-			
-			// finish the compression
-			gzipstream.finish();
-			
-			// finish the response
-			output.flush();
-			output.close();
-			closed = true;
+			((GZIPOutputStream) bufferedOutput).finish();
 		}
+		
+		// finish the response
+		output.flush();
+		output.close();
+		closed = true;
 	}
 	
 	public void flush() throws IOException {
@@ -101,6 +117,7 @@ public class GZIPResponseStream extends ServletOutputStream {
 			throw new IOException("Cannot flush a closed output stream");
 		}
 		
+		// while buffering, the decision whether to compress is not made yet so there is nothing to flush
 		bufferedOutput.flush();
 	}
 	
@@ -117,31 +134,89 @@ public class GZIPResponseStream extends ServletOutputStream {
 	}
 	
 	private void checkBufferSize(int length) throws IOException {
-		// check if we are buffering too large of a file
+		// check if we have buffered enough to decide whether to compress
 		if (bufferedOutput instanceof ByteArrayOutputStream) {
 			ByteArrayOutputStream baos = (ByteArrayOutputStream) bufferedOutput;
 			
-			if ((baos.size() + length) > bufferSize) {
-				// files too large to keep in memory are sent to the client without Content-Length specified
-				response.addHeader("Content-Encoding", "gzip");
-				
-				// get existing bytes
-				byte[] bytes = baos.toByteArray();
-				
-				// make new gzip stream using the response output stream
-				GZIPOutputStream gzipstream = new GZIPOutputStream(output);
-				gzipstream.write(bytes);
-				
-				// we are no longer buffering, send content via gzipstream
-				bufferedOutput = gzipstream;
+			if ((baos.size() + length) > minimumSize) {
+				if (isCompressible()) {
+					// compressed responses are sent to the client without Content-Length specified
+					response.addHeader("Content-Encoding", "gzip");
+					
+					// make new gzip stream using the response output stream, and send it the existing bytes
+					GZIPOutputStream gzipstream = new GZIPOutputStream(output, COMPRESSION_BUFFER_SIZE);
+					baos.writeTo(gzipstream);
+					
+					// we are no longer buffering, send content via gzipstream
+					bufferedOutput = gzipstream;
+				} else {
+					// send the content as is
+					baos.writeTo(output);
+					bufferedOutput = output;
+				}
 			}
 		}
 	}
 	
+	/**
+	 * @return true if the response should be compressed, judging by its headers
+	 */
+	private boolean isCompressible() {
+		if (response.containsHeader("Content-Encoding")) {
+			return false;
+		}
+		
+		return contentTypes == null || isCompressible(response.getContentType(), contentTypes);
+	}
+	
+	/**
+	 * Checks a content type against a list of compressible content types
+	 * 
+	 * @param contentType the content type of a response, possibly with parameters like the charset
+	 * @param contentTypes the compressible content types, either full mime types or like "text/*"
+	 * @return true if the content type is compressible, or if it is null
+	 * @since 1.11
+	 * @should match the mime type ignoring parameters and case
+	 * @should match wildcard subtypes
+	 * @should not match other content types
+	 */
+	public static boolean isCompressible(String contentType, Collection<String> contentTypes) {
+		if (contentType == null) {
+			// the filter is only mapped to text resources
+			return true;
+		}
+		
+		String mimeType = contentType;
+		int parameters = mimeType.indexOf(';');
+		if (parameters >= 0) {
+			mimeType = mimeType.substring(0, parameters);
+		}
+		mimeType = mimeType.trim().toLowerCase();
+		
+		for (String compressible : contentTypes) {
+			if (compressible.endsWith("/*")) {
+				if (mimeType.startsWith(compressible.substring(0, compressible.length() - 1))) {
+					return true;
+				}
+			} else if (mimeType.equals(compressible)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
 	public void write(byte[] b) throws IOException {
 		write(b, 0, b.length);
 	}
 	
+	/**
+	 * @see java.io.OutputStream#write(byte[], int, int)
+	 * @should not compress responses smaller than the minimum size
+	 * @should compress responses from the minimum size while they are written
+	 * @should not compress content types that are not compressible
+	 * @should not compress responses that already have a content encoding
+	 */
 	public void write(byte[] b, int off, int len) throws IOException {
 		
 		if (closed) {
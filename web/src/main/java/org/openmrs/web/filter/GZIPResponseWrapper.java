@@ -16,6 +16,7 @@ package org.openmrs.web.filter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.util.Collection;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
@@ -41,13 +42,48 @@ public class GZIPResponseWrapper extends HttpServletResponseWrapper {
 	
 	protected int error = 0;
 	
+	private int minimumSize = GZIPResponseStream.DEFAULT_MINIMUM_SIZE;
+	
+	private Collection<String> contentTypes = null;
+	
+	private boolean encoded = false;
+	
 	public GZIPResponseWrapper(HttpServletResponse response) {
 		super(response);
 		origResponse = response;
 	}
 	
+	/**
+	 * @param response the response to wrap
+	 * @param minimumSize the number of bytes from which the response is compressed
+	 * @param contentTypes the content types that are compressed, or null for all content types
+	 * @since 1.11
+	 */
+	public GZIPResponseWrapper(HttpServletResponse response, int minimumSize, Collection<String> contentTypes) {
+		this(response);
+		this.minimumSize = minimumSize;
+		this.contentTypes = contentTypes;
+	}
+	
 	public ServletOutputStream createOutputStream() throws IOException {
-		return (new GZIPResponseStream(origResponse));
+		return (new GZIPResponseStream(origResponse, minimumSize, contentTypes));
+	}
+	
+	/**
+	 * @return the number of bytes from which the response is compressed
+	 * @since 1.11
+	 */
+	public int getMinimumSize() {
+		return minimumSize;
+	}
+	
+	/**
+	 * @param contentType a content type
+	 * @return true if responses with the given content type are compressed
+	 * @since 1.11
+	 */
+	public boolean isCompressible(String contentType) {
+		return contentTypes == null || GZIPResponseStream.isCompressible(contentType, contentTypes);
 	}
 	
 	public void finishResponse() {
@@ -103,6 +139,32 @@ public class GZIPResponseWrapper extends HttpServletResponseWrapper {
 	}
 	
 	public void setContentLength(int length) {
+		// content that is already encoded (e.g. precompressed) is sent as is, so its length is right
+		if (encoded) {
+			super.setContentLength(length);
+		}
+	}
+	
+	/**
+	 * @see javax.servlet.http.HttpServletResponseWrapper#setHeader(java.lang.String, java.lang.String)
+	 */
+	public void setHeader(String name, String value) {
+		super.setHeader(name, value);
+		checkEncoded(name);
+	}
+	
+	/**
+	 * @see javax.servlet.http.HttpServletResponseWrapper#addHeader(java.lang.String, java.lang.String)
+	 */
+	public void addHeader(String name, String value) {
+		super.addHeader(name, value);
+		checkEncoded(name);
+	}
+	
+	private void checkEncoded(String name) {
+		if ("Content-Encoding".equalsIgnoreCase(name)) {
+			encoded = true;
+		}
 	}
 	
 	/**
@@ -0,0 +1,256 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.web.filter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.util.OpenmrsUtil;
+import org.openmrs.web.FileResponseUtil;
+
+/**
+ * Keeps the gzip compressed bytes of static files (the core scripts and the module resources) in
+ * memory, so that they are compressed once instead of by the {@link GZIPFilter} on every request.<br/>
+ * <br/>
+ * Each entry is tagged with the ETag of the file it was made from, built from its length and last
+ * modified date, so a file that changes on disk (e.g. when a module is upgraded) is compressed again
+ * the next time it is requested. Files larger than {@link #MAX_FILE_SIZE} are not cached, and the
+ * least recently used entries are dropped once the cache holds more than {@link #MAX_CACHE_SIZE}
+ * compressed bytes.
+ * 
+ * @since 1.11
+ */
+public class PrecompressedResourceCache {
+	
+	private static final Log log = LogFactory.getLog(PrecompressedResourceCache.class);
+	
+	/**
+	 * Files larger than this number of bytes are left to the {@link GZIPFilter}
+	 */
+	public static final long MAX_FILE_SIZE = 1024 * 1024;
+	
+	/**
+	 * The maximum number of compressed bytes held by the cache
+	 */
+	public static final long MAX_CACHE_SIZE = 16 * 1024 * 1024;
+	
+	private static final PrecompressedResourceCache instance = new PrecompressedResourceCache(MAX_CACHE_SIZE,
+	        MAX_FILE_SIZE);
+	
+	private final long maxCacheSize;
+	
+	private final long maxFileSize;
+	
+	// absolute path to entry, in access order
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	
+	private long cacheSize = 0;
+	
+	/**
+	 * @param maxCacheSize the maximum number of compressed bytes to hold
+	 * @param maxFileSize the size of the largest file to compress
+	 */
+	PrecompressedResourceCache(long maxCacheSize, long maxFileSize) {
+		this.maxCacheSize = maxCacheSize;
+		this.maxFileSize = maxFileSize;
+	}
+	
+	/**
+	 * @return the cache shared by the servlets serving static files
+	 */
+	public static PrecompressedResourceCache getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * Builds the ETag of the given file from its length and last modified date, see
+	 * {@link FileResponseUtil#getETag(File)}
+	 * 
+	 * @param file the file
+	 * @return the quoted ETag
+	 * @should change when the file changes
+	 */
+	public static String getETag(File file) {
+		return FileResponseUtil.getETag(file);
+	}
+	
+	/**
+	 * Sends the compressed bytes of the given file if the request is being compressed by the
+	 * {@link GZIPFilter}, the file has one of its content types, and compressing the file makes it
+	 * smaller. Otherwise nothing is written and the caller should send the file as usual.
+	 * 
+	 * @param request the current request
+	 * @param response the response to send the file in
+	 * @param file the requested file
+	 * @param contentType the content type of the file
+	 * @return true if the response has been sent
+	 * @throws IOException
+	 * @should send the compressed file when the response is compressed
+	 * @should not send the file when the response is not compressed
+	 * @should answer a matching if none match header with not modified
+	 */
+	public boolean serve(HttpServletRequest request, HttpServletResponse response, File file, String contentType)
+	        throws IOException {
+		GZIPResponseWrapper wrapper = (GZIPResponseWrapper) request.getAttribute(GZIPFilter.RESPONSE_WRAPPER_ATTRIBUTE);
+		if (wrapper == null || file.length() < wrapper.getMinimumSize() || !wrapper.isCompressible(contentType)) {
+			return false;
+		}
+		
+		String eTag = getETag(file);
+		byte[] compressed = getCompressed(file, eTag);
+		if (compressed == null) {
+			return false;
+		}
+		
+		// the compressed representation needs its own tag, see rfc 2616 section 13.6
+		String compressedETag = eTag.substring(0, eTag.length() - 1) + "-gzip\"";
+		response.setHeader("ETag", compressedETag);
+		response.setHeader("Vary", "Accept-Encoding");
+		response.setDateHeader("Last-Modified", file.lastModified());
+		if (compressedETag.equals(request.getHeader("If-None-Match"))) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		}
+		
+		response.setContentType(contentType);
+		response.setHeader("Content-Encoding", "gzip");
+		response.setContentLength(compressed.length);
+		response.getOutputStream().write(compressed);
+		return true;
+	}
+	
+	/**
+	 * Gets the compressed bytes of the given file, compressing it if it is not in the cache or has
+	 * changed since
+	 * 
+	 * @param file the file
+	 * @param eTag the current ETag of the file
+	 * @return the compressed bytes, or null if the file is too large or does not get smaller
+	 * @throws IOException
+	 * @should compress the file once
+	 * @should compress the file again when it changes
+	 * @should not cache files larger than the maximum file size
+	 * @should drop the least recently used entries when full
+	 */
+	byte[] getCompressed(File file, String eTag) throws IOException {
+		if (file.length() > maxFileSize) {
+			return null;
+		}
+		
+		String key = file.getAbsolutePath();
+		synchronized (entries) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.eTag.equals(eTag)) {
+				return entry.bytes;
+			}
+		}
+		
+		// compress outside of the lock, at worst two requests compress the same file at the same time
+		byte[] compressed = compress(file);
+		if (compressed.length >= file.length()) {
+			// remembered as null so it is not compressed on every request
+			compressed = null;
+		}
+		put(key, new Entry(eTag, compressed));
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Compressed " + key + " from " + file.length() + " to "
+			        + (compressed == null ? "(not smaller)" : compressed.length) + " bytes");
+		}
+		
+		return compressed;
+	}
+	
+	private void put(String key, Entry entry) {
+		synchronized (entries) {
+			Entry previous = entries.put(key, entry);
+			if (previous != null) {
+				cacheSize -= previous.size();
+			}
+			cacheSize += entry.size();
+			
+			for (Iterator<Entry> i = entries.values().iterator(); cacheSize > maxCacheSize && i.hasNext();) {
+				cacheSize -= i.next().size();
+				i.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Empties the cache
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+			cacheSize = 0;
+		}
+	}
+	
+	/**
+	 * @return the number of files in the cache
+	 */
+	int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+	
+	private static byte[] compress(File file) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) file.length() / 2 + 32);
+		FileInputStream in = new FileInputStream(file);
+		try {
+			GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				gzip.write(buffer, 0, read);
+			}
+			gzip.finish();
+		}
+		finally {
+			OpenmrsUtil.closeStream(in);
+		}
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * The compressed bytes of a file, as of the ETag
+	 */
+	private static class Entry {
+		
+		private final String eTag;
+		
+		private final byte[] bytes;
+		
+		public Entry(String eTag, byte[] bytes) {
+			this.eTag = eTag;
+			this.bytes = bytes;
+		}
+		
+		public long size() {
+			return bytes == null ? 0 : bytes.length;
+		}
+	}
+}
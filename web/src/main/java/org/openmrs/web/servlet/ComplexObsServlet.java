@@ -15,8 +15,10 @@ package org.openmrs.web.servlet;
 
 import java.awt.image.RenderedImage;
 import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Method;
 
 import javax.imageio.ImageIO;
 import javax.servlet.ServletException;
@@ -27,13 +29,25 @@ import javax.servlet.http.HttpSession;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.ConceptComplex;
 import org.openmrs.Obs;
 import org.openmrs.api.context.Context;
 import org.openmrs.obs.ComplexData;
+import org.openmrs.obs.ComplexObsHandler;
+import org.openmrs.obs.StreamingComplexObsHandler;
 import org.openmrs.util.OpenmrsUtil;
 import org.openmrs.util.PrivilegeConstants;
+import org.openmrs.web.FileResponseUtil;
 import org.openmrs.web.WebConstants;
 
+/**
+ * Writes out the complex data of an obs. The data of handlers that are
+ * {@link StreamingComplexObsHandler}s is sent as it is stored, with support for ETags and ranges,
+ * the data of the other handlers is written out from the format returned for the view. A subclass
+ * of a streaming handler that overrides {@link ComplexObsHandler#getObs(Obs, String)} without also
+ * overriding {@link StreamingComplexObsHandler#getComplexDataStream(Obs, String)} is not streamed,
+ * so that its data is still what its getObs returns.
+ */
 public class ComplexObsServlet extends HttpServlet {
 	
 	public static final long serialVersionUID = 1234432L;
@@ -43,6 +57,7 @@ public class ComplexObsServlet extends HttpServlet {
 	/**
 	 * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest,
 	 *      javax.servlet.http.HttpServletResponse)
+	 * @should stream the stored image of a web image handler
 	 */
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		
@@ -64,13 +79,16 @@ public class ComplexObsServlet extends HttpServlet {
 			return;
 		}
 		
+		if (streamComplexData(request, response, Integer.valueOf(obsId), view, viewType)) {
+			return;
+		}
+		
 		Obs complexObs = Context.getObsService().getComplexObs(Integer.valueOf(obsId), view);
 		ComplexData cd = complexObs.getComplexData();
 		Object data = cd.getData();
 		
 		if ("download".equals(viewType)) {
-			response.setHeader("Content-Disposition", "attachment; filename=" + cd.getTitle());
-			response.setHeader("Pragma", "no-cache");
+			setDownloadHeaders(response, cd);
 		}
 		
 		if (data instanceof byte[]) {
@@ -95,4 +113,68 @@ public class ComplexObsServlet extends HttpServlet {
 		}
 	}
 	
+	/**
+	 * Sends the stored bytes of the complex data if the handler of the obs supports it
+	 * 
+	 * @return true if the response has been sent
+	 */
+	private boolean streamComplexData(HttpServletRequest request, HttpServletResponse response, Integer obsId,
+	        String view, String viewType) throws IOException {
+		Obs obs = Context.getObsService().getObs(obsId);
+		if (obs == null || !obs.isComplex() || !obs.getConcept().isComplex()) {
+			return false;
+		}
+		
+		ConceptComplex concept = Context.getConceptService().getConceptComplex(obs.getConcept().getConceptId());
+		if (concept == null || concept.getHandler() == null) {
+			return false;
+		}
+		
+		ComplexObsHandler handler = Context.getObsService().getHandler(concept.getHandler());
+		if (!(handler instanceof StreamingComplexObsHandler) || !isStreamingUpToDate(handler)) {
+			return false;
+		}
+		
+		ComplexData cd = ((StreamingComplexObsHandler) handler).getComplexDataStream(obs, view);
+		if (cd == null) {
+			return false;
+		}
+		
+		FileInputStream stream = (FileInputStream) cd.getData();
+		try {
+			if ("download".equals(viewType)) {
+				setDownloadHeaders(response, cd);
+			}
+			
+			// the stored data of an obs does not change, editing an obs makes a new one
+			String eTag = "\"" + obs.getUuid() + "-" + Integer.toHexString(String.valueOf(view).hashCode()) + "-"
+			        + Long.toHexString(cd.getLength()) + "\"";
+			FileResponseUtil.sendStream(request, response, stream, cd.getLength(), -1, cd.getMimeType(), eTag);
+		}
+		finally {
+			OpenmrsUtil.closeStream(stream);
+		}
+		return true;
+	}
+	
+	/**
+	 * @return true if getComplexDataStream is implemented by the same class as getObs, or by a
+	 *         subclass of it, so the streamed data is the data getObs would return
+	 */
+	private boolean isStreamingUpToDate(ComplexObsHandler handler) {
+		try {
+			Method getObs = handler.getClass().getMethod("getObs", Obs.class, String.class);
+			Method getComplexDataStream = handler.getClass().getMethod("getComplexDataStream", Obs.class, String.class);
+			return getObs.getDeclaringClass().isAssignableFrom(getComplexDataStream.getDeclaringClass());
+		}
+		catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+	
+	private void setDownloadHeaders(HttpServletResponse response, ComplexData cd) {
+		response.setHeader("Content-Disposition", "attachment; filename=" + cd.getTitle());
+		response.setHeader("Pragma", "no-cache");
+	}
+	
 }
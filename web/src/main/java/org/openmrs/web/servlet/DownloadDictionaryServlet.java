@@ -16,8 +16,6 @@ package org.openmrs.web.servlet;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Iterator;
-import java.util.Locale;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -26,17 +24,15 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.openmrs.Concept;
-import org.openmrs.ConceptAnswer;
-import org.openmrs.ConceptDescription;
-import org.openmrs.ConceptName;
-import org.openmrs.ConceptSet;
-import org.openmrs.api.ConceptService;
 import org.openmrs.api.context.Context;
+import org.openmrs.scheduler.tasks.ExportConceptDictionaryTask;
+import org.openmrs.util.ConceptDictionaryExporter;
 
 /**
  * This servlet will package all non retired concepts into a comma delimited file. Retired concepts
- * are ignored.
+ * are ignored. The rows are written to the response as the dictionary is read, a page of concepts
+ * at a time, see {@link ConceptDictionaryExporter}. Very large dictionaries can also be exported to
+ * a file in the background with the {@link ExportConceptDictionaryTask}.
  */
 public class DownloadDictionaryServlet extends HttpServlet {
 	
@@ -48,7 +44,7 @@ public class DownloadDictionaryServlet extends HttpServlet {
 	 * Maximum size of query results, when retrieved in batches. ABKTODO: should probably be
 	 * configurable somewhere
 	 */
-	public int batchSize = 1000;
+	public int batchSize = ConceptDictionaryExporter.DEFAULT_PAGE_SIZE;
 	
 	/**
 	 * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest,
@@ -57,111 +53,14 @@ public class DownloadDictionaryServlet extends HttpServlet {
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		
 		try {
-			Locale locale = Context.getLocale();
-			
-			ConceptService cs = Context.getConceptService();
 			String s = new SimpleDateFormat("dMy_Hm").format(new Date());
 			
 			response.setHeader("Content-Type", "text/csv;charset=UTF-8");
 			response.setHeader("Content-Disposition", "attachment; filename=conceptDictionary" + s + ".csv");
 			
-			StringBuilder line = new StringBuilder(
-			        "Concept Id,Name,Description,Synonyms,Answers,Set Members,Class,Datatype,Changed By,Creator\n");
-			response.getWriter().write(line.toString());
-			
-			int listIndex = 0;
-			Iterator<Concept> conceptIterator = cs.conceptIterator();
-			while (conceptIterator.hasNext()) {
-				Concept c = conceptIterator.next();
-				if (!c.isRetired()) {
-					
-					line.append(c.getConceptId());
-					line.append(",");
-					String name, description;
-					ConceptName cn = c.getName(locale);
-					if (cn == null) {
-						name = "";
-					} else {
-						name = cn.getName();
-					}
-					
-					ConceptDescription cd = c.getDescription(locale);
-					if (cd == null) {
-						description = "";
-					} else {
-						description = cd.getDescription();
-					}
-					
-					line.append('"');
-					line.append(name.replace("\"", "\"\""));
-					line.append("\",");
-					
-					if (description == null) {
-						description = "";
-					}
-					line.append('"');
-					line.append(description.replace("\"", "\"\""));
-					line.append("\",");
-					
-					StringBuilder tmp = new StringBuilder("");
-					for (ConceptName syn : c.getNames()) {
-						tmp.append(syn).append("\n");
-					}
-					line.append('"');
-					line.append(tmp.toString().trim());
-					line.append("\",");
-					
-					tmp = new StringBuilder("");
-					for (ConceptAnswer answer : c.getAnswers(false)) {
-						if (answer.getAnswerConcept() != null) {
-							tmp.append(answer.getAnswerConcept().getName()).append("\n");
-						} else if (answer.getAnswerDrug() != null) {
-							tmp.append(answer.getAnswerDrug().getFullName(Context.getLocale())).append("\n");
-						}
-					}
-					line.append('"');
-					line.append(tmp.toString().trim());
-					line.append("\",");
-					
-					tmp = new StringBuilder("");
-					for (ConceptSet set : c.getConceptSets()) {
-						if (set.getConcept() != null) {
-							name = set.getConcept().getName().toString();
-							tmp.append(name.replace("\"", "\"\"")).append("\n");
-						}
-					}
-					line.append('"');
-					line.append(tmp.toString().trim());
-					line.append("\",");
-					
-					line.append('"');
-					if (c.getConceptClass() != null) {
-						line.append(c.getConceptClass().getName());
-					}
-					line.append("\",");
-					
-					line.append('"');
-					if (c.getDatatype() != null) {
-						line.append(c.getDatatype().getName());
-					}
-					line.append("\",");
-					
-					line.append('"');
-					if (c.getChangedBy() != null) {
-						line.append(c.getChangedBy().getPersonName());
-					}
-					line.append("\",");
-					
-					line.append('"');
-					if (c.getCreator() != null) {
-						line.append(c.getCreator().getPersonName());
-					}
-					line.append("\"\n");
-					
-					response.getWriter().write(line.toString());
-				}
-				
-			}
+			ConceptDictionaryExporter exporter = new ConceptDictionaryExporter(Context.getLocale());
+			exporter.setPageSize(batchSize);
+			exporter.export(response.getWriter());
 		}
 		catch (Exception e) {
 			log.error("Error while downloading concepts.", e);
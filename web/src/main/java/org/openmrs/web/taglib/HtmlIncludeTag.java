@@ -25,6 +25,8 @@ import javax.servlet.jsp.tagext.TagSupport;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.Module;
+import org.openmrs.module.ModuleUtil;
 import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.web.WebConstants;
 
@@ -45,6 +47,8 @@ public class HtmlIncludeTag extends TagSupport {
 	
 	private static final String POSSIBLE_TYPES_CSS = ".css,style,stylesheet";
 	
+	private static final String MODULE_RESOURCES_PATH = "/moduleResources/";
+	
 	public static final String OPENMRS_HTML_INCLUDE_REQUEST_ID_KEY = "org.openmrs.htmlInclude.pageName";
 	
 	public static final String OPENMRS_HTML_INCLUDE_MAP_KEY = "org.openmrs.htmlInclude.includeMap";
@@ -122,17 +126,18 @@ public class HtmlIncludeTag extends TagSupport {
 					log.debug("Could not cast request to HttpServletRequest in HtmlIncludeTag");
 				}
 				
-				// the openmrs version is inserted into the file src so that js and css files are cached across version releases
+				// the openmrs or module version is inserted into the file src so that js and css files are cached across version releases
+				String version = getVersion(request.getContextPath(), file);
 				if (isJs) {
 					output.append("<script src=\"").append(prefix).append(file);
-					output.append("?v=").append(OpenmrsConstants.OPENMRS_VERSION_SHORT);
+					output.append("?v=").append(version);
 					if (appendLocale) {
 						output.append("&locale=").append(Context.getLocale());
 					}
 					output.append("\" type=\"text/javascript\" ></script>");
 				} else if (isCss) {
 					output.append("<link href=\"").append(prefix).append(file);
-					output.append("?v=").append(OpenmrsConstants.OPENMRS_VERSION_SHORT);
+					output.append("?v=").append(version);
 					if (appendLocale) {
 						output.append("&locale=").append(Context.getLocale());
 					}
@@ -161,6 +166,25 @@ public class HtmlIncludeTag extends TagSupport {
 		return SKIP_BODY;
 	}
 	
+	/**
+	 * Gets the version to put in the url of the given file. Module resources get the version of
+	 * their module, which lets {@link org.openmrs.module.web.ModuleResourcesServlet} have them
+	 * cached for good, other files the openmrs version.
+	 */
+	private String getVersion(String contextPath, String fileName) {
+		String path = fileName.startsWith(contextPath + "/") ? fileName.substring(contextPath.length()) : fileName;
+		if (path.startsWith(MODULE_RESOURCES_PATH)) {
+			String resourcePath = path.substring(MODULE_RESOURCES_PATH.length() - 1);
+			if (resourcePath.lastIndexOf('/') > 0) {
+				Module module = ModuleUtil.getModuleForPath(resourcePath);
+				if (module != null && module.getVersion() != null) {
+					return module.getVersion();
+				}
+			}
+		}
+		return OpenmrsConstants.OPENMRS_VERSION_SHORT;
+	}
+	
 	private String getInitialRequestUniqueId() {
 		HttpServletRequest pageRequest = (HttpServletRequest) this.pageContext.getRequest();
 		Object attr = pageRequest.getAttribute(WebConstants.INIT_REQ_UNIQUE_ID);
@@ -0,0 +1,161 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.web.filter;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.Filter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.test.Verifies;
+
+/**
+ * Tests the {@link ModuleFilterMatcher} class
+ */
+public class ModuleFilterMatcherTest {
+	
+	private List<ModuleFilterMapping> mappings;
+	
+	private Map<String, Filter> filters;
+	
+	@Before
+	public void before() {
+		mappings = new ArrayList<ModuleFilterMapping>();
+		filters = new HashMap<String, Filter>();
+	}
+	
+	private Filter addMapping(String filterName, String urlPattern, String servletName) {
+		ModuleFilterMapping mapping = new ModuleFilterMapping(null);
+		mapping.setFilterName(filterName);
+		if (urlPattern != null) {
+			mapping.addUrlPattern(urlPattern);
+		}
+		if (servletName != null) {
+			mapping.addServletName(servletName);
+		}
+		mappings.add(mapping);
+		
+		Filter filter = filters.get(filterName);
+		if (filter == null) {
+			filter = mock(Filter.class);
+			filters.put(filterName, filter);
+		}
+		return filter;
+	}
+	
+	private List<Filter> getFilters(String requestPath) {
+		List<Filter> result = new ModuleFilterMatcher(mappings, filters).getFilters(requestPath);
+		
+		// the same filters as checking each mapping
+		List<Filter> expected = new ArrayList<Filter>();
+		for (ModuleFilterMapping mapping : mappings) {
+			if (ModuleFilterMapping.filterMappingPasses(mapping, requestPath)) {
+				expected.add(filters.get(mapping.getFilterName()));
+			}
+		}
+		Assert.assertEquals(expected, result);
+		return result;
+	}
+	
+	/**
+	 * @see {@link ModuleFilterMatcher#getFilters(String)}
+	 */
+	@Test
+	@Verifies(value = "should return no filters for a null path", method = "getFilters(String)")
+	public void getFilters_shouldReturnNoFiltersForANullPath() throws Exception {
+		addMapping("all", "*", null);
+		Assert.assertTrue(getFilters(null).isEmpty());
+	}
+	
+	/**
+	 * @see {@link ModuleFilterMatcher#getFilters(String)}
+	 */
+	@Test
+	@Verifies(value = "should match the patterns for every path", method = "getFilters(String)")
+	public void getFilters_shouldMatchThePatternsForEveryPath() throws Exception {
+		Filter star = addMapping("star", "*", null);
+		Filter slashStar = addMapping("slashStar", "/*", null);
+		Filter servlet = addMapping("servlet", null, "*");
+		
+		Assert.assertEquals(Arrays.asList(star, slashStar, servlet), getFilters("/patientDashboard.form"));
+		Assert.assertEquals(3, getFilters("").size());
+	}
+	
+	/**
+	 * @see {@link ModuleFilterMatcher#getFilters(String)}
+	 */
+	@Test
+	@Verifies(value = "should match exact paths and servlet names", method = "getFilters(String)")
+	public void getFilters_shouldMatchExactPathsAndServletNames() throws Exception {
+		Filter exact = addMapping("exact", "/admin/index.htm", null);
+		Filter servlet = addMapping("servlet", null, "/moduleServlet");
+		
+		Assert.assertEquals(Arrays.asList(exact), getFilters("/admin/index.htm"));
+		Assert.assertEquals(Arrays.asList(servlet), getFilters("/moduleServlet"));
+		Assert.assertTrue(getFilters("/admin/index.html").isEmpty());
+	}
+	
+	/**
+	 * @see {@link ModuleFilterMatcher#getFilters(String)}
+	 */
+	@Test
+	@Verifies(value = "should match path prefixes only up to a slash", method = "getFilters(String)")
+	public void getFilters_shouldMatchPathPrefixesOnlyUpToASlash() throws Exception {
+		Filter prefix = addMapping("prefix", "/ws/rest/*", null);
+		
+		Assert.assertEquals(Arrays.asList(prefix), getFilters("/ws/rest"));
+		Assert.assertEquals(Arrays.asList(prefix), getFilters("/ws/rest/v1/patient"));
+		Assert.assertEquals(Arrays.asList(prefix), getFilters("/ws/rest/*"));
+		Assert.assertTrue(getFilters("/ws/restful").isEmpty());
+		Assert.assertTrue(getFilters("/ws").isEmpty());
+	}
+	
+	/**
+	 * @see {@link ModuleFilterMatcher#getFilters(String)}
+	 */
+	@Test
+	@Verifies(value = "should match extensions only in the last path segment", method = "getFilters(String)")
+	public void getFilters_shouldMatchExtensionsOnlyInTheLastPathSegment() throws Exception {
+		Filter form = addMapping("form", "*.form", null);
+		
+		Assert.assertEquals(Arrays.asList(form), getFilters("/admin/users/user.form"));
+		Assert.assertTrue(getFilters("/admin/users.form/user").isEmpty());
+		Assert.assertTrue(getFilters("/admin/users/user.formx").isEmpty());
+		Assert.assertTrue(getFilters("user.form").isEmpty());
+		Assert.assertTrue(getFilters("/admin/users/user.").isEmpty());
+	}
+	
+	/**
+	 * @see {@link ModuleFilterMatcher#getFilters(String)}
+	 */
+	@Test
+	@Verifies(value = "should return the filters in the order of their mappings", method = "getFilters(String)")
+	public void getFilters_shouldReturnTheFiltersInTheOrderOfTheirMappings() throws Exception {
+		Filter extension = addMapping("extension", "*.htm", null);
+		Filter prefix = addMapping("prefix", "/module/*", null);
+		Filter all = addMapping("all", "/*", null);
+		addMapping("other", "/other/*", null);
+		addMapping("extension", "/module/*", null);
+		
+		Assert.assertEquals(Arrays.asList(extension, prefix, all, extension), getFilters("/module/foo/bar.htm"));
+	}
+}
@@ -0,0 +1,254 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.web;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openmrs.test.Verifies;
+import org.openmrs.web.filter.GZIPFilter;
+import org.openmrs.web.filter.GZIPResponseWrapper;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Tests the {@link FileResponseUtil} class
+ */
+public class FileResponseUtilTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File file;
+	
+	private String eTag;
+	
+	private MockHttpServletRequest request;
+	
+	private MockHttpServletResponse response;
+	
+	@Before
+	public void before() throws Exception {
+		file = folder.newFile("test.txt");
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write("0123456789".getBytes("UTF-8"));
+		}
+		finally {
+			out.close();
+		}
+		file.setLastModified(1000000000L);
+		eTag = FileResponseUtil.getETag(file);
+		
+		request = new MockHttpServletRequest("GET", "/test.txt");
+		response = new MockHttpServletResponse();
+	}
+	
+	private void sendFile() throws Exception {
+		FileResponseUtil.sendFile(request, response, file, "text/plain", eTag);
+	}
+	
+	/**
+	 * @see {@link FileResponseUtil#getETag(File)}
+	 */
+	@Test
+	@Verifies(value = "should change when the file changes", method = "getETag(File)")
+	public void getETag_shouldChangeWhenTheFileChanges() throws Exception {
+		Assert.assertEquals(eTag, FileResponseUtil.getETag(file));
+		file.setLastModified(2000000000L);
+		Assert.assertFalse(eTag.equals(FileResponseUtil.getETag(file)));
+	}
+	
+	/**
+	 * @see {@link FileResponseUtil#sendFile(HttpServletRequest,HttpServletResponse,File,String,String)}
+	 */
+	@Test
+	@Verifies(value = "should send the whole file", method = "sendFile(HttpServletRequest,HttpServletResponse,File,String,String)")
+	public void sendFile_shouldSendTheWholeFile() throws Exception {
+		sendFile();
+		Assert.assertEquals(200, response.getStatus());
+		Assert.assertEquals("0123456789", response.getContentAsString());
+		Assert.assertEquals(10, response.getContentLength());
+		Assert.assertEquals("text/plain", response.getContentType());
+		Assert.assertEquals(eTag, response.getHeader("ETag"));
+		Assert.assertEquals("bytes", response.getHeader("Accept-Ranges"));
+	}
+	
+	/**
+	 * @see {@link FileResponseUtil#sendFile(HttpServletRequest,HttpServletResponse,File,String,String)}
+	 */
+	@Test
+	@Verifies(value = "should answer a matching if none match header with not modified", method = "sendFile(HttpServletRequest,HttpServletResponse,File,String,String)")
+	public void sendFile_shouldAnswerAMatchingIfNoneMatchHeaderWithNotModified() throws Exception {
+		request.addHeader("If-None-Match", "\"other\", " + eTag);
+		sendFile();
+		Assert.assertEquals(304, response.getStatus());
+		Assert.assertEquals(0, response.getContentAsByteArray().length);
+	}
+	
+	/**
+	 * @see {@link FileResponseUtil#sendFile(HttpServletRequest,HttpServletResponse,File,String,String)}
+	 */
+	@Test
+	@Verifies(value = "should answer an if modified since header with not modified when the file has not changed", method = "sendFile(HttpServletRequest,HttpServletResponse,File,String,String)")
+	public void sendFile_shouldAnswerAnIfModifiedSinceHeaderWithNotModifiedWhenTheFileHasNotChanged() throws Exception {
+		request.addHeader("If-Modified-Since", file.lastModified());
+		sendFile();
+		Assert.assertEquals(304, response.getStatus());
+		
+		request = new MockHttpServletRequest("GET", "/test.txt");
+		request.addHeader("If-Modified-Since", file.lastModified() - 5000);
+		response = new MockHttpServletResponse();
+		sendFile();
+		Assert.assertEquals(200, response.getStatus());
+	}
+	
+	/**
+	 * @see {@link FileResponseUtil#sendFile(HttpServletRequest,HttpServletResponse,File,String,String)}
+	 */
+	@Test
+	@Verifies(value = "should send the requested range", method = "sendFile(HttpServletRequest,HttpServletResponse,File,String,String)")
+	public void sendFile_shouldSendTheRequestedRange() throws Exception {
+		request.addHeader("Range", "bytes=2-5");
+		request.addHeader("If-Range", eTag);
+		sendFile();
+		Assert.assertEquals(206, response.getStatus());
+		Assert.assertEquals("2345", response.getContentAsString());
+		Assert.assertEquals(4, response.getContentLength());
+		Assert.assertEquals("bytes 2-5/10", response.getHeader("Content-Range"));
+	}
+	
+	/**
+	 * @see {@link FileResponseUtil#sendFile(HttpServletRequest,HttpServletResponse,File,String,String)}
+	 */
+	@Test
+	@Verifies(value = "should send the whole file when the if range header does not match", method = "sendFile(HttpServletRequest,HttpServletResponse,File,String,String)")
+	public void sendFile_shouldSendTheWholeFileWhenTheIfRangeHeaderDoesNotMatch() throws Exception {
+		request.addHeader("Range", "bytes=2-5");
+		request.addHeader("If-Range", "\"other\"");
+		sendFile();
+		Assert.assertEquals(200, response.getStatus());
+		Assert.assertEquals("0123456789", response.getContentAsString());
+	}
+	
+	/**
+	 * @see {@link FileResponseUtil#sendFile(HttpServletRequest,HttpServletResponse,File,String,String)}
+	 */
+	@Test
+	@Verifies(value = "should answer an unsatisfiable range with requested range not satisfiable", method = "sendFile(HttpServletRequest,HttpServletResponse,File,String,String)")
+	public void sendFile_shouldAnswerAnUnsatisfiableRangeWithRequestedRangeNotSatisfiable() throws Exception {
+		request.addHeader("Range", "bytes=10-");
+		sendFile();
+		Assert.assertEquals(416, response.getStatus());
+		Assert.assertEquals("bytes */10", response.getHeader("Content-Range"));
+	}
+	
+	/**
+	 * @see {@link FileResponseUtil#sendFile(HttpServletRequest,HttpServletResponse,File,String,String)}
+	 */
+	@Test
+	@Verifies(value = "should not send the body of head requests", method = "sendFile(HttpServletRequest,HttpServletResponse,File,String,String)")
+	public void sendFile_shouldNotSendTheBodyOfHeadRequests() throws Exception {
+		request.setMethod("HEAD");
+		sendFile();
+		Assert.assertEquals(200, response.getStatus());
+		Assert.assertEquals(10, response.getContentLength());
+		Assert.assertEquals(0, response.getContentAsByteArray().length);
+	}
+	
+	/**
+	 * @see {@link FileResponseUtil#sendFile(HttpServletRequest,HttpServletResponse,File,String,String)}
+	 */
+	@Test
+	@Verifies(value = "should send the whole file when the response is compressed", method = "sendFile(HttpServletRequest,HttpServletResponse,File,String,String)")
+	public void sendFile_shouldSendTheWholeFileWhenTheResponseIsCompressed() throws Exception {
+		request.setAttribute(GZIPFilter.RESPONSE_WRAPPER_ATTRIBUTE, new GZIPResponseWrapper(response, 5, null));
+		request.addHeader("Range", "bytes=2-5");
+		sendFile();
+		Assert.assertEquals(200, response.getStatus());
+		Assert.assertEquals("0123456789", response.getContentAsString());
+		Assert.assertNull(response.getHeader("Content-Range"));
+		Assert.assertEquals("none", response.getHeader("Accept-Ranges"));
+	}
+	
+	/**
+	 * @see {@link FileResponseUtil#sendStream(HttpServletRequest,HttpServletResponse,FileInputStream,long,long,String,String)}
+	 */
+	@Test
+	@Verifies(value = "should send the requested range of the stream", method = "sendStream(HttpServletRequest,HttpServletResponse,FileInputStream,long,long,String,String)")
+	public void sendStream_shouldSendTheRequestedRangeOfTheStream() throws Exception {
+		request.addHeader("Range", "bytes=-3");
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileResponseUtil.sendStream(request, response, in, 10, -1, "text/plain", eTag);
+		}
+		finally {
+			in.close();
+		}
+		Assert.assertEquals(206, response.getStatus());
+		Assert.assertEquals("789", response.getContentAsString());
+		Assert.assertEquals("bytes 7-9/10", response.getHeader("Content-Range"));
+		Assert.assertNull(response.getHeader("Last-Modified"));
+	}
+	
+	/**
+	 * @see {@link FileResponseUtil#parseRange(String,long)}
+	 */
+	@Test
+	@Verifies(value = "should parse the first and last byte", method = "parseRange(String,long)")
+	public void parseRange_shouldParseTheFirstAndLastByte() throws Exception {
+		Assert.assertArrayEquals(new long[] { 0, 499 }, FileResponseUtil.parseRange("bytes=0-499", 1000));
+		Assert.assertArrayEquals(new long[] { 500, 999 }, FileResponseUtil.parseRange("bytes=500-5000", 1000));
+	}
+	
+	/**
+	 * @see {@link FileResponseUtil#parseRange(String,long)}
+	 */
+	@Test
+	@Verifies(value = "should parse open ended and suffix ranges", method = "parseRange(String,long)")
+	public void parseRange_shouldParseOpenEndedAndSuffixRanges() throws Exception {
+		Assert.assertArrayEquals(new long[] { 900, 999 }, FileResponseUtil.parseRange("bytes=900-", 1000));
+		Assert.assertArrayEquals(new long[] { 800, 999 }, FileResponseUtil.parseRange("bytes=-200", 1000));
+		Assert.assertArrayEquals(new long[] { 0, 999 }, FileResponseUtil.parseRange("bytes=-2000", 1000));
+	}
+	
+	/**
+	 * @see {@link FileResponseUtil#parseRange(String,long)}
+	 */
+	@Test
+	@Verifies(value = "should return null for malformed or multiple ranges", method = "parseRange(String,long)")
+	public void parseRange_shouldReturnNullForMalformedOrMultipleRanges() throws Exception {
+		Assert.assertNull(FileResponseUtil.parseRange("items=0-10", 1000));
+		Assert.assertNull(FileResponseUtil.parseRange("bytes=10", 1000));
+		Assert.assertNull(FileResponseUtil.parseRange("bytes=a-b", 1000));
+		Assert.assertNull(FileResponseUtil.parseRange("bytes=20-10", 1000));
+		Assert.assertNull(FileResponseUtil.parseRange("bytes=0-10,20-30", 1000));
+	}
+	
+	/**
+	 * @see {@link FileResponseUtil#parseRange(String,long)}
+	 */
+	@Test
+	@Verifies(value = "should return an empty array for unsatisfiable ranges", method = "parseRange(String,long)")
+	public void parseRange_shouldReturnAnEmptyArrayForUnsatisfiableRanges() throws Exception {
+		Assert.assertEquals(0, FileResponseUtil.parseRange("bytes=1000-", 1000).length);
+		Assert.assertEquals(0, FileResponseUtil.parseRange("bytes=-0", 1000).length);
+	}
+}
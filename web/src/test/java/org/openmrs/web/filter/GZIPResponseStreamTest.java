@@ -0,0 +1,157 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.web.filter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.test.Verifies;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Tests the {@link GZIPResponseStream} class
+ */
+public class GZIPResponseStreamTest {
+	
+	private static final List<String> CONTENT_TYPES = Arrays.asList("text/*", "application/json");
+	
+	private MockHttpServletResponse response;
+	
+	@Before
+	public void before() {
+		response = new MockHttpServletResponse();
+		response.setContentType("text/html;charset=UTF-8");
+	}
+	
+	private static byte[] content(int length) {
+		byte[] content = new byte[length];
+		for (int i = 0; i < length; i++) {
+			content[i] = (byte) ('a' + i % 7);
+		}
+		return content;
+	}
+	
+	private static byte[] decompress(byte[] compressed) throws Exception {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+	
+	/**
+	 * @see {@link GZIPResponseStream#write(byte[],int,int)}
+	 */
+	@Test
+	@Verifies(value = "should not compress responses smaller than the minimum size", method = "write(byte[],int,int)")
+	public void write_shouldNotCompressResponsesSmallerThanTheMinimumSize() throws Exception {
+		GZIPResponseStream stream = new GZIPResponseStream(response, 100, CONTENT_TYPES);
+		stream.write(content(100));
+		stream.close();
+		
+		Assert.assertNull(response.getHeader("Content-Encoding"));
+		Assert.assertEquals(100, response.getContentLength());
+		Assert.assertArrayEquals(content(100), response.getContentAsByteArray());
+	}
+	
+	/**
+	 * @see {@link GZIPResponseStream#write(byte[],int,int)}
+	 */
+	@Test
+	@Verifies(value = "should compress responses from the minimum size while they are written", method = "write(byte[],int,int)")
+	public void write_shouldCompressResponsesFromTheMinimumSizeWhileTheyAreWritten() throws Exception {
+		GZIPResponseStream stream = new GZIPResponseStream(response, 100, CONTENT_TYPES);
+		byte[] content = content(200000);
+		for (int i = 0; i < content.length; i += 1000) {
+			stream.write(content, i, 1000);
+		}
+		
+		// compressed chunks have reached the client before the end of the response
+		Assert.assertEquals("gzip", response.getHeader("Content-Encoding"));
+		Assert.assertTrue(response.getContentAsByteArray().length > 0);
+		
+		stream.close();
+		Assert.assertArrayEquals(content, decompress(response.getContentAsByteArray()));
+	}
+	
+	/**
+	 * @see {@link GZIPResponseStream#write(byte[],int,int)}
+	 */
+	@Test
+	@Verifies(value = "should not compress content types that are not compressible", method = "write(byte[],int,int)")
+	public void write_shouldNotCompressContentTypesThatAreNotCompressible() throws Exception {
+		response.setContentType("image/png");
+		GZIPResponseStream stream = new GZIPResponseStream(response, 100, CONTENT_TYPES);
+		stream.write(content(1000));
+		stream.close();
+		
+		Assert.assertNull(response.getHeader("Content-Encoding"));
+		Assert.assertArrayEquals(content(1000), response.getContentAsByteArray());
+	}
+	
+	/**
+	 * @see {@link GZIPResponseStream#write(byte[],int,int)}
+	 */
+	@Test
+	@Verifies(value = "should not compress responses that already have a content encoding", method = "write(byte[],int,int)")
+	public void write_shouldNotCompressResponsesThatAlreadyHaveAContentEncoding() throws Exception {
+		response.setHeader("Content-Encoding", "deflate");
+		GZIPResponseStream stream = new GZIPResponseStream(response, 100, CONTENT_TYPES);
+		stream.write(content(1000));
+		stream.close();
+		
+		Assert.assertEquals("deflate", response.getHeader("Content-Encoding"));
+		Assert.assertArrayEquals(content(1000), response.getContentAsByteArray());
+	}
+	
+	/**
+	 * @see {@link GZIPResponseStream#isCompressible(String,Collection)}
+	 */
+	@Test
+	@Verifies(value = "should match the mime type ignoring parameters and case", method = "isCompressible(String,Collection)")
+	public void isCompressible_shouldMatchTheMimeTypeIgnoringParametersAndCase() throws Exception {
+		Assert.assertTrue(GZIPResponseStream.isCompressible("Application/JSON; charset=UTF-8", CONTENT_TYPES));
+	}
+	
+	/**
+	 * @see {@link GZIPResponseStream#isCompressible(String,Collection)}
+	 */
+	@Test
+	@Verifies(value = "should match wildcard subtypes", method = "isCompressible(String,Collection)")
+	public void isCompressible_shouldMatchWildcardSubtypes() throws Exception {
+		Assert.assertTrue(GZIPResponseStream.isCompressible("text/css", CONTENT_TYPES));
+		Assert.assertTrue(GZIPResponseStream.isCompressible("text/javascript", CONTENT_TYPES));
+	}
+	
+	/**
+	 * @see {@link GZIPResponseStream#isCompressible(String,Collection)}
+	 */
+	@Test
+	@Verifies(value = "should not match other content types", method = "isCompressible(String,Collection)")
+	public void isCompressible_shouldNotMatchOtherContentTypes() throws Exception {
+		Assert.assertFalse(GZIPResponseStream.isCompressible("image/png", CONTENT_TYPES));
+		Assert.assertFalse(GZIPResponseStream.isCompressible("application/jsonp", CONTENT_TYPES));
+		Assert.assertFalse(GZIPResponseStream.isCompressible("textual/plain", CONTENT_TYPES));
+	}
+}
@@ -0,0 +1,211 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.web.filter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openmrs.test.Verifies;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Tests the {@link PrecompressedResourceCache} class
+ */
+public class PrecompressedResourceCacheTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private PrecompressedResourceCache cache;
+	
+	private MockHttpServletRequest request;
+	
+	private MockHttpServletResponse response;
+	
+	@Before
+	public void before() {
+		cache = new PrecompressedResourceCache(10000, 5000);
+		request = new MockHttpServletRequest();
+		response = new MockHttpServletResponse();
+	}
+	
+	private File writeFile(String name, int length, long lastModified) throws Exception {
+		byte[] content = new byte[length];
+		for (int i = 0; i < length; i++) {
+			content[i] = (byte) ('a' + i % 7);
+		}
+		File file = new File(folder.getRoot(), name);
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		}
+		finally {
+			out.close();
+		}
+		file.setLastModified(lastModified);
+		return file;
+	}
+	
+	private void compressResponse() {
+		GZIPResponseWrapper wrapper = new GZIPResponseWrapper(response, 100, Arrays.asList("text/*"));
+		request.setAttribute(GZIPFilter.RESPONSE_WRAPPER_ATTRIBUTE, wrapper);
+	}
+	
+	private static byte[] decompress(byte[] compressed) throws Exception {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+	
+	/**
+	 * @see {@link PrecompressedResourceCache#getETag(File)}
+	 */
+	@Test
+	@Verifies(value = "should change when the file changes", method = "getETag(File)")
+	public void getETag_shouldChangeWhenTheFileChanges() throws Exception {
+		File file = writeFile("test.js", 1000, 1000000L);
+		String eTag = PrecompressedResourceCache.getETag(file);
+		Assert.assertEquals(eTag, PrecompressedResourceCache.getETag(file));
+		
+		file.setLastModified(2000000L);
+		Assert.assertFalse(eTag.equals(PrecompressedResourceCache.getETag(file)));
+	}
+	
+	/**
+	 * @see {@link PrecompressedResourceCache#serve(HttpServletRequest,HttpServletResponse,File,String)}
+	 */
+	@Test
+	@Verifies(value = "should send the compressed file when the response is compressed", method = "serve(HttpServletRequest,HttpServletResponse,File,String)")
+	public void serve_shouldSendTheCompressedFileWhenTheResponseIsCompressed() throws Exception {
+		File file = writeFile("test.js", 1000, 1000000L);
+		compressResponse();
+		
+		Assert.assertTrue(cache.serve(request, response, file, "text/javascript"));
+		Assert.assertEquals("gzip", response.getHeader("Content-Encoding"));
+		Assert.assertEquals("text/javascript", response.getContentType());
+		Assert.assertEquals(response.getContentAsByteArray().length, response.getContentLength());
+		Assert.assertEquals(1000, decompress(response.getContentAsByteArray()).length);
+	}
+	
+	/**
+	 * @see {@link PrecompressedResourceCache#serve(HttpServletRequest,HttpServletResponse,File,String)}
+	 */
+	@Test
+	@Verifies(value = "should not send the file when the response is not compressed", method = "serve(HttpServletRequest,HttpServletResponse,File,String)")
+	public void serve_shouldNotSendTheFileWhenTheResponseIsNotCompressed() throws Exception {
+		File file = writeFile("test.js", 1000, 1000000L);
+		Assert.assertFalse(cache.serve(request, response, file, "text/javascript"));
+		
+		compressResponse();
+		Assert.assertFalse(cache.serve(request, response, file, "image/png"));
+		Assert.assertFalse(cache.serve(request, response, writeFile("small.js", 50, 1000000L), "text/javascript"));
+		Assert.assertEquals(0, response.getContentAsByteArray().length);
+		Assert.assertNull(response.getHeader("Content-Encoding"));
+	}
+	
+	/**
+	 * @see {@link PrecompressedResourceCache#serve(HttpServletRequest,HttpServletResponse,File,String)}
+	 */
+	@Test
+	@Verifies(value = "should answer a matching if none match header with not modified", method = "serve(HttpServletRequest,HttpServletResponse,File,String)")
+	public void serve_shouldAnswerAMatchingIfNoneMatchHeaderWithNotModified() throws Exception {
+		File file = writeFile("test.js", 1000, 1000000L);
+		compressResponse();
+		Assert.assertTrue(cache.serve(request, response, file, "text/javascript"));
+		String eTag = (String) response.getHeader("ETag");
+		
+		request.addHeader("If-None-Match", eTag);
+		response = new MockHttpServletResponse();
+		compressResponse();
+		Assert.assertTrue(cache.serve(request, response, file, "text/javascript"));
+		Assert.assertEquals(304, response.getStatus());
+		Assert.assertEquals(0, response.getContentAsByteArray().length);
+	}
+	
+	/**
+	 * @see {@link PrecompressedResourceCache#getCompressed(File,String)}
+	 */
+	@Test
+	@Verifies(value = "should compress the file once", method = "getCompressed(File,String)")
+	public void getCompressed_shouldCompressTheFileOnce() throws Exception {
+		File file = writeFile("test.js", 1000, 1000000L);
+		String eTag = PrecompressedResourceCache.getETag(file);
+		byte[] compressed = cache.getCompressed(file, eTag);
+		Assert.assertNotNull(compressed);
+		Assert.assertSame(compressed, cache.getCompressed(file, eTag));
+	}
+	
+	/**
+	 * @see {@link PrecompressedResourceCache#getCompressed(File,String)}
+	 */
+	@Test
+	@Verifies(value = "should compress the file again when it changes", method = "getCompressed(File,String)")
+	public void getCompressed_shouldCompressTheFileAgainWhenItChanges() throws Exception {
+		File file = writeFile("test.js", 1000, 1000000L);
+		cache.getCompressed(file, PrecompressedResourceCache.getETag(file));
+		
+		file = writeFile("test.js", 2000, 2000000L);
+		byte[] compressed = cache.getCompressed(file, PrecompressedResourceCache.getETag(file));
+		Assert.assertEquals(2000, decompress(compressed).length);
+		Assert.assertEquals(1, cache.size());
+	}
+	
+	/**
+	 * @see {@link PrecompressedResourceCache#getCompressed(File,String)}
+	 */
+	@Test
+	@Verifies(value = "should not cache files larger than the maximum file size", method = "getCompressed(File,String)")
+	public void getCompressed_shouldNotCacheFilesLargerThanTheMaximumFileSize() throws Exception {
+		File file = writeFile("test.js", 5001, 1000000L);
+		Assert.assertNull(cache.getCompressed(file, PrecompressedResourceCache.getETag(file)));
+		Assert.assertEquals(0, cache.size());
+	}
+	
+	/**
+	 * @see {@link PrecompressedResourceCache#getCompressed(File,String)}
+	 */
+	@Test
+	@Verifies(value = "should drop the least recently used entries when full", method = "getCompressed(File,String)")
+	public void getCompressed_shouldDropTheLeastRecentlyUsedEntriesWhenFull() throws Exception {
+		cache = new PrecompressedResourceCache(100, 5000);
+		File first = writeFile("first.js", 1000, 1000000L);
+		File second = writeFile("second.js", 1000, 1000000L);
+		File third = writeFile("third.js", 1000, 1000000L);
+		
+		byte[] compressed = cache.getCompressed(first, PrecompressedResourceCache.getETag(first));
+		cache.getCompressed(second, PrecompressedResourceCache.getETag(second));
+		Assert.assertSame(compressed, cache.getCompressed(first, PrecompressedResourceCache.getETag(first)));
+		cache.getCompressed(third, PrecompressedResourceCache.getETag(third));
+		
+		// second was the least recently used
+		Assert.assertEquals(2, cache.size());
+		Assert.assertSame(compressed, cache.getCompressed(first, PrecompressedResourceCache.getETag(first)));
+	}
+}
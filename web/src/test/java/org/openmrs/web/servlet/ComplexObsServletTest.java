@@ -0,0 +1,79 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.web.servlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.api.ObsService;
+import org.openmrs.api.context.Context;
+import org.openmrs.obs.ComplexObsHandler;
+import org.openmrs.test.Verifies;
+import org.openmrs.util.OpenmrsConstants;
+import org.openmrs.util.OpenmrsUtil;
+import org.openmrs.web.controller.observation.handler.WebImageHandler;
+import org.openmrs.web.test.BaseWebContextSensitiveTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Tests for the {@link ComplexObsServlet} class.
+ */
+public class ComplexObsServletTest extends BaseWebContextSensitiveTest {
+	
+	/**
+	 * @see {@link ComplexObsServlet#doGet(HttpServletRequest,HttpServletResponse)}
+	 */
+	@Test
+	@Verifies(value = "should stream the stored image of a web image handler", method = "doGet(HttpServletRequest,HttpServletResponse)")
+	public void doGet_shouldStreamTheStoredImageOfAWebImageHandler() throws Exception {
+		executeDataSet("org/openmrs/api/include/ObsServiceTest-complex.xml");
+		ObsService os = Context.getObsService();
+		ComplexObsHandler imageHandler = os.getHandler("ImageHandler");
+		File complexObsDir = OpenmrsUtil.getDirectoryInApplicationDataDirectory(Context.getAdministrationService()
+		        .getGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_COMPLEX_OBS_DIR));
+		File image = new File(complexObsDir, "openmrs_logo_small.gif");
+		byte[] content = "GIF89a stored bytes".getBytes("UTF-8");
+		FileOutputStream out = new FileOutputStream(image);
+		try {
+			out.write(content);
+		}
+		finally {
+			out.close();
+		}
+		
+		try {
+			// the webapp registers a WebImageHandler as the ImageHandler
+			os.registerHandler("ImageHandler", new WebImageHandler());
+			MockHttpServletRequest request = new MockHttpServletRequest("GET", "/complexObsServlet");
+			request.setParameter("obsId", "44");
+			MockHttpServletResponse response = new MockHttpServletResponse();
+			
+			new ComplexObsServlet().doGet(request, response);
+			
+			Assert.assertNotNull(response.getHeader("ETag"));
+			Assert.assertEquals("image/gif", response.getContentType());
+			Assert.assertArrayEquals(content, response.getContentAsByteArray());
+		}
+		finally {
+			os.registerHandler("ImageHandler", imageHandler);
+			image.delete();
+		}
+	}
+}
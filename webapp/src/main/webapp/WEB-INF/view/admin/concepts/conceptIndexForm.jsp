@@ -7,6 +7,20 @@
 
 <h2><openmrs:message code="ConceptWord.title"/></h2>
 
+<c:if test="${not empty progress}">
+	<c:set var="progressArguments" value="${progress.percentComplete},${progress.updatedConcepts},${progress.elapsedSeconds},${progress.conceptsPerSecond},${progress.workerThreads}"/>
+	<div id="conceptIndexProgress">
+		<c:choose>
+			<c:when test="${progress.running}"><openmrs:message code="ConceptWord.progress.running" arguments="${progressArguments}"/></c:when>
+			<c:otherwise><openmrs:message code="ConceptWord.progress.finished" arguments="${progressArguments}"/></c:otherwise>
+		</c:choose>
+		<c:if test="${progress.failedPartitions > 0}">
+			<br/><openmrs:message code="ConceptWord.progress.failed" arguments="${progress.failedPartitions}"/>
+		</c:if>
+	</div>
+	<br/>
+</c:if>
+
 <form method="post">
 	<openmrs:message code="ConceptWord.instructions"/>
 	<br/><br/>
@@ -106,6 +106,17 @@
 
 <h2><openmrs:message code="Hl7inQueue.queueList.pending.title" /></h2>
 
+<c:if test="${not empty statistics}">
+	<c:set var="statisticsArguments" value="${statistics.processedMessages},${statistics.elapsedSeconds},${statistics.messagesPerSecond},${statistics.workerThreads},${statistics.lagSeconds}"/>
+	<div id="hl7ProcessorStatistics">
+		<c:choose>
+			<c:when test="${statistics.running}"><openmrs:message code="Hl7inQueue.processor.running" arguments="${statisticsArguments}"/></c:when>
+			<c:otherwise><openmrs:message code="Hl7inQueue.processor.finished" arguments="${statisticsArguments}"/></c:otherwise>
+		</c:choose>
+	</div>
+	<br/>
+</c:if>
+
 <div id="message" class="ui-widget"
 	style="display: none; margin-bottom: 1em;">
 <div class="ui-state-highlight ui-corner-all" style="padding: 0.5em;">
@@ -12,6 +12,8 @@
 
 	var searchWidget;
 	var searchOn;
+	var candidateStart = 0;
+	var candidatePageSize = 50;
 	
 	var getCheckbox = function(patient) {
 		if (typeof patient == "string") return "";
@@ -104,6 +106,11 @@
 				DWRPatientService.findDuplicatePatients(searchOn, searchWidget.simpleClosure(searchWidget, "doObjectsFound"));
 		}
 		
+		searchWidget.findCandidates = function(start) {
+			candidateStart = start;
+			DWRPatientService.findDuplicatePatientCandidates(start, candidatePageSize, searchWidget.simpleClosure(searchWidget, "doObjectsFound"));
+		}
+		
 	});
 	
 </script>
@@ -130,6 +137,11 @@
 
 <i>(<openmrs:message code="Patient.merge.minimum"/>)</i>
 
+<br /><br />
+<openmrs:message code="Patient.merge.candidates.help"/> <br/>
+<input type="button" value='<openmrs:message code="Patient.merge.candidates"/>' onclick="searchWidget.findCandidates(0)" />
+<input type="button" value='<openmrs:message code="Patient.merge.candidates.next"/>' onclick="searchWidget.findCandidates(candidateStart + candidatePageSize)" /><br />
+
 <br /><br />
 
 <div id="mergePatientPopup">